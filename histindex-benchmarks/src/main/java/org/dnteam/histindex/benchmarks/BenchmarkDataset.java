@@ -0,0 +1,133 @@
+package org.dnteam.histindex.benchmarks;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.dnteam.histindex.benchmarks.corpus.CorpusBuilder;
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.Entity;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.KeywordManager;
+import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.database.SourceManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** A deterministic dataset of quotes (with its keywords, authors, books and sources), shared by
+ * all threads of a benchmark trial.<br/>
+ * Each size is built once by the {@link CorpusBuilder}, from a fixed seed, to a file kept between
+ * runs (at the directory defined by the {@value #DIR_PROPERTY} property, or "target/datasets"),
+ * as building the largest one takes a while. Delete it to build again.<br/>
+ * Its entity lists are sorted from the most to the least used.
+ * @author farrer */
+@State(Scope.Benchmark)
+public class BenchmarkDataset {
+
+	/** Property with the directory of the dataset files */
+	public static final String DIR_PROPERTY = "histindex.benchmarks.dir";
+	/** Seed of all random choices of the datasets */
+	private static final long SEED = 17081698L;
+	/** Number of quotes of the dataset */
+	@Param({"1000", "100000", "1000000"})
+	public int quotes;
+
+	private Database database;
+	private List<Keyword> keywords;
+	private List<Author> authors;
+	private List<Book> books;
+	private List<Source> sources;
+	/** Greatest quote identifier (all from 1 to it exist, as seeded) */
+	private long maxQuoteId;
+
+	/** Open the dataset, seeding it first if not yet done.
+	 * @throws SQLException */
+	@Setup(Level.Trial)
+	public void open() throws SQLException {
+		File dir = new File(System.getProperty(DIR_PROPERTY, "target/datasets"));
+		File file = new File(dir, "quotes-" + quotes + ".db");
+		if(!file.exists()) {
+			dir.mkdirs();
+			/* Seeded at another file, so an interrupted seed isn't used */
+			File seeding = new File(dir, file.getName() + ".seeding");
+			seeding.delete();
+			new CorpusBuilder().setSeed(SEED).setQuotes(quotes).build(seeding);
+			if(!seeding.renameTo(file)) {
+				throw new SQLException("Couldn't rename the seeded dataset to " + file);
+			}
+		}
+		database = new Database(file.getPath());
+		database.migrate();
+		keywords = byId(KeywordManager.getSingleton().loadAll(database));
+		authors = byId(AuthorManager.getSingleton().loadAll(database));
+		books = byId(BookManager.getSingleton().loadAll(database));
+		sources = byId(SourceManager.getSingleton().loadAll(database));
+		try(ConnectionLease lease = database.leaseReader();
+			 Statement stmt = lease.getConnection().createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT MAX(Id) FROM Quotes")) {
+			maxQuoteId = rs.next() ? rs.getLong(1) : 0;
+		}
+	}
+
+	/** Sort entities by its identifiers: as inserted by the {@link CorpusBuilder}, from the most 
+	 * to the least used. */
+	private static <T extends Entity> List<T> byId(List<T> entities) {
+		Collections.sort(entities, new Comparator<T>() {
+			@Override
+			public int compare(T a, T b) {
+				return Long.compare(a.getId(), b.getId());
+			}
+		});
+		return entities;
+	}
+
+	/** Close the dataset. */
+	@TearDown(Level.Trial)
+	public void close() {
+		database.close();
+	}
+
+	/** @return {@link #database} */
+	public Database getDatabase() {
+		return database;
+	}
+
+	/** @return {@link #keywords} */
+	public List<Keyword> getKeywords() {
+		return keywords;
+	}
+
+	/** @return {@link #authors} */
+	public List<Author> getAuthors() {
+		return authors;
+	}
+
+	/** @return {@link #books} */
+	public List<Book> getBooks() {
+		return books;
+	}
+
+	/** @return {@link #sources} */
+	public List<Source> getSources() {
+		return sources;
+	}
+
+	/** @return {@link #maxQuoteId} */
+	public long getMaxQuoteId() {
+		return maxQuoteId;
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.dnteam.histindex.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.generators.QuoteGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the basic operations of an {@link org.dnteam.histindex.database.EntityManager}:
+ * inserting a quote (to an initially empty database), loading a random quote and loading all books.
+ * @author farrer */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EntityManagerBenchmark {
+
+	private final Random random = new Random(42);
+	/** File of the database the quotes are inserted to */
+	private File scratchFile;
+	/** Database the quotes are inserted to */
+	private Database scratch;
+
+	/** Create the database to insert to.
+	 * @throws IOException
+	 * @throws SQLException */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		scratchFile = File.createTempFile("histindex-insert", ".db");
+		scratch = new Database(scratchFile.getPath());
+		scratch.createSchema();
+	}
+
+	/** Delete the database inserted to. */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		scratch.close();
+		scratchFile.delete();
+	}
+
+	/** Insert a quote.
+	 * @return the inserted {@link Quote}.
+	 * @throws SQLException */
+	@Benchmark
+	public Quote insert() throws SQLException {
+		Quote quote = new QuoteGenerator().withPage("12-14").getEntity();
+		QuoteManager.getSingleton().insert(scratch, quote);
+		return quote;
+	}
+
+	/** Load a random quote by its identifier.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the loaded {@link Quote}.
+	 * @throws SQLException */
+	@Benchmark
+	public Quote load(BenchmarkDataset data) throws SQLException {
+		long id = 1 + (long) (random.nextDouble() * data.getMaxQuoteId());
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			return QuoteManager.getSingleton().load(lease.getConnection(), id);
+		}
+	}
+
+	/** Load all books (one for each 50 quotes), with its authors.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the loaded {@link Book}s.
+	 * @throws SQLException */
+	@Benchmark
+	public List<Book> loadAll(BenchmarkDataset data) throws SQLException {
+		return BookManager.getSingleton().loadAll(data.getDatabase());
+	}
+
+}
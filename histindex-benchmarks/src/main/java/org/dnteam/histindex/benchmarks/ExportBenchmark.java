@@ -0,0 +1,102 @@
+package org.dnteam.histindex.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.HistIndexProperties;
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.exporters.CSVExporter;
+import org.dnteam.histindex.exporters.Exporter;
+import org.dnteam.histindex.exporters.ExporterFonts;
+import org.dnteam.histindex.exporters.PdfExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.nervalreports.core.ReportGenerationException;
+
+/** Benchmark of exporting quotes (with its related information) to a file, as the search frame.
+ * @author farrer */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+	/** Export formats */
+	public enum Format { CSV, PDF }
+
+	@Param
+	public Format format;
+
+	/** Number of quotes to export */
+	@Param({"100", "1000"})
+	public int count;
+
+	/** Quotes to export */
+	private List<Quote> quotes;
+	/** File to export to */
+	private File output;
+
+	/** Load the quotes to export: the first ones, in its default order.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @throws SQLException
+	 * @throws IOException */
+	@Setup(Level.Trial)
+	public void setUp(BenchmarkDataset data) throws SQLException, IOException {
+		/* Our exports have the application version */
+		HistIndexProperties.init();
+		ExporterFonts.init("fonts/FreeSerif.ttf", "fonts/FreeSerifItalic.ttf", 
+				"fonts/FreeSerifBold.ttf", "fonts/FreeSerifBoldItalic.ttf");
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			Page<Quote> page = QuoteManager.getSingleton().loadPage(lease.getConnection(), null, count);
+			quotes = new ArrayList<Quote>(page.getItems());
+			QuoteManager.getSingleton().populateRelatedInfo(lease.getConnection(), quotes);
+		}
+		output = File.createTempFile("histindex-export", "." + format.name().toLowerCase());
+	}
+
+	/** Delete the exported file. */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		output.delete();
+	}
+
+	/** Generate the export and save it.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the exported file.
+	 * @throws ReportGenerationException */
+	@Benchmark
+	public File export(BenchmarkDataset data) throws ReportGenerationException {
+		Exporter exporter = (format == Format.CSV) ? new CSVExporter(data.getDatabase(), quotes) :
+			new PdfExporter(data.getDatabase(), quotes);
+		exporter.generate(new ArrayList<Keyword>(), true, new ArrayList<Book>(), new ArrayList<Author>(),
+				new ArrayList<Source>(), "");
+		exporter.export(output.getAbsolutePath());
+		return output;
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.dnteam.histindex.benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.util.LongSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of {@link QuoteManager#populateRelatedInfo(java.sql.Connection, List)}: loading the
+ * books (with its authors), sources and keywords of random quotes.
+ * @author farrer */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HydrationBenchmark {
+
+	/** Number of quotes to populate */
+	@Param({"100", "1000"})
+	public int count;
+
+	private final Random random = new Random(42);
+	/** Quotes to populate at the current iteration */
+	private List<Quote> quotes;
+
+	/** Load the quotes to populate (without its related information).
+	 * @param data the {@link BenchmarkDataset}.
+	 * @throws SQLException */
+	@Setup(Level.Iteration)
+	public void load(BenchmarkDataset data) throws SQLException {
+		LongSet chosen = new LongSet();
+		int total = (int) Math.min(count, data.getMaxQuoteId());
+		while(chosen.size() < total) {
+			chosen.add(1 + (long) (random.nextDouble() * data.getMaxQuoteId()));
+		}
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			quotes = QuoteManager.getSingleton().load(lease.getConnection(), chosen.toSortedArray());
+		}
+	}
+
+	/** Populate the related information of the quotes.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the populated {@link Quote}s.
+	 * @throws SQLException */
+	@Benchmark
+	public List<Quote> populateRelatedInfo(BenchmarkDataset data) throws SQLException {
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			QuoteManager.getSingleton().populateRelatedInfo(lease.getConnection(), quotes);
+		}
+		return quotes;
+	}
+
+}
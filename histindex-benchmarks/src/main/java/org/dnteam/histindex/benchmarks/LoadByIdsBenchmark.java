@@ -0,0 +1,68 @@
+package org.dnteam.histindex.benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.util.LongSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of loading quotes by its identifiers 
+ * ({@link org.dnteam.histindex.database.EntityManager#load(java.sql.Connection, long[])}), with
+ * different numbers of random identifiers.
+ * @author farrer */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadByIdsBenchmark {
+
+	/** Number of identifiers to load */
+	@Param({"10", "100", "1000", "10000"})
+	public int ids;
+
+	private final Random random = new Random(42);
+	/** Identifiers to load at the current iteration, sorted */
+	private long[] toLoad;
+
+	/** Choose the identifiers to load.
+	 * @param data the {@link BenchmarkDataset}. */
+	@Setup(Level.Iteration)
+	public void choose(BenchmarkDataset data) {
+		LongSet chosen = new LongSet();
+		int total = (int) Math.min(ids, data.getMaxQuoteId());
+		while(chosen.size() < total) {
+			chosen.add(1 + (long) (random.nextDouble() * data.getMaxQuoteId()));
+		}
+		toLoad = chosen.toSortedArray();
+	}
+
+	/** Load the chosen quotes.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the loaded {@link Quote}s.
+	 * @throws SQLException */
+	@Benchmark
+	public List<Quote> load(BenchmarkDataset data) throws SQLException {
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			return QuoteManager.getSingleton().load(lease.getConnection(), toLoad);
+		}
+	}
+
+}
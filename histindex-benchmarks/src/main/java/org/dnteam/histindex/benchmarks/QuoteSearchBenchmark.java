@@ -0,0 +1,136 @@
+package org.dnteam.histindex.benchmarks;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.SearchCriteria;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of {@link QuoteManager#search(java.sql.Connection, SearchCriteria)} (all quotes 
+ * found, ordered by the database) and of its first page, with different search shapes.
+ * @author farrer */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QuoteSearchBenchmark {
+
+	/** Search shapes */
+	public enum Shape {
+		/** The most used keyword */
+		KEYWORD,
+		/** Two of the most used keywords, both required */
+		KEYWORDS_AND,
+		/** Three keywords, any of them */
+		KEYWORDS_OR,
+		/** An author (of a few books) */
+		AUTHOR,
+		/** A single book */
+		BOOK,
+		/** Two words, by the full-text index */
+		TEXT,
+		/** A word prefix, by the full-text index */
+		TEXT_PREFIX,
+		/** A substring, by LIKE */
+		TEXT_CONTAINS,
+		/** A keyword and a word */
+		KEYWORD_TEXT
+	}
+
+	/** Quotes by page */
+	private static final int PAGE_SIZE = 50;
+
+	@Param
+	public Shape shape;
+
+	private SearchCriteria criteria;
+
+	/** Create the criteria of the shape.
+	 * @param data the {@link BenchmarkDataset}. */
+	@Setup(Level.Trial)
+	public void setUp(BenchmarkDataset data) {
+		criteria = new SearchCriteria();
+		switch(shape) {
+			case KEYWORD:
+				criteria.setKeywords(data.getKeywords().subList(0, 1));
+				break;
+			case KEYWORDS_AND:
+				criteria.setKeywords(data.getKeywords().subList(0, 2));
+				criteria.setAndKeys(true);
+				break;
+			case KEYWORDS_OR:
+				/* A frequent, a middle and a rare one */
+				List<Keyword> keywords = data.getKeywords();
+				criteria.setKeywords(Arrays.asList(keywords.get(5), keywords.get(keywords.size() / 2),
+						keywords.get(keywords.size() - 1)));
+				break;
+			case AUTHOR:
+				criteria.setAuthors(data.getAuthors().subList(0, 1));
+				break;
+			case BOOK:
+				criteria.setBooks(data.getBooks().subList(0, 1));
+				break;
+			case TEXT:
+				criteria.setText("ouro Manica");
+				criteria.setTextMode(SearchCriteria.TextMode.TOKENS);
+				break;
+			case TEXT_PREFIX:
+				criteria.setText("praz");
+				criteria.setTextMode(SearchCriteria.TextMode.PREFIX);
+				break;
+			case TEXT_CONTAINS:
+				criteria.setText("ortalez");
+				criteria.setTextMode(SearchCriteria.TextMode.CONTAINS);
+				break;
+			case KEYWORD_TEXT:
+				criteria.setKeywords(Collections.singletonList(data.getKeywords().get(0)));
+				criteria.setText("marfim");
+				criteria.setTextMode(SearchCriteria.TextMode.TOKENS);
+				break;
+		}
+	}
+
+	/** Search all quotes.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the {@link Quote}s found.
+	 * @throws SQLException */
+	@Benchmark
+	public List<Quote> search(BenchmarkDataset data) throws SQLException {
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			return QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+		}
+	}
+
+	/** Search the first page of quotes.
+	 * @param data the {@link BenchmarkDataset}.
+	 * @return the {@link Page} found.
+	 * @throws SQLException */
+	@Benchmark
+	public Page<Quote> searchFirstPage(BenchmarkDataset data) throws SQLException {
+		try(ConnectionLease lease = data.getDatabase().leaseReader()) {
+			return QuoteManager.getSingleton().searchPage(lease.getConnection(), criteria, null, PAGE_SIZE);
+		}
+	}
+
+}
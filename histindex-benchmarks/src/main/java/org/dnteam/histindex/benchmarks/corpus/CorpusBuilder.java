@@ -0,0 +1,496 @@
+package org.dnteam.histindex.benchmarks.corpus;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookAuthor;
+import org.dnteam.histindex.database.BookAuthorManager;
+import org.dnteam.histindex.database.BookManager;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.DatabaseConfig;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.KeywordManager;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteKeyword;
+import org.dnteam.histindex.database.QuoteKeywordManager;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.database.SourceManager;
+import org.dnteam.histindex.database.TransactionWork;
+
+/** Builds a synthetic corpus of quotes (with its keywords, authors, books and sources) at a
+ * new database, with the distributions seen on real indexes:
+ * <ul>
+ * <li>keywords, authors, books and sources are used following Zipf distributions (a few ones
+ *     are much more used than all others), its most used ones being the first inserted;</li>
+ * <li>books have mostly one author, but some up to six;</li>
+ * <li>quote texts have log-normal distributed lengths;</li>
+ * <li>pages are mostly numbers, but also ranges, roman numerals, folios or none.</li>
+ * </ul>
+ * The corpus only depends on its seed and sizes (not on the number of threads): each quote is
+ * generated from its own random sequence, so they're generated in parallel chunks, but inserted
+ * in order, each chunk (with its keywords relations) in a single transaction.<br/>
+ * From the command line, see {@link #main(String[])}.
+ * @author farrer */
+public class CorpusBuilder {
+
+	/** Listener of the building progress. */
+	public interface ProgressListener {
+		/** Called after each inserted chunk of quotes (from the building thread).
+		 * @param inserted quotes already inserted.
+		 * @param total total quotes to insert. */
+		void onProgress(long inserted, long total);
+	}
+
+	/** Random sequence of the vocabulary */
+	private static final long VOCABULARY = 1;
+	/** Random sequence of the keywords */
+	private static final long KEYWORDS = 2;
+	/** Random sequence of the authors */
+	private static final long AUTHORS = 3;
+	/** Random sequence of the books */
+	private static final long BOOKS = 4;
+	/** Random sequence of the sources */
+	private static final long SOURCES = 5;
+	/** Random sequences of the quotes (one for each, from this one) */
+	private static final long QUOTES = 16;
+	/** Number of quotes of each chunk: generated by a thread and inserted in a transaction */
+	private static final int CHUNK = 5000;
+
+	private long seed = 1;
+	private int quotes = 100000;
+	private int keywords;
+	private int authors;
+	private int books;
+	private int sources;
+	private int vocabulary = 20000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/** Percentage of quotes from sources (all others from books) */
+	private int sourcePercent = 25;
+	/** Percentage of quotes with comments */
+	private int commentPercent = 10;
+	private ProgressListener listener;
+
+	/** Build a corpus from the command line, with the arguments:
+	 * <pre>
+	 * --out file         database to create (required, mustn't exist)
+	 * --quotes n         number of quotes (default 100000)
+	 * --seed n           seed of all random choices (default 1)
+	 * --threads n        threads generating the quotes (default: available processors)
+	 * --keywords n       number of keywords (default: from the number of quotes)
+	 * --authors n        number of authors (idem)
+	 * --books n          number of books (idem)
+	 * --sources n        number of sources (idem)
+	 * --vocabulary n     number of distinct words of the texts (default 20000)
+	 * </pre>
+	 * @param args the arguments. */
+	public static void main(String[] args) {
+		CorpusBuilder builder = new CorpusBuilder();
+		String out = null;
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if(i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value of " + arg);
+				}
+				String value = args[++i];
+				if("--out".equals(arg)) {
+					out = value;
+				} else if("--quotes".equals(arg)) {
+					builder.setQuotes(Integer.parseInt(value));
+				} else if("--seed".equals(arg)) {
+					builder.setSeed(Long.parseLong(value));
+				} else if("--threads".equals(arg)) {
+					builder.setThreads(Integer.parseInt(value));
+				} else if("--keywords".equals(arg)) {
+					builder.setKeywords(Integer.parseInt(value));
+				} else if("--authors".equals(arg)) {
+					builder.setAuthors(Integer.parseInt(value));
+				} else if("--books".equals(arg)) {
+					builder.setBooks(Integer.parseInt(value));
+				} else if("--sources".equals(arg)) {
+					builder.setSources(Integer.parseInt(value));
+				} else if("--vocabulary".equals(arg)) {
+					builder.setVocabulary(Integer.parseInt(value));
+				} else {
+					throw new IllegalArgumentException("Unknown argument: " + arg);
+				}
+			}
+			if(out == null) {
+				throw new IllegalArgumentException("The database to create (--out) is required");
+			}
+		} catch(IllegalArgumentException e) {
+			/* Including number format errors */
+			System.err.println(e.getMessage());
+			System.err.println("Usage: CorpusBuilder --out file [--quotes n] [--seed n] [--threads n] "
+					+ "[--keywords n] [--authors n] [--books n] [--sources n] [--vocabulary n]");
+			System.exit(2);
+		}
+
+		final long started = System.nanoTime();
+		builder.setProgressListener(new ProgressListener() {
+			@Override
+			public void onProgress(long inserted, long total) {
+				double seconds = (System.nanoTime() - started) / 1e9;
+				System.out.printf("%d of %d quotes (%.0f quotes/s)%n", inserted, total, inserted / seconds);
+			}
+		});
+		try {
+			builder.build(new File(out));
+		} catch(SQLException e) {
+			System.err.println("Couldn't build the corpus: " + e.getMessage());
+			System.exit(1);
+		}
+		System.out.printf("Built %s in %.1f s%n", out, (System.nanoTime() - started) / 1e9);
+	}
+
+	/** Build the corpus at a new database file, with the bulk load profile.
+	 * @param file the database file (mustn't exist).
+	 * @throws SQLException on error or if the file exists. */
+	public void build(File file) throws SQLException {
+		if(file.exists()) {
+			throw new SQLException("Won't build a corpus over the existing " + file);
+		}
+		Database db = new Database(file.getPath(), DatabaseConfig.bulkLoad());
+		try {
+			db.createSchema();
+			build(db);
+		} finally {
+			db.close();
+		}
+	}
+
+	/** Build the corpus.
+	 * @param db {@link Database} to insert to (with an empty schema).
+	 * @throws SQLException */
+	public void build(Database db) throws SQLException {
+		CorpusText text = createText();
+
+		List<Keyword> keywordList = createKeywords(text);
+		KeywordManager.getSingleton().insertAll(db, keywordList);
+		List<Author> authorList = createAuthors(text);
+		AuthorManager.getSingleton().insertAll(db, authorList);
+		List<Book> bookList = createBooks(text, authorList);
+		insertBooks(db, bookList);
+		List<Source> sourceList = createSources(text);
+		SourceManager.getSingleton().insertAll(db, sourceList);
+
+		QuoteFactory factory = new QuoteFactory(text, keywordList, bookList, sourceList);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			/* Keeping a few chunks ahead of the inserted one, to bound the memory used */
+			ArrayDeque<Future<List<Quote>>> pending = new ArrayDeque<Future<List<Quote>>>();
+			int next = 0;
+			long inserted = 0;
+			while(inserted < quotes) {
+				while(next < quotes && pending.size() < 2 * threads) {
+					pending.add(executor.submit(factory.chunk(next, Math.min(next + CHUNK, quotes))));
+					next += CHUNK;
+				}
+				List<Quote> chunk = get(pending.poll());
+				insertQuotes(db, chunk);
+				inserted += chunk.size();
+				if(listener != null) {
+					listener.onProgress(inserted, quotes);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** @return the {@link CorpusText} of the corpus (ie: to search its words or add to it). */
+	public CorpusText createText() {
+		return new CorpusText(random(VOCABULARY, 0).nextLong(), vocabulary);
+	}
+
+	/** @return the result of a generating chunk, waiting for it. */
+	private static List<Quote> get(Future<List<Quote>> chunk) throws SQLException {
+		try {
+			return chunk.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while building the corpus", e);
+		} catch(ExecutionException e) {
+			throw new SQLException("Couldn't generate the quotes", e.getCause());
+		}
+	}
+
+	/** Get the random sequence of something.
+	 * @param sequence the sequence (ie: {@link #KEYWORDS}).
+	 * @param index index of the sequence (for quotes).
+	 * @return its {@link SplittableRandom}, only depending on our seed, the sequence and index. */
+	private SplittableRandom random(long sequence, long index) {
+		/* Mixed (as of the SplitMix64 finalizer), so near seeds don't give overlapping sequences */
+		long z = seed * 0x9E3779B97F4A7C15L + sequence * 0xC2B2AE3D27D4EB4FL + index;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new SplittableRandom(z ^ (z >>> 31));
+	}
+
+	/** @return the keywords, with distinct names. */
+	private List<Keyword> createKeywords(CorpusText text) {
+		SplittableRandom random = random(KEYWORDS, 0);
+		Set<String> names = new HashSet<String>();
+		List<Keyword> list = new ArrayList<Keyword>();
+		int total = (keywords > 0) ? keywords : clamp(quotes / 500, 50, 5000);
+		while(list.size() < total) {
+			String name = text.name(random);
+			if(random.nextInt(4) == 0) {
+				name += " " + text.name(random);
+			}
+			if(names.add(name)) {
+				Keyword keyword = new Keyword();
+				keyword.setName(name);
+				list.add(keyword);
+			}
+		}
+		return list;
+	}
+
+	/** @return the authors. */
+	private List<Author> createAuthors(CorpusText text) {
+		SplittableRandom random = random(AUTHORS, 0);
+		List<Author> list = new ArrayList<Author>();
+		int total = (authors > 0) ? authors : Math.max(10, quotes / 400);
+		for(int i = 0; i < total; i++) {
+			Author author = new Author();
+			author.setName(text.givenName(random));
+			author.setLastName(text.name(random));
+			list.add(author);
+		}
+		return list;
+	}
+
+	/** @return the books, with its authors (prolific ones having more books). */
+	private List<Book> createBooks(CorpusText text, List<Author> authorList) {
+		SplittableRandom random = random(BOOKS, 0);
+		ZipfDistribution prolific = new ZipfDistribution(authorList.size(), 0.8);
+		List<Book> list = new ArrayList<Book>();
+		int total = (books > 0) ? books : Math.max(10, quotes / 100);
+		for(int i = 0; i < total; i++) {
+			Book book = new Book();
+			book.setTitle(text.words(random, 2 + random.nextInt(8)));
+			int kind = random.nextInt(100);
+			int count = (kind < 70) ? 1 : (kind < 90) ? 2 : (kind < 97) ? 3 : 4 + random.nextInt(3);
+			Set<Integer> chosen = new HashSet<Integer>();
+			/* Limited tries, as there could be less authors than wanted */
+			for(int t = 0; t < 4 * count && chosen.size() < count; t++) {
+				int author = prolific.sample(random);
+				if(chosen.add(author)) {
+					book.addAuthor(authorList.get(author));
+				}
+			}
+			list.add(book);
+		}
+		return list;
+	}
+
+	/** @return the sources. */
+	private List<Source> createSources(CorpusText text) {
+		SplittableRandom random = random(SOURCES, 0);
+		List<Source> list = new ArrayList<Source>();
+		int total = (sources > 0) ? sources : Math.max(5, quotes / 250);
+		for(int i = 0; i < total; i++) {
+			Source source = new Source();
+			source.setTitle(text.words(random, 3 + random.nextInt(10)));
+			source.setYear(1500 + random.nextInt(400));
+			source.setExtraInfo((random.nextInt(3) == 0) ? text.words(random, 2 + random.nextInt(6)) : "");
+			list.add(source);
+		}
+		return list;
+	}
+
+	/** Insert the books, with its authors relations, in a single transaction.
+	 * @param db {@link Database} to insert to.
+	 * @param bookList the books. */
+	private static void insertBooks(Database db, final List<Book> bookList) throws SQLException {
+		db.inTransaction(new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				BookManager.getSingleton().insertAll(conn, bookList);
+				List<BookAuthor> relations = new ArrayList<BookAuthor>();
+				for(Book book : bookList) {
+					for(Author author : book.getAuthorsCopy()) {
+						relations.add(new BookAuthor(book, author));
+					}
+				}
+				BookAuthorManager.getSingleton().insertAll(conn, relations);
+				return null;
+			}
+		});
+	}
+
+	/** Insert a chunk of quotes, with its keyword relations, in a single transaction.<br/>
+	 * Note: not retried when busy, as no other one should be using the new database.
+	 * @param db {@link Database} to insert to.
+	 * @param chunk the quotes. */
+	private static void insertQuotes(Database db, final List<Quote> chunk) throws SQLException {
+		db.inTransaction(new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				QuoteManager.getSingleton().insertAll(conn, chunk);
+				List<QuoteKeyword> relations = new ArrayList<QuoteKeyword>();
+				for(Quote quote : chunk) {
+					for(Keyword keyword : quote.getKeywordsCopy()) {
+						relations.add(new QuoteKeyword(quote, keyword));
+					}
+				}
+				QuoteKeywordManager.getSingleton().insertAll(conn, relations);
+				return null;
+			}
+		});
+	}
+
+	/** @return value, kept between min and max. */
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/** Generates the quotes, each from its own random sequence. Shared by all generating
+	 * threads, only reading its lists. */
+	private class QuoteFactory {
+		private final CorpusText text;
+		private final List<Keyword> keywordList;
+		private final List<Book> bookList;
+		private final List<Source> sourceList;
+		private final ZipfDistribution keywordUsage;
+		private final ZipfDistribution bookUsage;
+		private final ZipfDistribution sourceUsage;
+
+		/** Constructor. */
+		QuoteFactory(CorpusText text, List<Keyword> keywordList, List<Book> bookList, List<Source> sourceList) {
+			this.text = text;
+			this.keywordList = keywordList;
+			this.bookList = bookList;
+			this.sourceList = sourceList;
+			this.keywordUsage = new ZipfDistribution(keywordList.size(), 1.0);
+			this.bookUsage = new ZipfDistribution(bookList.size(), 0.7);
+			this.sourceUsage = new ZipfDistribution(sourceList.size(), 0.7);
+		}
+
+		/** Get the work generating a chunk of quotes.
+		 * @param from index of its first quote.
+		 * @param to index after its last quote.
+		 * @return the work. */
+		Callable<List<Quote>> chunk(final int from, final int to) {
+			return new Callable<List<Quote>>() {
+				@Override
+				public List<Quote> call() {
+					List<Quote> chunk = new ArrayList<Quote>(to - from);
+					for(int i = from; i < to; i++) {
+						chunk.add(quote(i));
+					}
+					return chunk;
+				}
+			};
+		}
+
+		/** @return the quote of an index. */
+		private Quote quote(int index) {
+			SplittableRandom random = random(QUOTES, index);
+			Quote quote = new Quote();
+			if(random.nextInt(100) < sourcePercent) {
+				quote.setSource(sourceList.get(sourceUsage.sample(random)));
+			} else {
+				quote.setBook(bookList.get(bookUsage.sample(random)));
+			}
+			quote.setPage(text.page(random));
+			quote.setText(text.text(random, text.quoteLength(random)));
+			quote.setComment((random.nextInt(100) < commentPercent) ?
+					text.text(random, 3 + random.nextInt(30)) : "");
+			/* Mostly one to three keywords */
+			int kind = random.nextInt(100);
+			int count = (kind < 8) ? 0 : (kind < 38) ? 1 : (kind < 68) ? 2 : (kind < 85) ? 3 :
+				4 + random.nextInt(5);
+			Set<Integer> chosen = new HashSet<Integer>();
+			for(int t = 0; t < 4 * count && chosen.size() < count; t++) {
+				int keyword = keywordUsage.sample(random);
+				if(chosen.add(keyword)) {
+					quote.addKeyword(keywordList.get(keyword));
+				}
+			}
+			return quote;
+		}
+	}
+
+	/** @return {@link #seed} */
+	public long getSeed() {
+		return seed;
+	}
+
+	/** @param seed new {@link #seed} of all random choices. */
+	public CorpusBuilder setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/** @return {@link #quotes} */
+	public int getQuotes() {
+		return quotes;
+	}
+
+	/** @param quotes new number of {@link #quotes}. */
+	public CorpusBuilder setQuotes(int quotes) {
+		this.quotes = quotes;
+		return this;
+	}
+
+	/** @param keywords new number of {@link #keywords} (0 to define it from the number of quotes). */
+	public CorpusBuilder setKeywords(int keywords) {
+		this.keywords = keywords;
+		return this;
+	}
+
+	/** @param authors new number of {@link #authors} (0 to define it from the number of quotes). */
+	public CorpusBuilder setAuthors(int authors) {
+		this.authors = authors;
+		return this;
+	}
+
+	/** @param books new number of {@link #books} (0 to define it from the number of quotes). */
+	public CorpusBuilder setBooks(int books) {
+		this.books = books;
+		return this;
+	}
+
+	/** @param sources new number of {@link #sources} (0 to define it from the number of quotes). */
+	public CorpusBuilder setSources(int sources) {
+		this.sources = sources;
+		return this;
+	}
+
+	/** @param vocabulary new number of distinct words of the texts. */
+	public CorpusBuilder setVocabulary(int vocabulary) {
+		this.vocabulary = vocabulary;
+		return this;
+	}
+
+	/** @param threads new number of generating {@link #threads} (doesn't change the corpus). */
+	public CorpusBuilder setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	/** @param listener new {@link ProgressListener}, or null. */
+	public CorpusBuilder setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+}
@@ -0,0 +1,192 @@
+package org.dnteam.histindex.benchmarks.corpus;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/** The texts of a synthetic corpus: names, titles, quote texts and page strings.<br/>
+ * Words are drawn from a vocabulary with Zipf distributed frequencies: its most used words are
+ * real ones (so searching for them is meaningful), followed by many pseudo-words made of random
+ * syllables. The vocabulary only depends on the seed it was created with, and everything else on
+ * the {@link SplittableRandom} given to each call, so it's shared by all generating threads.
+ * @author farrer */
+public final class CorpusText {
+
+	/** Real words, from the most to the least used */
+	private static final String[] WORDS = {"de", "a", "o", "que", "e", "do", "da", "em", "para", 
+			"com", "por", "os", "as", "se", "não", "no", "na", "dos", "das", "mais", "rio", "terra", 
+			"ouro", "capitão", "rei", "prazo", "gente", "guerra", "fortaleza", "prata", "marfim", 
+			"Manica", "Sofala", "Sena", "Tete", "Quelimane", "prazeiro", "feitoria", "Zambeze", 
+			"mercador", "padre", "jesuíta", "dominicano", "Moçambique", "Monomotapa", "Rozvi", 
+			"escravo", "pano", "missanga", "tributo", "paz", "carta", "régulo", "foro", "dona", "casa",
+			"armas", "viagem", "monção", "Goa", "Lisboa", "vice-rei", "governador"};
+	/** Syllables of the pseudo-words */
+	private static final String[] SYLLABLES = {"ba", "be", "bi", "bo", "ca", "co", "cu", "da", "de",
+			"di", "do", "fa", "fe", "ga", "go", "gu", "ja", "la", "le", "li", "lo", "ma", "me", "mi", 
+			"mo", "mu", "na", "ne", "ni", "no", "nha", "nho", "pa", "pe", "po", "ra", "re", "ri", "ro",
+			"sa", "se", "si", "so", "ta", "te", "ti", "to", "tu", "va", "ve", "vi", "za", "ze", "zi",
+			"lha", "cha", "bra", "tra", "gri"};
+	/** Endings of some pseudo-words */
+	private static final String[] ENDINGS = {"ção", "ão", "ar", "or", "al", "eira", "ada", "ente",
+			"ismo", "ura"};
+	/** Given names of the authors */
+	private static final String[] GIVEN_NAMES = {"António", "João", "Manuel", "Francisco", "José",
+			"Maria", "Ana", "Luís", "Pedro", "Diogo", "Gaspar", "Isabel", "Catarina", "Allen", 
+			"Malyn", "Eugénia", "Alexandre", "René", "Joseph", "David", "Terence", "Stanley"};
+	/** Roman numerals of the front matter pages */
+	private static final String[] ROMAN = {"i", "ii", "iii", "iv", "v", "vi", "vii", "viii", "ix",
+			"x", "xi", "xii", "xiii", "xiv", "xv", "xvi", "xvii", "xviii", "xix", "xx", "xxi", "xxii",
+			"xxiii", "xxiv"};
+	/** Median of the number of words of the quote texts */
+	private static final double MEDIAN_WORDS = 30;
+	/** Standard deviation of the (natural) logarithm of the number of words of the quote texts */
+	private static final double SIGMA_WORDS = 0.8;
+	/** Maximum number of words of a quote text */
+	private static final int MAX_WORDS = 600;
+
+	/** The words, from the most to the least used */
+	private final String[] vocabulary;
+	/** Frequency of each of the {@link #vocabulary} words */
+	private final ZipfDistribution frequency;
+
+	/** Constructor.
+	 * @param seed seed of the pseudo-words.
+	 * @param size number of words of the vocabulary. */
+	public CorpusText(long seed, int size) {
+		SplittableRandom random = new SplittableRandom(seed);
+		vocabulary = new String[Math.max(size, WORDS.length)];
+		Set<String> used = new HashSet<String>();
+		for(int i = 0; i < vocabulary.length; i++) {
+			String word;
+			if(i < WORDS.length) {
+				word = WORDS[i];
+			} else {
+				/* Longer words are rarer */
+				do {
+					word = pseudoWord(random, 2 + (int) (4 * (double) i / vocabulary.length) 
+							+ random.nextInt(2));
+				} while(!used.add(word));
+			}
+			used.add(word);
+			vocabulary[i] = word;
+		}
+		frequency = new ZipfDistribution(vocabulary.length, 1.0);
+	}
+
+	/** @return a pseudo-word with a number of syllables. */
+	private static String pseudoWord(SplittableRandom random, int syllables) {
+		StringBuilder word = new StringBuilder();
+		for(int i = 0; i < syllables; i++) {
+			word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		if(random.nextInt(3) == 0) {
+			word.append(ENDINGS[random.nextInt(ENDINGS.length)]);
+		}
+		return word.toString();
+	}
+
+	/** @return a word, with its capital first letter. */
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	/** @return a word of the vocabulary. */
+	public String word(SplittableRandom random) {
+		return vocabulary[frequency.sample(random)];
+	}
+
+	/** @return a word of the vocabulary, all as likely (thus mostly rare ones). */
+	public String anyWord(SplittableRandom random) {
+		return vocabulary[random.nextInt(vocabulary.length)];
+	}
+
+	/** @return a capitalized name, not on the vocabulary (as most proper names). */
+	public String name(SplittableRandom random) {
+		return capitalize(pseudoWord(random, 2 + random.nextInt(3)));
+	}
+
+	/** @return the full given name(s) of an author. */
+	public String givenName(SplittableRandom random) {
+		String name = GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)];
+		return (random.nextInt(3) == 0) ? name + " " + name(random) : name;
+	}
+
+	/** Generate words, without punctuation.
+	 * @param random {@link SplittableRandom} to use.
+	 * @param count number of words.
+	 * @return the words, the first capitalized. */
+	public String words(SplittableRandom random, int count) {
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < count; i++) {
+			if(i > 0) {
+				text.append(' ');
+			}
+			text.append((i == 0) ? capitalize(word(random)) : word(random));
+		}
+		return text.toString();
+	}
+
+	/** Generate a text, made of sentences with from 4 to 24 words.
+	 * @param random {@link SplittableRandom} to use.
+	 * @param count number of words.
+	 * @return the text. */
+	public String text(SplittableRandom random, int count) {
+		StringBuilder text = new StringBuilder();
+		int sentence = 0;
+		for(int i = 0; i < count; i++) {
+			if(sentence == 0) {
+				if(i > 0) {
+					text.append(". ");
+				}
+				sentence = 4 + random.nextInt(21);
+				text.append(capitalize(word(random)));
+			} else {
+				text.append((random.nextInt(10) == 0) ? ", " : " ").append(word(random));
+			}
+			sentence--;
+		}
+		return text.append('.').toString();
+	}
+
+	/** Get the number of words of a quote: log-normal distributed (as of most texts), thus 
+	 * mostly of one or two sentences but with a long tail of whole paragraphs.
+	 * @param random {@link SplittableRandom} to use.
+	 * @return the number of words, from 3 to {@value #MAX_WORDS}. */
+	public int quoteLength(SplittableRandom random) {
+		/* Box-Muller transform, as SplittableRandom has no gaussian */
+		double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) 
+				* Math.cos(2 * Math.PI * random.nextDouble());
+		long words = Math.round(MEDIAN_WORDS * Math.exp(SIGMA_WORDS * gaussian));
+		return (int) Math.max(3, Math.min(MAX_WORDS, words));
+	}
+
+	/** Generate the page string of a quote, with the formats seen on real indexes: mostly a 
+	 * single page, but also ranges ("12-14"), abbreviated ranges ("123-25"), front matter pages 
+	 * ("iv", "xii-xiv"), manuscript folios ("f. 23v") and none at all.
+	 * @param random {@link SplittableRandom} to use.
+	 * @return the page string. */
+	public String page(SplittableRandom random) {
+		int kind = random.nextInt(100);
+		/* Earlier pages are more quoted */
+		double position = random.nextDouble();
+		int page = 1 + (int) (position * position * 600);
+		if(kind < 70) {
+			return Integer.toString(page);
+		} else if(kind < 82) {
+			return page + "-" + (page + 1 + random.nextInt(4));
+		} else if(kind < 87) {
+			/* Kept on the same hundred */
+			int start = 100 * (1 + random.nextInt(8)) + random.nextInt(90);
+			return start + "-" + ((start + 2 + random.nextInt(8)) % 100);
+		} else if(kind < 92) {
+			return ROMAN[random.nextInt(ROMAN.length)];
+		} else if(kind < 94) {
+			int start = random.nextInt(ROMAN.length - 3);
+			return ROMAN[start] + "-" + ROMAN[start + 1 + random.nextInt(2)];
+		} else if(kind < 97) {
+			return "f. " + (1 + random.nextInt(300)) + (random.nextBoolean() ? "r" : "v");
+		}
+		return "";
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.dnteam.histindex.benchmarks.corpus;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/** A Zipf distribution over the ranks <code>0..n-1</code>: the probability of rank k is
+ * proportional to <code>1 / (k + 1)^exponent</code>, so a few ranks (ie: keywords or words) are
+ * used much more than all others, as in real texts and indexes.<br/>
+ * Sampled by a binary search over its precomputed cumulative probabilities. Immutable, thus
+ * shared by threads.
+ * @author farrer */
+public final class ZipfDistribution {
+
+	/** Cumulative probability of each rank (the last is 1) */
+	private final double[] cumulative;
+
+	/** Constructor.
+	 * @param n number of ranks (at least 1).
+	 * @param exponent its exponent (0 for uniform, usually around 1). */
+	public ZipfDistribution(int n, double exponent) {
+		if(n < 1) {
+			throw new IllegalArgumentException("A Zipf distribution needs at least one rank");
+		}
+		cumulative = new double[n];
+		double total = 0;
+		for(int k = 0; k < n; k++) {
+			total += 1 / Math.pow(k + 1, exponent);
+			cumulative[k] = total;
+		}
+		for(int k = 0; k < n; k++) {
+			cumulative[k] /= total;
+		}
+		cumulative[n - 1] = 1;
+	}
+
+	/** @return number of ranks. */
+	public int size() {
+		return cumulative.length;
+	}
+
+	/** Sample a rank.
+	 * @param random {@link SplittableRandom} to use.
+	 * @return the rank, from 0 (the most probable) to {@link #size()} - 1. */
+	public int sample(SplittableRandom random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		/* Not found: insertion point is the first greater one */
+		return (index >= 0) ? index : Math.min(-index - 1, cumulative.length - 1);
+	}
+
+	/** @param rank a rank.
+	 * @return its probability. */
+	public double probability(int rank) {
+		return (rank == 0) ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.dnteam.histindex.benchmarks.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/** An operation of the {@link WorkloadDriver}, done as the application does it.
+ * @author farrer */
+public enum Operation {
+	/** Search quotes by a keyword, an author, a word or a page range (with a reader) */
+	SEARCH(70),
+	/** Insert a quote with its keywords (in a transaction) */
+	INSERT(10),
+	/** Change the text and page of a quote (in a transaction) */
+	UPDATE(8),
+	/** Delete a quote with its keywords (in a transaction), preferring ones we inserted */
+	DELETE(4),
+	/** Rewrite the keywords of a quote: deleting all and inserting the new ones (in a 
+	 * transaction), as the quote edit frame */
+	REWRITE(6),
+	/** Export the first quotes of a keyword to a CSV file (with a reader) */
+	EXPORT(2);
+
+	/** Weight of the operation on the default mix */
+	private final int defaultWeight;
+
+	/** Constructor.
+	 * @param defaultWeight {@link #defaultWeight} */
+	Operation(int defaultWeight) {
+		this.defaultWeight = defaultWeight;
+	}
+
+	/** @return {@link #defaultWeight} */
+	public int getDefaultWeight() {
+		return defaultWeight;
+	}
+
+	/** @return if writes to the database (thus needing the single writer). */
+	public boolean isWrite() {
+		return this != SEARCH && this != EXPORT;
+	}
+
+	/** Parse a mix of operations: its weights, separated by commas (ie: "search=80,insert=20"). 
+	 * Operations not defined aren't done.
+	 * @param mix the mix definition.
+	 * @return the weight of each operation (at least one positive).
+	 * @throws IllegalArgumentException if not a valid mix. */
+	public static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+		int total = 0;
+		for(String entry : mix.split(",")) {
+			String[] parts = entry.split("=");
+			if(parts.length != 2) {
+				throw new IllegalArgumentException("Invalid mix entry: " + entry);
+			}
+			int weight = Integer.parseInt(parts[1].trim());
+			if(weight < 0) {
+				throw new IllegalArgumentException("Negative weight of " + parts[0]);
+			}
+			weights.put(valueOf(parts[0].trim().toUpperCase()), weight);
+			total += weight;
+		}
+		if(total == 0) {
+			throw new IllegalArgumentException("No operation on the mix: " + mix);
+		}
+		return weights;
+	}
+
+	/** @return the default mix of operations. */
+	public static Map<Operation, Integer> defaultMix() {
+		Map<Operation, Integer> weights = new EnumMap<Operation, Integer>(Operation.class);
+		for(Operation operation : values()) {
+			weights.put(operation, operation.defaultWeight);
+		}
+		return weights;
+	}
+
+}
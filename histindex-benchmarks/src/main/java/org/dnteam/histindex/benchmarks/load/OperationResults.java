@@ -0,0 +1,104 @@
+package org.dnteam.histindex.benchmarks.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dnteam.histindex.metrics.LatencyHistogram;
+
+/** The results of an {@link Operation} of a workload, recorded concurrently by all its threads.
+ * @author farrer */
+public final class OperationResults {
+
+	private final Operation operation;
+	/** Latency of the completed operations (including its lock waits and retries) */
+	private final LatencyHistogram latency = new LatencyHistogram();
+	/** Time waiting for a connection (the writer, or a reader) before doing the operation */
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+	/** Total of {@link #lockWait}, in nanoseconds */
+	private final AtomicLong lockWaitTotal = new AtomicLong();
+	/** Operations failed (not recorded at {@link #latency}) */
+	private final AtomicLong errors = new AtomicLong();
+	/** Transactions retried because the database was busy */
+	private final AtomicLong busyRetries = new AtomicLong();
+	/** Operations failed because the database was still busy (after any retries) */
+	private final AtomicLong busyErrors = new AtomicLong();
+	/** Message of the first failure, if any */
+	private final AtomicReference<String> firstError = new AtomicReference<String>();
+
+	/** Constructor.
+	 * @param operation {@link #operation} */
+	OperationResults(Operation operation) {
+		this.operation = operation;
+	}
+
+	/** Record a completed operation.
+	 * @param started its {@link System#nanoTime()} when started. */
+	void completed(long started) {
+		latency.record(System.nanoTime() - started);
+	}
+
+	/** Record a failed operation.
+	 * @param e its failure.
+	 * @param busy if failed because the database was busy. */
+	void failed(Exception e, boolean busy) {
+		errors.incrementAndGet();
+		if(busy) {
+			busyErrors.incrementAndGet();
+		}
+		firstError.compareAndSet(null, e.toString());
+	}
+
+	/** Record the wait for a connection.
+	 * @param nanos the wait, in nanoseconds. */
+	void waited(long nanos) {
+		lockWait.record(nanos);
+		lockWaitTotal.addAndGet(nanos);
+	}
+
+	/** Record busy retries of a transaction.
+	 * @param retries number of retries. */
+	void retried(int retries) {
+		busyRetries.addAndGet(retries);
+	}
+
+	/** @return {@link #operation} */
+	public Operation getOperation() {
+		return operation;
+	}
+
+	/** @return {@link #latency} */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/** @return {@link #lockWait} */
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+
+	/** @return {@link #lockWaitTotal} */
+	public long getLockWaitTotal() {
+		return lockWaitTotal.get();
+	}
+
+	/** @return {@link #errors} */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	/** @return {@link #busyRetries} */
+	public long getBusyRetries() {
+		return busyRetries.get();
+	}
+
+	/** @return {@link #busyErrors} */
+	public long getBusyErrors() {
+		return busyErrors.get();
+	}
+
+	/** @return {@link #firstError}, or null if none failed. */
+	public String getFirstError() {
+		return firstError.get();
+	}
+
+}
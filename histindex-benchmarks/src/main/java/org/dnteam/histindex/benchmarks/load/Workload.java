@@ -0,0 +1,294 @@
+package org.dnteam.histindex.benchmarks.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.dnteam.histindex.benchmarks.corpus.CorpusText;
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.KeywordManager;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteKeyword;
+import org.dnteam.histindex.database.QuoteKeywordManager;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.SearchCriteria;
+import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.database.TransactionWork;
+import org.dnteam.histindex.exporters.CSVExporter;
+import org.dnteam.histindex.exporters.Exporter;
+
+import net.sf.nervalreports.core.ReportGenerationException;
+
+/** The operations of a {@link WorkloadDriver}, against an existing corpus. Shared by all its
+ * threads, each with its own random sequence.<br/>
+ * Each operation records, at its {@link OperationResults}, how long it waited for its connection
+ * (for writes, until its transaction work started: including waiting for the single writer and
+ * for the busy retries of {@link Database#inTransaction(TransactionWork)}) and how many times
+ * its transaction was retried. Waits for a lock held by another process, up to the busy timeout,
+ * are done by SQLite itself, thus only seen at the operation latency.
+ * @author farrer */
+final class Workload {
+
+	/** Number of quotes exported by each export */
+	private static final int EXPORT_QUOTES = 100;
+
+	private final Database db;
+	private final CorpusText text;
+	private final List<Keyword> keywords;
+	private final List<Author> authors;
+	private final List<Book> books;
+	/** Greatest quote identifier when started */
+	private final long maxQuoteId;
+	/** Quotes inserted by us, not yet deleted */
+	private final ConcurrentLinkedQueue<Long> inserted = new ConcurrentLinkedQueue<Long>();
+
+	/** Constructor, loading the entities referenced by the operations.
+	 * @param db {@link Database} of the corpus.
+	 * @param text {@link CorpusText} of the corpus.
+	 * @throws SQLException if couldn't load them, or if the corpus is empty. */
+	Workload(Database db, CorpusText text) throws SQLException {
+		this.db = db;
+		this.text = text;
+		keywords = KeywordManager.getSingleton().loadAll(db);
+		authors = AuthorManager.getSingleton().loadAll(db);
+		books = BookManager.getSingleton().loadAll(db);
+		try(ConnectionLease lease = db.leaseReader();
+			 Statement stmt = lease.getConnection().createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT MAX(Id) FROM Quotes")) {
+			maxQuoteId = rs.next() ? rs.getLong(1) : 0;
+		}
+		if(maxQuoteId == 0 || keywords.isEmpty() || authors.isEmpty() || books.isEmpty()) {
+			throw new SQLException("No corpus at " + db.getFilename() + ": build one first");
+		}
+	}
+
+	/** Execute an operation.
+	 * @param operation the {@link Operation}.
+	 * @param random {@link SplittableRandom} of the current thread.
+	 * @param results {@link OperationResults} of the operation, to record waits and retries.
+	 * @throws SQLException
+	 * @throws ReportGenerationException if an export failed.
+	 * @throws IOException if couldn't create an export file. */
+	void execute(Operation operation, SplittableRandom random, OperationResults results)
+			throws SQLException, ReportGenerationException, IOException {
+		switch(operation) {
+			case SEARCH:
+				search(random, results);
+				break;
+			case INSERT:
+				insert(random, results);
+				break;
+			case UPDATE:
+				update(random, results);
+				break;
+			case DELETE:
+				delete(random, results);
+				break;
+			case REWRITE:
+				rewrite(random, results);
+				break;
+			case EXPORT:
+				export(random, results);
+				break;
+		}
+	}
+
+	/** Search quotes, with a random criteria: mostly found by few quotes, as the usual ones. */
+	private void search(SplittableRandom random, OperationResults results) throws SQLException {
+		SearchCriteria criteria = new SearchCriteria();
+		int kind = random.nextInt(100);
+		if(kind < 40) {
+			criteria.setKeywords(Collections.singletonList(anyOf(keywords, random)));
+		} else if(kind < 60) {
+			criteria.setAuthors(Collections.singletonList(anyOf(authors, random)));
+		} else if(kind < 85) {
+			criteria.setText(text.anyWord(random));
+			criteria.setTextMode(SearchCriteria.TextMode.TOKENS);
+		} else {
+			criteria.setKeywords(Collections.singletonList(anyOf(keywords, random)));
+			int from = 1 + random.nextInt(300);
+			criteria.setPageFrom(from);
+			criteria.setPageTo(from + 50);
+		}
+		long waiting = System.nanoTime();
+		try(ConnectionLease lease = db.leaseReader()) {
+			results.waited(System.nanoTime() - waiting);
+			QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+		}
+	}
+
+	/** Insert a quote with its keywords. */
+	private void insert(SplittableRandom random, OperationResults results) throws SQLException {
+		final Book book = anyOf(books, random);
+		final String page = text.page(random);
+		final String quoteText = text.text(random, text.quoteLength(random));
+		final List<Keyword> quoteKeywords = someKeywords(random);
+		Quote quote = write(results, new TransactionWork<Quote>() {
+			@Override
+			public Quote execute(Connection conn) throws SQLException {
+				/* A new one on each try, as a failed insert could have left its identifier */
+				Quote quote = new Quote();
+				quote.setBook(book);
+				quote.setPage(page);
+				quote.setText(quoteText);
+				quote.setComment("");
+				QuoteManager.getSingleton().insert(conn, quote);
+				rewriteKeywords(conn, quote, quoteKeywords);
+				return quote;
+			}
+		});
+		inserted.add(quote.getId());
+	}
+
+	/** Change the text and page of a quote (if it still exists). */
+	private void update(SplittableRandom random, OperationResults results) throws SQLException {
+		final long id = anyQuote(random);
+		final String page = text.page(random);
+		final String quoteText = text.text(random, text.quoteLength(random));
+		write(results, new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				Quote quote = QuoteManager.getSingleton().load(conn, id);
+				if(quote != null) {
+					quote.setPage(page);
+					quote.setText(quoteText);
+					QuoteManager.getSingleton().update(conn, quote);
+				}
+				return null;
+			}
+		});
+	}
+
+	/** Delete a quote with its keywords: one inserted by us, if any (so the corpus isn't eroded). */
+	private void delete(SplittableRandom random, OperationResults results) throws SQLException {
+		Long own = inserted.poll();
+		final long id = (own != null) ? own : anyQuote(random);
+		write(results, new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				QuoteKeywordManager.getSingleton().deleteKeywordsFromQuote(conn, id);
+				QuoteManager.getSingleton().delete(conn, id);
+				return null;
+			}
+		});
+	}
+
+	/** Rewrite the keywords of a quote (if it still exists). */
+	private void rewrite(SplittableRandom random, OperationResults results) throws SQLException {
+		final long id = anyQuote(random);
+		final List<Keyword> quoteKeywords = someKeywords(random);
+		write(results, new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				Quote quote = QuoteManager.getSingleton().load(conn, id);
+				if(quote != null) {
+					QuoteKeywordManager.getSingleton().deleteKeywordsFromQuote(conn, id);
+					rewriteKeywords(conn, quote, quoteKeywords);
+				}
+				return null;
+			}
+		});
+	}
+
+	/** Export the first quotes of a keyword to a temporary CSV file. */
+	private void export(SplittableRandom random, OperationResults results)
+			throws SQLException, ReportGenerationException, IOException {
+		SearchCriteria criteria = new SearchCriteria();
+		criteria.setKeywords(Collections.singletonList(anyOf(keywords, random)));
+		List<Quote> quotes;
+		long waiting = System.nanoTime();
+		try(ConnectionLease lease = db.leaseReader()) {
+			results.waited(System.nanoTime() - waiting);
+			Page<Quote> page = QuoteManager.getSingleton().searchPage(lease.getConnection(), criteria, null,
+					EXPORT_QUOTES);
+			quotes = new ArrayList<Quote>(page.getItems());
+			QuoteManager.getSingleton().populateRelatedInfo(lease.getConnection(), quotes);
+		}
+		File output = File.createTempFile("histindex-workload", ".csv");
+		try {
+			Exporter exporter = new CSVExporter(db, quotes);
+			exporter.generate(criteria.getKeywords(), false, new ArrayList<Book>(), new ArrayList<Author>(),
+					new ArrayList<Source>(), "");
+			exporter.export(output.getAbsolutePath());
+		} finally {
+			output.delete();
+		}
+	}
+
+	/** Do a transaction work with the writer, recording how long it waited for it and how many
+	 * times the work was retried.
+	 * @param results {@link OperationResults} to record at.
+	 * @param work the {@link TransactionWork}.
+	 * @return its result. */
+	private <R> R write(final OperationResults results, final TransactionWork<R> work) throws SQLException {
+		final long waiting = System.nanoTime();
+		final int[] tries = {0};
+		try {
+			return db.inTransaction(new TransactionWork<R>() {
+				@Override
+				public R execute(Connection conn) throws SQLException {
+					if(tries[0]++ == 0) {
+						results.waited(System.nanoTime() - waiting);
+					}
+					return work.execute(conn);
+				}
+			});
+		} finally {
+			if(tries[0] > 1) {
+				results.retried(tries[0] - 1);
+			}
+		}
+	}
+
+	/** Insert the keyword relations of a quote, as the quote edit frame does. */
+	private static void rewriteKeywords(Connection conn, Quote quote, List<Keyword> quoteKeywords)
+			throws SQLException {
+		List<QuoteKeyword> relations = new ArrayList<QuoteKeyword>();
+		for(Keyword keyword : quoteKeywords) {
+			relations.add(new QuoteKeyword(quote, keyword));
+		}
+		QuoteKeywordManager.getSingleton().insertAll(conn, relations);
+	}
+
+	/** @return one to four distinct keywords. */
+	private List<Keyword> someKeywords(SplittableRandom random) {
+		int count = 1 + random.nextInt(4);
+		Set<Integer> chosen = new HashSet<Integer>();
+		List<Keyword> list = new ArrayList<Keyword>();
+		for(int t = 0; t < 4 * count && list.size() < count; t++) {
+			int index = random.nextInt(keywords.size());
+			if(chosen.add(index)) {
+				list.add(keywords.get(index));
+			}
+		}
+		return list;
+	}
+
+	/** @return the identifier of any quote of the corpus when started (maybe deleted since). */
+	private long anyQuote(SplittableRandom random) {
+		return 1 + random.nextLong(maxQuoteId);
+	}
+
+	/** @return any element of a list. */
+	private static <T> T anyOf(List<T> list, SplittableRandom random) {
+		return list.get(random.nextInt(list.size()));
+	}
+
+}
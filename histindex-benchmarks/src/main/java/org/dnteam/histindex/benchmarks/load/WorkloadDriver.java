@@ -0,0 +1,290 @@
+package org.dnteam.histindex.benchmarks.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.benchmarks.corpus.CorpusBuilder;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.DatabaseConfig;
+import org.dnteam.histindex.metrics.LatencyHistogram;
+
+import net.sf.nervalreports.core.ReportGenerationException;
+
+/** Drives a mix of concurrent operations (searches, edits, keyword rewrites and exports) against
+ * a single database file from many threads, as when the application searches while editing and
+ * exporting, reporting the throughput and latency percentiles of each operation, its busy retries
+ * and how long it waited for its connection.<br/>
+ * Each thread picks its operations at random (by the mix weights), one after the other, for the
+ * whole duration. Results of the warm up aren't reported. Runs headless, from the command line
+ * (see {@link #main(String[])}); to also see the contention between processes, run more than one
+ * against the same file.
+ * @author farrer */
+public class WorkloadDriver {
+
+	private final Database db;
+	private final Workload workload;
+	private final Map<Operation, Integer> mix;
+	private long seed = 1;
+	private int threads = 4;
+	private long warmupNanos = TimeUnit.SECONDS.toNanos(5);
+	private long durationNanos = TimeUnit.SECONDS.toNanos(30);
+	/** The results being recorded (replaced at the end of the warm up) */
+	private volatile Map<Operation, OperationResults> results;
+
+	/** Run a workload from the command line, with the arguments:
+	 * <pre>
+	 * --db file          database of the corpus (required)
+	 * --quotes n         build a corpus with n quotes first, if the database doesn't exist
+	 * --seed n           seed the corpus was built with and of the operations (default 1)
+	 * --threads n        number of threads (default 4)
+	 * --duration s       seconds measured (default 30)
+	 * --warmup s         seconds before measuring (default 5)
+	 * --mix ops          weights of the operations (default search=70,insert=10,update=8,
+	 *                    delete=4,rewrite=6,export=2)
+	 * --profile name     database profile (default interactive)
+	 * </pre>
+	 * @param args the arguments. */
+	public static void main(String[] args) {
+		/* Our exports don't need a display */
+		System.setProperty("java.awt.headless", "true");
+		String file = null;
+		int quotes = 0;
+		long seed = 1;
+		int threads = 4;
+		int duration = 30;
+		int warmup = 5;
+		Map<Operation, Integer> mix = Operation.defaultMix();
+		String profile = DatabaseConfig.INTERACTIVE;
+		try {
+			for(int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if(i + 1 >= args.length) {
+					throw new IllegalArgumentException("Missing value of " + arg);
+				}
+				String value = args[++i];
+				if("--db".equals(arg)) {
+					file = value;
+				} else if("--quotes".equals(arg)) {
+					quotes = Integer.parseInt(value);
+				} else if("--seed".equals(arg)) {
+					seed = Long.parseLong(value);
+				} else if("--threads".equals(arg)) {
+					threads = Integer.parseInt(value);
+				} else if("--duration".equals(arg)) {
+					duration = Integer.parseInt(value);
+				} else if("--warmup".equals(arg)) {
+					warmup = Integer.parseInt(value);
+				} else if("--mix".equals(arg)) {
+					mix = Operation.parseMix(value);
+				} else if("--profile".equals(arg)) {
+					profile = value;
+					DatabaseConfig.forProfile(profile);
+				} else {
+					throw new IllegalArgumentException("Unknown argument: " + arg);
+				}
+			}
+			if(file == null) {
+				throw new IllegalArgumentException("The database (--db) is required");
+			}
+		} catch(IllegalArgumentException e) {
+			/* Including number format errors and unknown operations or profiles */
+			System.err.println(e.getMessage());
+			System.err.println("Usage: WorkloadDriver --db file [--quotes n] [--seed n] [--threads n] "
+					+ "[--duration s] [--warmup s] [--mix search=70,insert=10,...] [--profile name]");
+			System.exit(2);
+		}
+
+		CorpusBuilder builder = new CorpusBuilder().setSeed(seed);
+		Database db = null;
+		try {
+			if(quotes > 0 && !new File(file).exists()) {
+				System.out.printf("Building a corpus of %d quotes at %s%n", quotes, file);
+				builder.setQuotes(quotes).build(new File(file));
+			}
+			db = new Database(file, DatabaseConfig.forProfile(profile));
+			db.migrate();
+			WorkloadDriver driver = new WorkloadDriver(db, new Workload(db, builder.createText()), mix);
+			driver.setSeed(seed);
+			driver.setThreads(threads);
+			driver.setWarmup(warmup, TimeUnit.SECONDS);
+			driver.setDuration(duration, TimeUnit.SECONDS);
+			System.out.printf("Running %s with %d threads for %d s (after %d s of warm up), profile %s%n",
+					mix, threads, duration, warmup, profile);
+			driver.run();
+			driver.report(System.out);
+		} catch(SQLException e) {
+			System.err.println("Couldn't run the workload: " + e.getMessage());
+			System.exit(1);
+		} catch(InterruptedException e) {
+			System.err.println("Interrupted");
+			System.exit(1);
+		} finally {
+			if(db != null) {
+				db.close();
+			}
+		}
+	}
+
+	/** Constructor.
+	 * @param db {@link Database} of the corpus.
+	 * @param workload its {@link Workload}.
+	 * @param mix weight of each {@link Operation}. */
+	WorkloadDriver(Database db, Workload workload, Map<Operation, Integer> mix) {
+		this.db = db;
+		this.workload = workload;
+		this.mix = new EnumMap<Operation, Integer>(mix);
+	}
+
+	/** Run the workload, waiting for its end.
+	 * @throws InterruptedException */
+	public void run() throws InterruptedException {
+		/* Cumulative weights, to pick the operations */
+		final List<Operation> operations = new ArrayList<Operation>();
+		final List<Integer> cumulative = new ArrayList<Integer>();
+		int total = 0;
+		for(Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+			if(entry.getValue() > 0) {
+				total += entry.getValue();
+				operations.add(entry.getKey());
+				cumulative.add(total);
+			}
+		}
+		final int totalWeight = total;
+
+		results = createResults();
+		long started = System.nanoTime();
+		final long end = started + warmupNanos + durationNanos;
+		SplittableRandom seeds = new SplittableRandom(seed);
+		List<Thread> workers = new ArrayList<Thread>();
+		for(int t = 0; t < threads; t++) {
+			final SplittableRandom random = seeds.split();
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while(System.nanoTime() < end) {
+						int pick = random.nextInt(totalWeight);
+						int index = 0;
+						while(cumulative.get(index) <= pick) {
+							index++;
+						}
+						execute(operations.get(index), random);
+					}
+				}
+			}, "HistIndex workload " + t);
+			workers.add(worker);
+			worker.start();
+		}
+		if(warmupNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(warmupNanos);
+			results = createResults();
+		}
+		for(Thread worker : workers) {
+			worker.join();
+		}
+	}
+
+	/** Execute an operation, recording its results.
+	 * @param operation the {@link Operation}.
+	 * @param random {@link SplittableRandom} of the current thread. */
+	private void execute(Operation operation, SplittableRandom random) {
+		OperationResults recording = results.get(operation);
+		long started = System.nanoTime();
+		try {
+			workload.execute(operation, random, recording);
+			recording.completed(started);
+		} catch(SQLException e) {
+			recording.failed(e, Database.isBusy(e));
+		} catch(ReportGenerationException | IOException | RuntimeException e) {
+			recording.failed(e, false);
+		}
+	}
+
+	/** @return new (empty) results of each operation. */
+	private Map<Operation, OperationResults> createResults() {
+		Map<Operation, OperationResults> created = new EnumMap<Operation, OperationResults>(Operation.class);
+		for(Operation operation : Operation.values()) {
+			created.put(operation, new OperationResults(operation));
+		}
+		return created;
+	}
+
+	/** Print the results of the last run: for each operation, its completed operations (and by
+	 * second), its latency percentiles, failures, busy retries and waits for a connection.
+	 * @param out {@link PrintStream} to print to. */
+	public void report(PrintStream out) {
+		double seconds = durationNanos / 1e9;
+		String format = "%-8s %9s %9s %9s %9s %9s %7s %7s %7s %9s %9s %9s%n";
+		out.printf(format, "", "ops", "ops/s", "p50 ms", "p99 ms", "max ms", "errors", "busy", "retries",
+				"wait p50", "wait p99", "wait s");
+		long ops = 0;
+		long errors = 0;
+		long busy = 0;
+		long retries = 0;
+		long waits = 0;
+		for(OperationResults result : results.values()) {
+			LatencyHistogram latency = result.getLatency();
+			if(latency.getCount() == 0 && result.getErrors() == 0) {
+				continue;
+			}
+			out.printf(format, result.getOperation().name().toLowerCase(), latency.getCount(),
+					String.format("%.1f", latency.getCount() / seconds), millis(latency.getPercentile(50)),
+					millis(latency.getPercentile(99)), millis(latency.getMax()), result.getErrors(),
+					result.getBusyErrors(), result.getBusyRetries(), millis(result.getLockWait().getPercentile(50)),
+					millis(result.getLockWait().getPercentile(99)), String.format("%.2f", result.getLockWaitTotal() / 1e9));
+			ops += latency.getCount();
+			errors += result.getErrors();
+			busy += result.getBusyErrors();
+			retries += result.getBusyRetries();
+			waits += result.getLockWaitTotal();
+		}
+		out.printf(format, "total", ops, String.format("%.1f", ops / seconds), "", "", "", errors, busy, retries,
+				"", "", String.format("%.2f", waits / 1e9));
+		for(OperationResults result : results.values()) {
+			if(result.getFirstError() != null) {
+				out.printf("First %s error: %s%n", result.getOperation().name().toLowerCase(), result.getFirstError());
+			}
+		}
+		out.printf("Database %s%n", db.getFilename());
+	}
+
+	/** @return nanoseconds formatted as milliseconds. */
+	private static String millis(long nanos) {
+		return String.format("%.2f", LatencyHistogram.toMillis(nanos));
+	}
+
+	/** @return the results of each operation of the last run (or the current one). */
+	public Map<Operation, OperationResults> getResults() {
+		return results;
+	}
+
+	/** @param seed new {@link #seed} of the operations of all threads. */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/** @param threads new number of {@link #threads}. */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/** @param warmup new warm up time (not reported).
+	 * @param unit its {@link TimeUnit}. */
+	public void setWarmup(long warmup, TimeUnit unit) {
+		this.warmupNanos = unit.toNanos(warmup);
+	}
+
+	/** @param duration new measured time.
+	 * @param unit its {@link TimeUnit}. */
+	public void setDuration(long duration, TimeUnit unit) {
+		this.durationNanos = unit.toNanos(duration);
+	}
+
+}
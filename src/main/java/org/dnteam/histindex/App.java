@@ -2,15 +2,23 @@ package org.dnteam.histindex;
 
 import java.io.File;
 import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import javax.management.JMException;
+
+import org.dnteam.histindex.database.AsyncDatabase;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
+import org.dnteam.histindex.database.FullTextIndexer;
 import org.dnteam.histindex.exporters.ExporterFonts;
 import org.dnteam.histindex.frames.AboutFrame;
 import org.dnteam.histindex.frames.AuthorEditFrame;
 import org.dnteam.histindex.frames.AuthorListFrame;
 import org.dnteam.histindex.frames.BookEditFrame;
 import org.dnteam.histindex.frames.BookListFrame;
+import org.dnteam.histindex.frames.DiagnosticsFrame;
 import org.dnteam.histindex.frames.KeywordEditFrame;
 import org.dnteam.histindex.frames.KeywordListFrame;
 import org.dnteam.histindex.frames.QuoteEditFrame;
@@ -18,6 +26,8 @@ import org.dnteam.histindex.frames.QuoteListFrame;
 import org.dnteam.histindex.frames.SearchFrame;
 import org.dnteam.histindex.frames.SourceEditFrame;
 import org.dnteam.histindex.frames.SourceListFrame;
+import org.dnteam.histindex.metrics.MetricsRegistry;
+import org.dnteam.histindex.widgets.FxExecutor;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -62,6 +72,10 @@ public class App extends Application {
 	private Menu menuBook;
 	private Menu menuSearch;
 	private Label databaseLabel;
+	/** Upgrade of the schema of the current database, while running */
+	private CompletableFuture<Void> migrating = null;
+	/** Indexing of the text of the current database quotes, if any */
+	private CompletableFuture<Void> indexing = null;
 	private HBox hbox;
 
 	public static void main(String[] args) {
@@ -83,11 +97,12 @@ public class App extends Application {
 			public void handle(ActionEvent t) {
 				File file = fileChooser.showSaveDialog(primaryStage);
 				if (file != null) {
+					closeDatabase();
 					String fileName = file.getAbsolutePath();
 					if(fileName.endsWith(".db")) {
-						database = new Database(fileName);
+						database = new Database(fileName, HistIndexProperties.getDatabaseConfig());
 					} else {
-						database = new Database(fileName + ".db");
+						database = new Database(fileName + ".db", HistIndexProperties.getDatabaseConfig());
 					}
 					try {
 						database.createSchema();
@@ -108,9 +123,19 @@ public class App extends Application {
 			public void handle(ActionEvent t) {
 				File file = fileChooser.showOpenDialog(primaryStage);
 				if (file != null) {
-					database = new Database(file.getAbsolutePath());
+					closeDatabase();
+					setMenuAvailability();
+					database = new Database(file.getAbsolutePath(), HistIndexProperties.getDatabaseConfig());
+					startMigration();
 				}
-				setMenuAvailability();
+			}
+		});
+		
+		/* Diagnostics */
+		MenuItem diagnosticsItem = new MenuItem("Diagnostics");
+		diagnosticsItem.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				new DiagnosticsFrame();
 			}
 		});
 		
@@ -135,7 +160,7 @@ public class App extends Application {
 
 		/* Add our items and done */
 		menuFile.getItems().addAll(newItem, loadItem, new SeparatorMenuItem(), 
-				aboutItem, new SeparatorMenuItem(), exitItem);
+				diagnosticsItem, aboutItem, new SeparatorMenuItem(), exitItem);
 		return menuFile;
 	}
 	
@@ -216,6 +241,85 @@ public class App extends Application {
 		return menu;
 	}
 	
+	/** Make sure, without blocking the application thread, that the current database schema is
+	 * at our current version, keeping its menus disabled meanwhile. Once upgraded, the database is
+	 * made available and its text indexing started. */
+	private void startMigration() {
+		final Database loading = database;
+		setDatabaseLabel("upgrading database");
+		migrating = loading.async().submit(AsyncDatabase.Lane.INTERACTIVE, new Callable<Void>() {
+			public Void call() throws SQLException {
+				loading.migrate();
+				return null;
+			}
+		});
+		FxExecutor.getSingleton().deliver(migrating, new Consumer<Void>() {
+			public void accept(Void nothing) {
+				if(database == loading) {
+					migrating = null;
+					setMenuAvailability();
+					startTextIndexing();
+				}
+			}
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
+				if(database == loading) {
+					Alert alert = new Alert(AlertType.WARNING, "Couldn't upgrade database: " + e.getMessage());
+					alert.showAndWait();
+					closeDatabase();
+					setMenuAvailability();
+				}
+			}
+		});
+	}
+	
+	/** Index, at background, the text of the current database quotes not yet indexed (if any),
+	 * showing its progress. Also builds its in-memory relations index, if enabled. Its errors are
+	 * ignored: searches will keep the fallback and it's retried on next load. */
+	private void startTextIndexing() {
+		if(database == null) {
+			return;
+		}
+		final Database indexed = database;
+		indexing = indexed.async().submit(AsyncDatabase.Lane.BACKGROUND, new Callable<Void>() {
+			public Void call() throws SQLException {
+				if(indexed.getQuoteIndex() != null) {
+					indexed.getQuoteIndex().build(indexed);
+				}
+				FullTextIndexer.getSingleton().backfill(indexed, FullTextIndexer.DEFAULT_CHUNK_SIZE, 
+						new FullTextIndexer.ProgressListener() {
+					public void onProgress(final long done, final long total) {
+						Platform.runLater(new Runnable() {
+							public void run() {
+								if(database == indexed) {
+									setDatabaseLabel((done < total) ? 
+											"indexing quotes text: " + (100 * done / total) + "%" : null);
+								}
+							}
+						});
+					}
+				});
+				return null;
+			}
+		});
+	}
+	
+	/** Close current database connections, if any database is opened. */
+	private void closeDatabase() {
+		if(migrating != null) {
+			migrating.cancel(true);
+			migrating = null;
+		}
+		if(indexing != null) {
+			indexing.cancel(true);
+			indexing = null;
+		}
+		if(database != null) {
+			database.close();
+			database = null;
+		}
+	}
+	
 	private void setMenuAvailability() {
 		if(this.database != null) {
 			menuQuote.setDisable(false);
@@ -225,7 +329,7 @@ public class App extends Application {
 			menuBook.setDisable(false);
 			menuSearch.setDisable(false);
 			hbox.setDisable(false);
-			databaseLabel.setText("Database: " + database.getFilename());
+			setDatabaseLabel(null);
 		} else {
 			menuQuote.setDisable(true);
 			menuKeyword.setDisable(true);
@@ -239,9 +343,20 @@ public class App extends Application {
 		
 	}
 	
+	/** Define the current database label.
+	 * @param status current database status to show, if any. */
+	private void setDatabaseLabel(String status) {
+		if(status != null) {
+			databaseLabel.setText("Database: " + database.getFilename() + " (" + status + ")");
+		} else {
+			databaseLabel.setText("Database: " + database.getFilename());
+		}
+	}
+	
 	/** {@inheritDoc} */
 	@Override
 	public void stop() {
+		closeDatabase();
 		ExporterFonts.finish();
 	}
 
@@ -250,6 +365,12 @@ public class App extends Application {
 	public void start(Stage primaryStage) {
 		
 		HistIndexProperties.init();
+		try {
+			/* Our metrics, visible by any JMX console */
+			MetricsRegistry.getSingleton().register();
+		} catch(JMException e) {
+			/* Still displayed by our diagnostics frame */
+		}
 		ExporterFonts.init("fonts/FreeSerif.ttf", "fonts/FreeSerifItalic.ttf", 
 				"fonts/FreeSerifBold.ttf", "fonts/FreeSerifBoldItalic.ttf");
 		
@@ -4,12 +4,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
 
+import org.dnteam.histindex.database.DatabaseConfig;
+
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 
 public class HistIndexProperties {
 
+	/** Prefix of our database configuration keys */
+	private static final String DATABASE_PREFIX = "database.";
+	
 	private static Properties properties = new Properties();
+	private static DatabaseConfig databaseConfig = new DatabaseConfig();
 	
 	public static void init() {
 		InputStream stream = Thread.currentThread().getContextClassLoader().getResourceAsStream("histindex.properties");
@@ -17,6 +23,7 @@ public class HistIndexProperties {
 			try { 
 				properties.load(stream);
 				stream.close();
+				loadDatabaseConfig();
 			}
 			catch(IOException e) {
 				Alert alert = new Alert(AlertType.ERROR, "Couldn't load properties file!");
@@ -28,6 +35,23 @@ public class HistIndexProperties {
 		}
 	}
 	
+	/** Load the {@link DatabaseConfig} defined at our properties. */
+	private static void loadDatabaseConfig() {
+		try {
+			databaseConfig = DatabaseConfig.fromProperties(properties, DATABASE_PREFIX);
+		} catch(IllegalArgumentException e) {
+			Alert alert = new Alert(AlertType.ERROR, "Invalid database configuration (" + e.getMessage() + 
+					"). Using defaults.");
+			alert.showAndWait();
+			databaseConfig = new DatabaseConfig();
+		}
+	}
+	
+	/** @return configuration to use when opening databases. */
+	public static DatabaseConfig getDatabaseConfig() {
+		return databaseConfig;
+	}
+	
 	/** @return HistIndex version */
 	public static String getVersion() {
 		return properties.getProperty("histindex.version");
@@ -0,0 +1,247 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/** Asynchronous access to a {@link Database}: works are executed by our own threads, returning
+ * a {@link CompletableFuture} of its result, so callers (usually, the user interface thread) are
+ * never blocked by a query.<br/>
+ * Works are queued by {@link Lane}: interactive ones (those the user is waiting for) have their
+ * own threads, never delayed by the background ones (as exports or index rebuilds).<br/>
+ * Cancelling a returned future discards its work if not yet started, or interrupts its thread
+ * otherwise (aborting any wait for a pooled connection).
+ * @see Database#async()
+ * @author farrer */
+public class AsyncDatabase {
+
+	/** Queue of a work, by its priority */
+	public enum Lane {
+		/** Works the user is waiting for (loading a list, searching, saving) */
+		INTERACTIVE,
+		/** Long works the user isn't waiting for (exporting, rebuilding indexes) */
+		BACKGROUND
+	}
+
+	/** Max time to wait for the running works on shutdown, in seconds */
+	private static final int SHUTDOWN_WAIT = 5;
+
+	private final Database database;
+	/** Executor of the {@link Lane#INTERACTIVE} works */
+	private final ExecutorService interactive;
+	/** Executor of the {@link Lane#BACKGROUND} works */
+	private final ExecutorService background;
+
+	/** Constructor.
+	 * @param database {@link Database} to access.
+	 * @param interactiveThreads number of threads of the interactive lane. */
+	AsyncDatabase(Database database, int interactiveThreads) {
+		this.database = database;
+		this.interactive = Executors.newFixedThreadPool(interactiveThreads,
+				new DatabaseThreadFactory("interactive", Thread.NORM_PRIORITY));
+		this.background = Executors.newSingleThreadExecutor(
+				new DatabaseThreadFactory("background", Thread.MIN_PRIORITY));
+	}
+
+	/** Execute a task at a lane.
+	 * @param lane {@link Lane} to queue the task at.
+	 * @param task the task to execute.
+	 * @return future of the task result. Cancelling it will cancel the task. */
+	public <R> CompletableFuture<R> submit(Lane lane, final Callable<R> task) {
+		final CompletableFuture<R> result = new CompletableFuture<R>();
+		final FutureTask<Void> runner = new FutureTask<Void>(new Runnable() {
+			@Override
+			public void run() {
+				if(result.isDone()) {
+					/* Cancelled while queued */
+					return;
+				}
+				try {
+					result.complete(task.call());
+				} catch(Throwable e) {
+					result.completeExceptionally(e);
+				}
+			}
+		}, null);
+		result.whenComplete(new BiConsumer<R, Throwable>() {
+			@Override
+			public void accept(R res, Throwable e) {
+				if(result.isCancelled()) {
+					runner.cancel(true);
+				}
+			}
+		});
+		getExecutor(lane).execute(runner);
+		return result;
+	}
+
+	/** Execute a read only work with a reader connection.
+	 * @param lane {@link Lane} to queue the work at.
+	 * @param work {@link TransactionWork} to execute (not really inside a transaction).
+	 * @return future of the work result.
+	 * @see Database#leaseReader() */
+	public <R> CompletableFuture<R> read(Lane lane, final TransactionWork<R> work) {
+		return submit(lane, new Callable<R>() {
+			@Override
+			public R call() throws SQLException {
+				try(ConnectionLease lease = database.leaseReader()) {
+					return work.execute(lease.getConnection());
+				}
+			}
+		});
+	}
+
+	/** Execute a work inside a single transaction with the writer connection.
+	 * @param lane {@link Lane} to queue the work at.
+	 * @param work {@link TransactionWork} to execute.
+	 * @return future of the work result.
+	 * @see Database#inTransaction(TransactionWork) */
+	public <R> CompletableFuture<R> inTransaction(Lane lane, final TransactionWork<R> work) {
+		return submit(lane, new Callable<R>() {
+			@Override
+			public R call() throws SQLException {
+				return database.inTransaction(work);
+			}
+		});
+	}
+
+	/** Load all entities of a manager, with its related data.
+	 * @param lane {@link Lane} to queue the load at.
+	 * @param manager {@link EntityManager} of the entities.
+	 * @param plan {@link FetchPlan} of its related data (null for none).
+	 * @return future of the loaded entities.
+	 * @see EntityManager#loadAll(Connection) */
+	public <T extends Entity> CompletableFuture<List<T>> loadAll(Lane lane,
+			final EntityManager<T> manager, final FetchPlan<T> plan) {
+		return read(lane, new TransactionWork<List<T>>() {
+			@Override
+			public List<T> execute(Connection conn) throws SQLException {
+				List<T> entities = manager.loadAll(conn);
+				manager.fetch(conn, entities, plan);
+				return entities;
+			}
+		});
+	}
+
+	/** Load a page of entities of a manager, with its related data.
+	 * @param lane {@link Lane} to queue the load at.
+	 * @param manager {@link EntityManager} of the entities.
+	 * @param token token of the page, or null for the first one.
+	 * @param pageSize max number of entities of the page.
+	 * @param plan {@link FetchPlan} of its related data (null for none).
+	 * @return future of the loaded {@link Page}.
+	 * @see EntityManager#loadPage(Connection, String, int) */
+	public <T extends Entity> CompletableFuture<Page<T>> loadPage(Lane lane,
+			final EntityManager<T> manager, final String token, final int pageSize,
+			final FetchPlan<T> plan) {
+		return read(lane, new TransactionWork<Page<T>>() {
+			@Override
+			public Page<T> execute(Connection conn) throws SQLException {
+				Page<T> page = manager.loadPage(conn, token, pageSize);
+				manager.fetch(conn, page.getItems(), plan);
+				return page;
+			}
+		});
+	}
+
+	/** Search a page of quotes, with its related data.
+	 * @param lane {@link Lane} to queue the search at.
+	 * @param criteria {@link SearchCriteria} of the search.
+	 * @param token token of the page, or null for the first one.
+	 * @param pageSize max number of quotes of the page.
+	 * @param plan {@link FetchPlan} of its related data (null for none).
+	 * @return future of the found {@link Page}.
+	 * @see QuoteManager#searchPage(Connection, SearchCriteria, String, int) */
+	public CompletableFuture<Page<Quote>> searchPage(Lane lane, final SearchCriteria criteria,
+			final String token, final int pageSize, final FetchPlan<Quote> plan) {
+		return read(lane, new TransactionWork<Page<Quote>>() {
+			@Override
+			public Page<Quote> execute(Connection conn) throws SQLException {
+				QuoteManager manager = QuoteManager.getSingleton();
+				Page<Quote> page = manager.searchPage(conn, criteria, token, pageSize);
+				manager.fetch(conn, page.getItems(), plan);
+				return page;
+			}
+		});
+	}
+
+	/** Run a progressive search. Cancelling the returned future also cancels the job (thus
+	 * interrupting its statement).
+	 * @param lane {@link Lane} to queue the search at.
+	 * @param job {@link SearchJob} to run.
+	 * @param listener {@link SearchJob.Listener} receiving its quotes (at the lane thread).
+	 * @return future of how the job ended.
+	 * @see SearchJob#run(Connection, SearchJob.Listener) */
+	public CompletableFuture<SearchJob.Status> search(Lane lane, final SearchJob job,
+			final SearchJob.Listener listener) {
+		final CompletableFuture<SearchJob.Status> result = read(lane, new TransactionWork<SearchJob.Status>() {
+			@Override
+			public SearchJob.Status execute(Connection conn) throws SQLException {
+				return job.run(conn, listener);
+			}
+		});
+		result.whenComplete(new BiConsumer<SearchJob.Status, Throwable>() {
+			@Override
+			public void accept(SearchJob.Status status, Throwable e) {
+				if(result.isCancelled()) {
+					job.cancel();
+				}
+			}
+		});
+		return result;
+	}
+
+	/** @param lane a {@link Lane}.
+	 * @return its executor. */
+	private ExecutorService getExecutor(Lane lane) {
+		return (lane == Lane.BACKGROUND) ? background : interactive;
+	}
+
+	/** Stop accepting works, interrupting the running ones, and wait a bit for them to finish. */
+	void shutdown() {
+		interactive.shutdownNow();
+		background.shutdownNow();
+		try {
+			interactive.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS);
+			background.awaitTermination(SHUTDOWN_WAIT, TimeUnit.SECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Creator of our daemon (thus never keeping the application running) named threads. */
+	private static class DatabaseThreadFactory implements ThreadFactory {
+
+		private final String lane;
+		private final int priority;
+		private final AtomicInteger count = new AtomicInteger();
+
+		/** Constructor.
+		 * @param lane name of the lane of the threads.
+		 * @param priority priority of the threads. */
+		DatabaseThreadFactory(String lane, int priority) {
+			this.lane = lane;
+			this.priority = priority;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "HistIndex database " + lane + " " + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		}
+
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.dnteam.histindex.database;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -78,4 +79,23 @@ public class AuthorManager extends EntityManager<Author> {
 		return TABLE_ORDER_BY;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isCached() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterSave(Connection conn, Author author) throws SQLException {
+		/* Cached books keep its authors */
+		BookManager.getSingleton().invalidateCached(conn);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterDelete(Connection conn, long id) throws SQLException {
+		BookManager.getSingleton().invalidateCached(conn);
+	}
+
 }
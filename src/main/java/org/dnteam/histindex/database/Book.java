@@ -12,12 +12,11 @@ public class Book extends Entity {
 	
 	/** Book title */
 	private String title;
-	/** Book's Authors */
-	private List<Author> authorList = new ArrayList<Author>();
-	/** Author names on a single string to display */
-	private String authors;
-	/** When authors string is dirty and should be remade */
-	private boolean dirty = false;
+	/** Book's Authors. Never changed in place, but replaced (under the book lock), as books are
+	 * shared by the application thread and the database lanes. */
+	private volatile List<Author> authorList = new ArrayList<Author>();
+	/** Author names on a single string to display, remade with each {@link #authorList} change */
+	private volatile String authors = "";
 	
 	/** @return {@link #title}  */
 	public String getTitle() {
@@ -32,38 +31,47 @@ public class Book extends Entity {
 	
 	/** Insert a author to the book's author list
 	 * @param author to insert */
-	public void addAuthor(Author author) {
-		authorList.add(author);
-		dirty = true;
+	public synchronized void addAuthor(Author author) {
+		List<Author> changed = new ArrayList<Author>(authorList);
+		changed.add(author);
+		setAuthorList(changed);
 	}
 	
 	/** Remove an author from the book's list 
 	 * @param author to be removed. */
-	public void removeAuthor(Author author) {
-		authorList.remove(author);
-		dirty = true;
+	public synchronized void removeAuthor(Author author) {
+		List<Author> changed = new ArrayList<Author>(authorList);
+		changed.remove(author);
+		setAuthorList(changed);
 	}
 	
 	/** Remove all current authors from a book. */
-	public void removeAllAuthors() {
-		authorList.clear();
-		dirty = true;
+	public synchronized void removeAllAuthors() {
+		setAuthorList(new ArrayList<Author>());
 	}
 	
-	/** @return book authors as a text to display */ 
-	public String getAuthors() {
-		if(dirty) {
-			dirty = false;
-			authors = "";
-			int i = 0;
-			for(Author a : authorList) {
-				if(i > 0) {
-					authors += ";";
-				}
-				authors += a.getLastName() + ", " + a.getName();
-				i++;
+	/** Replace all current authors of a book at once (so no one sees it without them meanwhile).
+	 * @param authors its new authors. */
+	public synchronized void setAuthors(List<Author> authors) {
+		setAuthorList(new ArrayList<Author>(authors));
+	}
+	
+	/** Define {@link #authorList} and its {@link #authors} string.
+	 * @param changed new authors list, not shared with anyone else. */
+	private void setAuthorList(List<Author> changed) {
+		StringBuilder text = new StringBuilder();
+		for(Author a : changed) {
+			if(text.length() > 0) {
+				text.append(';');
 			}
+			text.append(a.getLastName()).append(", ").append(a.getName());
 		}
+		authorList = changed;
+		authors = text.toString();
+	}
+	
+	/** @return book authors as a text to display */ 
+	public String getAuthors() {
 		return authors;
 	}
 	
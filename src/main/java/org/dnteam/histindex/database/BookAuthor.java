@@ -30,11 +30,11 @@ public class BookAuthor extends ComposedEntity<Book, Author> {
    	setSecondEntity(author);
    }
    
-   public Long getBookId() {
+   public long getBookId() {
    	return getKey().getFirst();
    }
    
-   public Long getAuthorId() {
+   public long getAuthorId() {
    	return getKey().getSecond();
    }
    
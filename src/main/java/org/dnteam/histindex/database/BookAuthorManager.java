@@ -4,9 +4,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.dnteam.histindex.metrics.OperationMetrics;
+import org.dnteam.histindex.util.LongObjectMap;
+import org.dnteam.histindex.util.LongSet;
 import org.dnteam.histindex.util.Tuple;
 
 /** Relation for defining authors of books.
@@ -22,6 +25,37 @@ public class BookAuthorManager extends ComposedEntityManager<BookAuthor> {
 	private static final String TABLE_ALIAS = "boau";
 	private static final BookAuthorManager SINGLETON = new BookAuthorManager();
 	
+	private static final String DELETE_BY_BOOK = "DELETE FROM " + TABLE_NAME + " WHERE " + BOOK_ID + " = ?";
+	private static final String DELETE_BY_AUTHOR = "DELETE FROM " + TABLE_NAME + " WHERE " + AUTHOR_ID + " = ?";
+	
+	/** Metrics of the deletes of all authors of a book or all books of an author */
+	private final OperationMetrics deleteByBookMetrics = ManagerMetrics.operation(TABLE_NAME, "deleteAuthorsFromBook");
+	private final OperationMetrics deleteByAuthorMetrics = ManagerMetrics.operation(TABLE_NAME, "deleteAuthorFromBooks");
+	
+	/** Queries depending on other managers, built on first use. */
+	private static final class Queries {
+		static final String POPULATE_AUTHORS;
+		static final String POPULATE_AUTHORS_OF_BOOKS;
+		static {
+			AuthorManager authorManager = AuthorManager.getSingleton();
+			POPULATE_AUTHORS = "SELECT " + authorManager.getColumnsForSelect() + 
+					" FROM " + authorManager.getTableName() + " " + authorManager.getTableAlias() +
+					", " + TABLE_NAME + " " + TABLE_ALIAS + 
+					" WHERE " + TABLE_ALIAS + "." + AUTHOR_ID + " = " + authorManager.getTableAlias() + "." + AuthorManager.ID + 
+					" AND " + TABLE_ALIAS + "." + BOOK_ID + " = ?" + 
+					" ORDER BY " + authorManager.getOrderByColumnsForSelect();
+			/* Concatenated in the authors order, as the ordered sub-select isn't flattened */
+			POPULATE_AUTHORS_OF_BOOKS = "SELECT " + BOOK_ID + ", group_concat(" + AUTHOR_ID + ") FROM (" + 
+					"SELECT " + TABLE_ALIAS + "." + BOOK_ID + ", " + TABLE_ALIAS + "." + AUTHOR_ID + 
+					" FROM " + TABLE_NAME + " " + TABLE_ALIAS + 
+					" INNER JOIN " + authorManager.getTableName() + " " + authorManager.getTableAlias() + 
+					" ON " + authorManager.getTableAlias() + "." + AuthorManager.ID + " = " + TABLE_ALIAS + "." + AUTHOR_ID + 
+					" WHERE " + TABLE_ALIAS + "." + BOOK_ID + IdSet.IN + 
+					" ORDER BY " + TABLE_ALIAS + "." + BOOK_ID + ", " + authorManager.getOrderByColumnsForSelect() + 
+					") GROUP BY " + BOOK_ID;
+		}
+	}
+	
 	private BookAuthorManager() {
 	}
 	
@@ -71,6 +105,45 @@ public class BookAuthorManager extends ComposedEntityManager<BookAuthor> {
 	protected int prepareStatament(PreparedStatement stmt, BookAuthor entity, int i) throws SQLException {
 		return i;
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterInsert(Connection conn, BookAuthor entity) throws SQLException {
+		BookManager.getSingleton().invalidateCached(conn, entity.getKey().getFirst());
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index != null) {
+			index.relationChanged(conn, false, entity.getKey().getSecond(), entity.getKey().getFirst(), true);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterDelete(Connection conn, BookAuthor entity) throws SQLException {
+		BookManager.getSingleton().invalidateCached(conn, entity.getKey().getFirst());
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index != null) {
+			index.relationChanged(conn, false, entity.getKey().getSecond(), entity.getKey().getFirst(), false);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterDeleteBy(Connection conn, String colName, long id) throws SQLException {
+		if(BOOK_ID.equals(colName)) {
+			BookManager.getSingleton().invalidateCached(conn, id);
+		} else {
+			BookManager.getSingleton().invalidateCached(conn);
+		}
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index == null) {
+			return;
+		}
+		if(BOOK_ID.equals(colName)) {
+			index.relationsDeleted(conn, false, id);
+		} else {
+			index.relationsOfEntityDeleted(conn, false, id);
+		}
+	}
 	
 	//public List<Book> loadBooksFromAuthorId(long authorId) {
 	//}
@@ -82,23 +155,16 @@ public class BookAuthorManager extends ComposedEntityManager<BookAuthor> {
 	public void populateAuthors(Connection conn, Book book) throws SQLException {
 		AuthorManager authorManager = AuthorManager.getSingleton();
 
-		String query = "SELECT " + authorManager.getColumnsForSelect();
-		query += " FROM " + authorManager.getTableName() + " " + authorManager.getTableAlias() +
-		         ", " + TABLE_NAME + " " + TABLE_ALIAS;
-		query += " WHERE " + TABLE_ALIAS + "." + AUTHOR_ID + " = " + 
-		                     authorManager.getTableAlias() + "." + AuthorManager.ID;   
-		query += " AND " + TABLE_ALIAS + "." + BOOK_ID + " = ?";
-		query += " ORDER BY " + authorManager.getOrderByColumnsForSelect();
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
+		try(PreparedStatement stmt = conn.prepareStatement(Queries.POPULATE_AUTHORS)){
 			stmt.setLong(1, book.getId());
 			try(ResultSet rs = stmt.executeQuery()) {
-				book.removeAllAuthors();
+				List<Author> authors = new ArrayList<Author>();
 				while(rs.next()) {
 					Author author = authorManager.createEntity();
 					authorManager.populate(rs, author, 1);
-					book.addAuthor(author);
+					authors.add(author);
 				}
+				book.setAuthors(authors);
 			}
 	   }
 	}
@@ -109,14 +175,20 @@ public class BookAuthorManager extends ComposedEntityManager<BookAuthor> {
 	 * @return total elements deleted.
 	 * @throws SQLException */
 	public int deleteAuthorsFromBook(Connection conn, long bookId) throws SQLException {
-
-		String query = "DELETE FROM " + TABLE_NAME;
-		query += " WHERE " + BOOK_ID + " = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, bookId);
-			return stmt.executeUpdate();
-	   }
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_BY_BOOK)){
+				stmt.setLong(1, bookId);
+				int res = stmt.executeUpdate();
+				afterDeleteBy(conn, BOOK_ID, bookId);
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+			}
+		} finally {
+			deleteByBookMetrics.record(started, rows);
+		}
 	}
 	
 	/** Delete all BookAuthors with an specific Author.
@@ -125,17 +197,25 @@ public class BookAuthorManager extends ComposedEntityManager<BookAuthor> {
 	 * @return number of deleted {@link BookAuthor}s.
 	 * @throws SQLException */
 	public int deleteAuthorFromBooks(Connection conn, long authorId) throws SQLException {
-		
-		String query = "DELETE FROM " + TABLE_NAME;
-		query += " WHERE " + AUTHOR_ID + " = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, authorId);
-			return stmt.executeUpdate();
-	   }
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_BY_AUTHOR)){
+				stmt.setLong(1, authorId);
+				int res = stmt.executeUpdate();
+				afterDeleteBy(conn, AUTHOR_ID, authorId);
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+			}
+		} finally {
+			deleteByAuthorMetrics.record(started, rows);
+		}
 	}
 	
-	/** Populate authors for a book list (with a single query on database).
+	/** Populate authors for a book list (with a single query on the relation, a single row for
+	 * each book, with the authors resolved by {@link EntityManager#resolve(Connection, long[])}),
+	 * in the authors order, as {@link #populateAuthors(Connection, Book)}.
 	 * @param conn connection to use.
 	 * @param data list with books to populate its authors.
 	 * @throws SQLException */
@@ -145,66 +225,37 @@ public class BookAuthorManager extends ComposedEntityManager<BookAuthor> {
 			/* Nothing to set. */
 			return;
 		}
-		if(data.size() > MAX_WHERE_ELEMENTS) {
-			/* Must split the populate action between N searches */
-			int init = 0;
-			int end;
-			do {
-				end = init + MAX_WHERE_ELEMENTS;
-				if(end > data.size()) {
-					end = data.size();
-				}
-				populateAuthors(conn, data.subList(init, end));
-				init += MAX_WHERE_ELEMENTS;
-			} while(init < data.size());
-
-			return;
-		}
 		
-		/* define a hash for quick find. */
-		HashMap<Long, Book> hash = BookManager.getSingleton().createHashMap(data);
-		
-		AuthorManager authorManager = AuthorManager.getSingleton();
-
-		String query = "SELECT " + TABLE_ALIAS + "." + BOOK_ID + ", " + authorManager.getColumnsForSelect();
-		query += " FROM " + authorManager.getTableName() + " " + authorManager.getTableAlias() +
-		         ", " + TABLE_NAME + " " + TABLE_ALIAS;
-		query += " WHERE " + TABLE_ALIAS + "." + AUTHOR_ID + " = " + 
-		                     authorManager.getTableAlias() + "." + AuthorManager.ID + " AND (";
-		for(int i = 0; i < data.size(); i++) {
-			if(i > 0) {
-				query += " OR ";
-			}
-			query += TABLE_ALIAS + "." + BOOK_ID + " = ?";
-		}
-		query += ")";
-		
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)) {
+		LongObjectMap<long[]> authorIds = new LongObjectMap<long[]>(data.size());
+		LongSet allAuthorIds = new LongSet();
+		try(PreparedStatement stmt = conn.prepareStatement(Queries.POPULATE_AUTHORS_OF_BOOKS)) {
 			
-			/* Define our ids on prepared statament. */
-			int i = 1;
-			for(Book book : data) {
-				stmt.setLong(i, book.getId());
-				book.removeAllAuthors();
-				i++;
-			}
-			
-			/* Fetch our result from database and set them on our books */
+			/* Define our ids on prepared statament (all at once). */
+			IdSet.bindEntities(stmt, 1, data);
 			try(ResultSet rs = stmt.executeQuery()) {
 				while(rs.next()) {
-					long bookId = rs.getLong(1);
-					Author author = authorManager.createEntity();
-					authorManager.populate(rs, author, 2);
-					
-					Book curBook = (Book) hash.get(bookId);
-					assert(curBook != null);
-					if(curBook != null) {
-						curBook.addAuthor(author);
+					long[] ids = IdSet.parseConcat(rs.getString(2));
+					authorIds.put(rs.getLong(1), ids);
+					allAuthorIds.addAll(ids);
+				}
+			}
+		}
+		
+		/* Set them on our books */
+		LongObjectMap<Author> authors = AuthorManager.getSingleton().resolve(conn, allAuthorIds.toSortedArray());
+		for(Book book : data) {
+			List<Author> bookAuthors = new ArrayList<Author>();
+			long[] ids = authorIds.get(book.getId());
+			if(ids != null) {
+				for(long id : ids) {
+					Author author = authors.get(id);
+					if(author != null) {
+						bookAuthors.add(author);
 					}
 				}
 			}
-	   }
+			book.setAuthors(bookAuthors);
+		}
 	}
 
 }
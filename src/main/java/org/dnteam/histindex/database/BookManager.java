@@ -1,8 +1,10 @@
 package org.dnteam.histindex.database;
 
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 /** Database table manager for {@link Entity} {@link Book}.
  * @author farrer */
@@ -10,11 +12,15 @@ public class BookManager extends EntityManager<Book> {
 	
 	public static final String ID = "id";
 	public static final String TITLE = "Title";
+	/** Description of the book (see {@link Book#getDescription()}), kept by the database itself */
+	public static final String SORT_KEY = "SortKey";
 
 	private static final String TABLE_NAME = "BOOKS";
 	private static final String TABLE_ALIAS = "bk";
 	private static final String[] TABLE_COLUMNS = {TITLE};
 	
+	/** Books are always cached with its authors (needed for its description) */
+	private static final FetchPlan<Book> WITH_AUTHORS = FetchPlan.of(Book.class).with(FetchPlan.Relation.AUTHORS);
 	private static final BookManager SINGLETON = new BookManager();
 	
 	/** Avoid instances besides the singleton */
@@ -76,4 +82,34 @@ public class BookManager extends EntityManager<Book> {
 		return ID;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isCached() {
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void fetch(Connection conn, List<Book> books, FetchPlan<Book> plan) throws SQLException {
+		if(plan == null || plan.isEmpty()) {
+			return;
+		}
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			if(plan.has(FetchPlan.Relation.AUTHORS)) {
+				BookAuthorManager.getSingleton().populateAuthors(conn, books);
+			}
+			rows = books.size();
+		} finally {
+			getMetrics().fetch.record(started, rows);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void loadRelated(Connection conn, List<Book> books) throws SQLException {
+		fetch(conn, books, WITH_AUTHORS);
+	}
+
 }
@@ -0,0 +1,87 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/** The in-memory changes that must follow the database changes made with a pooled connection
+ * (ie: to keep an in-memory index up to date). Outside a transaction each change is applied at
+ * once; inside one it is kept until the transaction is commited, and discarded if it (or the 
+ * savepoint it was made after) is rolled back. Kept by each {@link PooledConnection}, which 
+ * follows the transaction calls made with it.<br/>
+ * <b>Note:</b> only used by the thread owning the connection lease.
+ * @author farrer */
+final class ChangeLog {
+
+	/** A change to apply after the database one is commited. */
+	interface Change {
+		/** Apply the change. Should never fail. */
+		void apply();
+	}
+
+	/** Changes made inside the current transaction, in order */
+	private final List<Change> pending = new ArrayList<Change>();
+	/** Number of pending changes when each current savepoint was set */
+	private final IdentityHashMap<Savepoint, Integer> marks = new IdentityHashMap<Savepoint, Integer>();
+
+	/** Get the log of a connection.
+	 * @param conn {@link Connection} to get its log.
+	 * @return its {@link ChangeLog} or null if not a pooled connection. */
+	static ChangeLog of(Connection conn) {
+		return (conn instanceof DatabaseConnection) ? ((DatabaseConnection) conn).getChangeLog() : null;
+	}
+
+	/** Add a change made with a connection: applied now if not inside a transaction, or kept
+	 * until commited otherwise.
+	 * @param conn {@link Connection} the database change was made with.
+	 * @param change the {@link Change}.
+	 * @throws SQLException */
+	void add(Connection conn, Change change) throws SQLException {
+		if(conn.getAutoCommit()) {
+			change.apply();
+		} else {
+			pending.add(change);
+		}
+	}
+
+	/** @param savepoint a savepoint just set on the connection. */
+	void savepointSet(Savepoint savepoint) {
+		marks.put(savepoint, pending.size());
+	}
+
+	/** @param savepoint a savepoint rolled back: discard the changes made after it. */
+	void savepointRolledBack(Savepoint savepoint) {
+		Integer mark = marks.get(savepoint);
+		if(mark != null) {
+			pending.subList(mark, pending.size()).clear();
+		}
+	}
+
+	/** @param savepoint a savepoint released (its changes are now from the outer transaction). */
+	void savepointReleased(Savepoint savepoint) {
+		marks.remove(savepoint);
+	}
+
+	/** The transaction was commited: apply all its changes. */
+	void commited() {
+		marks.clear();
+		if(pending.isEmpty()) {
+			return;
+		}
+		List<Change> changes = new ArrayList<Change>(pending);
+		pending.clear();
+		for(Change change : changes) {
+			change.apply();
+		}
+	}
+
+	/** The transaction was rolled back: discard all its changes. */
+	void rolledBack() {
+		marks.clear();
+		pending.clear();
+	}
+
+}
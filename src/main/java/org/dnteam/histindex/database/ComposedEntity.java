@@ -1,7 +1,5 @@
 package org.dnteam.histindex.database;
 
-import org.dnteam.histindex.util.Tuple;
-
 /** A composed entity implementation, wich is made of two {@link Entity}ies.
  * @author farrer
  *
@@ -10,20 +8,20 @@ import org.dnteam.histindex.util.Tuple;
 public abstract class ComposedEntity<A extends Entity, B extends Entity> {
 
 	/** Key, composed by its two Entities keys */
-	private Tuple<Long, Long> key = new Tuple<Long, Long>();
+	private CompositeKey key = CompositeKey.NONE;
 	/** Its first related Entity */
 	private A first;
 	/** Its second related Entity */
 	private B second;
 	
 	/** @return {@link #key}. */
-	public Tuple<Long, Long> getKey()	{
+	public CompositeKey getKey()	{
 	   return key;
 	}
 	
 	/** Set {@link #key}.
 	 * @param key new key value. */
-	public void setKey(Tuple<Long, Long> key) {
+	public void setKey(CompositeKey key) {
 		this.key = key;
 	}
 
@@ -37,11 +35,7 @@ public abstract class ComposedEntity<A extends Entity, B extends Entity> {
 	 * @param first new first entity. */
 	public void setFirstEntity(A first) {
 		this.first = first;
-		if(first != null) {
-			key.setFirst(first.getId());
-		} else {
-			key.setFirst(null);
-		}
+		key = key.withFirst((first != null) ? first.getId() : 0);
 	}
 
 	/** @return {@link #second}. */
@@ -54,11 +48,7 @@ public abstract class ComposedEntity<A extends Entity, B extends Entity> {
 	 * @param second new second entity. */
 	public void setSecondEntity(B second) {
 		this.second = second;
-		if(second != null) {
-			key.setSecond(second.getId());
-		} else {
-			key.setSecond(null);
-		}
+		key = key.withSecond((second != null) ? second.getId() : 0);
 	}
 	
 	/** @return EntityManager for the first Entity */
@@ -1,10 +1,10 @@
 package org.dnteam.histindex.database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.dnteam.histindex.util.Tuple;
 
@@ -16,15 +16,93 @@ import org.dnteam.histindex.util.Tuple;
  */
 public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	
-	protected static final int MAX_WHERE_ELEMENTS = 400;
+	/** Max number of rows sent to the database on a single JDBC batch */
+	protected static final int BATCH_SIZE = 500;
+	
+	/** SQL statements of the manager, built on first use (as subclasses define its columns
+	 * at static fields, probably still not initialized at our constructor) */
+	private volatile Queries queries;
+	
+	/** Metrics of the manager operations, created on first use (for the same reason) */
+	private volatile ManagerMetrics metrics;
+	
+	/** The fixed SQL statements of a {@link ComposedEntityManager}, built only once. */
+	private static final class Queries {
+		final String insert;
+		/** null if no columns besides the key ones. */
+		final String update;
+		final String delete;
+		final String deleteByFirst;
+		final String deleteBySecond;
+		final String load;
+		
+		/** Constructor.
+		 * @param manager {@link ComposedEntityManager} to build the statements for. */
+		Queries(ComposedEntityManager<?> manager) {
+			final String tableName = manager.getTableName();
+			final String tableAlias = manager.getTableAlias();
+			final Tuple<String, String> keyCols = manager.getIdColumns();
+			assert (!keyCols.getFirst().isEmpty());
+			assert (!keyCols.getSecond().isEmpty());
+			final String[] cols = manager.getColumns();
+			
+			StringBuilder insertCols = new StringBuilder(keyCols.getFirst()).append(", ").append(keyCols.getSecond());
+			StringBuilder insertVals = new StringBuilder("?, ?");
+			StringBuilder select = new StringBuilder(tableAlias).append('.').append(keyCols.getFirst()).append(", ")
+					.append(tableAlias).append('.').append(keyCols.getSecond());
+			StringBuilder updateCols = new StringBuilder();
+			if(cols != null) {
+				for (String col : cols) {
+					insertCols.append(", ").append(col);
+					insertVals.append(", ?");
+					select.append(", ").append(tableAlias).append('.').append(col);
+					if(updateCols.length() > 0) {
+						updateCols.append(", ");
+					}
+					updateCols.append(col).append(" = ?");
+				}
+			}
+			final String whereKey = keyCols.getFirst() + " = ? AND " + keyCols.getSecond() + " = ?";
+			
+			insert = "INSERT INTO " + tableName + " (" + insertCols + ") VALUES (" + insertVals + ")";
+			update = (updateCols.length() > 0) ? "UPDATE " + tableName + " SET " + updateCols + " WHERE " + whereKey : null;
+			delete = "DELETE FROM " + tableName + " WHERE " + whereKey;
+			deleteByFirst = "DELETE FROM " + tableName + " WHERE " + keyCols.getFirst() + " = ?";
+			deleteBySecond = "DELETE FROM " + tableName + " WHERE " + keyCols.getSecond() + " = ?";
+			load = "SELECT " + select + " FROM " + tableName + " " + tableAlias + 
+					" WHERE " + tableAlias + "." + keyCols.getFirst() + " = ? AND " + tableAlias + "." + keyCols.getSecond() + " = ?";
+		}
+	}
+	
+	/** @return the {@link Queries} of this manager, building them if not yet done. */
+	private Queries getQueries() {
+		Queries res = queries;
+		if(res == null) {
+			/* No need to synchronize: building it twice is harmless. */
+			res = new Queries(this);
+			queries = res;
+		}
+		return res;
+	}
+	
+	/** @return the {@link ManagerMetrics} of this manager, created if not yet done. */
+	ManagerMetrics getMetrics() {
+		ManagerMetrics res = metrics;
+		if(res == null) {
+			/* As the queries: creating it twice is harmless (the same operations are found). */
+			res = new ManagerMetrics(getTableName());
+			metrics = res;
+		}
+		return res;
+	}
 
 	/** Insert the Entity to its database.
 	 * @param db Database to use.
 	 * @param entity entity to insert
 	 * @throws SQLException */
 	public void insert(Database db, T entity) throws SQLException {
-		try (Connection conn = DriverManager.getConnection(db.getURL())) {
-			insert(conn, entity);
+		try (ConnectionLease lease = db.leaseWriter()) {
+			insert(lease.getConnection(), entity);
 		}
 	}
 
@@ -33,36 +111,25 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @param entity entity to insert
 	 * @throws SQLException */
 	public void insert(Connection conn, T entity) throws SQLException {
-
-		/* Check if with valid keys */
-		Tuple<Long, Long> key = entity.getKey();
-		assert (key.getFirst() != null && key.getFirst() != 0);
-		assert (key.getSecond() != null && key.getSecond() != 0);
-
-		Tuple<String, String> keyCols = getIdColumns();
-		assert (!keyCols.getFirst().isEmpty());
-		assert (!keyCols.getSecond().isEmpty());
-
-		/*Define statment with our composed identifier */
-		String query = "INSERT INTO " + getTableName() + " (" + keyCols.getFirst() + ", " + keyCols.getSecond();
-		String vals = "?, ?";
-
-		/* Define other columns, if any */
-		String[] cols = getColumns();
-		if(cols != null) {
-			for (String col : cols) {
-				query += ", " + col;
-				vals += ", ?" ;
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			/* Check if with valid keys */
+			CompositeKey key = entity.getKey();
+			assert (key.isDefined());
+
+			try (PreparedStatement stmt = conn.prepareStatement(getQueries().insert)) {
+				stmt.setLong(1, key.getFirst());
+				stmt.setLong(2, key.getSecond());
+				prepareStatament(stmt, entity, 3);
+				int res = stmt.executeUpdate();
+				assert(res == 1);
+				afterInsert(conn, entity);
+				SearchResultCache.changed(conn);
 			}
-		}
-		query += ") VALUES (" + vals + ")";
-
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
-			stmt.setLong(1, key.getFirst());
-			stmt.setLong(2, key.getSecond());
-			prepareStatament(stmt, entity, 3);
-			int res = stmt.executeUpdate();
-			assert(res == 1);
+			rows = 1;
+		} finally {
+			getMetrics().insert.record(started, rows);
 		}
 	}
 
@@ -71,8 +138,8 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @param entity entity to update
 	 * @throws SQLException */
 	public void update(Database db, T entity) throws SQLException {
-		try (Connection conn = DriverManager.getConnection(db.getURL())) {
-			update(conn, entity);
+		try (ConnectionLease lease = db.leaseWriter()) {
+			update(lease.getConnection(), entity);
 		}
 	}
 
@@ -81,42 +148,32 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @param entity entity to update.
 	 * @throws SQLException */
 	public void update(Connection conn, T entity) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			String[] cols = getColumns();
+			if(cols == null) {
+				/* Nothing besides its ID, nothing to update (should delete and create a new
+				 * if desire to update ids). */
+				rows = 0;
+				return;
+			}
 		
-		String[] cols = getColumns();
-		if(cols == null) {
-			/* Nothing besides its ID, nothing to update (should delete and create a new
-			 * if desire to update ids). */
-			return;
-		}
-		
-		/* Check if with valid keys */
-		Tuple<Long, Long> key = entity.getKey();
-		assert (key.getFirst() != null && key.getFirst() != 0);
-		assert (key.getSecond() != null && key.getSecond() != 0);
-
-		Tuple<String, String> keyCols = getIdColumns();
-		assert (!keyCols.getFirst().isEmpty());
-		assert (!keyCols.getSecond().isEmpty());
-		
-		String query = "UPDATE " + getTableName() + " SET ";
-
-		
-		int cur = 1;
-		for (String col : cols) {
-			if (cur > 1) {
-				query += ", ";
+			/* Check if with valid keys */
+			CompositeKey key = entity.getKey();
+			assert (key.isDefined());
+
+			try (PreparedStatement stmt = conn.prepareStatement(getQueries().update)) {
+				int cur = prepareStatament(stmt, entity, 1);
+				stmt.setLong(cur, key.getFirst());
+				stmt.setLong(cur + 1, key.getSecond());
+				int res = stmt.executeUpdate();
+				assert (res == 1);
+				SearchResultCache.changed(conn);
+				rows = res;
 			}
-			query += col + " = ? ";
-			cur++;
-		}
-		query += " WHERE " + keyCols.getFirst() + " = ? AND " + keyCols.getSecond() + " = ?";
-
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
-			prepareStatament(stmt, entity, 1);
-			stmt.setLong(cur, key.getFirst());
-			stmt.setLong(cur + 1, key.getSecond());
-			int res = stmt.executeUpdate();
-			assert (res == 1);
+		} finally {
+			getMetrics().update.record(started, rows);
 		}
 	}
 
@@ -126,17 +183,28 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @return how many deleted items.
 	 * @throws SQLException */
 	public int deleteByFirstEntity(Database db, long id) throws SQLException {
-		try (Connection conn = DriverManager.getConnection(db.getURL())) {
-			return deleteByFirstEntity(conn, id);
+		try (ConnectionLease lease = db.leaseWriter()) {
+			return deleteByFirstEntity(lease.getConnection(), id);
 		}
 	}
 	
 	/** @see #deleteByFirstEntity(Database, long) */
 	public int deleteByFirstEntity(Connection conn, long id) throws SQLException {
-		Tuple<String, String> keyCols = getIdColumns();
-		assert (!keyCols.getFirst().isEmpty());
-
-		return delete(conn, id, keyCols.getFirst());
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			assert (id != 0);
+			try (PreparedStatement stmt = conn.prepareStatement(getQueries().deleteByFirst)) {
+				stmt.setLong(1, id);
+				int res = stmt.executeUpdate();
+				afterDeleteBy(conn, getIdColumns().getFirst(), id);
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+			}
+		} finally {
+			getMetrics().delete.record(started, rows);
+		}
 	}
 	
 	/** Delete ComposedEntities from the database, based on its second Entity Id.
@@ -145,32 +213,27 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @return how many deleted items.
 	 * @throws SQLException */
 	public int deleteBySecondEntity(Database db, long id) throws SQLException {
-		try (Connection conn = DriverManager.getConnection(db.getURL())) {
-			return deleteBySecondEntity(conn, id);
+		try (ConnectionLease lease = db.leaseWriter()) {
+			return deleteBySecondEntity(lease.getConnection(), id);
 		}
 	}
 	
 	/** @see #deleteBySecondEntity(Database, long) */
 	public int deleteBySecondEntity(Connection conn, long id) throws SQLException {
-		Tuple<String, String> keyCols = getIdColumns();
-		assert (!keyCols.getSecond().isEmpty());
-
-		return delete(conn, id, keyCols.getSecond());
-	}
-	
-	/** Delete all ComposedEntities with its 'colName' identifier of a defined value.
-	 * @param conn connection to use.
-	 * @param id identifier value.
-	 * @param colName name of the identifier column.
-	 * @return number of entitites delete.
-	 * @throws SQLException. */
-	protected int delete(Connection conn, long id, String colName) throws SQLException {
-		assert (id != 0);
-		String query = "DELETE FROM " + getTableName() + " WHERE " + colName + " = ?";
-
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
-			stmt.setLong(1, id);
-			return stmt.executeUpdate();
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			assert (id != 0);
+			try (PreparedStatement stmt = conn.prepareStatement(getQueries().deleteBySecond)) {
+				stmt.setLong(1, id);
+				int res = stmt.executeUpdate();
+				afterDeleteBy(conn, getIdColumns().getSecond(), id);
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+			}
+		} finally {
+			getMetrics().delete.record(started, rows);
 		}
 	}
 	
@@ -180,31 +243,197 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @return if deleted or not.
 	 * @throws SQLException */
 	public boolean delete(Database db, T entity) throws SQLException {
-		try (Connection conn = DriverManager.getConnection(db.getURL())) {
-			return delete(conn, entity);
+		try (ConnectionLease lease = db.leaseWriter()) {
+			return delete(lease.getConnection(), entity);
 		}
 	}
 	
 	/** @see #delete(Database, T) */
 	public boolean delete(Connection conn, T entity) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			/* Check if with valid keys */
+			CompositeKey key = entity.getKey();
+			assert (key.isDefined());
+
+			try (PreparedStatement stmt = conn.prepareStatement(getQueries().delete)) {
+				stmt.setLong(1, key.getFirst());
+				stmt.setLong(2, key.getSecond());
+				if(stmt.executeUpdate() == 1) {
+					afterDelete(conn, entity);
+					SearchResultCache.changed(conn);
+					rows = 1;
+					return true;
+				}
+				rows = 0;
+				return false;
+			}
+		} finally {
+			getMetrics().delete.record(started, rows);
+		}
+	}
 
-		/* Check if with valid keys */
-		Tuple<Long, Long> key = entity.getKey();
-		assert (key.getFirst() != null && key.getFirst() != 0);
-		assert (key.getSecond() != null && key.getSecond() != 0);
-
-		Tuple<String, String> keyCols = getIdColumns();
-		assert (!keyCols.getFirst().isEmpty());
-		assert (!keyCols.getSecond().isEmpty());
-		
-		String query = "DELETE FROM " + getTableName() + " WHERE " + keyCols.getFirst() + " = ? AND " + keyCols.getSecond() + " = ?";
-
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
-			stmt.setLong(1, key.getFirst());
-			stmt.setLong(2, key.getSecond());
-			return stmt.executeUpdate() == 1;
+	/** Insert a list of ComposedEntities to the database, on a single transaction.
+	 * @param db Database to use.
+	 * @param entities entities to insert.
+	 * @return the number of rows inserted for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] insertAll(Database db, List<T> entities) throws SQLException {
+		try (ConnectionLease lease = db.leaseWriter()) {
+			return insertAll(lease.getConnection(), entities);
+		}
+	}
+	
+	/** Insert a list of ComposedEntities to the database (with an already opened connection), using
+	 * JDBC batches inside a single transaction (or savepoint, if already in a transaction).
+	 * @param conn connection to use.
+	 * @param entities entities to insert.
+	 * @return the number of rows inserted for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] insertAll(Connection conn, List<T> entities) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			int[] res = new int[entities.size()];
+			if(entities.isEmpty()) {
+				rows = 0;
+				return res;
+			}
+			try (TransactionScope transaction = new TransactionScope(conn);
+				  PreparedStatement stmt = conn.prepareStatement(getQueries().insert)) {
+				for(int start = 0; start < entities.size(); start += BATCH_SIZE) {
+					int end = Math.min(start + BATCH_SIZE, entities.size());
+					for(T entity : entities.subList(start, end)) {
+						CompositeKey key = entity.getKey();
+						assert (key.isDefined());
+						stmt.setLong(1, key.getFirst());
+						stmt.setLong(2, key.getSecond());
+						prepareStatament(stmt, entity, 3);
+						stmt.addBatch();
+					}
+					int[] counts = stmt.executeBatch();
+					System.arraycopy(counts, 0, res, start, counts.length);
+					for(int i = start; i < end; i++) {
+						if(res[i] != 0) {
+							afterInsert(conn, entities.get(i));
+						}
+					}
+				}
+				SearchResultCache.changed(conn);
+				transaction.commit();
+			}
+			rows = ManagerMetrics.sum(res);
+			return res;
+		} finally {
+			getMetrics().insertAll.record(started, rows);
+		}
+	}
+	
+	/** Update a list of ComposedEntities on the database, on a single transaction.
+	 * @param db Database to use.
+	 * @param entities entities to update.
+	 * @return the number of rows updated for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] updateAll(Database db, List<T> entities) throws SQLException {
+		try (ConnectionLease lease = db.leaseWriter()) {
+			return updateAll(lease.getConnection(), entities);
+		}
+	}
+	
+	/** Update a list of ComposedEntities on the database (with an already opened connection), using
+	 * JDBC batches inside a single transaction (or savepoint, if already in a transaction).
+	 * @param conn connection to use.
+	 * @param entities entities to update.
+	 * @return the number of rows updated for each entity, at the same order (all zero
+	 *         if the entity has nothing besides its identifiers to update).
+	 * @throws SQLException */
+	public int[] updateAll(Connection conn, List<T> entities) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			int[] res = new int[entities.size()];
+			String query = getQueries().update;
+			if(entities.isEmpty() || query == null) {
+				rows = 0;
+				return res;
+			}
+			try (TransactionScope transaction = new TransactionScope(conn);
+				  PreparedStatement stmt = conn.prepareStatement(query)) {
+				for(int start = 0; start < entities.size(); start += BATCH_SIZE) {
+					int end = Math.min(start + BATCH_SIZE, entities.size());
+					for(T entity : entities.subList(start, end)) {
+						CompositeKey key = entity.getKey();
+						int cur = prepareStatament(stmt, entity, 1);
+						stmt.setLong(cur, key.getFirst());
+						stmt.setLong(cur + 1, key.getSecond());
+						stmt.addBatch();
+					}
+					int[] counts = stmt.executeBatch();
+					System.arraycopy(counts, 0, res, start, counts.length);
+				}
+				SearchResultCache.changed(conn);
+				transaction.commit();
+			}
+			rows = ManagerMetrics.sum(res);
+			return res;
+		} finally {
+			getMetrics().updateAll.record(started, rows);
+		}
+	}
+	
+	/** Delete a list of ComposedEntities from the database, on a single transaction.
+	 * @param db Database to use.
+	 * @param entities entities to delete.
+	 * @return the number of rows deleted for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] deleteAll(Database db, List<T> entities) throws SQLException {
+		try (ConnectionLease lease = db.leaseWriter()) {
+			return deleteAll(lease.getConnection(), entities);
+		}
+	}
+	
+	/** Delete a list of ComposedEntities from the database (with an already opened connection), using
+	 * JDBC batches inside a single transaction (or savepoint, if already in a transaction).
+	 * @param conn connection to use.
+	 * @param entities entities to delete.
+	 * @return the number of rows deleted for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] deleteAll(Connection conn, List<T> entities) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			int[] res = new int[entities.size()];
+			if(entities.isEmpty()) {
+				rows = 0;
+				return res;
+			}
+			try (TransactionScope transaction = new TransactionScope(conn);
+				  PreparedStatement stmt = conn.prepareStatement(getQueries().delete)) {
+				for(int start = 0; start < entities.size(); start += BATCH_SIZE) {
+					int end = Math.min(start + BATCH_SIZE, entities.size());
+					for(T entity : entities.subList(start, end)) {
+						CompositeKey key = entity.getKey();
+						stmt.setLong(1, key.getFirst());
+						stmt.setLong(2, key.getSecond());
+						stmt.addBatch();
+					}
+					int[] counts = stmt.executeBatch();
+					System.arraycopy(counts, 0, res, start, counts.length);
+					for(int i = start; i < end; i++) {
+						if(res[i] != 0) {
+							afterDelete(conn, entities.get(i));
+						}
+					}
+				}
+				SearchResultCache.changed(conn);
+				transaction.commit();
+			}
+			rows = ManagerMetrics.sum(res);
+			return res;
+		} finally {
+			getMetrics().deleteAll.record(started, rows);
 		}
-		
 	}
 
 	/** Load the single {@link ComposedEntity} from the database.
@@ -212,9 +441,9 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @param id identifier of the {@link ComposedEntity} to load.
 	 * @return new entity with loaded values, or null if none found.
 	 * @throws SQLException */
-	public T load(Database db, Tuple<Long, Long> id) throws SQLException {
-		try (Connection conn = DriverManager.getConnection(db.getURL())) {
-			return load(conn, id);
+	public T load(Database db, CompositeKey id) throws SQLException {
+		try (ConnectionLease lease = db.leaseReader()) {
+			return load(lease.getConnection(), id);
 		}
 	}
 
@@ -223,35 +452,26 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @param id identifier of the {@link ComposedEntity} to load
 	 * @return new entity with loaded values, or null if none found.
 	 * @throws SQLException */
-	public T load(Connection conn, Tuple<Long, Long> id) throws SQLException {
-
-		Tuple<String, String> keyCols = getIdColumns();
-		assert (!keyCols.getFirst().isEmpty());
-		assert (!keyCols.getSecond().isEmpty());
-		
-		/* Define the Select query */
-		final String tableAlias = getTableAlias();
-		String query = "SELECT " + tableAlias + "." + keyCols.getFirst() + ", " + tableAlias + "." + keyCols.getSecond();
-		String[] cols = getColumns();
-		if(cols != null) {
-			for (String col : cols) {
-				query += ", " + tableAlias + ". " + col;
-			}
-		}
-		query += " FROM " + getTableName() + " " + tableAlias;
-		query += " WHERE " + tableAlias + "." + keyCols.getFirst() + " = ? AND " + tableAlias + "." + keyCols.getSecond() + " = ?";
-
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
-			stmt.setLong(1, id.getFirst());
-			stmt.setLong(2, id.getSecond());
-			try (ResultSet rs = stmt.executeQuery()) {
-				if (rs.next()) {
-					T entity = createEntity();
-					populate(rs, entity);
-					return entity;
+	public T load(Connection conn, CompositeKey id) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try (PreparedStatement stmt = conn.prepareStatement(getQueries().load)) {
+				stmt.setLong(1, id.getFirst());
+				stmt.setLong(2, id.getSecond());
+				try (ResultSet rs = stmt.executeQuery()) {
+					if (rs.next()) {
+						T entity = createEntity();
+						populate(rs, entity);
+						rows = 1;
+						return entity;
+					}
+					rows = 0;
+					return null;
 				}
-				return null;
 			}
+		} finally {
+			getMetrics().load.record(started, rows);
 		}
 	}
 
@@ -260,10 +480,34 @@ public abstract class ComposedEntityManager<T extends ComposedEntity<?, ?>> {
 	 * @param T entity to populate with values from result set.
 	 * @throws SQLException */
 	private void populate(ResultSet rs, T entity) throws SQLException {
-		entity.setKey(new Tuple<Long, Long>(rs.getLong(1), rs.getLong(2)));
+		entity.setKey(new CompositeKey(rs.getLong(1), rs.getLong(2)));
 		populateFromResultSet(rs, entity, 3);
 	}
 
+	/** Called after an entity was inserted, for subclasses to follow the change (ie: on an
+	 * in-memory index). Inside a transaction, the change isn't commited yet: see {@link ChangeLog}.
+	 * @param conn connection used.
+	 * @param entity the entity inserted.
+	 * @throws SQLException */
+	protected void afterInsert(Connection conn, T entity) throws SQLException {
+	}
+	
+	/** Called after an entity was deleted, for subclasses to follow the change.
+	 * @param conn connection used.
+	 * @param entity the entity deleted.
+	 * @throws SQLException */
+	protected void afterDelete(Connection conn, T entity) throws SQLException {
+	}
+	
+	/** Called after all entities with an identifier column of a value were deleted, for 
+	 * subclasses to follow the change.
+	 * @param conn connection used.
+	 * @param colName name of the identifier column.
+	 * @param id its value.
+	 * @throws SQLException */
+	protected void afterDeleteBy(Connection conn, String colName, long id) throws SQLException {
+	}
+
 	/** @return tuple with column names of the id */
 	protected abstract Tuple<String, String> getIdColumns();
 
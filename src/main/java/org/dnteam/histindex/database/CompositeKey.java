@@ -0,0 +1,74 @@
+package org.dnteam.histindex.database;
+
+/** Key of a {@link ComposedEntity}: the identifiers of its two {@link Entity}ies, as primitives
+ * (zero for a not defined one). Keys are immutable.
+ * @author farrer */
+public final class CompositeKey {
+
+	/** Key with none of its identifiers defined */
+	public static final CompositeKey NONE = new CompositeKey(0, 0);
+
+	/** Identifier of the first entity */
+	private final long first;
+	/** Identifier of the second entity */
+	private final long second;
+
+	/** Constructor.
+	 * @param first identifier of the first entity.
+	 * @param second identifier of the second entity. */
+	public CompositeKey(long first, long second) {
+		this.first = first;
+		this.second = second;
+	}
+
+	/** @return {@link #first}. */
+	public long getFirst() {
+		return first;
+	}
+
+	/** @return {@link #second}. */
+	public long getSecond() {
+		return second;
+	}
+
+	/** @param id identifier of the first entity.
+	 * @return a key with it and this one second. */
+	public CompositeKey withFirst(long id) {
+		return new CompositeKey(id, second);
+	}
+
+	/** @param id identifier of the second entity.
+	 * @return a key with this one first and it. */
+	public CompositeKey withSecond(long id) {
+		return new CompositeKey(first, id);
+	}
+
+	/** @return if both identifiers are defined. */
+	public boolean isDefined() {
+		return first != 0 && second != 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof CompositeKey) {
+			CompositeKey other = (CompositeKey) obj;
+			return first == other.first && second == other.second;
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		long h = first * 0x9E3779B97F4A7C15L + second;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "(" + first + ", " + second + ")";
+	}
+
+}
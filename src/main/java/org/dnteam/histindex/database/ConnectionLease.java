@@ -0,0 +1,56 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+
+/** A {@link Connection} borrowed from the {@link Database} pool. The lease must be closed (usually
+ * with a try-with-resources) by the same thread that acquired it, giving the connection back to
+ * the pool.<br/>
+ * <b>Note:</b> the leased {@link Connection} itself should never be closed: its close is ignored.
+ * @author farrer */
+public class ConnectionLease implements AutoCloseable {
+
+	/** Pool the connection was borrowed from */
+	private final ConnectionPool pool;
+	/** The pooled connection leased */
+	private final PooledConnection pooled;
+	/** If the leased connection is the pool's writer */
+	private final boolean writer;
+	/** If already released or not */
+	private boolean released = false;
+
+	/** Constructor.
+	 * @param pool {@link ConnectionPool} which owns the connection.
+	 * @param pooled {@link PooledConnection} leased.
+	 * @param writer if the leased connection is the writer one. */
+	ConnectionLease(ConnectionPool pool, PooledConnection pooled, boolean writer) {
+		this.pool = pool;
+		this.pooled = pooled;
+		this.writer = writer;
+	}
+
+	/** @return the leased {@link Connection}. */
+	public Connection getConnection() {
+		return pooled.getConnection();
+	}
+
+	/** @return if the leased {@link Connection} is the database writer (<code>true</code>) or
+	 *          a reader (<code>false</code>). */
+	public boolean isWriter() {
+		return writer;
+	}
+
+	/** @return {@link #pooled}. */
+	PooledConnection getPooledConnection() {
+		return pooled;
+	}
+
+	/** Give the connection back to its pool. Calling it more than once has no effect. */
+	@Override
+	public void close() {
+		if(!released) {
+			released = true;
+			pool.release(this);
+		}
+	}
+
+}
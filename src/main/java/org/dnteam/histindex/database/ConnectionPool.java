@@ -0,0 +1,270 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** A bounded pool of long-lived connections to a single SQLite file: a set of reader connections
+ * and a single dedicated writer (SQLite only accepts one writer at a time anyway).<br/>
+ * Leases are reentrant per thread: a thread already holding a connection will receive it again,
+ * and a thread holding the writer will receive it even when asking for a reader (thus seeing its own
+ * not yet committed changes).
+ * @author farrer */
+class ConnectionPool {
+
+	/** Driver property with the mode used to begin transactions */
+	private static final String TRANSACTION_MODE = "transaction_mode";
+	/** Max time to wait for a free connection, in seconds. */
+	private static final long ACQUIRE_TIMEOUT = 30;
+
+	/** Database of the pool */
+	private final Database database;
+	/** Jdbc url of the database */
+	private final String url;
+	/** Max number of reader connections to open */
+	private final int maxReaders;
+	/** PRAGMAs to execute on each opened connection */
+	private final List<String> pragmas;
+	/** Tracer of the statements executed, if enabled */
+	private final QueryTracer tracer;
+	/** Lock for all pool state */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** Signaled when a reader is given back */
+	private final Condition readerAvailable = lock.newCondition();
+	/** Signaled when the writer is given back */
+	private final Condition writerAvailable = lock.newCondition();
+	/** Opened but not in use readers */
+	private final ArrayDeque<PooledConnection> idleReaders = new ArrayDeque<PooledConnection>();
+	/** Total reader connections opened (in use or not) */
+	private int openedReaders = 0;
+	/** The writer connection, if already opened */
+	private PooledConnection writer;
+	/** Thread currently holding the writer, if any */
+	private volatile Thread writerOwner;
+	/** How many (reentrant) leases the writer owner thread has */
+	private int writerHolds = 0;
+	/** Reader currently held by each thread */
+	private final ThreadLocal<ReaderHold> readerHolds = new ThreadLocal<ReaderHold>() {
+		@Override
+		protected ReaderHold initialValue() {
+			return new ReaderHold();
+		}
+	};
+	/** If the pool was closed */
+	private boolean closed = false;
+
+	/** The reader held by a thread and how many leases it has on it. */
+	private static class ReaderHold {
+		PooledConnection reader;
+		int count;
+	}
+
+	/** Constructor.
+	 * @param database {@link Database} of the pool.
+	 * @param url jdbc url of the database.
+	 * @param config {@link DatabaseConfig} to apply to the opened connections. */
+	ConnectionPool(Database database, String url, DatabaseConfig config) {
+		this.database = database;
+		this.url = url;
+		this.maxReaders = Math.max(1, config.getReaders());
+		this.pragmas = config.getPragmas();
+		this.tracer = QueryTracer.create(config);
+	}
+
+	/** Lease a connection for read operations.
+	 * @return the {@link ConnectionLease}.
+	 * @throws SQLException if couldn't open a connection or timed out waiting for one. */
+	ConnectionLease leaseReader() throws SQLException {
+		Thread current = Thread.currentThread();
+		if(writerOwner == current) {
+			/* Must read with the writer, to see our own changes. */
+			writerHolds++;
+			return new ConnectionLease(this, writer, true);
+		}
+
+		ReaderHold hold = readerHolds.get();
+		if(hold.reader != null) {
+			hold.count++;
+			return new ConnectionLease(this, hold.reader, false);
+		}
+
+		hold.reader = acquireReader();
+		hold.count = 1;
+		return new ConnectionLease(this, hold.reader, false);
+	}
+
+	/** Lease the writer connection, waiting for it if in use by another thread.
+	 * @return the {@link ConnectionLease}.
+	 * @throws SQLException if couldn't open the connection or timed out waiting for it. */
+	ConnectionLease leaseWriter() throws SQLException {
+		Thread current = Thread.currentThread();
+		if(writerOwner == current) {
+			writerHolds++;
+			return new ConnectionLease(this, writer, true);
+		}
+
+		lock.lock();
+		try {
+			long remaining = TimeUnit.SECONDS.toNanos(ACQUIRE_TIMEOUT);
+			while(writerOwner != null) {
+				checkNotClosed();
+				if(remaining <= 0) {
+					throw new SQLException("Timed out waiting for the database writer connection");
+				}
+				remaining = writerAvailable.awaitNanos(remaining);
+			}
+			checkNotClosed();
+			if(writer == null) {
+				writer = open(true);
+			}
+			writerOwner = current;
+			writerHolds = 1;
+			return new ConnectionLease(this, writer, true);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the database writer connection", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Get a free reader, opening a new one if under our limit or waiting for one otherwise.
+	 * @return reader to use.
+	 * @throws SQLException */
+	private PooledConnection acquireReader() throws SQLException {
+		lock.lock();
+		try {
+			long remaining = TimeUnit.SECONDS.toNanos(ACQUIRE_TIMEOUT);
+			while(true) {
+				checkNotClosed();
+				PooledConnection reader = idleReaders.pollFirst();
+				if(reader != null) {
+					return reader;
+				}
+				if(openedReaders < maxReaders) {
+					PooledConnection opened = open(false);
+					openedReaders++;
+					return opened;
+				}
+				if(remaining <= 0) {
+					throw new SQLException("Timed out waiting for a database reader connection");
+				}
+				remaining = readerAvailable.awaitNanos(remaining);
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database reader connection", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Give back a leased connection.
+	 * @param lease {@link ConnectionLease} to release. */
+	void release(ConnectionLease lease) {
+		if(lease.isWriter()) {
+			assert(writerOwner == Thread.currentThread());
+			writerHolds--;
+			if(writerHolds > 0) {
+				return;
+			}
+			boolean usable = writer.reset();
+			lock.lock();
+			try {
+				if(!usable || closed) {
+					writer.close();
+					writer = null;
+				}
+				writerOwner = null;
+				writerAvailable.signal();
+			} finally {
+				lock.unlock();
+			}
+		} else {
+			ReaderHold hold = readerHolds.get();
+			assert(hold.reader == lease.getPooledConnection());
+			hold.count--;
+			if(hold.count > 0) {
+				return;
+			}
+			PooledConnection reader = hold.reader;
+			hold.reader = null;
+			boolean usable = reader.reset();
+			lock.lock();
+			try {
+				if(!usable || closed) {
+					reader.close();
+					openedReaders--;
+				} else {
+					idleReaders.addFirst(reader);
+				}
+				readerAvailable.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/** Close all idle connections. Those in use will be closed when given back. */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for(PooledConnection reader : idleReaders) {
+				reader.close();
+				openedReaders--;
+			}
+			idleReaders.clear();
+			if(writer != null && writerOwner == null) {
+				writer.close();
+				writer = null;
+			}
+			readerAvailable.signalAll();
+			writerAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Open a new connection to the database.
+	 * @param forWriter if opening the writer connection. Its transactions are always begun as 
+	 *        IMMEDIATE, so it gets the write lock when beginning it, instead of failing when trying
+	 *        to upgrade its lock at its first write.
+	 * @return {@link PooledConnection} opened.
+	 * @throws SQLException */
+	private PooledConnection open(boolean forWriter) throws SQLException {
+		Properties props = new Properties();
+		if(forWriter) {
+			props.setProperty(TRANSACTION_MODE, "IMMEDIATE");
+		}
+		Connection conn = DriverManager.getConnection(url, props);
+		try(Statement stmt = conn.createStatement()) {
+			for(String pragma : pragmas) {
+				stmt.execute(pragma);
+			}
+		} catch(SQLException e) {
+			conn.close();
+			throw e;
+		}
+		if(tracer != null) {
+			conn = tracer.wrap(conn);
+		}
+		return new PooledConnection(database, conn);
+	}
+
+	/** Check if the pool is still open.
+	 * @throws SQLException if closed. */
+	private void checkNotClosed() throws SQLException {
+		if(closed) {
+			throw new SQLException("Database is closed");
+		}
+	}
+
+}
@@ -1,25 +1,120 @@
 package org.dnteam.histindex.database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dnteam.histindex.database.migrations.SchemaMigrator;
 
 /** A quick abstraction for keeping and accessing our database */
 public class Database {
 
 	private static String DRIVER = "jdbc:sqlite:";
+	/** Default number of reader connections kept opened */
+	public static final int DEFAULT_READERS = 4;
+	/** SQLite primary result code for a busy (locked) database */
+	private static final int SQLITE_BUSY = 5;
+	/** Max number of times to retry a transaction which failed for a busy database */
+	private static final int MAX_BUSY_RETRIES = 5;
+	/** Initial wait before retrying a busy transaction, in milliseconds (doubled each retry) */
+	private static final long BUSY_RETRY_WAIT = 50;
 
 	/** Filename (with path) of the database to use */
 	private String filename;
 	/** Jdbc url to use */
 	private String url;
+	/** Tuning options of our connections */
+	private final DatabaseConfig config;
+	/** Our long-lived connections */
+	private final ConnectionPool pool;
+	/** In-memory index of the quote relations, if enabled */
+	private final QuoteBitmapIndex quoteIndex;
+	/** Recent search results, if enabled */
+	private final SearchResultCache searchCache;
+	/** Cached entities of the reference tables, by its manager */
+	private final ConcurrentHashMap<EntityManager<?>, EntityCache<?>> entityCaches = 
+			new ConcurrentHashMap<EntityManager<?>, EntityCache<?>>();
+	/** Asynchronous access, created on first use */
+	private AsyncDatabase async;
 
 	/** Constructor
 	 * @param filename filename (with path) of the SQlite database to use */
 	public Database(String filename) {
+		this(filename, new DatabaseConfig());
+	}
+	
+	/** Constructor
+	 * @param filename filename (with path) of the SQlite database to use
+	 * @param maxReaders max number of reader connections to keep opened. */
+	public Database(String filename, int maxReaders) {
+		this(filename, createConfig(maxReaders));
+	}
+	
+	/** Constructor
+	 * @param filename filename (with path) of the SQlite database to use
+	 * @param config {@link DatabaseConfig} to apply to all connections. */
+	public Database(String filename, DatabaseConfig config) {
 		this.filename = filename;
 		this.url = DRIVER + this.filename;
+		this.config = config;
+		this.pool = new ConnectionPool(this, url, config);
+		this.quoteIndex = config.isBitmapIndex() ? new QuoteBitmapIndex() : null;
+		this.searchCache = (config.getSearchCacheSize() > 0) ?
+				new SearchResultCache(config.getSearchCacheSize()) : null;
+	}
+	
+	/** Create a default configuration with a custom number of readers.
+	 * @param maxReaders max number of reader connections to keep opened.
+	 * @return {@link DatabaseConfig} created. */
+	private static DatabaseConfig createConfig(int maxReaders) {
+		DatabaseConfig config = new DatabaseConfig();
+		config.setReaders(maxReaders);
+		return config;
+	}
+	
+	/** @return {@link #config} */
+	public DatabaseConfig getConfig() {
+		return config;
+	}
+	
+	/** Get the cache of the entities of a manager, creating it on first use.
+	 * @param manager the {@link EntityManager}.
+	 * @return its {@link EntityCache} or null if its entities aren't cached. */
+	@SuppressWarnings("unchecked")
+	<T extends Entity> EntityCache<T> getEntityCache(EntityManager<T> manager) {
+		if(!manager.isCached() || config.getEntityCacheSize() <= 0) {
+			return null;
+		}
+		EntityCache<T> cache = (EntityCache<T>) entityCaches.get(manager);
+		if(cache == null) {
+			EntityCache<T> created = new EntityCache<T>(config.getEntityCacheSize());
+			cache = (EntityCache<T>) entityCaches.putIfAbsent(manager, created);
+			if(cache == null) {
+				cache = created;
+			}
+		}
+		return cache;
+	}
+
+	/** @return {@link #quoteIndex}: null if not enabled by its {@link DatabaseConfig}. */
+	public QuoteBitmapIndex getQuoteIndex() {
+		return quoteIndex;
+	}
+
+	/** @return {@link #searchCache}: null if disabled by its {@link DatabaseConfig}. */
+	SearchResultCache getSearchResultCache() {
+		return searchCache;
+	}
+	
+	/** Get the asynchronous access to this database, creating it on first use. Its interactive
+	 * lane has one thread less than our readers, so a background work always has one available.
+	 * @return {@link #async}. */
+	public synchronized AsyncDatabase async() {
+		if(async == null) {
+			async = new AsyncDatabase(this, Math.max(1, config.getReaders() - 1));
+		}
+		return async;
 	}
 	
 	/** @return {@link #url} */
@@ -31,12 +126,111 @@ public class Database {
 	public String getFilename() {
 		return filename;
 	}
+	
+	/** Get the file of the database of a connection.
+	 * @param conn {@link Connection} to check.
+	 * @return {@link #getFilename()} of its {@link Database}, or null if not one of our pooled ones. */
+	static String filenameOf(Connection conn) {
+		return (conn instanceof DatabaseConnection) ? ((DatabaseConnection) conn).getDatabase().getFilename() : null;
+	}
+	
+	/** Lease a pooled connection for reading. If the current thread already holds the writer, 
+	 * it will be leased instead (so our own not yet commited changes are visible).
+	 * @return {@link ConnectionLease} to close when done.
+	 * @throws SQLException if couldn't get a connection. */
+	public ConnectionLease leaseReader() throws SQLException {
+		return pool.leaseReader();
+	}
+	
+	/** Lease the single writer connection, waiting for it if in use by another thread.
+	 * @return {@link ConnectionLease} to close when done.
+	 * @throws SQLException if couldn't get the connection. */
+	public ConnectionLease leaseWriter() throws SQLException {
+		return pool.leaseWriter();
+	}
+	
+	/** Execute a unit of work inside a single transaction with the writer connection, commiting
+	 * it if the work succeeded or rolling it back on any exception.<br/>
+	 * If the current thread is already inside a transaction, the work is done inside a savepoint
+	 * (thus rolling back only its own changes on failure, and only really commited by the outer one).
+	 * Otherwise, if the transaction fails because the database is busy (locked by another process), 
+	 * the whole work is retried a few times before giving up.
+	 * @param work {@link TransactionWork} to execute.
+	 * @return the result of the work.
+	 * @throws SQLException on error (after rolling back the work changes). */
+	public <R> R inTransaction(TransactionWork<R> work) throws SQLException {
+		try(ConnectionLease lease = leaseWriter()) {
+			Connection conn = lease.getConnection();
+			boolean nested = !conn.getAutoCommit();
+			long wait = BUSY_RETRY_WAIT;
+			int retries = 0;
+			while(true) {
+				try(TransactionScope transaction = new TransactionScope(conn)) {
+					R res = work.execute(conn);
+					transaction.commit();
+					return res;
+				} catch(SQLException e) {
+					if(nested || !isBusy(e) || retries >= MAX_BUSY_RETRIES) {
+						throw e;
+					}
+				}
+				retries++;
+				try {
+					Thread.sleep(wait);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting to retry a busy transaction", e);
+				}
+				wait *= 2;
+			}
+		}
+	}
+	
+	/** Check if an exception was caused by a busy database.
+	 * @param e {@link SQLException} to check.
+	 * @return if busy. */
+	public static boolean isBusy(SQLException e) {
+		/* Extended result codes keep the primary one at its lower byte */
+		return (e.getErrorCode() & 0xff) == SQLITE_BUSY;
+	}
+	
+	/** Stop our asynchronous works (if any) and close all pooled connections. Connections 
+	 * currently leased are closed when given back. */
+	public void close() {
+		AsyncDatabase running;
+		synchronized(this) {
+			running = async;
+			async = null;
+		}
+		if(running != null) {
+			running.shutdown();
+		}
+		pool.close();
+	}
+
+	/** Upgrade the database schema to the current version, if needed.
+	 * @return number of migrations applied.
+	 * @throws SQLException
+	 * @see SchemaMigrator */
+	public int migrate() throws SQLException {
+		SchemaMigrator migrator = SchemaMigrator.getSingleton();
+		if(config.isQueryOnly()) {
+			/* Can't write: just check if usable as is. */
+			int version = migrator.getVersion(this);
+			if(version != migrator.getLatestVersion()) {
+				throw new SQLException("Read only database at schema version " + version + 
+						" (expected " + migrator.getLatestVersion() + "): should be upgraded first");
+			}
+			return 0;
+		}
+		return migrator.migrate(this);
+	}
 
-	/** Create the database schema for a new database */
+	/** Create the database schema for a new database (at its latest version) */
 	public void createSchema() throws SQLException {
 
-		try (Connection c = DriverManager.getConnection(url); 
-				Statement stmt = c.createStatement()) {
+		try (ConnectionLease lease = leaseWriter(); 
+				Statement stmt = lease.getConnection().createStatement()) {
 
 			/* Authors */
 			stmt.execute("DROP TABLE IF EXISTS Authors;");
@@ -69,7 +263,23 @@ public class Database {
 			stmt.execute("CREATE TABLE IF NOT EXISTS "
 					+ "QuoteKeyword(QuoteId INTEGER, KeywordId INTEGER, "
 				   + "FOREIGN KEY(QuoteId) REFERENCES Quotes(Id), FOREIGN KEY (KeywordId) REFERENCES Keywords(Id));");
+			/* Tables created by migrations */
+			stmt.execute("DROP TABLE IF EXISTS QuotesFts;");
+			stmt.execute("DROP TABLE IF EXISTS Settings;");
+			
+			/* Base tables created: everything else is defined by our migrations */
+			stmt.execute("PRAGMA user_version = 0;");
+		}
+		if(quoteIndex != null) {
+			quoteIndex.invalidate();
+		}
+		for(EntityCache<?> cache : entityCaches.values()) {
+			cache.clear();
+		}
+		if(searchCache != null) {
+			searchCache.clear();
 		}
+		migrate();
 
 	}
 
@@ -0,0 +1,401 @@
+package org.dnteam.histindex.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/** SQLite tuning options applied to every connection a {@link Database} opens (as PRAGMAs),
+ * with some named profiles for common usages:
+ * <ul>
+ * <li><b>interactive</b>: WAL journal, balanced durability and moderate caches. The default.</li>
+ * <li><b>bulk-load</b>: WAL journal without syncs and big caches, for importing lots of data
+ *     (a crash could lose the last commited transactions, but won't corrupt the file).</li>
+ * <li><b>read-only-archive</b>: no writes allowed, big memory map and caches for queries.</li>
+ * </ul>
+ * Any option could be overridden by properties (see {@link #fromProperties(Properties, String)}).
+ * @author farrer */
+public class DatabaseConfig {
+
+	public static final String INTERACTIVE = "interactive";
+	public static final String BULK_LOAD = "bulk-load";
+	public static final String READ_ONLY_ARCHIVE = "read-only-archive";
+
+	/** Property keys (after its prefix) */
+	public static final String PROFILE = "profile";
+	public static final String JOURNAL_MODE = "journal_mode";
+	public static final String SYNCHRONOUS = "synchronous";
+	public static final String MMAP_SIZE = "mmap_size";
+	public static final String CACHE_SIZE = "cache_size";
+	public static final String TEMP_STORE = "temp_store";
+	public static final String BUSY_TIMEOUT = "busy_timeout";
+	public static final String QUERY_ONLY = "query_only";
+	public static final String READERS = "readers";
+	public static final String BITMAP_INDEX = "bitmap_index";
+	public static final String ENTITY_CACHE_SIZE = "entity_cache_size";
+	public static final String SEARCH_CACHE_SIZE = "search_cache_size";
+	public static final String TRACE = "trace";
+	public static final String SLOW_QUERY_MILLIS = "slow_query_millis";
+	public static final String TRACE_LOG = "trace_log";
+
+	/** SQLite journal modes */
+	public enum JournalMode { DELETE, TRUNCATE, PERSIST, MEMORY, WAL, OFF }
+	/** SQLite synchronous (fsync) levels */
+	public enum Synchronous { OFF, NORMAL, FULL, EXTRA }
+	/** Where SQLite keeps its temporary tables and indexes */
+	public enum TempStore { DEFAULT, FILE, MEMORY }
+	/** Which statements to log (see {@link QueryTracer}): none, only the slow ones or all */
+	public enum TraceMode { OFF, SLOW, ALL }
+
+	/** Name of the profile this configuration was based on */
+	private String profile;
+	/** Journal mode to use, or null to keep the file's current one */
+	private JournalMode journalMode;
+	/** Synchronous level */
+	private Synchronous synchronous;
+	/** Max bytes of the file to memory map (0 to disable) */
+	private long mmapSize;
+	/** Page cache size: positive in pages, negative in KiB (as SQLite's cache_size) */
+	private int cacheSize;
+	/** Where to keep temporary data */
+	private TempStore tempStore;
+	/** Time to wait for a locked database before failing, in milliseconds */
+	private int busyTimeout;
+	/** If no writes are allowed on the database */
+	private boolean queryOnly;
+	/** Max number of reader connections to keep */
+	private int readers;
+	/** If should keep an in-memory index of the quote relations (see {@link QuoteBitmapIndex}) */
+	private boolean bitmapIndex;
+	/** Max number of authors, books, sources and keywords (each) to keep in memory, shared by all 
+	 * quotes referencing them (see {@link EntityCache}), or 0 to disable */
+	private int entityCacheSize;
+	/** Max number of recent searches to keep the found quotes of (see {@link SearchResultCache}),
+	 * or 0 to disable */
+	private int searchCacheSize;
+	/** Which statements executed by our connections to log */
+	private TraceMode trace;
+	/** Time a statement should take to be logged as slow (with its query plan), in milliseconds */
+	private long slowQueryMillis;
+	/** Pattern of the rotating log files of the traced statements (as of 
+	 * {@link java.util.logging.FileHandler}) */
+	private String traceLog;
+
+	/** Constructor, with the interactive profile values. */
+	public DatabaseConfig() {
+		this.profile = INTERACTIVE;
+		this.journalMode = JournalMode.WAL;
+		this.synchronous = Synchronous.NORMAL;
+		this.mmapSize = 256L * 1024 * 1024;
+		this.cacheSize = -16 * 1024;
+		this.tempStore = TempStore.MEMORY;
+		this.busyTimeout = 5000;
+		this.queryOnly = false;
+		this.readers = Database.DEFAULT_READERS;
+		this.bitmapIndex = false;
+		this.entityCacheSize = 4096;
+		this.searchCacheSize = 32;
+		this.trace = TraceMode.OFF;
+		this.slowQueryMillis = 100;
+		this.traceLog = "%h/histindex-sql.%g.log";
+	}
+
+	/** @return a new configuration with the interactive profile. */
+	public static DatabaseConfig interactive() {
+		return new DatabaseConfig();
+	}
+
+	/** @return a new configuration with the bulk-load profile. */
+	public static DatabaseConfig bulkLoad() {
+		DatabaseConfig config = new DatabaseConfig();
+		config.profile = BULK_LOAD;
+		config.synchronous = Synchronous.OFF;
+		config.cacheSize = -256 * 1024;
+		config.busyTimeout = 30000;
+		config.readers = 1;
+		return config;
+	}
+
+	/** @return a new configuration with the read-only-archive profile. */
+	public static DatabaseConfig readOnlyArchive() {
+		DatabaseConfig config = new DatabaseConfig();
+		config.profile = READ_ONLY_ARCHIVE;
+		/* Changing the journal mode is a write: keep the file's one. */
+		config.journalMode = null;
+		config.mmapSize = 1024L * 1024 * 1024;
+		config.cacheSize = -64 * 1024;
+		config.queryOnly = true;
+		config.readers = 2 * Database.DEFAULT_READERS;
+		return config;
+	}
+
+	/** Get a new configuration for a named profile.
+	 * @param name name of the profile.
+	 * @return the configuration.
+	 * @throws IllegalArgumentException if no profile with this name. */
+	public static DatabaseConfig forProfile(String name) {
+		if(INTERACTIVE.equals(name)) {
+			return interactive();
+		} else if(BULK_LOAD.equals(name)) {
+			return bulkLoad();
+		} else if(READ_ONLY_ARCHIVE.equals(name)) {
+			return readOnlyArchive();
+		}
+		throw new IllegalArgumentException("Unknown database profile: " + name);
+	}
+
+	/** Create a configuration from properties: starts from the one defined by
+	 * <code>prefix + "profile"</code> (or interactive, if not defined), overriding any option
+	 * defined as <code>prefix + option</code> (ie: "database.synchronous = FULL").
+	 * @param props {@link Properties} to read.
+	 * @param prefix prefix of our keys (ie: "database.").
+	 * @return the configuration.
+	 * @throws IllegalArgumentException if any invalid value was found. */
+	public static DatabaseConfig fromProperties(Properties props, String prefix) {
+		DatabaseConfig config = forProfile(props.getProperty(prefix + PROFILE, INTERACTIVE).trim());
+
+		String value = getValue(props, prefix + JOURNAL_MODE);
+		if(value != null) {
+			config.journalMode = JournalMode.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		value = getValue(props, prefix + SYNCHRONOUS);
+		if(value != null) {
+			config.synchronous = Synchronous.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		value = getValue(props, prefix + MMAP_SIZE);
+		if(value != null) {
+			config.mmapSize = Long.parseLong(value);
+		}
+		value = getValue(props, prefix + CACHE_SIZE);
+		if(value != null) {
+			config.cacheSize = Integer.parseInt(value);
+		}
+		value = getValue(props, prefix + TEMP_STORE);
+		if(value != null) {
+			config.tempStore = TempStore.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		value = getValue(props, prefix + BUSY_TIMEOUT);
+		if(value != null) {
+			config.busyTimeout = Integer.parseInt(value);
+		}
+		value = getValue(props, prefix + QUERY_ONLY);
+		if(value != null) {
+			config.queryOnly = Boolean.parseBoolean(value);
+		}
+		value = getValue(props, prefix + READERS);
+		if(value != null) {
+			config.readers = Integer.parseInt(value);
+		}
+		value = getValue(props, prefix + BITMAP_INDEX);
+		if(value != null) {
+			config.bitmapIndex = Boolean.parseBoolean(value);
+		}
+		value = getValue(props, prefix + ENTITY_CACHE_SIZE);
+		if(value != null) {
+			config.entityCacheSize = Integer.parseInt(value);
+		}
+		value = getValue(props, prefix + SEARCH_CACHE_SIZE);
+		if(value != null) {
+			config.searchCacheSize = Integer.parseInt(value);
+		}
+		value = getValue(props, prefix + TRACE);
+		if(value != null) {
+			config.trace = TraceMode.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		value = getValue(props, prefix + SLOW_QUERY_MILLIS);
+		if(value != null) {
+			config.slowQueryMillis = Long.parseLong(value);
+		}
+		value = getValue(props, prefix + TRACE_LOG);
+		if(value != null) {
+			config.traceLog = value;
+		}
+		return config;
+	}
+
+	/** Get a trimmed, not empty, property value.
+	 * @param props {@link Properties} to read.
+	 * @param key key to get.
+	 * @return its value or null if not defined. */
+	private static String getValue(Properties props, String key) {
+		String value = props.getProperty(key);
+		if(value == null) {
+			return null;
+		}
+		value = value.trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	/** @return the PRAGMA statements to execute on each opened connection, in order. */
+	public List<String> getPragmas() {
+		List<String> pragmas = new ArrayList<String>();
+		pragmas.add("PRAGMA busy_timeout = " + busyTimeout);
+		if(journalMode != null) {
+			pragmas.add("PRAGMA journal_mode = " + journalMode.name());
+		}
+		pragmas.add("PRAGMA synchronous = " + synchronous.name());
+		pragmas.add("PRAGMA mmap_size = " + mmapSize);
+		pragmas.add("PRAGMA cache_size = " + cacheSize);
+		pragmas.add("PRAGMA temp_store = " + tempStore.name());
+		if(queryOnly) {
+			/* Must be the last, as others could need to write */
+			pragmas.add("PRAGMA query_only = 1");
+		}
+		return pragmas;
+	}
+
+	/** @return {@link #profile} */
+	public String getProfile() {
+		return profile;
+	}
+
+	/** @return {@link #journalMode} */
+	public JournalMode getJournalMode() {
+		return journalMode;
+	}
+
+	/** @param journalMode new journal mode, or null to keep the file's current one. */
+	public void setJournalMode(JournalMode journalMode) {
+		this.journalMode = journalMode;
+	}
+
+	/** @return {@link #synchronous} */
+	public Synchronous getSynchronous() {
+		return synchronous;
+	}
+
+	/** @param synchronous new synchronous level. */
+	public void setSynchronous(Synchronous synchronous) {
+		this.synchronous = synchronous;
+	}
+
+	/** @return {@link #mmapSize} */
+	public long getMmapSize() {
+		return mmapSize;
+	}
+
+	/** @param mmapSize max bytes to memory map (0 to disable). */
+	public void setMmapSize(long mmapSize) {
+		this.mmapSize = mmapSize;
+	}
+
+	/** @return {@link #cacheSize} */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/** @param cacheSize new page cache size: positive in pages, negative in KiB. */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/** @return {@link #tempStore} */
+	public TempStore getTempStore() {
+		return tempStore;
+	}
+
+	/** @param tempStore where to keep temporary data. */
+	public void setTempStore(TempStore tempStore) {
+		this.tempStore = tempStore;
+	}
+
+	/** @return {@link #busyTimeout} */
+	public int getBusyTimeout() {
+		return busyTimeout;
+	}
+
+	/** @param busyTimeout time to wait for a locked database, in milliseconds. */
+	public void setBusyTimeout(int busyTimeout) {
+		this.busyTimeout = busyTimeout;
+	}
+
+	/** @return {@link #queryOnly} */
+	public boolean isQueryOnly() {
+		return queryOnly;
+	}
+
+	/** @param queryOnly if no writes should be allowed. */
+	public void setQueryOnly(boolean queryOnly) {
+		this.queryOnly = queryOnly;
+	}
+
+	/** @return {@link #readers} */
+	public int getReaders() {
+		return readers;
+	}
+
+	/** @param readers max number of reader connections to keep. */
+	public void setReaders(int readers) {
+		this.readers = readers;
+	}
+
+	/** @return {@link #bitmapIndex} */
+	public boolean isBitmapIndex() {
+		return bitmapIndex;
+	}
+
+	/** @param bitmapIndex if should keep an in-memory index of the quote relations. */
+	public void setBitmapIndex(boolean bitmapIndex) {
+		this.bitmapIndex = bitmapIndex;
+	}
+
+	/** @return {@link #entityCacheSize} */
+	public int getEntityCacheSize() {
+		return entityCacheSize;
+	}
+
+	/** @param entityCacheSize max number of entities of each reference table to keep in memory
+	 *        (0 to disable). */
+	public void setEntityCacheSize(int entityCacheSize) {
+		this.entityCacheSize = entityCacheSize;
+	}
+
+	/** @return {@link #searchCacheSize} */
+	public int getSearchCacheSize() {
+		return searchCacheSize;
+	}
+
+	/** @param searchCacheSize max number of recent searches to keep the found quotes of 
+	 *        (0 to disable). */
+	public void setSearchCacheSize(int searchCacheSize) {
+		this.searchCacheSize = searchCacheSize;
+	}
+
+	/** @return {@link #trace} */
+	public TraceMode getTrace() {
+		return trace;
+	}
+
+	/** @param trace which statements to log. */
+	public void setTrace(TraceMode trace) {
+		this.trace = trace;
+	}
+
+	/** @return {@link #slowQueryMillis} */
+	public long getSlowQueryMillis() {
+		return slowQueryMillis;
+	}
+
+	/** @param slowQueryMillis time a statement should take to be logged as slow, in milliseconds. */
+	public void setSlowQueryMillis(long slowQueryMillis) {
+		this.slowQueryMillis = slowQueryMillis;
+	}
+
+	/** @return {@link #traceLog} */
+	public String getTraceLog() {
+		return traceLog;
+	}
+
+	/** @param traceLog pattern of the log files of the traced statements. */
+	public void setTraceLog(String traceLog) {
+		this.traceLog = traceLog;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return profile + " " + getPragmas() + ", readers = " + readers + ", bitmap index = " + bitmapIndex +
+				", entity cache size = " + entityCacheSize + ", search cache size = " + searchCacheSize + ", trace = " + trace;
+	}
+
+}
@@ -0,0 +1,14 @@
+package org.dnteam.histindex.database;
+
+/** Our own view of a pooled {@link java.sql.Connection}, also implemented by the connection
+ * proxy given to the lease owners (see {@link PooledConnection}).
+ * @author farrer */
+interface DatabaseConnection {
+
+	/** @return the {@link Database} the connection belongs to. */
+	Database getDatabase();
+
+	/** @return the {@link ChangeLog} of the connection. */
+	ChangeLog getChangeLog();
+
+}
@@ -0,0 +1,175 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A bounded in-memory cache of the entities of a reference table (ie: authors or keywords), by
+ * identifier, so each cached entity is a single instance shared by everything referencing it
+ * (see {@link EntityManager#resolve(Connection, long[])}).<br/>
+ * The entries are split in stripes, each with its own lock and its own least recently used
+ * eviction, so concurrent readers rarely wait for each other.<br/>
+ * The cache only ever holds commited rows: it isn't used by connections inside a transaction, and
+ * each change invalidates its entity twice: when made and when commited (as other connections
+ * still read the old row before that). Entities loaded while any change happened aren't cached.
+ * Kept by each {@link Database}.
+ * @author farrer
+ *
+ * @param <T> type of the cached {@link Entity}. */
+final class EntityCache<T extends Entity> {
+
+	/** Number of stripes (a power of two) */
+	private static final int STRIPES = 16;
+
+	/** The entries of a stripe, evicting its least recently used one when full. */
+	private static final class Stripe<T> extends LinkedHashMap<Long, T> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		/** Constructor.
+		 * @param capacity max number of entries. */
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	private final Stripe<T>[] stripes;
+	/** Incremented on each invalidation */
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Constructor.
+	 * @param size max number of entities to keep. */
+	@SuppressWarnings("unchecked")
+	EntityCache(int size) {
+		stripes = (Stripe<T>[]) new Stripe<?>[STRIPES];
+		int capacity = Math.max(1, (size + STRIPES - 1) / STRIPES);
+		for(int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe<T>(capacity);
+		}
+	}
+
+	/** Get the cache to use with a connection.
+	 * @param conn {@link Connection} to be used.
+	 * @param manager {@link EntityManager} of the cached entities.
+	 * @return the {@link EntityCache} of the manager at the connection's {@link Database}, or
+	 *         null if none (not a pooled connection, not a cached entity or disabled). */
+	static <T extends Entity> EntityCache<T> of(Connection conn, EntityManager<T> manager) {
+		if(conn instanceof DatabaseConnection) {
+			return ((DatabaseConnection) conn).getDatabase().getEntityCache(manager);
+		}
+		return null;
+	}
+
+	/** @return the stripe of an identifier. */
+	private Stripe<T> stripe(long id) {
+		int h = (int) (id ^ (id >>> 32));
+		h ^= (h >>> 16);
+		return stripes[h & (STRIPES - 1)];
+	}
+
+	/** @return current generation, to be given to {@link #putAll(Collection, long)} of entities
+	 *          loaded after it. */
+	long getGeneration() {
+		return generation.get();
+	}
+
+	/** Get a cached entity.
+	 * @param id its identifier.
+	 * @return the entity or null if not cached. */
+	T get(long id) {
+		Stripe<T> stripe = stripe(id);
+		synchronized(stripe) {
+			return stripe.get(id);
+		}
+	}
+
+	/** Cache some just loaded entities, unless the cache was invalidated since their load started.
+	 * @param entities the entities.
+	 * @param loadGeneration the {@link #getGeneration()} before their load. */
+	void putAll(Collection<T> entities, long loadGeneration) {
+		for(T entity : entities) {
+			if(generation.get() != loadGeneration) {
+				return;
+			}
+			Stripe<T> stripe = stripe(entity.getId());
+			synchronized(stripe) {
+				stripe.put(entity.getId(), entity);
+			}
+		}
+	}
+
+	/** Remove an entity from the cache (if cached).
+	 * @param id its identifier. */
+	void remove(long id) {
+		generation.incrementAndGet();
+		Stripe<T> stripe = stripe(id);
+		synchronized(stripe) {
+			stripe.remove(id);
+		}
+	}
+
+	/** Remove all entities from the cache. */
+	void clear() {
+		generation.incrementAndGet();
+		for(Stripe<T> stripe : stripes) {
+			synchronized(stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/** @return number of cached entities. */
+	int size() {
+		int size = 0;
+		for(Stripe<T> stripe : stripes) {
+			synchronized(stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/** Invalidate an entity changed with a connection: now and after the change is commited.
+	 * @param conn {@link Connection} the entity was changed with.
+	 * @param id its identifier.
+	 * @throws SQLException */
+	void invalidate(Connection conn, final long id) throws SQLException {
+		remove(id);
+		ChangeLog log = ChangeLog.of(conn);
+		if(log != null) {
+			log.add(conn, new ChangeLog.Change() {
+				@Override
+				public void apply() {
+					remove(id);
+				}
+			});
+		}
+	}
+
+	/** Invalidate all entities, after a change with a connection: now and after it is commited.
+	 * @param conn {@link Connection} the change was made with.
+	 * @throws SQLException */
+	void invalidateAll(Connection conn) throws SQLException {
+		clear();
+		ChangeLog log = ChangeLog.of(conn);
+		if(log != null) {
+			log.add(conn, new ChangeLog.Change() {
+				@Override
+				public void apply() {
+					clear();
+				}
+			});
+		}
+	}
+
+}
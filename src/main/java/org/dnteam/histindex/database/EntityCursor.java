@@ -0,0 +1,166 @@
+package org.dnteam.histindex.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** Lazy reading of the entities of a query: each row is only read (and its entity created) when
+ * asked for, so any number of rows is read in constant memory. Its statement is closed when the
+ * cursor is (or when all rows were read).
+ * @author farrer
+ *
+ * @param <T> type of the entities read. */
+final class EntityCursor<T extends Entity> implements Iterator<T>, AutoCloseable {
+
+	/** Reads an entity from the current row of a result set. */
+	interface RowReader<T> {
+		/** Populate an entity with the current row.
+		 * @param rs result set, at the row to read.
+		 * @param entity entity to populate.
+		 * @throws SQLException */
+		void read(ResultSet rs, T entity) throws SQLException;
+	}
+
+	/** Statement of the query */
+	private final PreparedStatement stmt;
+	/** Result of the query, while not closed */
+	private ResultSet rs;
+	/** Manager of the entities (to create them) */
+	private final EntityManager<T> manager;
+	/** How to read each row */
+	private final RowReader<T> reader;
+	/** The single instance to reuse for all rows, if reusing */
+	private final T reused;
+	/** If the result set is at a row not yet returned */
+	private boolean hasRow = false;
+
+	/** Execute the query of a statement (with its parameters already bound). On failure, the
+	 * statement is closed.
+	 * @param stmt {@link PreparedStatement} to execute.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param manager {@link EntityManager} of the entities.
+	 * @param reuseEntity if should populate a single instance with all rows, instead of a new
+	 *        one for each row.
+	 * @param reader how to read each row.
+	 * @throws SQLException */
+	EntityCursor(PreparedStatement stmt, int fetchSize, EntityManager<T> manager, boolean reuseEntity,
+			RowReader<T> reader) throws SQLException {
+		this.stmt = stmt;
+		this.manager = manager;
+		this.reader = reader;
+		this.reused = (reuseEntity) ? manager.createEntity() : null;
+		try {
+			if(fetchSize > 0) {
+				stmt.setFetchSize(fetchSize);
+			}
+			this.rs = stmt.executeQuery();
+		} catch(SQLException e) {
+			stmt.close();
+			throw e;
+		}
+	}
+
+	/** Read all remaining rows, until done or stopped by the callback. The cursor is closed after it.
+	 * @param callback {@link RowCallback} to receive the entities.
+	 * @return number of entities given to the callback.
+	 * @throws SQLException */
+	int forEach(RowCallback<? super T> callback) throws SQLException {
+		int count = 0;
+		try {
+			while(advance()) {
+				hasRow = false;
+				count++;
+				if(!callback.onRow(read())) {
+					break;
+				}
+			}
+		} finally {
+			close();
+		}
+		return count;
+	}
+
+	/** @return a sequential {@link Stream} of the remaining rows, closing the cursor when closed. */
+	Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					close();
+				} catch(SQLException e) {
+					throw new UncheckedSQLException(e);
+				}
+			}
+		});
+	}
+
+	/** {@inheritDoc}
+	 * @throws UncheckedSQLException on database errors. */
+	@Override
+	public boolean hasNext() {
+		try {
+			return advance();
+		} catch(SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/** {@inheritDoc}
+	 * @throws UncheckedSQLException on database errors. */
+	@Override
+	public T next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		hasRow = false;
+		try {
+			return read();
+		} catch(SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/** Move to the next row, if not already at one not yet returned. When there are no more rows,
+	 * closes the cursor.
+	 * @return if at a row.
+	 * @throws SQLException */
+	private boolean advance() throws SQLException {
+		if(!hasRow && rs != null) {
+			hasRow = rs.next();
+			if(!hasRow) {
+				close();
+			}
+		}
+		return hasRow;
+	}
+
+	/** @return the entity of the current row. */
+	private T read() throws SQLException {
+		T entity = (reused != null) ? reused : manager.createEntity();
+		reader.read(rs, entity);
+		return entity;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() throws SQLException {
+		if(rs == null) {
+			return;
+		}
+		hasRow = false;
+		try {
+			rs.close();
+		} finally {
+			rs = null;
+			stmt.close();
+		}
+	}
+
+}
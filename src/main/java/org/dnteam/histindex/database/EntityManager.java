@@ -1,15 +1,16 @@
 package org.dnteam.histindex.database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Stream;
+
+import org.dnteam.histindex.util.LongObjectMap;
 
 /**
  * Implementation of a database table manager for an Entity.
@@ -19,15 +20,135 @@ import java.util.List;
  */
 public abstract class EntityManager <T extends Entity> {
 	
-	protected static final int MAX_WHERE_ELEMENTS = 400;
+	/** Max number of rows sent to the database on a single JDBC batch */
+	protected static final int BATCH_SIZE = 500;
+	
+	/** Default number of rows to ask the driver for at once, when streaming */
+	public static final int DEFAULT_FETCH_SIZE = 256;
+	
+	/** Query to get the identifier of the last inserted row */
+	protected static final String LAST_INSERT_ID = "SELECT last_insert_rowid()";
+	
+	/** SQL statements of the manager, built on first use (as subclasses define its columns
+	 * at static fields, probably still not initialized at our constructor) */
+	private volatile Queries queries;
+	
+	/** Metrics of the manager operations, created on first use (for the same reason) */
+	private volatile ManagerMetrics metrics;
+	
+	/** The fixed SQL statements of an {@link EntityManager}, built only once. */
+	private static final class Queries {
+		final String columnsForSelect;
+		/** Order columns kept by the database, selected after the columns (or empty) */
+		final String orderColumnsForSelect;
+		/** Number of selected columns, including the order ones */
+		final int columnsSelected;
+		final String orderByColumnsForSelect;
+		final String selectFrom;
+		final String insert;
+		final String update;
+		final String delete;
+		final String load;
+		final String loadAll;
+		final String loadAllById;
+		final String loadByIds;
+		/** Order columns (qualified, ending with the identifier), for keyset pagination */
+		final String[] orderKey;
+		/** Indexes of the order columns at the select result */
+		final int[] orderKeyIndexes;
+		
+		/** Constructor.
+		 * @param manager {@link EntityManager} to build the statements for. */
+		Queries(EntityManager<?> manager) {
+			final String tableName = manager.getTableName();
+			final String tableAlias = manager.getTableAlias();
+			final String idColumn = manager.getIdColumn();
+			final String[] cols = manager.getColumns();
+			
+			StringBuilder select = new StringBuilder(tableAlias).append('.').append(idColumn);
+			StringBuilder insertCols = new StringBuilder();
+			StringBuilder insertVals = new StringBuilder();
+			StringBuilder updateCols = new StringBuilder();
+			for(int i = 0; i < cols.length; i++) {
+				if(i > 0) {
+					insertCols.append(", ");
+					insertVals.append(", ");
+					updateCols.append(", ");
+				}
+				select.append(", ").append(tableAlias).append('.').append(cols[i]);
+				insertCols.append(cols[i]);
+				insertVals.append('?');
+				updateCols.append(cols[i]).append(" = ?");
+			}
+			columnsForSelect = select.toString();
+			
+			String[] orderCols = manager.getOrderByColumns();
+			int totalOrderCols = (orderCols != null) ? orderCols.length : 0;
+			int selected = cols.length + 1;
+			orderKey = new String[totalOrderCols + 1];
+			orderKeyIndexes = new int[totalOrderCols + 1];
+			StringBuilder orderSelect = new StringBuilder();
+			for(int i = 0; i < totalOrderCols; i++) {
+				orderKey[i] = tableAlias + "." + orderCols[i];
+				int col = Arrays.asList(cols).indexOf(orderCols[i]);
+				if(col >= 0) {
+					/* Index at the select: after the identifier, at its column position */
+					orderKeyIndexes[i] = col + 2;
+				} else {
+					/* Kept by the database: selected after all columns */
+					orderSelect.append(", ").append(orderKey[i]);
+					selected++;
+					orderKeyIndexes[i] = selected;
+				}
+			}
+			orderKey[totalOrderCols] = tableAlias + "." + idColumn;
+			orderKeyIndexes[totalOrderCols] = 1;
+			orderByColumnsForSelect = Keyset.orderBy(orderKey);
+			orderColumnsForSelect = orderSelect.toString();
+			columnsSelected = selected;
+			
+			selectFrom = "SELECT " + columnsForSelect + orderColumnsForSelect + " FROM " + tableName + " " + 
+					tableAlias;
+			insert = "INSERT INTO " + tableName + " (" + insertCols + ") VALUES (" + insertVals + ")";
+			update = "UPDATE " + tableName + " SET " + updateCols + " WHERE " + idColumn + " = ?";
+			delete = "DELETE FROM " + tableName + " WHERE " + idColumn + " = ?";
+			load = selectFrom + " WHERE " + tableAlias + "." + idColumn + " = ?";
+			loadAll = selectFrom + " ORDER BY " + orderByColumnsForSelect;
+			loadAllById = selectFrom + " ORDER BY " + tableAlias + "." + idColumn;
+			loadByIds = selectFrom + " WHERE " + tableAlias + "." + idColumn + IdSet.IN + 
+					" ORDER BY " + orderByColumnsForSelect;
+		}
+	}
+	
+	/** @return the {@link Queries} of this manager, building them if not yet done. */
+	private Queries getQueries() {
+		Queries res = queries;
+		if(res == null) {
+			/* No need to synchronize: building it twice is harmless. */
+			res = new Queries(this);
+			queries = res;
+		}
+		return res;
+	}
+	
+	/** @return the {@link ManagerMetrics} of this manager, created if not yet done. */
+	ManagerMetrics getMetrics() {
+		ManagerMetrics res = metrics;
+		if(res == null) {
+			/* As the queries: creating it twice is harmless (the same operations are found). */
+			res = new ManagerMetrics(getTableName());
+			metrics = res;
+		}
+		return res;
+	}
 
 	/** Insert the Entity to its database.
 	 * @param db Database to use.
 	 * @param entity entity to insert
 	 * @throws SQLException */
 	public void insert(Database db, T entity) throws SQLException {
-		try(Connection conn = DriverManager.getConnection(db.getURL())) {
-			insert(conn, entity);
+		try(ConnectionLease lease = db.leaseWriter()) {
+			insert(lease.getConnection(), entity);
 		}
 	}
 	
@@ -36,43 +157,36 @@ public abstract class EntityManager <T extends Entity> {
 	 * @param entity entity to insert
 	 * @throws SQLException */
 	public void insert(Connection conn, T entity) throws SQLException {
-		assert(entity.getId() == 0);
-		String query = "INSERT INTO " + getTableName() + " (" ;
-		
-		String[] cols = getColumns();
-		String vals = "";
-		int cur = 0;
-		for(String col : cols) {
-			if(cur > 0) {
-				query += ", ";
-				vals += ", ";
-			}
-			query += col;
-			vals += "?";
-			cur++;
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			assert(entity.getId() == 0);
+	      try (PreparedStatement stmt = conn.prepareStatement(getQueries().insert)) {
+	      	 prepareStatament(stmt, entity, 1);
+	          rows = stmt.executeUpdate();
+	          if(rows != 0)
+	          {
+	         	 try(PreparedStatement sel = conn.prepareStatement(LAST_INSERT_ID))
+	         	 {
+	         		 try(ResultSet res = sel.executeQuery())
+	         		 {
+	         			 if(res.next())
+	         			 {
+	         				 entity.setId(res.getLong(1));
+	         				 afterSave(conn, entity);
+	         				 SearchResultCache.changed(conn);
+	         			 }
+	         			 else
+	         			 {
+	         			    assert(false);
+	         			 }
+	         		 }
+	         	 }
+	          }
+	      }
+		} finally {
+			getMetrics().insert.record(started, rows);
 		}
-		query += ") VALUES (" + vals + ")";
-		 
-      try (PreparedStatement stmt = conn.prepareStatement(query)) {
-      	 prepareStatament(stmt, entity, 1);
-          if(stmt.executeUpdate() != 0)
-          {
-         	 try(Statement sel = conn.createStatement())
-         	 {
-         		 try(ResultSet res = sel.executeQuery("SELECT last_insert_rowid()"))
-         		 {
-         			 if(res.next())
-         			 {
-         				 entity.setId(res.getLong(1));
-         			 }
-         			 else
-         			 {
-         			    assert(false);
-         			 }
-         		 }
-         	 }
-          }
-      }
 	}
 	
 	/** Update current Entity to its database.
@@ -80,8 +194,8 @@ public abstract class EntityManager <T extends Entity> {
 	 * @param entity entity to update
 	 * @throws SQLException */
 	public void update(Database db, T entity) throws SQLException {
-		try(Connection conn = DriverManager.getConnection(db.getURL())) {
-			update(conn, entity);
+		try(ConnectionLease lease = db.leaseWriter()) {
+			update(lease.getConnection(), entity);
 		}
 	}
 	
@@ -90,26 +204,23 @@ public abstract class EntityManager <T extends Entity> {
 	 * @param entity entity to update.
 	 * @throws SQLException */
 	public void update(Connection conn, T entity) throws SQLException {
-		assert(entity.getId() != 0);
-		String query = "UPDATE " + getTableName() + " SET " ;
-		
-		String[] cols = getColumns();
-		int cur = 1;
-		for(String col : cols) {
-			if(cur > 1) {
-				query += ", ";
-			}
-			query += col + " = ? ";
-			cur++;
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			assert(entity.getId() != 0);
+	      try (PreparedStatement stmt = conn.prepareStatement(getQueries().update)) {
+	      	 int cur = prepareStatament(stmt, entity, 1);
+	      	 stmt.setLong(cur, entity.getId());
+	          int res = stmt.executeUpdate();
+	          assert(res == 1);
+	          invalidateCached(conn, entity.getId());
+	          afterSave(conn, entity);
+	          SearchResultCache.changed(conn);
+	          rows = res;
+	      }
+		} finally {
+			getMetrics().update.record(started, rows);
 		}
-		query += " WHERE Id = ?";
-		 
-      try (PreparedStatement stmt = conn.prepareStatement(query)) {
-      	 prepareStatament(stmt, entity, 1);
-      	 stmt.setLong(cur, entity.getId());
-          int res = stmt.executeUpdate();
-          assert(res == 1);
-      }
 	}
 	
 	/** Delete an Entity from the database.
@@ -118,8 +229,8 @@ public abstract class EntityManager <T extends Entity> {
 	 * @return if deleted or not.
 	 * @throws SQLException */
 	public boolean delete(Database db, long id) throws SQLException {
-		try(Connection conn = DriverManager.getConnection(db.getURL())) {
-			return delete(conn, id);
+		try(ConnectionLease lease = db.leaseWriter()) {
+			return delete(lease.getConnection(), id);
 		}
 	}
 	
@@ -129,41 +240,245 @@ public abstract class EntityManager <T extends Entity> {
 	 * @return if deleted or not.
 	 * @throws SQLException */
 	public boolean delete(Connection conn, long id) throws SQLException {
-		assert(id != 0);
-		String query = "DELETE FROM " + getTableName() + " WHERE Id = ?";
-		 
-      try (PreparedStatement stmt = conn.prepareStatement(query)) {
-      	 stmt.setLong(1, id);
-          return stmt.executeUpdate() == 1;
-      }
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			assert(id != 0);
+	      try (PreparedStatement stmt = conn.prepareStatement(getQueries().delete)) {
+	      	 stmt.setLong(1, id);
+	          if(stmt.executeUpdate() == 1) {
+	         	 invalidateCached(conn, id);
+	         	 afterDelete(conn, id);
+	         	 SearchResultCache.changed(conn);
+	         	 rows = 1;
+	         	 return true;
+	          }
+	          rows = 0;
+	          return false;
+	      }
+		} finally {
+			getMetrics().delete.record(started, rows);
+		}
+	}
+	
+	/** Insert a list of Entities to the database, on a single transaction.
+	 * @param db Database to use.
+	 * @param entities entities to insert (all with no identifier yet).
+	 * @return the number of rows inserted for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] insertAll(Database db, List<T> entities) throws SQLException {
+		try(ConnectionLease lease = db.leaseWriter()) {
+			return insertAll(lease.getConnection(), entities);
+		}
+	}
+	
+	/** Insert a list of Entities to the database (with an already opened connection), using 
+	 * JDBC batches inside a single transaction (or savepoint, if already in a transaction).<br/>
+	 * The identifiers are set on the entities after each batch: as our tables use AUTOINCREMENT 
+	 * and we hold the write lock, the rows of a batch always get sequential identifiers, ending
+	 * at the last inserted one. If the insertion fails, nothing is inserted and all identifiers
+	 * are kept as zero.
+	 * @param conn connection to use.
+	 * @param entities entities to insert (all with no identifier yet).
+	 * @return the number of rows inserted for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] insertAll(Connection conn, List<T> entities) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			int[] res = new int[entities.size()];
+			if(entities.isEmpty()) {
+				rows = 0;
+				return res;
+			}
+			boolean inserted = false;
+			try(TransactionScope transaction = new TransactionScope(conn);
+				 PreparedStatement stmt = conn.prepareStatement(getQueries().insert);
+				 PreparedStatement sel = conn.prepareStatement(LAST_INSERT_ID)) {
+				for(int start = 0; start < entities.size(); start += BATCH_SIZE) {
+					int end = Math.min(start + BATCH_SIZE, entities.size());
+					for(T entity : entities.subList(start, end)) {
+						assert(entity.getId() == 0);
+						prepareStatament(stmt, entity, 1);
+						stmt.addBatch();
+					}
+					int[] counts = stmt.executeBatch();
+					System.arraycopy(counts, 0, res, start, counts.length);
+				
+					long id;
+					try(ResultSet rs = sel.executeQuery()) {
+						rs.next();
+						id = rs.getLong(1);
+					}
+					for(int i = end - 1; i >= start; i--) {
+						if(res[i] > 0) {
+							entities.get(i).setId(id);
+							id--;
+						}
+					}
+					for(int i = start; i < end; i++) {
+						if(res[i] > 0) {
+							afterSave(conn, entities.get(i));
+						}
+					}
+				}
+				SearchResultCache.changed(conn);
+				transaction.commit();
+				inserted = true;
+			} finally {
+				if(!inserted) {
+					/* Rolled back: no identifier is valid. */
+					for(T entity : entities) {
+						entity.setId(0);
+					}
+				}
+			}
+			rows = ManagerMetrics.sum(res);
+			return res;
+		} finally {
+			getMetrics().insertAll.record(started, rows);
+		}
+	}
+	
+	/** Update a list of Entities on the database, on a single transaction.
+	 * @param db Database to use.
+	 * @param entities entities to update.
+	 * @return the number of rows updated for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] updateAll(Database db, List<T> entities) throws SQLException {
+		try(ConnectionLease lease = db.leaseWriter()) {
+			return updateAll(lease.getConnection(), entities);
+		}
+	}
+	
+	/** Update a list of Entities on the database (with an already opened connection), using
+	 * JDBC batches inside a single transaction (or savepoint, if already in a transaction).
+	 * @param conn connection to use.
+	 * @param entities entities to update.
+	 * @return the number of rows updated for each entity, at the same order.
+	 * @throws SQLException */
+	public int[] updateAll(Connection conn, List<T> entities) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			int[] res = new int[entities.size()];
+			if(entities.isEmpty()) {
+				rows = 0;
+				return res;
+			}
+			try(TransactionScope transaction = new TransactionScope(conn);
+				 PreparedStatement stmt = conn.prepareStatement(getQueries().update)) {
+				for(int start = 0; start < entities.size(); start += BATCH_SIZE) {
+					int end = Math.min(start + BATCH_SIZE, entities.size());
+					for(T entity : entities.subList(start, end)) {
+						assert(entity.getId() != 0);
+						int cur = prepareStatament(stmt, entity, 1);
+						stmt.setLong(cur, entity.getId());
+						stmt.addBatch();
+					}
+					int[] counts = stmt.executeBatch();
+					System.arraycopy(counts, 0, res, start, counts.length);
+					for(int i = start; i < end; i++) {
+						if(res[i] != 0) {
+							invalidateCached(conn, entities.get(i).getId());
+							afterSave(conn, entities.get(i));
+						}
+					}
+				}
+				SearchResultCache.changed(conn);
+				transaction.commit();
+			}
+			rows = ManagerMetrics.sum(res);
+			return res;
+		} finally {
+			getMetrics().updateAll.record(started, rows);
+		}
+	}
+	
+	/** Delete Entities from the database, on a single transaction.
+	 * @param db Database to use.
+	 * @param ids identifiers of the entities to delete.
+	 * @return the number of rows deleted for each identifier, at the same order.
+	 * @throws SQLException */
+	public int[] deleteAll(Database db, long[] ids) throws SQLException {
+		try(ConnectionLease lease = db.leaseWriter()) {
+			return deleteAll(lease.getConnection(), ids);
+		}
+	}
+	
+	/** Delete Entities from the database (with an already opened connection), using
+	 * JDBC batches inside a single transaction (or savepoint, if already in a transaction).
+	 * @param conn connection to use.
+	 * @param ids identifiers of the entities to delete.
+	 * @return the number of rows deleted for each identifier, at the same order.
+	 * @throws SQLException */
+	public int[] deleteAll(Connection conn, long[] ids) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			int[] res = new int[ids.length];
+			if(ids.length == 0) {
+				rows = 0;
+				return res;
+			}
+			try(TransactionScope transaction = new TransactionScope(conn);
+				 PreparedStatement stmt = conn.prepareStatement(getQueries().delete)) {
+				for(int start = 0; start < ids.length; start += BATCH_SIZE) {
+					int end = Math.min(start + BATCH_SIZE, ids.length);
+					for(int i = start; i < end; i++) {
+						assert(ids[i] != 0);
+						stmt.setLong(1, ids[i]);
+						stmt.addBatch();
+					}
+					int[] counts = stmt.executeBatch();
+					System.arraycopy(counts, 0, res, start, counts.length);
+					for(int i = start; i < end; i++) {
+						if(res[i] != 0) {
+							invalidateCached(conn, ids[i]);
+							afterDelete(conn, ids[i]);
+						}
+					}
+				}
+				SearchResultCache.changed(conn);
+				transaction.commit();
+			}
+			rows = ManagerMetrics.sum(res);
+			return res;
+		} finally {
+			getMetrics().deleteAll.record(started, rows);
+		}
 	}
 	
 	/** @return String with all columns for selection use (ie: "Alias.id, Alias.column1, ... ") */
 	public String getColumnsForSelect() {
-		final String tableAlias = getTableAlias();
-		String query = tableAlias + ".Id";
-		String[] cols = getColumns();
-		for(String col : cols) {
-			query += ", " + tableAlias + "." + col;
-		}
-		
-		return query;
+		return getQueries().columnsForSelect;
+	}
+	
+	/** @return the order columns kept by the database (not at {@link #getColumns()}), to select after
+	 * {@link #getColumnsForSelect()} (ie: ", Alias.column1, ..."), or an empty String if none. */
+	String getOrderColumnsForSelect() {
+		return getQueries().orderColumnsForSelect;
+	}
+	
+	/** @return the number of selected columns, including the order ones. */
+	int getColumnsSelected() {
+		return getQueries().columnsSelected;
+	}
+	
+	/** @return the order columns (qualified, ending with the identifier), for keyset pagination. */
+	String[] getOrderKey() {
+		return getQueries().orderKey;
+	}
+	
+	/** @return the indexes, at a select of {@link #getColumnsForSelect()} and 
+	 * {@link #getOrderColumnsForSelect()}, of the order columns. */
+	int[] getOrderKeyIndexes() {
+		return getQueries().orderKeyIndexes;
 	}
 	
 	/** @return String with columns used for Order by */
 	public String getOrderByColumnsForSelect() {
-		final String tableAlias = getTableAlias();
-		String query = "";
-		String[] orderCols = getOrderByColumns();
-		if(orderCols != null)
-		{
-			for(String col : orderCols) {
-				query += tableAlias + "." + col + ", "; 
-			}
-		}
-		query += tableAlias + ".Id";
-		
-		return query;
+		return getQueries().orderByColumnsForSelect;
 	}
 	
 	/** Load the single entity from the database. 
@@ -172,8 +487,8 @@ public abstract class EntityManager <T extends Entity> {
 	 * @return new entity with loaded values, or null if none found. 
 	 * @throws SQLException */
 	public T load(Database db, long id) throws SQLException {
-		try(Connection conn = DriverManager.getConnection(db.getURL())) {
-			return load(conn, id);
+		try(ConnectionLease lease = db.leaseReader()) {
+			return load(lease.getConnection(), id);
 		}
 	}
 	
@@ -183,23 +498,25 @@ public abstract class EntityManager <T extends Entity> {
 	 * @return new entity with loaded values, or null if none found.
 	 * @throws SQLException */
 	public T load(Connection conn, long id) throws SQLException {
-		/* Define the Select query */
-		final String tableAlias = getTableAlias();
-		String query = "SELECT " +  getColumnsForSelect();
-		query += " FROM " + getTableName() + " " + tableAlias;
-		query += " WHERE " + tableAlias + ".Id = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, id);
-			try(ResultSet rs = stmt.executeQuery()) {
-				if(rs.next()) {
-					T entity = createEntity();
-					populate(rs, entity, 1);
-					return entity;
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(getQueries().load)){
+				stmt.setLong(1, id);
+				try(ResultSet rs = stmt.executeQuery()) {
+					if(rs.next()) {
+						T entity = createEntity();
+						populate(rs, entity, 1);
+						rows = 1;
+						return entity;
+					}
+					rows = 0;
+					return null;
 				}
-				return null;
-			}
-	   }
+		   }
+		} finally {
+			getMetrics().load.record(started, rows);
+		}
 	}
 	
 	/** Load all elements from the table.
@@ -207,8 +524,8 @@ public abstract class EntityManager <T extends Entity> {
 	 * @return List with all loaded Entities.
 	 * @throws SQLException */
 	public List<T> loadAll(Database database) throws SQLException {
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			return loadAll(conn);
+		try(ConnectionLease lease = database.leaseReader()) {
+			return loadAll(lease.getConnection());
 		}
 	}
 	
@@ -227,88 +544,254 @@ public abstract class EntityManager <T extends Entity> {
 	 * @return The loaded list.
 	 * @throws SQLException on error. */
 	public List<T> loadAll(Connection conn, boolean useFullOrderBy) throws SQLException {
-		final String tableAlias = getTableAlias();
-		String query = "SELECT " + getColumnsForSelect();
-		query += " FROM " + getTableName() + " " + tableAlias;
-		query += " ORDER BY ";
-		if(useFullOrderBy) {
-			query += getOrderByColumnsForSelect();
-		} else {
-			query += tableAlias + ".Id";
-		}
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			Queries queries = getQueries();
+			String query = (useFullOrderBy) ? queries.loadAll : queries.loadAllById;
 		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<T> list = new ArrayList<T>();
-				while(rs.next()) {
-					T entity = createEntity();
-					populate(rs, entity, 1);
-					list.add(entity);
+			try(PreparedStatement stmt = conn.prepareStatement(query)){
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<T> list = new ArrayList<T>();
+					while(rs.next()) {
+						T entity = createEntity();
+						populate(rs, entity, 1);
+						list.add(entity);
+					}
+					rows = list.size();
+					return list;
 				}
-				return list;
-			}
-	   }
+		   }
+		} finally {
+			getMetrics().loadAll.record(started, rows);
+		}
 	}
 
-	/** Load all entities wich identifiers are defined at the list.
+	/** Load all entities wich identifiers are defined at the array.
 	 * @param conn connection to use.
-	 * @param ids identifiers of the Entities to load.
+	 * @param ids identifiers of the Entities to load (better if sorted, ie: by 
+	 *        {@link org.dnteam.histindex.util.LongSet#toSortedArray()}).
 	 * @return List of loaded entities.
 	 * @throws SQLException. */
-	public List<T> load(Connection conn, List<Long> ids) throws SQLException {
+	public List<T> load(Connection conn, long[] ids) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			if(ids.length == 0) {
+				rows = 0;
+				return new ArrayList<T>(0);
+			}
 		
-		if(ids.size() == 0) {
-			return new ArrayList<T>(0);
-		}
-		if(ids.size() > MAX_WHERE_ELEMENTS) {
-			/* Must split the populate action between N searches and merge the results */
-			List<T> totalResults = new ArrayList<T>();
-			int init = 0;
-			int end;
-			do {
-				end = init + MAX_WHERE_ELEMENTS;
-				if(end > ids.size()) {
-					end = ids.size();
+			/* All ids bound at once, whatever its number. */
+			try(PreparedStatement stmt = conn.prepareStatement(getQueries().loadByIds)){
+				IdSet.bind(stmt, 1, ids);
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<T> list = new ArrayList<T>();
+					while(rs.next()) {
+						T entity = createEntity();
+						populate(rs, entity, 1);
+						list.add(entity);
+					}
+					rows = list.size();
+					return list;
 				}
-				totalResults.addAll(load(conn, ids.subList(init, end)));
-				init += MAX_WHERE_ELEMENTS;
-			} while(init < ids.size());
-
-			return totalResults;
+		   }
+		} finally {
+			getMetrics().loadByIds.record(started, rows);
+		}
+	}
+	
+	/** Load the related entities of some entities, as declared by a {@link FetchPlan}, with the 
+	 * fewest queries possible (at most one for each relation, whatever the number of entities).
+	 * @param conn connection to use.
+	 * @param entities the entities to populate with its related ones.
+	 * @param plan relations to load (null or empty for none).
+	 * @throws SQLException
+	 * @throws IllegalArgumentException if a relation of the plan can't be fetched by this manager. */
+	public void fetch(Connection conn, List<T> entities, FetchPlan<T> plan) throws SQLException {
+		if(plan != null && !plan.isEmpty()) {
+			throw new IllegalArgumentException(getTableName() + " can't fetch " + plan);
+		}
+	}
+	
+	/** Resolve some identifiers to its entities, for referencing them (ie: the books of quotes):
+	 * if the entities are cached (see {@link #isCached()}), each one is a single instance shared by 
+	 * all its references (thus must not be changed), and only the ones not cached yet are loaded. 
+	 * Otherwise, all are loaded.
+	 * @param conn connection to use.
+	 * @param ids identifiers of the entities (sorted, without duplicates).
+	 * @return the found entities, by its identifiers.
+	 * @throws SQLException */
+	public LongObjectMap<T> resolve(Connection conn, long[] ids) throws SQLException {
+		EntityCache<T> cache = conn.getAutoCommit() ? EntityCache.of(conn, this) : null;
+		if(cache == null) {
+			List<T> loaded = load(conn, ids);
+			loadRelated(conn, loaded);
+			return createHashMap(loaded);
 		}
 		
-		final String tableAlias = getTableAlias();
-		final String idColumn = getIdColumn();
-		
-		String query = "SELECT " + getColumnsForSelect();
-		query += " FROM " + getTableName() + " " + tableAlias;
-		query += " WHERE ";
-		for(int i=0; i < ids.size(); i++)
-		{
-			if(i > 0) {
-				query += " OR ";
+		LongObjectMap<T> found = new LongObjectMap<T>(ids.length);
+		long[] missing = new long[ids.length];
+		int missingCount = 0;
+		for(long id : ids) {
+			T entity = cache.get(id);
+			if(entity != null) {
+				found.put(id, entity);
+			} else {
+				missing[missingCount++] = id;
 			}
-			query += tableAlias + "." + idColumn + " = ?"; 
 		}
-		query += " ORDER BY ";
-		query += getOrderByColumnsForSelect();
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			int i = 1;
-			for(Long id : ids) {
-				stmt.setLong(i, id);
-				i++;
+		if(missingCount > 0) {
+			long generation = cache.getGeneration();
+			List<T> loaded = load(conn, Arrays.copyOf(missing, missingCount));
+			loadRelated(conn, loaded);
+			cache.putAll(loaded, generation);
+			for(T entity : loaded) {
+				found.put(entity.getId(), entity);
+			}
+		}
+		return found;
+	}
+	
+	/** Stream all elements of the table, reading each only when consumed (thus in constant memory).
+	 * The stream must be closed after use (ie: with a try-with-resources), and consumed while the
+	 * connection is still leased.
+	 * @param conn connection to use.
+	 * @return {@link Stream} of the entities, ordered as {@link #loadAll(Connection)}. On database
+	 *         errors while consuming it, throws {@link UncheckedSQLException}.
+	 * @throws SQLException */
+	public Stream<T> streamAll(Connection conn) throws SQLException {
+		return streamAll(conn, DEFAULT_FETCH_SIZE, false);
+	}
+	
+	/** Stream all elements of the table, reading each only when consumed.
+	 * @param conn connection to use.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param reuseEntity if should populate a single entity instance with all rows (so no entity
+	 *        should be kept after the next one is consumed).
+	 * @return {@link Stream} of the entities, to close after use.
+	 * @throws SQLException
+	 * @see #streamAll(Connection) */
+	public Stream<T> streamAll(Connection conn, int fetchSize, boolean reuseEntity) throws SQLException {
+		return openCursor(conn, getQueries().loadAll, null, fetchSize, reuseEntity).stream();
+	}
+	
+	/** Read all elements of the table, one by one, in constant memory.
+	 * @param conn connection to use.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param reuseEntity if should populate a single entity instance with all rows.
+	 * @param callback {@link RowCallback} receiving each entity, ordered as {@link #loadAll(Connection)}.
+	 * @return number of entities given to the callback.
+	 * @throws SQLException */
+	public int forEach(Connection conn, int fetchSize, boolean reuseEntity, RowCallback<? super T> callback) 
+			throws SQLException {
+		return openCursor(conn, getQueries().loadAll, null, fetchSize, reuseEntity).forEach(callback);
+	}
+	
+	/** Stream all entities wich identifiers are defined at the list, reading each only when consumed.
+	 * @param conn connection to use.
+	 * @param ids identifiers of the Entities to read.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param reuseEntity if should populate a single entity instance with all rows.
+	 * @return {@link Stream} of the entities, to close after use.
+	 * @throws SQLException
+	 * @see #streamAll(Connection) */
+	public Stream<T> stream(Connection conn, long[] ids, int fetchSize, boolean reuseEntity) 
+			throws SQLException {
+		return openCursor(conn, getQueries().loadByIds, ids, fetchSize, reuseEntity).stream();
+	}
+	
+	/** Read all entities wich identifiers are defined at the list, one by one, in constant memory.
+	 * @param conn connection to use.
+	 * @param ids identifiers of the Entities to read.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param reuseEntity if should populate a single entity instance with all rows.
+	 * @param callback {@link RowCallback} receiving each entity.
+	 * @return number of entities given to the callback.
+	 * @throws SQLException */
+	public int forEach(Connection conn, long[] ids, int fetchSize, boolean reuseEntity,
+			RowCallback<? super T> callback) throws SQLException {
+		return openCursor(conn, getQueries().loadByIds, ids, fetchSize, reuseEntity).forEach(callback);
+	}
+	
+	/** Open a cursor over the entities of a query.
+	 * @param conn connection to use.
+	 * @param query the query, selecting the entity columns first.
+	 * @param ids identifiers to bind to its single parameter, or null if none.
+	 * @param fetchSize number of rows to ask the driver for at once.
+	 * @param reuseEntity if should populate a single entity instance with all rows.
+	 * @return the opened {@link EntityCursor}.
+	 * @throws SQLException */
+	private EntityCursor<T> openCursor(Connection conn, String query, long[] ids, int fetchSize, 
+			boolean reuseEntity) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(query);
+		try {
+			if(ids != null) {
+				IdSet.bind(stmt, 1, ids);
 			}
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<T> list = new ArrayList<T>();
-				while(rs.next()) {
-					T entity = createEntity();
-					populate(rs, entity, 1);
-					list.add(entity);
+		} catch(SQLException e) {
+			stmt.close();
+			throw e;
+		}
+		return new EntityCursor<T>(stmt, fetchSize, this, reuseEntity, new EntityCursor.RowReader<T>() {
+			@Override
+			public void read(ResultSet rs, T entity) throws SQLException {
+				populate(rs, entity, 1);
+			}
+		});
+	}
+	
+	/** Load a page of the elements of the table, ordered as {@link #loadAll(Connection)}. Each page
+	 * seeks directly to its first row (by the order key of the previous page last one), so any 
+	 * page costs the same as the first.
+	 * @param conn connection to use.
+	 * @param token token of the page to load (see {@link Page#getNextToken()}), or null for the
+	 *        first page.
+	 * @param pageSize max number of entities to load.
+	 * @return the loaded {@link Page}.
+	 * @throws SQLException
+	 * @throws IllegalArgumentException if the token isn't a valid one. */
+	public Page<T> loadPage(Connection conn, String token, int pageSize) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			Queries queries = getQueries();
+			List<Object> params = new ArrayList<Object>();
+			StringBuilder query = new StringBuilder(queries.selectFrom);
+			if(token != null) {
+				query.append(" WHERE ").append(Keyset.after(queries.orderKey, 
+						Keyset.decode(token, queries.orderKey.length), params));
+			}
+			query.append(" ORDER BY ").append(queries.orderByColumnsForSelect).append(" LIMIT ?");
+		
+			try(PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+				int i = 1;
+				for(Object param : params) {
+					stmt.setObject(i, param);
+					i++;
+				}
+				/* One more, to know if there's a next page */
+				stmt.setInt(i, pageSize + 1);
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<T> list = new ArrayList<T>();
+					Object[] lastKey = null;
+					while(rs.next()) {
+						if(list.size() == pageSize) {
+							rows = list.size();
+							return new Page<T>(list, Keyset.encode(lastKey));
+						}
+						T entity = createEntity();
+						populate(rs, entity, 1);
+						list.add(entity);
+						lastKey = Keyset.read(rs, queries.orderKeyIndexes);
+					}
+					rows = list.size();
+					return new Page<T>(list, null);
 				}
-				return list;
 			}
-	   }
+		} finally {
+			getMetrics().loadPage.record(started, rows);
+		}
 	}
 	
 	/** Populate values from a ResultSet.
@@ -324,10 +807,10 @@ public abstract class EntityManager <T extends Entity> {
 	
 	/** Create a hash map, accessible by Entity identifier from a collection.
 	 * @param collection collection with entities to create a hash map from.
-	 * @return {@link HashMap} created. */
-	public HashMap<Long, T> createHashMap(Collection<T> collection) {
+	 * @return {@link LongObjectMap} created. */
+	public LongObjectMap<T> createHashMap(Collection<T> collection) {
 		
-		HashMap<Long, T> hash = new HashMap<Long, T>();
+		LongObjectMap<T> hash = new LongObjectMap<T>(collection.size());
 		
 		for(T e : collection) {
 			hash.put(e.getId(), e);
@@ -336,11 +819,66 @@ public abstract class EntityManager <T extends Entity> {
 		return hash;
 	}
 	
+	/** Remove an entity from its cache (if any), after changing it with a connection. There's no
+	 * need to after inserting one, as the cache only keeps found entities.
+	 * @param conn connection used.
+	 * @param id identifier of the entity.
+	 * @throws SQLException */
+	void invalidateCached(Connection conn, long id) throws SQLException {
+		EntityCache<T> cache = EntityCache.of(conn, this);
+		if(cache != null) {
+			cache.invalidate(conn, id);
+		}
+	}
+	
+	/** Remove all entities from its cache (if any), after a change with a connection affecting
+	 * them (ie: on its related entities).
+	 * @param conn connection used.
+	 * @throws SQLException */
+	void invalidateCached(Connection conn) throws SQLException {
+		EntityCache<T> cache = EntityCache.of(conn, this);
+		if(cache != null) {
+			cache.invalidateAll(conn);
+		}
+	}
+	
+	/** @return if the entities are kept at an {@link EntityCache} (when enabled by its 
+	 * {@link DatabaseConfig}): should be only for small and rarely changed tables. */
+	protected boolean isCached() {
+		return false;
+	}
+	
+	/** Load the related information of entities just loaded by {@link #resolve(Connection, long[])},
+	 * so they are cached with it.
+	 * @param conn connection to use.
+	 * @param entities the loaded entities.
+	 * @throws SQLException */
+	protected void loadRelated(Connection conn, List<T> entities) throws SQLException {
+	}
+	
+	/** Called after an entity was inserted or updated (with its identifier already defined), for
+	 * subclasses to follow the change (ie: on an in-memory index). Inside a transaction, the change
+	 * isn't commited yet: see {@link ChangeLog}.
+	 * @param conn connection used.
+	 * @param entity the entity saved.
+	 * @throws SQLException */
+	protected void afterSave(Connection conn, T entity) throws SQLException {
+	}
+	
+	/** Called after an entity was deleted, for subclasses to follow the change.
+	 * @param conn connection used.
+	 * @param id identifier of the deleted entity.
+	 * @throws SQLException
+	 * @see #afterSave(Connection, Entity) */
+	protected void afterDelete(Connection conn, long id) throws SQLException {
+	}
+	
 	/** @return vector with all column names, excluding the id */
 	protected abstract String[] getColumns();
 	
 	/** @return columns to default order by. No need to set id, as will always use it as last. 
-	 * If null will only order by id. */
+	 * If null will only order by id. Besides the entity columns, could have columns kept by the
+	 * database itself (ie: by triggers), never inserted or updated by the manager. */
 	protected abstract String[] getOrderByColumns();
 	
 	/** @return the database table name of the entity. */
@@ -0,0 +1,91 @@
+package org.dnteam.histindex.database;
+
+import java.util.EnumSet;
+
+/** Declaration of the related entities to load with some entities, as in
+ * <code>FetchPlan.of(Quote.class).with(Relation.BOOK_AUTHORS, Relation.SOURCE, Relation.KEYWORDS)</code>.
+ * Its {@link EntityManager} turns it into the fewest queries it could (see
+ * {@link EntityManager#fetch(java.sql.Connection, java.util.List, FetchPlan)}).<br/>
+ * Plans are immutable, so usually defined once, as constants.
+ * @author farrer
+ *
+ * @param <T> type of the {@link Entity} the plan is for. */
+public final class FetchPlan<T extends Entity> {
+
+	/** The relations which could be fetched, each of a single type of {@link Entity}. */
+	public enum Relation {
+		/** The {@link Book} of a {@link Quote}, with its {@link Author}s */
+		BOOK_AUTHORS(Quote.class),
+		/** The {@link Source} of a {@link Quote} */
+		SOURCE(Quote.class),
+		/** The {@link Keyword}s of a {@link Quote} */
+		KEYWORDS(Quote.class),
+		/** The {@link Author}s of a {@link Book} */
+		AUTHORS(Book.class);
+
+		/** Type of the entity with the relation */
+		private final Class<? extends Entity> owner;
+
+		/** Constructor.
+		 * @param owner type of the entity with the relation. */
+		private Relation(Class<? extends Entity> owner) {
+			this.owner = owner;
+		}
+	}
+
+	private final Class<T> entityClass;
+	private final EnumSet<Relation> relations;
+
+	/** Constructor.
+	 * @param entityClass type of the entity.
+	 * @param relations relations to fetch. */
+	private FetchPlan(Class<T> entityClass, EnumSet<Relation> relations) {
+		this.entityClass = entityClass;
+		this.relations = relations;
+	}
+
+	/** Create a plan with no relations to fetch.
+	 * @param entityClass type of the {@link Entity}.
+	 * @return the plan created. */
+	public static <T extends Entity> FetchPlan<T> of(Class<T> entityClass) {
+		return new FetchPlan<T>(entityClass, EnumSet.noneOf(Relation.class));
+	}
+
+	/** Create a plan fetching some more relations.
+	 * @param more the relations to add.
+	 * @return a new plan, with this one relations and the added ones.
+	 * @throws IllegalArgumentException if any relation isn't of the plan {@link Entity}. */
+	public FetchPlan<T> with(Relation... more) {
+		EnumSet<Relation> all = EnumSet.copyOf(relations);
+		for(Relation relation : more) {
+			if(relation.owner != entityClass) {
+				throw new IllegalArgumentException(relation + " isn't a relation of " + entityClass.getSimpleName());
+			}
+			all.add(relation);
+		}
+		return new FetchPlan<T>(entityClass, all);
+	}
+
+	/** @param relation a relation.
+	 * @return if the relation should be fetched. */
+	public boolean has(Relation relation) {
+		return relations.contains(relation);
+	}
+
+	/** @return if there's no relation to fetch. */
+	public boolean isEmpty() {
+		return relations.isEmpty();
+	}
+
+	/** @return {@link #entityClass} */
+	public Class<T> getEntityClass() {
+		return entityClass;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return entityClass.getSimpleName() + " with " + relations;
+	}
+
+}
@@ -0,0 +1,216 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Keeper of the quotes full-text (FTS5) index. New and changed quotes are indexed by triggers,
+ * but the quotes of a database created before the index must be indexed by a backfill, in chunks
+ * (usually at a background thread), so the database is usable meanwhile. Until the backfill is
+ * complete, text searches should fallback to plain LIKE filters.
+ * @author farrer */
+public class FullTextIndexer {
+
+	/** Name of the index virtual table (with the quote Id as its rowid) */
+	public static final String TABLE_NAME = "QuotesFts";
+	/** Key of the setting telling if all quotes are already indexed */
+	public static final String COMPLETE_SETTING = "QuotesFts.complete";
+	/** Default number of quotes to index per transaction on backfill */
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+	private static final FullTextIndexer SINGLETON = new FullTextIndexer();
+
+	private static final String SELECT_SETTING = "SELECT Value FROM Settings WHERE Key = ?";
+	private static final String UPDATE_SETTING = "INSERT OR REPLACE INTO Settings(Key, Value) VALUES (?, ?)";
+	private static final String COUNT_QUOTES = "SELECT COUNT(*) FROM Quotes";
+	private static final String COUNT_QUOTES_UNTIL = "SELECT COUNT(*) FROM Quotes WHERE Id <= ?";
+	private static final String CHUNK = "SELECT Id FROM Quotes WHERE Id > ? ORDER BY Id LIMIT ?";
+	private static final String INDEX_CHUNK = "INSERT INTO " + TABLE_NAME + "(rowid, Text, Comment) "
+			+ "SELECT Id, Text, Comment FROM Quotes q WHERE q.Id IN (" + CHUNK + ") "
+			+ "AND NOT EXISTS (SELECT 1 FROM " + TABLE_NAME + " f WHERE f.rowid = q.Id)";
+	private static final String LAST_OF_CHUNK = "SELECT MAX(Id) FROM (" + CHUNK + ")";
+
+	/** Listener of the backfill progress. */
+	public interface ProgressListener {
+		/** Called after each indexed chunk (from the indexing thread).
+		 * @param indexed quotes already indexed.
+		 * @param total total quotes to index. */
+		void onProgress(long indexed, long total);
+	}
+
+	private FullTextIndexer() {
+	}
+
+	/** @return the single instance of {@link FullTextIndexer}. */
+	public static FullTextIndexer getSingleton() {
+		return SINGLETON;
+	}
+
+	/** Check if all quotes are indexed (thus the index could be used by searches).
+	 * @param conn {@link Connection} to use.
+	 * @return if complete.
+	 * @throws SQLException */
+	public boolean isComplete(Connection conn) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(SELECT_SETTING)) {
+			stmt.setString(1, COMPLETE_SETTING);
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() && rs.getInt(1) != 0;
+			}
+		}
+	}
+
+	/** Index all not yet indexed quotes, a chunk per transaction, until done or the current thread
+	 * is interrupted. Does nothing if the index is already complete or the database is read only.
+	 * @param db {@link Database} to index.
+	 * @param chunkSize number of quotes to index per transaction.
+	 * @param listener {@link ProgressListener} to notify, or null.
+	 * @return if the index is complete.
+	 * @throws SQLException */
+	public boolean backfill(Database db, final int chunkSize, ProgressListener listener) throws SQLException {
+		if(db.getConfig().isQueryOnly()) {
+			return false;
+		}
+		long total;
+		try(ConnectionLease lease = db.leaseReader()) {
+			Connection conn = lease.getConnection();
+			if(isComplete(conn)) {
+				return true;
+			}
+			total = count(conn, COUNT_QUOTES, -1);
+		}
+		long lastId = 0;
+		while(!Thread.currentThread().isInterrupted()) {
+			final long from = lastId;
+			/* Keeping each chunk short, so user's changes aren't blocked for long. */
+			lastId = db.inTransaction(new TransactionWork<Long>() {
+				public Long execute(Connection conn) throws SQLException {
+					long last = 0;
+					try(PreparedStatement stmt = conn.prepareStatement(LAST_OF_CHUNK)) {
+						stmt.setLong(1, from);
+						stmt.setInt(2, chunkSize);
+						try(ResultSet rs = stmt.executeQuery()) {
+							if(rs.next()) {
+								last = rs.getLong(1);
+							}
+						}
+					}
+					if(last == 0) {
+						/* Nothing more to index */
+						setComplete(conn, true);
+						return 0L;
+					}
+					try(PreparedStatement stmt = conn.prepareStatement(INDEX_CHUNK)) {
+						stmt.setLong(1, from);
+						stmt.setInt(2, chunkSize);
+						stmt.executeUpdate();
+					}
+					return last;
+				}
+			});
+			if(lastId == 0) {
+				if(listener != null) {
+					listener.onProgress(total, total);
+				}
+				return true;
+			}
+			if(listener != null) {
+				long indexed;
+				try(ConnectionLease lease = db.leaseReader()) {
+					indexed = count(lease.getConnection(), COUNT_QUOTES_UNTIL, lastId);
+				}
+				/* Quotes could be inserted meanwhile */
+				total = Math.max(total, indexed);
+				listener.onProgress(indexed, total);
+			}
+		}
+		return false;
+	}
+
+	/** Mark the index as complete (or not).
+	 * @param conn {@link Connection} to use.
+	 * @param complete if complete.
+	 * @throws SQLException */
+	void setComplete(Connection conn, boolean complete) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(UPDATE_SETTING)) {
+			stmt.setString(1, COMPLETE_SETTING);
+			stmt.setInt(2, complete ? 1 : 0);
+			stmt.executeUpdate();
+		}
+		/* The text searches change from the LIKE fallback to the index (or back) */
+		SearchResultCache.changed(conn);
+	}
+
+	/** Execute a count query.
+	 * @param conn {@link Connection} to use.
+	 * @param query count query.
+	 * @param id parameter of the query, if any (negative for none).
+	 * @return the count.
+	 * @throws SQLException */
+	private long count(Connection conn, String query, long id) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(query)) {
+			if(id >= 0) {
+				stmt.setLong(1, id);
+			}
+			try(ResultSet rs = stmt.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+
+	/** Split a text into the tokens to search for, ignoring the ones without any letter or digit
+	 * (as the index tokenizer would) and removing any double quote (as it's the FTS5 string delimiter).
+	 * @param text text to split.
+	 * @return list of tokens (empty if none). */
+	public static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<String>();
+		if(text == null) {
+			return tokens;
+		}
+		for(String token : text.replace('"', ' ').trim().split("\\s+")) {
+			for(int i = 0; i < token.length(); i++) {
+				if(Character.isLetterOrDigit(token.charAt(i))) {
+					tokens.add(token);
+					break;
+				}
+			}
+		}
+		return tokens;
+	}
+
+	/** Create a FTS5 MATCH expression for a text.
+	 * @param text text to search for.
+	 * @param mode how to match the text (any but {@link SearchCriteria.TextMode#CONTAINS}).
+	 * @return the expression, or null if the text has no tokens to search for. */
+	public static String createMatchExpression(String text, SearchCriteria.TextMode mode) {
+		List<String> tokens = tokenize(text);
+		if(tokens.isEmpty()) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder();
+		if(mode == SearchCriteria.TextMode.PHRASE) {
+			builder.append('"');
+			for(int i = 0; i < tokens.size(); i++) {
+				if(i > 0) {
+					builder.append(' ');
+				}
+				builder.append(tokens.get(i));
+			}
+			builder.append('"');
+		} else {
+			for(int i = 0; i < tokens.size(); i++) {
+				if(i > 0) {
+					builder.append(' ');
+				}
+				builder.append('"').append(tokens.get(i)).append('"');
+				if(mode == SearchCriteria.TextMode.PREFIX) {
+					builder.append('*');
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.dnteam.histindex.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+
+import org.dnteam.histindex.util.IdBitmap;
+
+/** Binding of a set of identifiers, of any size, as a single statement parameter: a JSON array
+ * expanded by SQLite's <code>json_each</code>. Unlike "Id = ? OR Id = ? ..." chains, the statement
+ * text doesn't depend on the number of identifiers (so it's cached as any other) and isn't limited
+ * by the max number of parameters of a statement.
+ * @author farrer */
+final class IdSet {
+
+	/** Clause to filter a column by the identifiers bound at a single parameter, as in
+	 * <code>"QUO.Id" + IdSet.IN</code>. */
+	static final String IN = " IN (SELECT value FROM json_each(?))";
+
+	private IdSet() {
+	}
+
+	/** Bind identifiers to an {@link #IN} parameter.
+	 * @param stmt statement to bind to.
+	 * @param index index of the parameter.
+	 * @param ids identifiers to bind (better if sorted, as SQLite then seeks them in order).
+	 * @throws SQLException */
+	static void bind(PreparedStatement stmt, int index, long[] ids) throws SQLException {
+		StringBuilder json = new StringBuilder(ids.length * 8 + 2);
+		json.append('[');
+		for(int i = 0; i < ids.length; i++) {
+			if(i > 0) {
+				json.append(',');
+			}
+			json.append(ids[i]);
+		}
+		json.append(']');
+		stmt.setString(index, json.toString());
+	}
+
+	/** Bind the identifiers of a bitmap to an {@link #IN} parameter.
+	 * @param stmt statement to bind to.
+	 * @param index index of the parameter.
+	 * @param ids identifiers to bind.
+	 * @throws SQLException */
+	static void bind(PreparedStatement stmt, int index, IdBitmap ids) throws SQLException {
+		bind(stmt, index, ids.toArray());
+	}
+
+	/** Bind the identifiers of some entities to an {@link #IN} parameter.
+	 * @param stmt statement to bind to.
+	 * @param index index of the parameter.
+	 * @param entities entities which identifiers to bind.
+	 * @throws SQLException */
+	static void bindEntities(PreparedStatement stmt, int index, Collection<? extends Entity> entities)
+			throws SQLException {
+		StringBuilder json = new StringBuilder(entities.size() * 8 + 2);
+		json.append('[');
+		for(Entity entity : entities) {
+			if(json.length() > 1) {
+				json.append(',');
+			}
+			json.append(entity.getId());
+		}
+		json.append(']');
+		stmt.setString(index, json.toString());
+	}
+
+	/** Decode the identifiers aggregated by a <code>group_concat</code> (comma separated).
+	 * @param concat the aggregated value (null for none).
+	 * @return the identifiers, at the same order. */
+	static long[] parseConcat(String concat) {
+		if(concat == null || concat.isEmpty()) {
+			return new long[0];
+		}
+		int count = 1;
+		for(int i = 0; i < concat.length(); i++) {
+			if(concat.charAt(i) == ',') {
+				count++;
+			}
+		}
+		long[] ids = new long[count];
+		int cur = 0;
+		long value = 0;
+		for(int i = 0; i < concat.length(); i++) {
+			char c = concat.charAt(i);
+			if(c == ',') {
+				ids[cur++] = value;
+				value = 0;
+			} else {
+				value = value * 10 + (c - '0');
+			}
+		}
+		ids[cur] = value;
+		return ids;
+	}
+
+}
@@ -0,0 +1,180 @@
+package org.dnteam.histindex.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.List;
+
+/** Keyset ("seek") pagination: the next page of an ordered query is fetched by filtering for the
+ * rows after the order key of the last row read, instead of skipping them with an OFFSET (which
+ * reads, and discards, all previous rows on each page). The key of the last row is given to the 
+ * caller as an opaque token (see {@link Page#getNextToken()}).<br/>
+ * All order columns are ascending, with NULLs first (as SQLite sorts them), and the last one
+ * must be unique (usually the identifier).
+ * @author farrer */
+final class Keyset {
+
+	/** Version of the token format */
+	private static final byte VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte INTEGER = 1;
+	private static final byte REAL = 2;
+	private static final byte TEXT = 3;
+	private static final byte BLOB = 4;
+
+	private Keyset() {
+	}
+
+	/** Create the filter of the rows after a key, as
+	 * <code>c1 > v1 OR (c1 = v1 AND (c2 > v2 OR (c2 = v2 AND ...)))</code>, with NULL-safe 
+	 * comparisons. The statement text depends on which values are NULL, so the statements are still
+	 * cached for any page.
+	 * @param columns order columns (or expressions).
+	 * @param key values of the order columns of the last row read.
+	 * @param params list to add the parameters of the filter to, in order.
+	 * @return the filter. */
+	static String after(String[] columns, Object[] key, List<Object> params) {
+		assert(columns.length == key.length);
+		StringBuilder filter = new StringBuilder();
+		/* Leading range, so an index on the order columns is used to seek the first row */
+		if(key[0] != null) {
+			filter.append(columns[0]).append(" >= ? AND ");
+			params.add(key[0]);
+		}
+		StringBuilder closing = new StringBuilder();
+		for(int i = 0; i < columns.length; i++) {
+			filter.append("(");
+			if(key[i] == null) {
+				filter.append(columns[i]).append(" IS NOT NULL");
+			} else {
+				filter.append(columns[i]).append(" > ?");
+				params.add(key[i]);
+			}
+			if(i < columns.length - 1) {
+				filter.append(" OR (");
+				if(key[i] == null) {
+					filter.append(columns[i]).append(" IS NULL");
+				} else {
+					filter.append(columns[i]).append(" = ?");
+					params.add(key[i]);
+				}
+				filter.append(" AND ");
+				closing.append("))");
+			} else {
+				closing.append(")");
+			}
+		}
+		return filter.append(closing).toString();
+	}
+
+	/** @return the ORDER BY list of the order columns. */
+	static String orderBy(String[] columns) {
+		StringBuilder orderBy = new StringBuilder();
+		for(String column : columns) {
+			if(orderBy.length() > 0) {
+				orderBy.append(", ");
+			}
+			orderBy.append(column);
+		}
+		return orderBy.toString();
+	}
+
+	/** Read the order key of the current row.
+	 * @param rs result set, at the row to read.
+	 * @param indexes indexes of the order columns at the result set.
+	 * @return the key values.
+	 * @throws SQLException */
+	static Object[] read(ResultSet rs, int[] indexes) throws SQLException {
+		Object[] key = new Object[indexes.length];
+		for(int i = 0; i < indexes.length; i++) {
+			Object value = rs.getObject(indexes[i]);
+			if(value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				value = Long.valueOf(((Number) value).longValue());
+			} else if(value instanceof Float) {
+				value = Double.valueOf(((Float) value).doubleValue());
+			}
+			key[i] = value;
+		}
+		return key;
+	}
+
+	/** Encode a key as an opaque token.
+	 * @param key key to encode.
+	 * @return the token. */
+	static String encode(Object[] key) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(VERSION);
+			out.writeByte(key.length);
+			for(Object value : key) {
+				if(value == null) {
+					out.writeByte(NULL);
+				} else if(value instanceof Long) {
+					out.writeByte(INTEGER);
+					out.writeLong((Long) value);
+				} else if(value instanceof Double) {
+					out.writeByte(REAL);
+					out.writeDouble((Double) value);
+				} else if(value instanceof byte[]) {
+					byte[] blob = (byte[]) value;
+					out.writeByte(BLOB);
+					out.writeInt(blob.length);
+					out.write(blob);
+				} else {
+					out.writeByte(TEXT);
+					out.writeUTF(value.toString());
+				}
+			}
+			out.flush();
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+		} catch(IOException e) {
+			/* Never, in memory */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Decode a token created by {@link #encode(Object[])}.
+	 * @param token the token.
+	 * @param size expected number of key values.
+	 * @return the key.
+	 * @throws IllegalArgumentException if not a valid token for the key size. */
+	static Object[] decode(String token, int size) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					Base64.getUrlDecoder().decode(token)));
+			if(in.readByte() != VERSION || in.readByte() != size) {
+				throw new IllegalArgumentException("Invalid page token: " + token);
+			}
+			Object[] key = new Object[size];
+			for(int i = 0; i < size; i++) {
+				byte type = in.readByte();
+				if(type == NULL) {
+					key[i] = null;
+				} else if(type == INTEGER) {
+					key[i] = in.readLong();
+				} else if(type == REAL) {
+					key[i] = in.readDouble();
+				} else if(type == TEXT) {
+					key[i] = in.readUTF();
+				} else if(type == BLOB) {
+					byte[] blob = new byte[in.readInt()];
+					in.readFully(blob);
+					key[i] = blob;
+				} else {
+					throw new IllegalArgumentException("Invalid page token: " + token);
+				}
+			}
+			return key;
+		} catch(IOException e) {
+			throw new IllegalArgumentException("Invalid page token: " + token, e);
+		}
+	}
+
+}
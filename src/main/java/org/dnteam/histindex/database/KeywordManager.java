@@ -77,4 +77,10 @@ public class KeywordManager extends EntityManager<Keyword> {
 		return ID;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isCached() {
+		return true;
+	}
+
 }
@@ -0,0 +1,55 @@
+package org.dnteam.histindex.database;
+
+import org.dnteam.histindex.metrics.MetricsRegistry;
+import org.dnteam.histindex.metrics.OperationMetrics;
+
+/** The {@link OperationMetrics} of the operations of a manager, named by its table (as
+ * <code>Quotes.insert</code>), kept by the manager so each operation is recorded without any
+ * lookup.
+ * @author farrer */
+final class ManagerMetrics {
+
+	final OperationMetrics insert;
+	final OperationMetrics update;
+	final OperationMetrics delete;
+	final OperationMetrics insertAll;
+	final OperationMetrics updateAll;
+	final OperationMetrics deleteAll;
+	final OperationMetrics load;
+	final OperationMetrics loadAll;
+	final OperationMetrics loadByIds;
+	final OperationMetrics loadPage;
+	final OperationMetrics fetch;
+
+	/** Constructor.
+	 * @param tableName name of the manager table. */
+	ManagerMetrics(String tableName) {
+		insert = operation(tableName, "insert");
+		update = operation(tableName, "update");
+		delete = operation(tableName, "delete");
+		insertAll = operation(tableName, "insertAll");
+		updateAll = operation(tableName, "updateAll");
+		deleteAll = operation(tableName, "deleteAll");
+		load = operation(tableName, "load");
+		loadAll = operation(tableName, "loadAll");
+		loadByIds = operation(tableName, "loadByIds");
+		loadPage = operation(tableName, "loadPage");
+		fetch = operation(tableName, "fetch");
+	}
+
+	/** @return the {@link OperationMetrics} of an operation of a table. */
+	static OperationMetrics operation(String tableName, String operation) {
+		return MetricsRegistry.getSingleton().operation(tableName + "." + operation);
+	}
+
+	/** @param counts rows affected by each statement of a batch.
+	 * @return total rows affected. */
+	static long sum(int[] counts) {
+		long total = 0;
+		for(int count : counts) {
+			total += Math.max(0, count);
+		}
+		return total;
+	}
+
+}
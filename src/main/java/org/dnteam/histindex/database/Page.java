@@ -0,0 +1,41 @@
+package org.dnteam.histindex.database;
+
+import java.util.List;
+
+/** A page of entities of a query, with the token to fetch the next one.
+ * @see EntityManager#loadPage(java.sql.Connection, String, int)
+ * @author farrer
+ *
+ * @param <T> type of the entities. */
+public class Page<T> {
+
+	/** Entities of the page, in order */
+	private final List<T> items;
+	/** Token to fetch the next page, or null if this is the last one */
+	private final String nextToken;
+
+	/** Constructor.
+	 * @param items entities of the page.
+	 * @param nextToken token to fetch the next page, or null if the last one. */
+	Page(List<T> items, String nextToken) {
+		this.items = items;
+		this.nextToken = nextToken;
+	}
+
+	/** @return {@link #items} */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/** @return {@link #nextToken}: an opaque value, only meaningful to fetch the next page of the 
+	 *          same query. Null if this is the last page. */
+	public String getNextToken() {
+		return nextToken;
+	}
+
+	/** @return if there's a next page. */
+	public boolean hasNext() {
+		return nextToken != null;
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.dnteam.histindex.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/** A long-lived SQLite {@link Connection} kept by a {@link ConnectionPool}. It hands out a proxy of
+ * the real connection, which ignores close requests, as its lifetime is controlled by the pool, and
+ * which reuses the {@link java.sql.PreparedStatement}s prepared with it (see {@link StatementCache}).
+ * The proxy also implements {@link DatabaseConnection}, and follows its transaction calls to
+ * keep its {@link ChangeLog}.
+ * @author farrer */
+class PooledConnection implements InvocationHandler, DatabaseConnection {
+
+	/** Database of the connection */
+	private final Database database;
+	/** The real connection */
+	private final Connection connection;
+	/** Proxy of the real connection, given to the lease owners */
+	private final Connection proxy;
+	/** Cache of the statements prepared with the connection */
+	private final StatementCache statements;
+	/** In-memory changes following the connection transactions */
+	private final ChangeLog changeLog = new ChangeLog();
+
+	/** Constructor.
+	 * @param database {@link Database} of the connection.
+	 * @param connection the real opened connection to keep. */
+	PooledConnection(Database database, Connection connection) {
+		this.database = database;
+		this.connection = connection;
+		this.proxy = (Connection) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+				new Class<?>[] {Connection.class, DatabaseConnection.class}, this);
+		this.statements = new StatementCache(connection, proxy, StatementCache.DEFAULT_CAPACITY);
+	}
+
+	/** @return the {@link Connection} to use (a proxy of the real one). */
+	Connection getConnection() {
+		return proxy;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Database getDatabase() {
+		return database;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public ChangeLog getChangeLog() {
+		return changeLog;
+	}
+
+	/** Reset the connection state to be reused by a new lease (ie: rollback any not commited
+	 * transaction).
+	 * @return <code>true</code> if the connection is still usable.  */
+	boolean reset() {
+		try {
+			if(connection.isClosed()) {
+				return false;
+			}
+			if(!connection.getAutoCommit()) {
+				changeLog.rolledBack();
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			return true;
+		} catch(SQLException e) {
+			return false;
+		}
+	}
+
+	/** Really close the connection (and its cached statements). */
+	void close() {
+		statements.clear();
+		try {
+			connection.close();
+		} catch(SQLException e) {
+			/* Nothing to do: we are discarding it anyway. */
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if(method.getDeclaringClass() == DatabaseConnection.class) {
+			return method.invoke(this, args);
+		}
+		if("close".equals(name) && method.getParameterCount() == 0) {
+			/* Lifetime is controlled by the pool. */
+			return null;
+		}
+		if("prepareStatement".equals(name) && method.getParameterCount() == 1) {
+			return statements.prepare((String) args[0]);
+		}
+		boolean wasInTransaction = "setAutoCommit".equals(name) && !connection.getAutoCommit();
+		Object res;
+		try {
+			res = method.invoke(connection, args);
+		} catch(InvocationTargetException e) {
+			throw e.getCause();
+		}
+		followTransaction(name, args, res, wasInTransaction);
+		return res;
+	}
+
+	/** Follow a (successful) transaction call on the connection, with our {@link ChangeLog}.
+	 * @param name name of the called method.
+	 * @param args its arguments.
+	 * @param res its result.
+	 * @param wasInTransaction if was inside a transaction before the call. */
+	private void followTransaction(String name, Object[] args, Object res, boolean wasInTransaction) {
+		int argCount = (args == null) ? 0 : args.length;
+		if("commit".equals(name)) {
+			changeLog.commited();
+		} else if("rollback".equals(name)) {
+			if(argCount == 0) {
+				changeLog.rolledBack();
+			} else {
+				changeLog.savepointRolledBack((Savepoint) args[0]);
+			}
+		} else if("setSavepoint".equals(name)) {
+			changeLog.savepointSet((Savepoint) res);
+		} else if("releaseSavepoint".equals(name)) {
+			changeLog.savepointReleased((Savepoint) args[0]);
+		} else if("setAutoCommit".equals(name) && wasInTransaction && Boolean.TRUE.equals(args[0])) {
+			/* Enabling auto-commit commits the current transaction */
+			changeLog.commited();
+		}
+	}
+
+}
@@ -0,0 +1,430 @@
+package org.dnteam.histindex.database;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.dnteam.histindex.database.DatabaseConfig.TraceMode;
+
+/** An opt-in tracing of the SQL statements executed by the connections of a {@link Database}
+ * (see {@link DatabaseConfig#getTrace()}), to find which of our (mostly dynamic) queries are
+ * slow and why.<br/>
+ * Each real connection is wrapped by a proxy whose statements log, when done, its SQL, number
+ * of bound parameters, rows returned (or changed) and the time spent inside the driver (executing
+ * and stepping through its results, but not the caller's work between rows). Statements taking
+ * at least {@link DatabaseConfig#getSlowQueryMillis()} are logged as slow, with its
+ * <code>EXPLAIN QUERY PLAN</code> (executed with the same parameters), to spot full scans and
+ * temporary B-trees.<br/>
+ * Logged to local rotating files, shared by all databases with the same log pattern.
+ * @author farrer */
+final class QueryTracer {
+
+	/** Max size of each log file, in bytes */
+	private static final int LOG_LIMIT = 1024 * 1024;
+	/** Number of log files to rotate through */
+	private static final int LOG_COUNT = 5;
+	/** Statements (by its first word) which could be explained */
+	private static final String[] EXPLAINABLE = {"SELECT", "WITH", "INSERT", "UPDATE", "DELETE", "REPLACE"};
+
+	/** Opened log files, by its pattern (guarded by itself) */
+	private static final Map<String, Handler> HANDLERS = new HashMap<String, Handler>();
+
+	/** Which statements to log */
+	private final TraceMode mode;
+	/** Time to be logged as slow, in nanoseconds */
+	private final long slowNanos;
+	/** Where to log */
+	private final Handler handler;
+
+	/** Constructor.
+	 * @param mode which statements to log.
+	 * @param slowMillis time to be logged as slow, in milliseconds.
+	 * @param handler where to log. */
+	private QueryTracer(TraceMode mode, long slowMillis, Handler handler) {
+		this.mode = mode;
+		this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+		this.handler = handler;
+	}
+
+	/** Create the tracer defined by a configuration.
+	 * @param config {@link DatabaseConfig} of the database.
+	 * @return the {@link QueryTracer} or null if tracing is disabled.
+	 * @throws IllegalArgumentException if couldn't open its log file. */
+	static QueryTracer create(DatabaseConfig config) {
+		if(config.getTrace() == null || config.getTrace() == TraceMode.OFF) {
+			return null;
+		}
+		return new QueryTracer(config.getTrace(), config.getSlowQueryMillis(),
+				getHandler(config.getTraceLog()));
+	}
+
+	/** Get the log file handler of a pattern, opening it on first use.
+	 * @param pattern {@link FileHandler} pattern of the log files.
+	 * @return its {@link Handler}.
+	 * @throws IllegalArgumentException if couldn't open it. */
+	private static Handler getHandler(String pattern) {
+		synchronized(HANDLERS) {
+			Handler handler = HANDLERS.get(pattern);
+			if(handler == null) {
+				try {
+					handler = new FileHandler(pattern, LOG_LIMIT, LOG_COUNT, true);
+				} catch(IOException e) {
+					throw new IllegalArgumentException("Couldn't open the SQL trace log: " + pattern, e);
+				}
+				handler.setLevel(Level.ALL);
+				handler.setFormatter(new Formatter() {
+					@Override
+					public String format(LogRecord record) {
+						return String.format("%1$tF %1$tT.%1$tL %2$-7s %3$s%n", new Date(record.getMillis()),
+								record.getLevel(), record.getMessage());
+					}
+				});
+				HANDLERS.put(pattern, handler);
+			}
+			return handler;
+		}
+	}
+
+	/** Wrap a real connection, tracing the statements created with it.
+	 * @param connection the {@link Connection}.
+	 * @return its traced proxy. */
+	Connection wrap(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(QueryTracer.class.getClassLoader(),
+				new Class<?>[] {Connection.class}, new TracedConnection(connection));
+	}
+
+	/** Log an execution done, if it should be.
+	 * @param connection the real {@link Connection} it was executed with.
+	 * @param execution the {@link Execution} done. */
+	private void log(Connection connection, Execution execution) {
+		boolean slow = execution.nanos >= slowNanos;
+		if(!slow && mode != TraceMode.ALL) {
+			return;
+		}
+		StringBuilder msg = new StringBuilder();
+		if(slow) {
+			msg.append("[SLOW] ");
+		}
+		msg.append(String.format(Locale.ROOT, "%.3f ms, ", execution.nanos / 1e6));
+		msg.append(execution.rows).append(" rows, ");
+		msg.append(execution.bindings.size()).append(" params");
+		if(execution.batches > 0) {
+			msg.append(", ").append(execution.batches).append(" batches");
+		}
+		msg.append(": ").append(execution.sql.trim().replaceAll("\\s+", " "));
+		if(slow && isExplainable(execution.sql)) {
+			explain(connection, execution, msg);
+		}
+		handler.publish(new LogRecord(slow ? Level.WARNING : Level.FINE, msg.toString()));
+	}
+
+	/** @param sql a SQL statement.
+	 * @return if it has a query plan. */
+	private static boolean isExplainable(String sql) {
+		String trimmed = sql.trim();
+		for(String start : EXPLAINABLE) {
+			if(trimmed.regionMatches(true, 0, start, 0, start.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Append the query plan of an execution, one step per line.
+	 * @param connection the real {@link Connection} it was executed with.
+	 * @param execution the {@link Execution} to explain.
+	 * @param msg where to append. */
+	private static void explain(Connection connection, Execution execution, StringBuilder msg) {
+		try(PreparedStatement stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + execution.sql)) {
+			for(Map.Entry<Integer, Binding> binding : execution.bindings.entrySet()) {
+				binding.getValue().apply(stmt);
+			}
+			try(ResultSet rs = stmt.executeQuery()) {
+				while(rs.next()) {
+					msg.append(System.lineSeparator()).append("        ").append(rs.getString("detail"));
+				}
+			}
+		} catch(SQLException e) {
+			msg.append(System.lineSeparator()).append("        (no query plan: ").append(e.getMessage()).append(')');
+		}
+	}
+
+	/** A parameter bound to a {@link PreparedStatement}: the setter called and its arguments. */
+	private static final class Binding {
+		private final Method setter;
+		private final Object[] args;
+
+		/** Constructor.
+		 * @param setter the setter method called.
+		 * @param args its arguments (with the parameter index). */
+		Binding(Method setter, Object[] args) {
+			this.setter = setter;
+			this.args = args;
+		}
+
+		/** Bind the same to another statement.
+		 * @param stmt {@link PreparedStatement} to bind to.
+		 * @throws SQLException */
+		void apply(PreparedStatement stmt) throws SQLException {
+			try {
+				setter.invoke(stmt, args);
+			} catch(InvocationTargetException e) {
+				throw (e.getCause() instanceof SQLException) ? (SQLException) e.getCause() :
+					new SQLException(e.getCause());
+			} catch(IllegalAccessException e) {
+				throw new SQLException(e);
+			}
+		}
+	}
+
+	/** An execution of a statement, from its start until its results are closed. */
+	private static final class Execution {
+		/** Executed SQL */
+		private final String sql;
+		/** Bound parameters, by index */
+		private final TreeMap<Integer, Binding> bindings;
+		/** Number of batches executed */
+		private final int batches;
+		/** Time spent inside the driver, in nanoseconds */
+		private long nanos;
+		/** Rows returned or changed */
+		private long rows;
+		/** If already logged */
+		private boolean done;
+
+		/** Constructor.
+		 * @param sql executed SQL.
+		 * @param bindings its bound parameters (not copied).
+		 * @param batches number of batches executed. */
+		Execution(String sql, TreeMap<Integer, Binding> bindings, int batches) {
+			this.sql = sql;
+			this.bindings = bindings;
+			this.batches = batches;
+		}
+	}
+
+	/** Handles the calls to a traced {@link Connection}, tracing the statements created. */
+	private final class TracedConnection implements InvocationHandler {
+		/** The real connection */
+		private final Connection connection;
+
+		/** Constructor.
+		 * @param connection the real connection. */
+		TracedConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object res;
+			try {
+				res = method.invoke(connection, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+			String name = method.getName();
+			if("prepareStatement".equals(name) && res instanceof PreparedStatement) {
+				return Proxy.newProxyInstance(QueryTracer.class.getClassLoader(), new Class<?>[] {PreparedStatement.class},
+						new TracedStatement(connection, (Connection) proxy, (Statement) res, (String) args[0]));
+			} else if("createStatement".equals(name) && res instanceof Statement) {
+				return Proxy.newProxyInstance(QueryTracer.class.getClassLoader(), new Class<?>[] {Statement.class},
+						new TracedStatement(connection, (Connection) proxy, (Statement) res, null));
+			}
+			return res;
+		}
+	}
+
+	/** Handles the calls to a traced {@link Statement} (prepared or not). */
+	private final class TracedStatement implements InvocationHandler {
+		/** The real connection */
+		private final Connection connection;
+		/** The traced connection (its owner) */
+		private final Connection owner;
+		/** The real statement */
+		private final Statement statement;
+		/** SQL it was prepared with, or null if not prepared */
+		private final String sql;
+		/** Currently bound parameters, by index */
+		private TreeMap<Integer, Binding> bindings = new TreeMap<Integer, Binding>();
+		/** Number of batches added since its last execution */
+		private int batches;
+		/** Execution which results are still opened, if any */
+		private Execution pending;
+
+		/** Constructor.
+		 * @param connection the real {@link Connection}.
+		 * @param owner the traced {@link Connection}.
+		 * @param statement the real {@link Statement}.
+		 * @param sql SQL it was prepared with, or null if not prepared. */
+		TracedStatement(Connection connection, Connection owner, Statement statement, String sql) {
+			this.connection = connection;
+			this.owner = owner;
+			this.statement = statement;
+			this.sql = sql;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(name.startsWith("execute")) {
+				return execute(proxy, method, args);
+			} else if("getConnection".equals(name)) {
+				return owner;
+			} else if("getResultSet".equals(name)) {
+				ResultSet rs = (ResultSet) call(method, args);
+				return (rs != null && pending != null) ? wrap(proxy, rs, pending) : rs;
+			} else if("close".equals(name) || "getMoreResults".equals(name)) {
+				finish();
+			} else if(method.getDeclaringClass() == PreparedStatement.class) {
+				if(name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+					/* Changing the parameters of a statement keeps the previous ones at its executions */
+					if(pending != null) {
+						bindings = new TreeMap<Integer, Binding>(bindings);
+					}
+					bindings.put((Integer) args[0], new Binding(method, args.clone()));
+				} else if("clearParameters".equals(name)) {
+					bindings = new TreeMap<Integer, Binding>();
+				} else if("addBatch".equals(name)) {
+					batches++;
+				}
+			} else if("clearBatch".equals(name)) {
+				batches = 0;
+			}
+			return call(method, args);
+		}
+
+		/** Call a method of the real statement.
+		 * @param method {@link Method} to call.
+		 * @param args its arguments.
+		 * @return its result.
+		 * @throws Throwable whatever it throws. */
+		private Object call(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(statement, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/** Execute the statement, logging it when its results are done.
+		 * @param proxy the traced statement.
+		 * @param method the execute method called.
+		 * @param args its arguments.
+		 * @return its result (a traced {@link ResultSet}, if any).
+		 * @throws Throwable whatever it throws. */
+		private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+			finish();
+			String executed = (args != null && args.length > 0 && args[0] instanceof String) ?
+					(String) args[0] : sql;
+			Execution execution = new Execution((executed == null) ? "(batch)" : executed, bindings, batches);
+			if(method.getName().equals("executeBatch")) {
+				batches = 0;
+			}
+			long started = System.nanoTime();
+			Object res;
+			try {
+				res = call(method, args);
+			} finally {
+				execution.nanos = System.nanoTime() - started;
+			}
+			if(res instanceof ResultSet) {
+				pending = execution;
+				return wrap(proxy, (ResultSet) res, execution);
+			} else if(Boolean.TRUE.equals(res)) {
+				/* Results got by getResultSet */
+				pending = execution;
+				return res;
+			} else if(res instanceof Boolean) {
+				execution.rows = Math.max(0, statement.getUpdateCount());
+			} else if(res instanceof Number) {
+				execution.rows = ((Number) res).longValue();
+			} else if(res instanceof int[]) {
+				for(int count : (int[]) res) {
+					execution.rows += Math.max(0, count);
+				}
+			} else if(res instanceof long[]) {
+				for(long count : (long[]) res) {
+					execution.rows += Math.max(0, count);
+				}
+			}
+			done(execution);
+			return res;
+		}
+
+		/** Log the pending execution, if any. */
+		private void finish() {
+			if(pending != null) {
+				done(pending);
+			}
+		}
+
+		/** Log an execution, once.
+		 * @param execution the {@link Execution} done. */
+		private void done(Execution execution) {
+			if(execution == pending) {
+				pending = null;
+			}
+			if(!execution.done) {
+				execution.done = true;
+				log(connection, execution);
+			}
+		}
+
+		/** Wrap the results of an execution, to follow them.
+		 * @param stmt the traced statement.
+		 * @param rs the real {@link ResultSet}.
+		 * @param execution its {@link Execution}.
+		 * @return the traced {@link ResultSet}. */
+		private ResultSet wrap(final Object stmt, final ResultSet rs, final Execution execution) {
+			return (ResultSet) Proxy.newProxyInstance(QueryTracer.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+					new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					String name = method.getName();
+					if("getStatement".equals(name)) {
+						return stmt;
+					}
+					boolean next = "next".equals(name);
+					long started = next ? System.nanoTime() : 0;
+					Object res;
+					try {
+						res = method.invoke(rs, args);
+					} catch(InvocationTargetException e) {
+						throw e.getCause();
+					} finally {
+						if(next) {
+							execution.nanos += System.nanoTime() - started;
+						}
+					}
+					if(next && Boolean.TRUE.equals(res)) {
+						execution.rows++;
+					} else if("close".equals(name)) {
+						done(execution);
+					}
+					return res;
+				}
+			});
+		}
+	}
+
+}
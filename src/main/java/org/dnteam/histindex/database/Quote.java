@@ -3,7 +3,7 @@ package org.dnteam.histindex.database;
 import java.util.LinkedList;
 import java.util.List;
 
-import org.dnteam.histindex.util.StringUtil;
+import org.dnteam.histindex.util.PageRange;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -28,10 +28,10 @@ public class Quote extends Entity {
 	private Source source;
 	/** {@link Keyword} list. */
 	private List<Keyword> keywords = new LinkedList<Keyword>();
-	/** If #page is dirty and need to reset #pageAsNumber */
-	private boolean pageIsDirty = true;
-	/** Integer value for 'page' */
-	private int pageAsNumber = 0;
+	/** Pages of {@link #page}, or null if still not parsed */
+	private PageRange pages = PageRange.NONE;
+	/** Full-text search BM25 rank (lower is more relevant), or 0 if not ranked */
+	private double rank = 0;
 	
 	/** @return {@link #text} */
 	public String getText() {
@@ -55,24 +55,33 @@ public class Quote extends Entity {
 		this.comment = comment;
 	}
 	
-	public int getPageAsNumber() {
-		if(pageIsDirty) {
-			String val = "";
-			for(Character c : page.toCharArray()) {
-				if(!Character.isDigit(c)) {
-					break;
-				}
-				val += c;
-			}
-			if(!StringUtil.isEmpty(val)) {
-				pageAsNumber = Integer.decode(val);
-			} else {
-				pageAsNumber = 0;
-			}
-			pageIsDirty = false;
+	/** @return the first and last pages of {@link #page} (see {@link PageRange#parse(String)}). */
+	public PageRange getPageRange() {
+		if(pages == null) {
+			pages = PageRange.parse(page);
 		}
-		
-		return pageAsNumber;
+		return pages;
+	}
+	
+	/** @return first page of {@link #page} (0 if none). */
+	public int getPageStart() {
+		return getPageRange().getStart();
+	}
+	
+	/** @return last page of {@link #page} (0 if none). */
+	public int getPageEnd() {
+		return getPageRange().getEnd();
+	}
+	
+	/** @return {@link #rank}. */
+	public double getRank() {
+		return rank;
+	}
+	
+	/** Set {@link #rank}.
+	 * @param rank new {@link #rank} value. */
+	public void setRank(double rank) {
+		this.rank = rank;
 	}
 	
 	/** @return {@link #page}. */
@@ -84,7 +93,15 @@ public class Quote extends Entity {
 	 * @param page new {@link #page} value. */
 	public void setPage(String page) {
 		this.page = (page != null) ? page : "";
-		this.pageIsDirty = true;
+		this.pages = null;
+	}
+	
+	/** Set {@link #page} with its already parsed pages (ie: as kept at the database).
+	 * @param page new {@link #page} value.
+	 * @param pages its {@link PageRange}. */
+	void setPage(String page, PageRange pages) {
+		this.page = (page != null) ? page : "";
+		this.pages = pages;
 	}
 	
 	/** @return {@link #bookId}. */
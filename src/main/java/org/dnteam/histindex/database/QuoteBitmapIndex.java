@@ -0,0 +1,530 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.dnteam.histindex.util.IdBitmap;
+import org.dnteam.histindex.util.LongLongMap;
+import org.dnteam.histindex.util.LongObjectMap;
+
+/** An in-memory inverted index of the {@link Quote} relations: the quotes of each {@link Keyword},
+ * {@link Book} and {@link Source}, and the books of each {@link Author}, all as {@link IdBitmap}s.
+ * With it, the relation filters of a search are resolved as bitmap operations (see
+ * {@link #filter(Connection, SearchCriteria)}), and SQLite only fetches the rows of the resulting
+ * identifiers.<br/>
+ * The index is optional (see {@link DatabaseConfig#isBitmapIndex()}). It is built from the
+ * database on its first use (or by {@link #build(Database)}), and then kept up to date by the
+ * managers write methods, each change applied when its transaction is commited (see {@link ChangeLog}).
+ * While not built, or if used inside a not yet commited transaction, the index isn't used and the
+ * search falls back to its SQL filters.
+ * @author farrer */
+public class QuoteBitmapIndex {
+
+	/** Not built, nor building */
+	private static final int NOT_BUILT = 0;
+	/** Being built */
+	private static final int BUILDING = 1;
+	/** Built and up to date */
+	private static final int BUILT = 2;
+	/** Not usable (found an identifier a bitmap can't keep) until invalidated */
+	private static final int DISABLED = 3;
+
+	/** Marks a not defined relation at the reverse maps */
+	private static final long NONE = -1;
+
+	private static final String LOAD_QUOTES = "SELECT " + QuoteManager.ID + ", " + QuoteManager.BOOK_ID +
+			", " + QuoteManager.SOURCE_ID + " FROM Quotes";
+	private static final String LOAD_QUOTE_KEYWORDS = "SELECT " + QuoteKeywordManager.QUOTE_ID + ", " +
+			QuoteKeywordManager.KEYWORD_ID + " FROM QuoteKeyword";
+	private static final String LOAD_BOOK_AUTHORS = "SELECT " + BookAuthorManager.BOOK_ID + ", " +
+			BookAuthorManager.AUTHOR_ID + " FROM BookAuthor";
+
+	/** Lock of all index state */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/** Current state */
+	private int state = NOT_BUILT;
+	/** Incremented at each invalidation, to discard a build made before it */
+	private long generation = 0;
+	/** Changes commited while building, to apply after it */
+	private final List<ChangeLog.Change> changesWhileBuilding = new ArrayList<ChangeLog.Change>();
+
+	/** If found an identifier a bitmap can't keep */
+	private boolean unindexable = false;
+	/** Quotes of each keyword */
+	private LongObjectMap<IdBitmap> keywordQuotes = new LongObjectMap<IdBitmap>();
+	/** Quotes of each book */
+	private LongObjectMap<IdBitmap> bookQuotes = new LongObjectMap<IdBitmap>();
+	/** Quotes of each source */
+	private LongObjectMap<IdBitmap> sourceQuotes = new LongObjectMap<IdBitmap>();
+	/** Books of each author */
+	private LongObjectMap<IdBitmap> authorBooks = new LongObjectMap<IdBitmap>();
+	/** Quotes with a NULL book */
+	private IdBitmap noBook = new IdBitmap();
+	/** Quotes with a NULL source */
+	private IdBitmap noSource = new IdBitmap();
+	/** Book of each quote ({@link #NONE} if NULL) */
+	private LongLongMap quoteBook = new LongLongMap();
+	/** Source of each quote ({@link #NONE} if NULL) */
+	private LongLongMap quoteSource = new LongLongMap();
+
+	/** Constructor, of a not built index. */
+	QuoteBitmapIndex() {
+	}
+
+	/** Get the index to keep up to date for changes made with a connection.
+	 * @param conn {@link Connection} used.
+	 * @return the index or null if none. */
+	static QuoteBitmapIndex of(Connection conn) {
+		if(conn instanceof DatabaseConnection) {
+			return ((DatabaseConnection) conn).getDatabase().getQuoteIndex();
+		}
+		return null;
+	}
+
+	/** @return if the index is built (and thus used by the searches). */
+	public boolean isBuilt() {
+		lock.readLock().lock();
+		try {
+			return state == BUILT;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Build the index, if not yet built (or being built by another thread). Usually called on a
+	 * background thread just after opening a database, as its first search would otherwise build it.
+	 * @param database {@link Database} to build from.
+	 * @throws SQLException */
+	public void build(Database database) throws SQLException {
+		try(ConnectionLease lease = database.leaseReader()) {
+			build(lease.getConnection());
+		}
+	}
+
+	/** Discard the index contents: it will be built again on its next use. */
+	void invalidate() {
+		lock.writeLock().lock();
+		try {
+			generation++;
+			state = NOT_BUILT;
+			unindexable = false;
+			changesWhileBuilding.clear();
+			clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Build the index, if not yet built.
+	 * @param conn {@link Connection} to read from (not inside a transaction).
+	 * @return if the index is now built.
+	 * @throws SQLException */
+	private boolean build(Connection conn) throws SQLException {
+		long buildGeneration;
+		lock.writeLock().lock();
+		try {
+			if(state != NOT_BUILT) {
+				return state == BUILT;
+			}
+			state = BUILDING;
+			buildGeneration = generation;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		boolean built = false;
+		try {
+			/* Read outside the lock: changes commited meanwhile are kept to apply after it */
+			QuoteBitmapIndex read = new QuoteBitmapIndex();
+			read.load(conn);
+			lock.writeLock().lock();
+			try {
+				if(generation == buildGeneration && read.unindexable) {
+					state = DISABLED;
+					changesWhileBuilding.clear();
+				} else if(generation == buildGeneration) {
+					keywordQuotes = read.keywordQuotes;
+					bookQuotes = read.bookQuotes;
+					sourceQuotes = read.sourceQuotes;
+					authorBooks = read.authorBooks;
+					noBook = read.noBook;
+					noSource = read.noSource;
+					quoteBook = read.quoteBook;
+					quoteSource = read.quoteSource;
+					state = BUILT;
+					for(ChangeLog.Change change : changesWhileBuilding) {
+						change.apply();
+					}
+					changesWhileBuilding.clear();
+					built = (state == BUILT);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} finally {
+			if(!built) {
+				lock.writeLock().lock();
+				try {
+					if(generation == buildGeneration && state == BUILDING) {
+						state = NOT_BUILT;
+						changesWhileBuilding.clear();
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		}
+		return built;
+	}
+
+	/** Load all relations from the database to this (not shared) index.
+	 * @param conn {@link Connection} to use.
+	 * @throws SQLException */
+	private void load(Connection conn) throws SQLException {
+		try(PreparedStatement stmt = conn.prepareStatement(LOAD_QUOTES);
+			 ResultSet rs = stmt.executeQuery()) {
+			while(rs.next()) {
+				long quoteId = rs.getLong(1);
+				long bookId = rs.getLong(2);
+				if(rs.wasNull()) {
+					bookId = NONE;
+				}
+				long sourceId = rs.getLong(3);
+				if(rs.wasNull()) {
+					sourceId = NONE;
+				}
+				setQuote(quoteId, bookId, sourceId);
+			}
+		}
+		try(PreparedStatement stmt = conn.prepareStatement(LOAD_QUOTE_KEYWORDS);
+			 ResultSet rs = stmt.executeQuery()) {
+			while(rs.next()) {
+				add(keywordQuotes, rs.getLong(2), rs.getLong(1));
+			}
+		}
+		try(PreparedStatement stmt = conn.prepareStatement(LOAD_BOOK_AUTHORS);
+			 ResultSet rs = stmt.executeQuery()) {
+			while(rs.next()) {
+				add(authorBooks, rs.getLong(2), rs.getLong(1));
+			}
+		}
+	}
+
+	/** Resolve the relation filters of a search (keywords, books, authors and sources, with the
+	 * same meaning of its SQL filters) as a set of quote identifiers.
+	 * @param conn {@link Connection} the search will use. If inside a transaction, the index
+	 *        isn't used, as it doesn't know its not commited changes.
+	 * @param criteria {@link SearchCriteria} to resolve.
+	 * @return identifiers of the quotes passing all relation filters, or null if there are no
+	 *         relation filters or the index couldn't be used (thus the SQL filters must be used).
+	 * @throws SQLException */
+	IdBitmap filter(Connection conn, SearchCriteria criteria) throws SQLException {
+		if(!hasRelationFilters(criteria) || !conn.getAutoCommit()) {
+			return null;
+		}
+		if(!isBuilt() && !build(conn)) {
+			return null;
+		}
+
+		lock.readLock().lock();
+		try {
+			if(state != BUILT) {
+				return null;
+			}
+			IdBitmap res = null;
+			if(!criteria.isUseBooks()) {
+				res = noBook;
+			} else if(!isEmpty(criteria.getBooks())) {
+				res = union(bookQuotes, criteria.getBooks());
+			}
+
+			Collection<Keyword> keywords = criteria.getKeywords();
+			if(!isEmpty(keywords)) {
+				if(criteria.isAndKeys()) {
+					for(Keyword keyword : keywords) {
+						res = intersect(res, get(keywordQuotes, keyword.getId()));
+					}
+				} else {
+					res = intersect(res, union(keywordQuotes, keywords));
+				}
+			}
+
+			if(!isEmpty(criteria.getAuthors())) {
+				IdBitmap books = union(authorBooks, criteria.getAuthors());
+				IdBitmap quotes = new IdBitmap();
+				for(long bookId : books.toArray()) {
+					quotes = IdBitmap.or(quotes, get(bookQuotes, bookId));
+				}
+				res = intersect(res, quotes);
+			}
+
+			if(!criteria.isUseSources()) {
+				res = intersect(res, noSource);
+			} else if(!isEmpty(criteria.getSources())) {
+				res = intersect(res, union(sourceQuotes, criteria.getSources()));
+			}
+
+			/* Never give our own bitmaps */
+			return res.copy();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** @return if a search has any filter resolved by the index. */
+	private static boolean hasRelationFilters(SearchCriteria criteria) {
+		return !criteria.isUseBooks() || !isEmpty(criteria.getBooks()) || !isEmpty(criteria.getKeywords()) ||
+				!isEmpty(criteria.getAuthors()) || !criteria.isUseSources() || !isEmpty(criteria.getSources());
+	}
+
+	/** A quote was inserted or updated.
+	 * @param conn {@link Connection} used.
+	 * @param quote the {@link Quote}.
+	 * @throws SQLException */
+	void quoteSaved(Connection conn, Quote quote) throws SQLException {
+		final long quoteId = quote.getId();
+		final long bookId = quote.getBookId();
+		final long sourceId = quote.getSourceId();
+		log(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				setQuote(quoteId, bookId, sourceId);
+			}
+		});
+	}
+
+	/** A quote was deleted.
+	 * @param conn {@link Connection} used.
+	 * @param quoteId its identifier.
+	 * @throws SQLException */
+	void quoteDeleted(Connection conn, final long quoteId) throws SQLException {
+		log(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				removeQuote(quoteId);
+			}
+		});
+	}
+
+	/** All quotes of a book or of a source were deleted.
+	 * @param conn {@link Connection} used.
+	 * @param ofBook <code>true</code> if of a book, <code>false</code> if of a source.
+	 * @param id identifier of the book or source.
+	 * @throws SQLException */
+	void quotesDeleted(Connection conn, final boolean ofBook, final long id) throws SQLException {
+		log(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				IdBitmap quotes = (ofBook) ? bookQuotes.get(id) : sourceQuotes.get(id);
+				if(quotes != null) {
+					for(long quoteId : quotes.toArray()) {
+						removeQuote(quoteId);
+					}
+				}
+			}
+		});
+	}
+
+	/** A relation (quote-keyword or book-author) was inserted or deleted.
+	 * @param conn {@link Connection} used.
+	 * @param ofKeyword <code>true</code> for a quote-keyword, <code>false</code> for a book-author.
+	 * @param entityId identifier of the keyword or author.
+	 * @param id identifier of the quote or book.
+	 * @param inserted if inserted (or deleted).
+	 * @throws SQLException */
+	void relationChanged(Connection conn, final boolean ofKeyword, final long entityId, final long id,
+			final boolean inserted) throws SQLException {
+		log(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				LongObjectMap<IdBitmap> map = (ofKeyword) ? keywordQuotes : authorBooks;
+				if(inserted) {
+					add(map, entityId, id);
+				} else {
+					remove(map, entityId, id);
+				}
+			}
+		});
+	}
+
+	/** All relations (quote-keyword or book-author) of a keyword or an author were deleted.
+	 * @param conn {@link Connection} used.
+	 * @param ofKeyword <code>true</code> for a keyword, <code>false</code> for an author.
+	 * @param entityId identifier of the keyword or author.
+	 * @throws SQLException */
+	void relationsOfEntityDeleted(Connection conn, final boolean ofKeyword, final long entityId)
+			throws SQLException {
+		log(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				((ofKeyword) ? keywordQuotes : authorBooks).remove(entityId);
+			}
+		});
+	}
+
+	/** All relations (quote-keyword or book-author) of a quote or book were deleted.
+	 * @param conn {@link Connection} used.
+	 * @param ofKeyword <code>true</code> for a quote, <code>false</code> for a book.
+	 * @param id identifier of the quote or book.
+	 * @throws SQLException */
+	void relationsDeleted(Connection conn, final boolean ofKeyword, final long id) throws SQLException {
+		log(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				LongObjectMap<IdBitmap> map = (ofKeyword) ? keywordQuotes : authorBooks;
+				for(long entityId : map.keys()) {
+					remove(map, entityId, id);
+				}
+			}
+		});
+	}
+
+	/** Log a change made with a connection, to be applied to the index when commited.
+	 * @param conn {@link Connection} used.
+	 * @param change the change.
+	 * @throws SQLException */
+	private void log(Connection conn, final ChangeLog.Change change) throws SQLException {
+		ChangeLog changeLog = ChangeLog.of(conn);
+		if(changeLog == null) {
+			/* Not one of our connections: can't know when commited. */
+			invalidate();
+			return;
+		}
+		changeLog.add(conn, new ChangeLog.Change() {
+			@Override
+			public void apply() {
+				lock.writeLock().lock();
+				try {
+					if(state == BUILT) {
+						change.apply();
+					} else if(state == BUILDING) {
+						changesWhileBuilding.add(change);
+					}
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+		});
+	}
+
+	/** Define the book and source of a quote (ie: {@link #NONE} for NULL). */
+	private void setQuote(long quoteId, long bookId, long sourceId) {
+		if(!IdBitmap.isValid(quoteId)) {
+			disable();
+			return;
+		}
+		removeQuote(quoteId);
+		quoteBook.put(quoteId, bookId);
+		if(bookId == NONE) {
+			noBook.add(quoteId);
+		} else {
+			add(bookQuotes, bookId, quoteId);
+		}
+		quoteSource.put(quoteId, sourceId);
+		if(sourceId == NONE) {
+			noSource.add(quoteId);
+		} else {
+			add(sourceQuotes, sourceId, quoteId);
+		}
+	}
+
+	/** Remove a quote from the index, with all its relations. */
+	private void removeQuote(long quoteId) {
+		if(quoteBook.containsKey(quoteId)) {
+			long bookId = quoteBook.get(quoteId, NONE);
+			if(bookId == NONE) {
+				noBook.remove(quoteId);
+			} else {
+				remove(bookQuotes, bookId, quoteId);
+			}
+			quoteBook.remove(quoteId);
+		}
+		if(quoteSource.containsKey(quoteId)) {
+			long sourceId = quoteSource.get(quoteId, NONE);
+			if(sourceId == NONE) {
+				noSource.remove(quoteId);
+			} else {
+				remove(sourceQuotes, sourceId, quoteId);
+			}
+			quoteSource.remove(quoteId);
+		}
+	}
+
+	/** Found an identifier that can't be indexed: stop using the index (until invalidated). */
+	private void disable() {
+		unindexable = true;
+		if(state == BUILT) {
+			state = DISABLED;
+			clear();
+		}
+	}
+
+	/** Remove all index contents. */
+	private void clear() {
+		keywordQuotes.clear();
+		bookQuotes.clear();
+		sourceQuotes.clear();
+		authorBooks.clear();
+		noBook = new IdBitmap();
+		noSource = new IdBitmap();
+		quoteBook.clear();
+		quoteSource.clear();
+	}
+
+	/** Add an identifier to the bitmap of a key. */
+	private void add(LongObjectMap<IdBitmap> map, long key, long id) {
+		if(!IdBitmap.isValid(id)) {
+			disable();
+			return;
+		}
+		IdBitmap bitmap = map.get(key);
+		if(bitmap == null) {
+			bitmap = new IdBitmap();
+			map.put(key, bitmap);
+		}
+		bitmap.add(id);
+	}
+
+	/** Remove an identifier from the bitmap of a key. */
+	private static void remove(LongObjectMap<IdBitmap> map, long key, long id) {
+		IdBitmap bitmap = map.get(key);
+		if(bitmap != null && bitmap.remove(id) && bitmap.isEmpty()) {
+			map.remove(key);
+		}
+	}
+
+	/** @return the bitmap of a key (empty if none). */
+	private static IdBitmap get(LongObjectMap<IdBitmap> map, long key) {
+		IdBitmap bitmap = map.get(key);
+		return (bitmap != null) ? bitmap : new IdBitmap();
+	}
+
+	/** @return the union of the bitmaps of some entities. */
+	private static IdBitmap union(LongObjectMap<IdBitmap> map, Collection<? extends Entity> entities) {
+		IdBitmap res = new IdBitmap();
+		for(Entity entity : entities) {
+			IdBitmap bitmap = map.get(entity.getId());
+			if(bitmap != null) {
+				res = IdBitmap.or(res, bitmap);
+			}
+		}
+		return res;
+	}
+
+	/** @return the intersection of a bitmap (or all, if null) with other. */
+	private static IdBitmap intersect(IdBitmap current, IdBitmap other) {
+		return (current == null) ? other : IdBitmap.and(current, other);
+	}
+
+	/** @return if a filter collection is empty (or not defined). */
+	private static boolean isEmpty(Collection<?> collection) {
+		return (collection == null) || collection.isEmpty();
+	}
+
+}
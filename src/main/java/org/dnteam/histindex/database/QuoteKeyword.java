@@ -30,11 +30,11 @@ public class QuoteKeyword extends ComposedEntity<Quote, Keyword> {
    	setSecondEntity(Keyword);
    }
    
-   public Long getQuoteId() {
+   public long getQuoteId() {
    	return getKey().getFirst();
    }
    
-   public Long getKeywordId() {
+   public long getKeywordId() {
    	return getKey().getSecond();
    }
 
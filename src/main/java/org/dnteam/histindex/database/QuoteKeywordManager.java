@@ -4,9 +4,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.List;
 
+import org.dnteam.histindex.metrics.OperationMetrics;
+import org.dnteam.histindex.util.LongObjectMap;
 import org.dnteam.histindex.util.Tuple;
 
 /** Database Table Manager for {@link QuoteKeyword}.
@@ -22,6 +23,30 @@ public class QuoteKeywordManager extends ComposedEntityManager<QuoteKeyword> {
 	
 	private static final QuoteKeywordManager SINGLETON = new QuoteKeywordManager();
 	
+	private static final String DELETE_BY_KEYWORD = "DELETE FROM " + TABLE_NAME + " WHERE " + KEYWORD_ID + " = ?";
+	private static final String DELETE_BY_QUOTE = "DELETE FROM " + TABLE_NAME + " WHERE " + QUOTE_ID + " = ?";
+	
+	/** Metrics of the deletes of all references to a keyword or to a quote */
+	private final OperationMetrics deleteByKeywordMetrics = ManagerMetrics.operation(TABLE_NAME, "deleteKeywordFromQuotes");
+	private final OperationMetrics deleteByQuoteMetrics = ManagerMetrics.operation(TABLE_NAME, "deleteKeywordsFromQuote");
+	
+	/** Queries depending on other managers, built on first use. */
+	private static final class Queries {
+		static final String POPULATE_KEYWORDS;
+		static final String POPULATE_KEYWORDS_OF_QUOTES;
+		static {
+			KeywordManager keyManager = KeywordManager.getSingleton();
+			POPULATE_KEYWORDS = "SELECT " + keyManager.getColumnsForSelect() + 
+					" FROM " + keyManager.getTableName() + " " + keyManager.getTableAlias() +
+					", " + TABLE_NAME + " " + TABLE_ALIAS + 
+					" WHERE " + TABLE_ALIAS + "." + KEYWORD_ID + " = " + keyManager.getTableAlias() + "." + KeywordManager.ID + 
+					" AND " + TABLE_ALIAS + "." + QUOTE_ID + " = ?" + 
+					" ORDER BY " + keyManager.getOrderByColumnsForSelect();
+			POPULATE_KEYWORDS_OF_QUOTES = "SELECT " + QUOTE_ID + ", group_concat(" + KEYWORD_ID + ") FROM " + TABLE_NAME + 
+					" WHERE " + QUOTE_ID + IdSet.IN + " GROUP BY " + QUOTE_ID;
+		}
+	}
+	
 	private QuoteKeywordManager()	{
 	}
 	
@@ -73,19 +98,57 @@ public class QuoteKeywordManager extends ComposedEntityManager<QuoteKeyword> {
 		return i;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected void afterInsert(Connection conn, QuoteKeyword entity) throws SQLException {
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index != null) {
+			index.relationChanged(conn, true, entity.getKey().getSecond(), entity.getKey().getFirst(), true);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterDelete(Connection conn, QuoteKeyword entity) throws SQLException {
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index != null) {
+			index.relationChanged(conn, true, entity.getKey().getSecond(), entity.getKey().getFirst(), false);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void afterDeleteBy(Connection conn, String colName, long id) throws SQLException {
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index == null) {
+			return;
+		}
+		if(QUOTE_ID.equals(colName)) {
+			index.relationsDeleted(conn, true, id);
+		} else {
+			index.relationsOfEntityDeleted(conn, true, id);
+		}
+	}
+
 	/** Delete all references to an specific {@link Keyword}.
 	 * @param conn connection to use.
 	 * @param keywordId identifier of the {@link Keyword} to delete its references.
 	 * @return number of deleted references.
 	 * @throws SQLException */
 	public int deleteKeywordFromQuotes(Connection conn, long keywordId) throws SQLException {
-
-		String query = "DELETE FROM " + TABLE_NAME;
-		query += " WHERE " + KEYWORD_ID + " = ?";
-
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, keywordId);
-			return stmt.executeUpdate();
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_BY_KEYWORD)){
+				stmt.setLong(1, keywordId);
+				int res = stmt.executeUpdate();
+				afterDeleteBy(conn, KEYWORD_ID, keywordId);
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+			}
+		} finally {
+			deleteByKeywordMetrics.record(started, rows);
 		}
 	}
 	
@@ -95,13 +158,19 @@ public class QuoteKeywordManager extends ComposedEntityManager<QuoteKeyword> {
 	 * @return number of deleted references.
 	 * @throws SQLException */
 	public int deleteKeywordsFromQuote(Connection conn, long quoteId) throws SQLException {
-
-		String query = "DELETE FROM " + TABLE_NAME;
-		query += " WHERE " + QUOTE_ID + " = ?";
-
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, quoteId);
-			return stmt.executeUpdate();
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_BY_QUOTE)){
+				stmt.setLong(1, quoteId);
+				int res = stmt.executeUpdate();
+				afterDeleteBy(conn, QUOTE_ID, quoteId);
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+			}
+		} finally {
+			deleteByQuoteMetrics.record(started, rows);
 		}
 	}
 
@@ -112,15 +181,7 @@ public class QuoteKeywordManager extends ComposedEntityManager<QuoteKeyword> {
 	public void populateKeywords(Connection conn, Quote quote) throws SQLException {
 		KeywordManager keyManager = KeywordManager.getSingleton();
 
-		String query = "SELECT " + keyManager.getColumnsForSelect();
-		query += " FROM " + keyManager.getTableName() + " " + keyManager.getTableAlias() +
-		         ", " + TABLE_NAME + " " + TABLE_ALIAS;
-		query += " WHERE " + TABLE_ALIAS + "." + KEYWORD_ID + " = " + 
-		                     keyManager.getTableAlias() + "." + KeywordManager.ID;   
-		query += " AND " + TABLE_ALIAS + "." + QUOTE_ID + " = ?";
-		query += " ORDER BY " + keyManager.getOrderByColumnsForSelect();
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
+		try(PreparedStatement stmt = conn.prepareStatement(Queries.POPULATE_KEYWORDS)){
 			stmt.setLong(1, quote.getId());
 			try(ResultSet rs = stmt.executeQuery()) {
 				quote.clearKeywords();
@@ -133,75 +194,39 @@ public class QuoteKeywordManager extends ComposedEntityManager<QuoteKeyword> {
 	   }
 	}
 	
-	/** Populate a {@link List} of quotes with its referenced {@link Keyword}s.
+	/** Populate a {@link List} of quotes with its referenced {@link Keyword}s, resolved by 
+	 * {@link EntityManager#resolve(Connection, long[])} (so each keyword is a single 
+	 * instance shared by all its quotes when cached).
 	 * @param conn connection to use.
 	 * @param data {@link List} of {@link Quote}s to populate its {@link Keyword}s.
-	 * @throws SQLException */
+	 * @throws SQLException
+	 * @see QuoteManager#fetch(Connection, List, FetchPlan) */
 	public void populateKeywords(Connection conn, List<Quote> data) throws SQLException {
-		
-		if(data.size() == 0) {
-			/* Nothing to set. */
-			return;
-		}
-		
-		if(data.size() > MAX_WHERE_ELEMENTS) {
-			/* We should do more than one database search, to avoid SQL errors of max limit reached. */
-			int init = 0;
-			int end;
-			do {
-				end = init + MAX_WHERE_ELEMENTS;
-				if(end > data.size()) {
-					end = data.size();
-				}
-				populateKeywords(conn, data.subList(init, end));
-				init += MAX_WHERE_ELEMENTS;
-			} while(init < data.size());
-			
-			return;
-		}
-		
-		/* define a hash for quick find. */
-		HashMap<Long, Quote> hash = QuoteManager.getSingleton().createHashMap(data);
-		
-		KeywordManager kManager = KeywordManager.getSingleton();
-
-		String query = "SELECT " + TABLE_ALIAS + "." + QUOTE_ID + ", " + kManager.getColumnsForSelect();
-		query += " FROM " + kManager.getTableName() + " " + kManager.getTableAlias() +
-		         ", " + TABLE_NAME + " " + TABLE_ALIAS;
-		query += " WHERE " + TABLE_ALIAS + "." + KEYWORD_ID + " = " + 
-		                     kManager.getTableAlias() + "." + kManager.getIdColumn() + " AND (";
-		for(int i = 0; i < data.size(); i++) {
-			if(i > 0) {
-				query += " OR ";
-			}
-			query += TABLE_ALIAS + "." + QUOTE_ID + " = ?";
+		QuoteManager.getSingleton().fetch(conn, data, FetchPlan.of(Quote.class).with(FetchPlan.Relation.KEYWORDS));
+	}
+	
+	/** Load the identifiers of the {@link Keyword}s of some quotes, with a single query (and a 
+	 * single row for each quote).
+	 * @param conn connection to use.
+	 * @param quotes the {@link Quote}s.
+	 * @return the keyword identifiers of each quote with any, by the quote identifier.
+	 * @throws SQLException */
+	LongObjectMap<long[]> loadKeywordIds(Connection conn, List<Quote> quotes) throws SQLException {
+		LongObjectMap<long[]> keywordIds = new LongObjectMap<long[]>(quotes.size());
+		if(quotes.isEmpty()) {
+			return keywordIds;
 		}
-		query += ")";
+		try(PreparedStatement stmt = conn.prepareStatement(Queries.POPULATE_KEYWORDS_OF_QUOTES)) {
 			
-		try(PreparedStatement stmt = conn.prepareStatement(query)) {
-			
-			/* Define our ids on prepared statament. */
-			int i = 1;
-			for(Quote quote : data) {
-				stmt.setLong(i, quote.getId());
-				i++;
-			}
-			
-			/* Fetch our result from database and set them on our books */
+			/* Define our ids on prepared statament (all at once). */
+			IdSet.bindEntities(stmt, 1, quotes);
 			try(ResultSet rs = stmt.executeQuery()) {
 				while(rs.next()) {
-					long quoteId = rs.getLong(1);
-					Keyword key = kManager.createEntity();
-					kManager.populate(rs, key, 2);
-					
-					Quote curQuote = hash.get(quoteId);
-					assert(curQuote != null);
-					if(curQuote != null) {
-						curQuote.addKeyword(key);
-					}
+					keywordIds.put(rs.getLong(1), IdSet.parseConcat(rs.getString(2)));
 				}
 			}
-	   }
+		}
+		return keywordIds;
 	}
 
 }
@@ -6,12 +6,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.stream.Stream;
 
-import org.dnteam.histindex.util.StringUtil;
+import org.dnteam.histindex.metrics.OperationMetrics;
+import org.dnteam.histindex.metrics.Phase;
+import org.dnteam.histindex.metrics.PhaseEvents;
+import org.dnteam.histindex.metrics.PhaseType;
+import org.dnteam.histindex.util.LongObjectMap;
+import org.dnteam.histindex.util.LongSet;
+import org.dnteam.histindex.util.PageRange;
 
 /** Database Table Manager for {@link Quote}s.
  * @author farrer */
@@ -22,14 +26,32 @@ public class QuoteManager extends EntityManager<Quote> {
 	public static final String BOOK_ID = "BookId";
 	public static final String SOURCE_ID = "SourceId";
 	public static final String PAGE = "Page";
+	public static final String PAGE_START = "PageStart";
+	public static final String PAGE_END = "PageEnd";
 	public static final String COMMENT = "Comment";
+	/** If the quote has no book (kept by the database, as the book key) */
+	public static final String NO_BOOK = "NoBook";
+	/** Sort key of the quote book (see {@link BookManager#SORT_KEY}), kept by the database */
+	public static final String BOOK_SORT_KEY = "BookSortKey";
 	
+	/** Plan of {@link #populateRelatedInfo(Connection, List)} */
+	private static final FetchPlan<Quote> ALL_RELATED = FetchPlan.of(Quote.class).with(
+			FetchPlan.Relation.BOOK_AUTHORS, FetchPlan.Relation.SOURCE, FetchPlan.Relation.KEYWORDS);
 	private static final QuoteManager SINGLETON = new QuoteManager();
 	
-	private static final String[] COLUMNS = {TEXT, BOOK_ID, SOURCE_ID, PAGE, COMMENT};
+	private static final String[] COLUMNS = {TEXT, BOOK_ID, SOURCE_ID, PAGE, COMMENT, PAGE_START, PAGE_END};
 	private static final String TABLE_NAME = "Quotes";
 	private static final String TABLE_ALIAS = "QUO";
-	private static final String[] ORDER_BY = {BOOK_ID, SOURCE_ID, PAGE};
+	/** Quotes of books first, by the book description, then the ones of sources; each by page.
+	 * The QuotesBySortKey index order. */
+	private static final String[] ORDER_BY = {NO_BOOK, BOOK_SORT_KEY, SOURCE_ID, PAGE_START};
+	
+	private static final String DELETE_BY_BOOK = "DELETE FROM " + TABLE_NAME + " WHERE " + BOOK_ID + " = ?";
+	private static final String DELETE_BY_SOURCE = "DELETE FROM " + TABLE_NAME + " WHERE " + SOURCE_ID + " = ?";
+	
+	/** Metrics of the searches (the other operations are at {@link #getMetrics()}) */
+	private final OperationMetrics searchMetrics = ManagerMetrics.operation(TABLE_NAME, "search");
+	private final OperationMetrics searchPageMetrics = ManagerMetrics.operation(TABLE_NAME, "searchPage");
 	
 	private QuoteManager() {
 	}
@@ -69,9 +91,9 @@ public class QuoteManager extends EntityManager<Quote> {
 		quote.setText(rs.getString(i));
 		quote.setBookId(rs.getLong(i + 1));
 		quote.setSourceId(rs.getLong(i + 2));
-		quote.setPage(rs.getString(i + 3));
 		quote.setComment(rs.getString(i + 4));
-		return i + 5;
+		quote.setPage(rs.getString(i + 3), new PageRange(rs.getInt(i + 5), rs.getInt(i + 6)));
+		return i + 7;
 	}
 
 	/** {@inheritDoc} */
@@ -82,7 +104,9 @@ public class QuoteManager extends EntityManager<Quote> {
 		stmt.setLong(i + 2, quote.getSourceId());
 		stmt.setString(i + 3, quote.getPage());
 		stmt.setString(i + 4, quote.getComment());
-		return i + 5;
+		stmt.setInt(i + 5, quote.getPageStart());
+		stmt.setInt(i + 6, quote.getPageEnd());
+		return i + 7;
 	}
 	
 	/** {@inheritDoc} */
@@ -97,20 +121,47 @@ public class QuoteManager extends EntityManager<Quote> {
 		return ID;
 	}
 	
+	/** {@inheritDoc} */
+	@Override
+	protected void afterSave(Connection conn, Quote quote) throws SQLException {
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index != null) {
+			index.quoteSaved(conn, quote);
+		}
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected void afterDelete(Connection conn, long id) throws SQLException {
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		if(index != null) {
+			index.quoteDeleted(conn, id);
+		}
+	}
+	
 	/** Delete all {@link Quote}s from a {@link Book}.
 	 * @param conn connection to use.
 	 * @param bookId identifier of the {@link Book}.
 	 * @return number of deleted Quotes.
 	 * @throws SQLException */
 	public int deleteAllQuotesFromBook(Connection conn, long bookId) throws SQLException {
-
-		String query = "DELETE FROM " + TABLE_NAME;
-		query += " WHERE " + BOOK_ID + " = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, bookId);
-			return stmt.executeUpdate();
-	   }
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_BY_BOOK)){
+				stmt.setLong(1, bookId);
+				int res = stmt.executeUpdate();
+				QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+				if(index != null) {
+					index.quotesDeleted(conn, true, bookId);
+				}
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+		   }
+		} finally {
+			getMetrics().deleteAll.record(started, rows);
+		}
 	}
 	
 	/** Delete all {@link Quote}s from a {@link Source}.
@@ -119,14 +170,23 @@ public class QuoteManager extends EntityManager<Quote> {
 	 * @return number of deleted Quotes.
 	 * @throws SQLException */
 	public int deleteAllQuotesFromSource(Connection conn, long sourceId) throws SQLException {
-
-		String query = "DELETE FROM " + TABLE_NAME;
-		query += " WHERE " + SOURCE_ID + " = ?";
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			stmt.setLong(1, sourceId);
-			return stmt.executeUpdate();
-	   }
+		long started = System.nanoTime();
+		long rows = -1;
+		try {
+			try(PreparedStatement stmt = conn.prepareStatement(DELETE_BY_SOURCE)){
+				stmt.setLong(1, sourceId);
+				int res = stmt.executeUpdate();
+				QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+				if(index != null) {
+					index.quotesDeleted(conn, false, sourceId);
+				}
+				SearchResultCache.changed(conn);
+				rows = res;
+				return res;
+		   }
+		} finally {
+			getMetrics().deleteAll.record(started, rows);
+		}
 	}
 	
 	/** Search for {@link Quote}s, filtering by all its relations.
@@ -145,251 +205,290 @@ public class QuoteManager extends EntityManager<Quote> {
 			boolean useBooks, Collection<Book> books, Collection<Author> authors, 
 			boolean useSources, Collection<Source> sources, String text) throws SQLException {
 		
-		QuoteKeywordManager qkm = QuoteKeywordManager.getSingleton();
-		BookAuthorManager bam = BookAuthorManager.getSingleton();
-		
-		String query = "SELECT DISTINCT " + getColumnsForSelect() + 
-				" FROM " + getTableName() + " " + getTableAlias() + " ";
-		
-		if((keywords != null) && (!keywords.isEmpty())) {
-			query += " INNER JOIN " + qkm.getTableName() + " " + qkm.getTableAlias() +
-					" ON " + qkm.getTableAlias() + "." + QuoteKeywordManager.QUOTE_ID + " = " + getTableAlias() + "." + ID;
-		}
-		
-		if((authors != null) && (!authors.isEmpty())) {
-			query += " INNER JOIN " + bam.getTableName() + " " + bam.getTableAlias() +
-					" ON " + bam.getTableAlias() + "." + BookAuthorManager.BOOK_ID + " = " + getTableAlias() + "." + BOOK_ID;
-		}
+		SearchCriteria criteria = new SearchCriteria();
+		criteria.setKeywords(keywords);
+		criteria.setAndKeys(andKeys);
+		criteria.setUseBooks(useBooks);
+		criteria.setBooks(books);
+		criteria.setAuthors(authors);
+		criteria.setUseSources(useSources);
+		criteria.setSources(sources);
+		criteria.setText(text);
+		criteria.setTextMode(SearchCriteria.TextMode.CONTAINS);
+		return search(conn, criteria);
+	}
+	
+	/** Search for {@link Quote}s, filtering by all its relations, by its text and by its pages.<br/>
+	 * When the text is matched by the full-text index, the quotes are returned from the most to the
+	 * least relevant, with its BM25 rank defined (see {@link Quote#getRank()}). Otherwise, they are
+	 * ordered by book (or source) and first page, by the database. While the index isn't
+	 * complete (see {@link FullTextIndexer}), it falls back to a (slower, not ranked and not 
+	 * accent-insensitive) LIKE filter for each word.
+	 * @param conn {@link Connection} to use.
+	 * @param criteria {@link SearchCriteria} with the filters to use.
+	 * @return List of {@link Quote}s found.
+	 * @throws SQLException */
+	public List<Quote> search(Connection conn, SearchCriteria criteria) throws SQLException {
 		
-		boolean whereDefined = false;
-		if(!useBooks) {
-			whereDefined = true;
-			query += " WHERE " + getTableAlias() + "." + BOOK_ID + " IS NULL";
-		}
-		else if((books != null) && (!books.isEmpty())) {
-			whereDefined = true;
-			query += " WHERE " + getTableAlias() + "." + BOOK_ID + createInClause(books.size());
-		}
+		final List<Quote> list = new ArrayList<Quote>();
+		search(conn, criteria, 0, false, new RowCallback<Quote>() {
+			@Override
+			public boolean onRow(Quote quote) {
+				list.add(quote);
+				return true;
+			}
+		});
+		return list;
 		
-		if((keywords != null) && (!keywords.isEmpty())) {
-			if(!whereDefined) {
-				query += " WHERE ";
-				whereDefined = true;
-			} else {
-				query += "AND ";
+	}
+	
+	/** Search a page of {@link Quote}s. The quotes are ordered from the most to the least relevant
+	 * when ranked by the full-text index, or by its default order (see {@link #loadAll(Connection)}) 
+	 * otherwise. Each page seeks directly to its first quote, so any page costs the same as the first.
+	 * @param conn {@link Connection} to use.
+	 * @param criteria {@link SearchCriteria} with the filters to use (the same for all pages).
+	 * @param token token of the page to search (see {@link Page#getNextToken()}), or null for the
+	 *        first page.
+	 * @param pageSize max number of quotes to get.
+	 * @return the {@link Page} found.
+	 * @throws SQLException
+	 * @throws IllegalArgumentException if the token isn't a valid one. */
+	public Page<Quote> searchPage(Connection conn, SearchCriteria criteria, String token, int pageSize) 
+			throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		Phase phase = PhaseEvents.getSingleton().begin(PhaseType.SEARCH);
+		try {
+			QuoteSearchPlanner plan = new QuoteSearchPlanner(conn, criteria, token, pageSize);
+			if(plan.isEmpty()) {
+				rows = 0;
+				return new Page<Quote>(new ArrayList<Quote>(), null);
 			}
-			if(!andKeys) {
-				query += qkm.getTableAlias() + "." + QuoteKeywordManager.KEYWORD_ID + createInClause(keywords.size());
-			} else {
-
-				/* Create the clause for quote with all keywords at the same time. */
-				query += " ( ";
-				for(int cur = 0; cur < keywords.size(); cur++) {
-					
-					if(cur > 0) {
-						query += " AND ";
-						query += qkm.getTableAlias() + "." + QuoteKeywordManager.QUOTE_ID;
-						query += " IN ( ";
-						query += " SELECT " + qkm.getTableAlias() + "." + QuoteKeywordManager.QUOTE_ID;
-						query += " FROM " + qkm.getTableName() + " " + qkm.getTableAlias();
-						query += " WHERE ";
+		
+			try(PreparedStatement stmt = conn.prepareStatement(plan.getQuery())){
+				plan.bind(stmt);
+				try(ResultSet rs = stmt.executeQuery()) {
+					List<Quote> list = new ArrayList<Quote>();
+					Object[] lastKey = null;
+					while(rs.next()) {
+						if(list.size() == pageSize) {
+							rows = list.size();
+							return new Page<Quote>(list, Keyset.encode(lastKey));
+						}
+						Quote quote = createEntity();
+						populate(rs, quote, 1);
+						if(plan.isRanked()) {
+							quote.setRank(rs.getDouble(plan.getRankIndex()));
+						}
+						list.add(quote);
+						lastKey = Keyset.read(rs, plan.getOrderKeyIndexes());
 					}
-					query += qkm.getTableAlias() + "." + QuoteKeywordManager.KEYWORD_ID;
-					query += " = ";
-					query += "?";
-					
-				}
-				
-				/* Close all opened ( */
-				for(int cur = 1; cur < keywords.size(); cur++) {
-					query += ")";
+					rows = list.size();
+					return new Page<Quote>(list, null);
 				}
-				query += " ) ";
-
 			}
+		} finally {
+			searchPageMetrics.record(started, rows);
+			commitSearchPhase(phase, conn, criteria, rows);
 		}
-		
-		if((authors != null) && (!authors.isEmpty())) {
-			if(!whereDefined) {
-				query += " WHERE ";
-				whereDefined = true;
-			} else {
-				query += "AND ";
-			}
-			query += bam.getTableAlias() + "." + BookAuthorManager.AUTHOR_ID + createInClause(authors.size());
+	}
+	
+	/** Stream the {@link Quote}s of a search, reading each only when consumed (thus in constant
+	 * memory, whatever the number of quotes found). The stream must be closed after use (ie: with
+	 * a try-with-resources), and consumed while the connection is still leased.
+	 * @param conn {@link Connection} to use.
+	 * @param criteria {@link SearchCriteria} with the filters to use.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param reuseQuote if should populate a single {@link Quote} instance with all rows (so no
+	 *        quote should be kept after the next one is consumed).
+	 * @return {@link Stream} of the quotes found, at the same order of 
+	 *         {@link #search(Connection, SearchCriteria)}. On database errors while consuming it,
+	 *         throws {@link UncheckedSQLException}.
+	 * @throws SQLException */
+	public Stream<Quote> streamSearch(Connection conn, SearchCriteria criteria, int fetchSize, 
+			boolean reuseQuote) throws SQLException {
+		QuoteSearchPlanner plan = new QuoteSearchPlanner(conn, criteria);
+		if(plan.isEmpty()) {
+			return Stream.empty();
 		}
-		
-		if(!useSources) {
-			if(!whereDefined) {
-				query += " WHERE ";
-				whereDefined = true;
-			} else {
-				query += "AND ";
+		return openSearchCursor(conn, plan, fetchSize, reuseQuote).stream();
+	}
+	
+	/** Read the {@link Quote}s of a search one by one, in constant memory.
+	 * @param conn {@link Connection} to use.
+	 * @param criteria {@link SearchCriteria} with the filters to use.
+	 * @param fetchSize number of rows to ask the driver for at once (a hint), or 0 for its default.
+	 * @param reuseQuote if should populate a single {@link Quote} instance with all rows.
+	 * @param callback {@link RowCallback} receiving each quote found.
+	 * @return number of quotes given to the callback.
+	 * @throws SQLException */
+	public int search(Connection conn, SearchCriteria criteria, int fetchSize, boolean reuseQuote,
+			RowCallback<? super Quote> callback) throws SQLException {
+		long started = System.nanoTime();
+		long rows = -1;
+		Phase phase = PhaseEvents.getSingleton().begin(PhaseType.SEARCH);
+		try {
+			QuoteSearchPlanner plan = new QuoteSearchPlanner(conn, criteria);
+			if(plan.isEmpty()) {
+				rows = 0;
+				return 0;
 			}
-			query += getTableAlias() + "." + SOURCE_ID + " IS NULL";
+			int found = openSearchCursor(conn, plan, fetchSize, reuseQuote).forEach(callback);
+			rows = found;
+			return found;
+		} finally {
+			searchMetrics.record(started, rows);
+			commitSearchPhase(phase, conn, criteria, rows);
 		}
-		else if((sources != null) && (!sources.isEmpty())) {
-			if(!whereDefined) {
-				query += " WHERE ";
-				whereDefined = true;
-			} else {
-				query += "AND ";
-			}
-			query += getTableAlias() + "." + SOURCE_ID + createInClause(sources.size());
+	}
+	
+	/** Commit the phase of a search, with its details if recorded.
+	 * @param phase {@link Phase} of the search.
+	 * @param conn {@link Connection} searched with.
+	 * @param criteria its {@link SearchCriteria}.
+	 * @param rows number of quotes found (negative if failed). */
+	static void commitSearchPhase(Phase phase, Connection conn, SearchCriteria criteria, long rows) {
+		if(phase.isEnabled()) {
+			phase.setDatabase(Database.filenameOf(conn));
+			phase.setRows(rows);
+			phase.setDetails(criteria.getShape());
 		}
-		
-		if(!StringUtil.isEmpty(text)) {
-			if(!whereDefined) {
-				query += " WHERE ";
-				whereDefined = true;
-			} else {
-				query += "AND ";
-			}
-			query += getTableAlias() + "." + TEXT + " LIKE ?";
+		phase.commit();
+	}
+	
+	/** Open a cursor over the quotes of a planned search.
+	 * @param conn {@link Connection} to use.
+	 * @param plan the planned search.
+	 * @param fetchSize number of rows to ask the driver for at once.
+	 * @param reuseQuote if should populate a single {@link Quote} instance with all rows.
+	 * @return the opened {@link EntityCursor}.
+	 * @throws SQLException */
+	private EntityCursor<Quote> openSearchCursor(Connection conn, QuoteSearchPlanner plan, int fetchSize,
+			boolean reuseQuote) throws SQLException {
+		return openSearchCursor(prepareSearch(conn, plan), plan, fetchSize, reuseQuote);
+	}
+	
+	/** Prepare the statement of a planned search, with its parameters bound.
+	 * @param conn {@link Connection} to use.
+	 * @param plan the planned search.
+	 * @return the prepared statement (to execute by 
+	 *         {@link #openSearchCursor(PreparedStatement, QuoteSearchPlanner, int, boolean)}).
+	 * @throws SQLException */
+	PreparedStatement prepareSearch(Connection conn, QuoteSearchPlanner plan) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(plan.getQuery());
+		try {
+			plan.bind(stmt);
+		} catch(SQLException e) {
+			stmt.close();
+			throw e;
 		}
-		
-		
-		try(PreparedStatement stmt = conn.prepareStatement(query)){
-			
-			/* Define our filter values, at the same order of the query. */
-			int i = 1;
-			if((books != null) && (!books.isEmpty())) {
-				for(Book book : books) {
-					stmt.setLong(i, book.getId());
-					i++;
-				}
-			}
-			if((keywords != null) && (!keywords.isEmpty())) {
-				for(Keyword key : keywords) {
-					stmt.setLong(i, key.getId());
-					i++;
-				}
-			}
-			if((authors != null) && (!authors.isEmpty())) {
-				for(Author author : authors) {
-					stmt.setLong(i, author.getId());
-					i++;
-				}
-			}
-			if((sources != null) && (!sources.isEmpty())) {
-				for(Source source : sources) {
-					stmt.setLong(i, source.getId());
-					i++;
-				}
-			}
-			if(!StringUtil.isEmpty(text)) {
-				stmt.setString(i, "%" + text + "%");
-			}
-			
-			try(ResultSet rs = stmt.executeQuery()) {
-				List<Quote> list = new ArrayList<Quote>();
-				while(rs.next()) {
-					Quote quote = createEntity();
-					populate(rs, quote, 1);
-					list.add(quote);
-				}
-				return list;
-			}
-	   }
-		
+		return stmt;
 	}
 	
-	/** Create a "IN(?, ?, ...)" clause for a selection use.
-	 * @param totalElements total elementes to add to the in.
-	 * @return String with the created clause. */
-	private String createInClause(int totalElements) {
-		String in = " IN (";
-		for(int cur = 0; cur < totalElements; cur++) {
-			if(cur > 0) {
-				in += ", ?";
-			} else {
-				in += "?";
+	/** Execute the prepared statement of a planned search, opening a cursor over its quotes.
+	 * @param stmt statement of the search (see {@link #prepareSearch(Connection, QuoteSearchPlanner)}),
+	 *        closed with the cursor.
+	 * @param plan the planned search.
+	 * @param fetchSize number of rows to ask the driver for at once.
+	 * @param reuseQuote if should populate a single {@link Quote} instance with all rows.
+	 * @return the opened {@link EntityCursor}.
+	 * @throws SQLException */
+	EntityCursor<Quote> openSearchCursor(PreparedStatement stmt, final QuoteSearchPlanner plan, int fetchSize,
+			boolean reuseQuote) throws SQLException {
+		return new EntityCursor<Quote>(stmt, fetchSize, this, reuseQuote, new EntityCursor.RowReader<Quote>() {
+			@Override
+			public void read(ResultSet rs, Quote quote) throws SQLException {
+				populate(rs, quote, 1);
+				quote.setRank(plan.isRanked() ? rs.getDouble(plan.getRankIndex()) : 0);
 			}
-		}
-		in += ")";
-		
-		return in;
+		});
 	}
 	
-	/** Populate all related information for a list of Quotes.
+	/** Populate all related information (book with its authors, source and keywords) for a list
+	 * of Quotes.
 	 * @param conn connection to use.
 	 * @param data list with all quotes to load its related information.
 	 * @throws SQLException */
 	public void populateRelatedInfo(Connection conn, List<Quote> data) throws SQLException {
-		
-		/* Construct the list of bookids and sourceids to load */
-		TreeSet<Long> bookIds = new TreeSet<Long>();
-		TreeSet<Long> sourceIds = new TreeSet<Long>();
-		
-		for(Quote quote : data) {
-			if(quote.getBookId() != 0) {
-				bookIds.add(quote.getBookId());
-			}
-			if(quote.getSourceId() != 0) {
-				sourceIds.add(quote.getSourceId());
-			}
+		fetch(conn, data, ALL_RELATED);
+	}
+	
+	/** {@inheritDoc}<br/>
+	 * Its keywords identifiers are loaded by a single query (a row for each quote), and all books,
+	 * sources and keywords are resolved by its managers (see {@link EntityManager#resolve(Connection, long[])}),
+	 * before setting them all on a single pass. */
+	@Override
+	public void fetch(Connection conn, List<Quote> quotes, FetchPlan<Quote> plan) throws SQLException {
+		if(plan == null || plan.isEmpty() || quotes.isEmpty()) {
+			return;
 		}
+		long started = System.nanoTime();
+		long rows = -1;
+		Phase phase = PhaseEvents.getSingleton().begin(PhaseType.HYDRATION);
+		try {
+			boolean withBook = plan.has(FetchPlan.Relation.BOOK_AUTHORS);
+			boolean withSource = plan.has(FetchPlan.Relation.SOURCE);
+			boolean withKeywords = plan.has(FetchPlan.Relation.KEYWORDS);
 		
-		/* Load our books with authors */
-		BookManager bookManager = BookManager.getSingleton();
-		List<Book> bookList = bookManager.load(conn, new ArrayList<Long>(bookIds));
-		BookAuthorManager.getSingleton().populateAuthors(conn, bookList);
-		HashMap<Long, Book> books = bookManager.createHashMap(bookList);
-		
-		/* Load our sources */
-		SourceManager sourceManager = SourceManager.getSingleton();
-		HashMap<Long, Source> sources = sourceManager.createHashMap(sourceManager.load(conn, new ArrayList<Long>(sourceIds)));
-		
-		/* Let's populate our quotes with its books and sources */
-		for(Quote quote : data) {
-			if(quote.getBookId() != 0) {
-				quote.setBook(books.get(quote.getBookId()));
+			/* Identifiers of the related entities */
+			LongSet bookIds = new LongSet();
+			LongSet sourceIds = new LongSet();
+			LongSet keywordIds = new LongSet();
+			LongObjectMap<long[]> keywordsOf = null;
+			if(withKeywords) {
+				keywordsOf = QuoteKeywordManager.getSingleton().loadKeywordIds(conn, quotes);
+				for(long quoteId : keywordsOf.keys()) {
+					keywordIds.addAll(keywordsOf.get(quoteId));
+				}
 			}
-			
-			if(quote.getSourceId() != 0) {
-				quote.setSource(sources.get(quote.getSourceId()));
+			for(Quote quote : quotes) {
+				if(withBook && quote.getBookId() != 0) {
+					bookIds.add(quote.getBookId());
+				}
+				if(withSource && quote.getSourceId() != 0) {
+					sourceIds.add(quote.getSourceId());
+				}
 			}
-		}
 		
-		/* Populate its Keywords */
-		QuoteKeywordManager.getSingleton().populateKeywords(conn, data);
+			/* Resolve them (books with its authors) */
+			LongObjectMap<Book> books = withBook ? 
+					BookManager.getSingleton().resolve(conn, bookIds.toSortedArray()) : null;
+			LongObjectMap<Source> sources = withSource ? 
+					SourceManager.getSingleton().resolve(conn, sourceIds.toSortedArray()) : null;
+			LongObjectMap<Keyword> keywords = withKeywords ? 
+					KeywordManager.getSingleton().resolve(conn, keywordIds.toSortedArray()) : null;
 		
-		//FIXME: this is ugly and inefficient, but our page must be a string... ouch!
-		sort(data);
-	}
-	
-	/** Sort a list of quotes.
-	 * @param quotes list to sort. */
-	private void sort(List<Quote> quotes) {
-		quotes.sort(new Comparator<Quote>() {
-
-			@Override
-			public int compare(Quote o1, Quote o2) {
-				if(o1.getBook() != null && o2.getBook() != null) {
-					int res = o1.getBook().getDescription().compareTo(o2.getBook().getDescription());
-					if(res != 0) {
-						return res;
-					}
-				}
-				else if(o1.getBook() != null) {
-					return -1;
+			/* And set them on our quotes */
+			for(Quote quote : quotes) {
+				if(withBook && quote.getBookId() != 0) {
+					quote.setBook(books.get(quote.getBookId()));
 				}
-				else if(o2.getBook() != null) {
-					return 1;
+				if(withSource && quote.getSourceId() != 0) {
+					quote.setSource(sources.get(quote.getSourceId()));
 				}
-				
-				if(!StringUtil.isEmpty(o1.getPage()) && !StringUtil.isEmpty(o2.getPage())) {
-					int res = o1.getPageAsNumber() - o2.getPageAsNumber();
-					if(res != 0) {
-						return res;
+				if(withKeywords) {
+					quote.clearKeywords();
+					long[] ids = keywordsOf.get(quote.getId());
+					if(ids != null) {
+						for(long id : ids) {
+							Keyword keyword = keywords.get(id);
+							if(keyword != null) {
+								quote.addKeyword(keyword);
+							}
+						}
 					}
-						
-					return res;
 				}
-				
-				return (int) o1.getId() - (int) o2.getId();
 			}
-		});
+			rows = quotes.size();
+		} finally {
+			getMetrics().fetch.record(started, rows);
+			if(phase.isEnabled()) {
+				phase.setDatabase(Database.filenameOf(conn));
+				phase.setRows(rows);
+				phase.setDetails(plan.toString());
+			}
+			phase.commit();
+		}
 	}
 
 }
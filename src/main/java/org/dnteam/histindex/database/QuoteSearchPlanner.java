@@ -0,0 +1,303 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.dnteam.histindex.util.IdBitmap;
+import org.dnteam.histindex.util.LongSet;
+import org.dnteam.histindex.util.StringUtil;
+
+/** Planner of the SQL statement of a {@link Quote} search. Each relation filter is a semi-join
+ * (an <code>IN</code> sub-select, driven by the relation indexes), so the quotes are never
+ * multiplied by joins and no <code>DISTINCT</code> is needed:
+ * <ul>
+ * <li>Any of the keywords: <code>Id IN (SELECT QuoteId ... WHERE KeywordId IN (ids))</code>;</li>
+ * <li>All the keywords: the same, but <code>GROUP BY QuoteId HAVING COUNT(DISTINCT KeywordId) = n</code>,
+ *     thus a single sub-select whatever the number of keywords;</li>
+ * <li>Authors: <code>BookId IN (SELECT BookId ... WHERE AuthorId IN (ids))</code>.</li>
+ * </ul>
+ * All id sets are bound as a single parameter each (see {@link IdSet}).<br/>
+ * If the database keeps a {@link QuoteBitmapIndex}, all relation filters are instead resolved by it,
+ * and replaced by a single <code>Id IN (ids)</code> filter. A search restricted to some quotes
+ * (see {@link SearchCriteria#getWithin()}) has one more of those.
+ * @author farrer */
+final class QuoteSearchPlanner {
+
+	/** Fixed fragments of the statements, built on first use. */
+	private static final class Fragments {
+		static final String SELECT;
+		static final String SELECT_RANKED;
+		static final String ANY_KEYWORD;
+		static final String ALL_KEYWORDS;
+		static final String ANY_AUTHOR;
+		static {
+			QuoteManager qm = QuoteManager.getSingleton();
+			QuoteKeywordManager qkm = QuoteKeywordManager.getSingleton();
+			BookAuthorManager bam = BookAuthorManager.getSingleton();
+			String quoteAlias = qm.getTableAlias();
+			String from = " FROM " + qm.getTableName() + " " + quoteAlias;
+			/* With the order columns kept by the database, selected after the quote columns */
+			String columns = qm.getColumnsForSelect() + qm.getOrderColumnsForSelect();
+
+			SELECT = "SELECT " + columns + from;
+			SELECT_RANKED = "SELECT " + columns + ", FTS.Rank" + from +
+					" INNER JOIN (SELECT rowid AS QuoteId, bm25(" + FullTextIndexer.TABLE_NAME + ") AS Rank" +
+					" FROM " + FullTextIndexer.TABLE_NAME + " WHERE " + FullTextIndexer.TABLE_NAME + " MATCH ?) FTS" +
+					" ON FTS.QuoteId = " + quoteAlias + "." + QuoteManager.ID;
+
+			String keywordsOf = quoteAlias + "." + QuoteManager.ID + " IN (SELECT " +
+					qkm.getTableAlias() + "." + QuoteKeywordManager.QUOTE_ID +
+					" FROM " + qkm.getTableName() + " " + qkm.getTableAlias() +
+					" WHERE " + qkm.getTableAlias() + "." + QuoteKeywordManager.KEYWORD_ID + IdSet.IN;
+			ANY_KEYWORD = keywordsOf + ")";
+			ALL_KEYWORDS = keywordsOf + " GROUP BY " + qkm.getTableAlias() + "." + QuoteKeywordManager.QUOTE_ID +
+					" HAVING COUNT(DISTINCT " + qkm.getTableAlias() + "." + QuoteKeywordManager.KEYWORD_ID + ") = ?)";
+
+			ANY_AUTHOR = quoteAlias + "." + QuoteManager.BOOK_ID + " IN (SELECT " +
+					bam.getTableAlias() + "." + BookAuthorManager.BOOK_ID +
+					" FROM " + bam.getTableName() + " " + bam.getTableAlias() +
+					" WHERE " + bam.getTableAlias() + "." + BookAuthorManager.AUTHOR_ID + IdSet.IN + ")";
+		}
+	}
+
+	/** The planned statement */
+	private final String query;
+	/** Its parameters, in order: {@link Long}s, {@link String}s, id sets (as {@link Collection}s 
+	 * of {@link Entity}s, as an {@link IdBitmap} or as a <code>long[]</code>) or order key values */
+	private final List<Object> params = new ArrayList<Object>();
+	/** If the result is ranked by the full-text index */
+	private final boolean ranked;
+	/** If no quote could be found (thus no need to execute the statement) */
+	private boolean empty = false;
+	/** Order columns of a paged search (ending with the identifier), or null if not paged */
+	private final String[] orderKey;
+	/** Indexes of the order columns at the result */
+	private final int[] orderKeyIndexes;
+
+	/** Plan a search.
+	 * @param conn {@link Connection} to be used by the search (to check the full-text index state).
+	 * @param criteria {@link SearchCriteria} to plan.
+	 * @throws SQLException */
+	QuoteSearchPlanner(Connection conn, SearchCriteria criteria) throws SQLException {
+		this(conn, criteria, null, 0);
+	}
+
+	/** Plan a page of a search: with the full-text rank (or the quotes default order) and the 
+	 * identifier as its order key (see {@link Keyset}), and limited to the page size (plus one, to
+	 * know if there's a next page).
+	 * @param conn {@link Connection} to be used by the search (to check the full-text index state).
+	 * @param criteria {@link SearchCriteria} to plan.
+	 * @param token token of the page (see {@link Page#getNextToken()}), or null for the first page.
+	 * @param pageSize max number of quotes of the page, or 0 to plan the whole (not paged) search.
+	 * @throws SQLException
+	 * @throws IllegalArgumentException if the token isn't a valid one. */
+	QuoteSearchPlanner(Connection conn, SearchCriteria criteria, String token, int pageSize) throws SQLException {
+		QuoteManager qm = QuoteManager.getSingleton();
+		String quoteAlias = qm.getTableAlias();
+		List<String> where = new ArrayList<String>();
+
+		/* Define how to filter by text: by a full-text MATCH, or by LIKEs. */
+		String match = null;
+		String text = criteria.getText();
+		if(!StringUtil.isEmpty(text)) {
+			SearchCriteria.TextMode mode = criteria.getTextMode();
+			List<String> tokens = FullTextIndexer.tokenize(text);
+			if(mode == SearchCriteria.TextMode.CONTAINS || tokens.isEmpty()) {
+				where.add(quoteAlias + "." + QuoteManager.TEXT + " LIKE ?");
+				params.add("%" + text + "%");
+			} else if(FullTextIndexer.getSingleton().isComplete(conn)) {
+				match = FullTextIndexer.createMatchExpression(text, mode);
+			} else {
+				/* Fallback while the index isn't complete */
+				if(mode == SearchCriteria.TextMode.PHRASE) {
+					tokens.clear();
+					tokens.add(text.trim());
+				}
+				for(String word : tokens) {
+					where.add("(" + quoteAlias + "." + QuoteManager.TEXT + " LIKE ? OR " +
+							quoteAlias + "." + QuoteManager.COMMENT + " LIKE ?)");
+					params.add("%" + word + "%");
+					params.add("%" + word + "%");
+				}
+			}
+		}
+		ranked = (match != null);
+		if(ranked) {
+			/* Its parameter comes first, at the join */
+			params.add(0, match);
+		}
+
+		QuoteBitmapIndex index = QuoteBitmapIndex.of(conn);
+		IdBitmap ids = (index != null) ? index.filter(conn, criteria) : null;
+		if(ids != null) {
+			where.add(quoteAlias + "." + QuoteManager.ID + IdSet.IN);
+			params.add(ids);
+			empty = ids.isEmpty();
+		} else {
+			addRelationFilters(criteria, where);
+		}
+		addPageFilter(criteria, where);
+		long[] within = criteria.getWithin();
+		if(within != null) {
+			where.add(quoteAlias + "." + QuoteManager.ID + IdSet.IN);
+			params.add(within);
+			empty |= (within.length == 0);
+		}
+
+		/* Most relevant first (BM25 is lower for better matches), or by book and page */
+		String[] order;
+		int[] orderIndexes;
+		if(ranked) {
+			order = new String[] {"FTS.Rank", quoteAlias + "." + QuoteManager.ID};
+			orderIndexes = new int[] {getRankIndex(), 1};
+		} else {
+			order = qm.getOrderKey();
+			orderIndexes = qm.getOrderKeyIndexes();
+		}
+		orderKey = (pageSize > 0) ? order : null;
+		orderKeyIndexes = (pageSize > 0) ? orderIndexes : null;
+		if(orderKey != null && token != null) {
+			where.add(Keyset.after(orderKey, Keyset.decode(token, orderKey.length), params));
+		}
+
+		StringBuilder builder = new StringBuilder(ranked ? Fragments.SELECT_RANKED : Fragments.SELECT);
+		for(int i = 0; i < where.size(); i++) {
+			builder.append((i == 0) ? " WHERE " : " AND ").append(where.get(i));
+		}
+		builder.append(" ORDER BY ").append(Keyset.orderBy(order));
+		if(orderKey != null) {
+			builder.append(" LIMIT ?");
+			params.add(Long.valueOf(pageSize + 1));
+		}
+		query = builder.toString();
+	}
+
+	/** Add the SQL filters of the relations (keywords, books, authors and sources).
+	 * @param criteria {@link SearchCriteria} to plan.
+	 * @param where list of filters to add to. */
+	private void addRelationFilters(SearchCriteria criteria, List<String> where) {
+		String quoteAlias = QuoteManager.getSingleton().getTableAlias();
+		if(!criteria.isUseBooks()) {
+			where.add(quoteAlias + "." + QuoteManager.BOOK_ID + " IS NULL");
+		} else if(!isEmpty(criteria.getBooks())) {
+			where.add(quoteAlias + "." + QuoteManager.BOOK_ID + IdSet.IN);
+			params.add(criteria.getBooks());
+		}
+
+		Collection<Keyword> keywords = criteria.getKeywords();
+		if(!isEmpty(keywords)) {
+			if(criteria.isAndKeys() && keywords.size() > 1) {
+				where.add(Fragments.ALL_KEYWORDS);
+				params.add(keywords);
+				params.add(Long.valueOf(countDistinct(keywords)));
+			} else {
+				where.add(Fragments.ANY_KEYWORD);
+				params.add(keywords);
+			}
+		}
+
+		if(!isEmpty(criteria.getAuthors())) {
+			where.add(Fragments.ANY_AUTHOR);
+			params.add(criteria.getAuthors());
+		}
+
+		if(!criteria.isUseSources()) {
+			where.add(quoteAlias + "." + QuoteManager.SOURCE_ID + " IS NULL");
+		} else if(!isEmpty(criteria.getSources())) {
+			where.add(quoteAlias + "." + QuoteManager.SOURCE_ID + IdSet.IN);
+			params.add(criteria.getSources());
+		}
+	}
+
+	/** Add the SQL filter of the page range (quotes with pages overlapping it, by the
+	 * QuotesByBookPage index when also filtering by book).
+	 * @param criteria {@link SearchCriteria} to plan.
+	 * @param where list of filters to add to. */
+	private void addPageFilter(SearchCriteria criteria, List<String> where) {
+		if(!criteria.hasPageRange()) {
+			return;
+		}
+		String quoteAlias = QuoteManager.getSingleton().getTableAlias();
+		/* Quotes without pages (zero) never overlap a range */
+		if(criteria.getPageTo() > 0) {
+			where.add(quoteAlias + "." + QuoteManager.PAGE_START + " BETWEEN 1 AND ?");
+			params.add(Long.valueOf(criteria.getPageTo()));
+		} else {
+			where.add(quoteAlias + "." + QuoteManager.PAGE_START + " > 0");
+		}
+		if(criteria.getPageFrom() > 0) {
+			where.add(quoteAlias + "." + QuoteManager.PAGE_END + " >= ?");
+			params.add(Long.valueOf(criteria.getPageFrom()));
+		}
+	}
+
+	/** @return the planned statement. */
+	String getQuery() {
+		return query;
+	}
+
+	/** @return if already known that no quote would be found (so no need to execute the statement). */
+	boolean isEmpty() {
+		return empty;
+	}
+
+	/** @return the indexes, at the result, of the order columns of a paged search (null if not paged). */
+	int[] getOrderKeyIndexes() {
+		return orderKeyIndexes;
+	}
+
+	/** @return if the result is ranked by the full-text index (with the rank as its last column). */
+	boolean isRanked() {
+		return ranked;
+	}
+
+	/** @return the index, at the result, of the full-text rank of a ranked search (after all
+	 * selected quote columns). */
+	int getRankIndex() {
+		return QuoteManager.getSingleton().getColumnsSelected() + 1;
+	}
+
+	/** Bind all parameters of the planned statement.
+	 * @param stmt statement (of {@link #getQuery()}) to bind to.
+	 * @throws SQLException */
+	@SuppressWarnings("unchecked")
+	void bind(PreparedStatement stmt) throws SQLException {
+		int i = 1;
+		for(Object param : params) {
+			if(param instanceof Long) {
+				stmt.setLong(i, (Long) param);
+			} else if(param instanceof String) {
+				stmt.setString(i, (String) param);
+			} else if(param instanceof IdBitmap) {
+				IdSet.bind(stmt, i, (IdBitmap) param);
+			} else if(param instanceof long[]) {
+				IdSet.bind(stmt, i, (long[]) param);
+			} else if(param instanceof Collection) {
+				IdSet.bindEntities(stmt, i, (Collection<? extends Entity>) param);
+			} else {
+				/* Order key values */
+				stmt.setObject(i, param);
+			}
+			i++;
+		}
+	}
+
+	/** @return if a filter collection is empty (or not defined). */
+	private static boolean isEmpty(Collection<?> collection) {
+		return (collection == null) || collection.isEmpty();
+	}
+
+	/** @return number of distinct entities of a collection. */
+	private static int countDistinct(Collection<? extends Entity> entities) {
+		LongSet ids = new LongSet(entities.size());
+		for(Entity entity : entities) {
+			ids.add(entity.getId());
+		}
+		return ids.size();
+	}
+
+}
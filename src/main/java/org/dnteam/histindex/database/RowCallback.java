@@ -0,0 +1,19 @@
+package org.dnteam.histindex.database;
+
+import java.sql.SQLException;
+
+/** Receives, one by one, the entities read from a query, without keeping them all in memory.
+ * @see EntityManager#forEach(java.sql.Connection, int, boolean, RowCallback)
+ * @author farrer
+ *
+ * @param <T> type of the entities received. */
+public interface RowCallback<T> {
+
+	/** Receive an entity read.
+	 * @param entity the entity. If reusing a single instance, it is overwritten by the next row,
+	 *        so shouldn't be kept after returning.
+	 * @return <code>true</code> to continue reading, <code>false</code> to stop.
+	 * @throws SQLException */
+	boolean onRow(T entity) throws SQLException;
+
+}
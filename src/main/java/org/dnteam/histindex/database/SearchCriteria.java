@@ -0,0 +1,339 @@
+package org.dnteam.histindex.database;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.dnteam.histindex.util.StringUtil;
+
+/** Filters of a {@link Quote} search.
+ * @see QuoteManager#search(java.sql.Connection, SearchCriteria)
+ * @author farrer */
+public class SearchCriteria {
+
+	/** How the search text should match the quotes. */
+	public enum TextMode {
+		/** Quote text containing the exact searched text (a LIKE filter, without ranking). */
+		CONTAINS("Exact text"),
+		/** Quote text or comment with all searched words. */
+		TOKENS("All words"),
+		/** Quote text or comment with words starting with each searched word. */
+		PREFIX("Word prefixes"),
+		/** Quote text or comment with all searched words, in sequence. */
+		PHRASE("Phrase");
+
+		/** Description shown to the user */
+		private final String description;
+
+		/** Constructor.
+		 * @param description {@link #description} */
+		TextMode(String description) {
+			this.description = description;
+		}
+
+		/** @return {@link #description} */
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	/** {@link Keyword}s to filter, if any */
+	private Collection<Keyword> keywords;
+	/** <code>true</code> to use 'and' between keywords, false to use 'or' */
+	private boolean andKeys = false;
+	/** To use books or not. If not, will only get quotes without book */
+	private boolean useBooks = true;
+	/** {@link Book}s to filter, if any */
+	private Collection<Book> books;
+	/** {@link Author}s to filter, if any */
+	private Collection<Author> authors;
+	/** To use sources or not. If not, will only get quotes without source */
+	private boolean useSources = true;
+	/** {@link Source}s to filter, if any */
+	private Collection<Source> sources;
+	/** Text to filter, if any */
+	private String text;
+	/** How to match {@link #text} */
+	private TextMode textMode = TextMode.CONTAINS;
+	/** First page to filter (quotes ending at or after it), or 0 if none */
+	private int pageFrom = 0;
+	/** Last page to filter (quotes starting at or before it), or 0 if none */
+	private int pageTo = 0;
+	/** Identifiers of the only quotes to consider (ie: the ones found by a search this one 
+	 * refines, see {@link #isRefinedBy(SearchCriteria)}), or null for all quotes */
+	private long[] within;
+
+	/** Constructor, without any filter. */
+	public SearchCriteria() {
+	}
+
+	/** Copy constructor (the filter collections are shared, not copied).
+	 * @param other {@link SearchCriteria} to copy. */
+	public SearchCriteria(SearchCriteria other) {
+		this.keywords = other.keywords;
+		this.andKeys = other.andKeys;
+		this.useBooks = other.useBooks;
+		this.books = other.books;
+		this.authors = other.authors;
+		this.useSources = other.useSources;
+		this.sources = other.sources;
+		this.text = other.text;
+		this.textMode = other.textMode;
+		this.pageFrom = other.pageFrom;
+		this.pageTo = other.pageTo;
+		this.within = other.within;
+	}
+
+	/** @return {@link #keywords} */
+	public Collection<Keyword> getKeywords() {
+		return keywords;
+	}
+
+	/** @param keywords new {@link #keywords} */
+	public void setKeywords(Collection<Keyword> keywords) {
+		this.keywords = keywords;
+	}
+
+	/** @return {@link #andKeys} */
+	public boolean isAndKeys() {
+		return andKeys;
+	}
+
+	/** @param andKeys new {@link #andKeys} */
+	public void setAndKeys(boolean andKeys) {
+		this.andKeys = andKeys;
+	}
+
+	/** @return {@link #useBooks} */
+	public boolean isUseBooks() {
+		return useBooks;
+	}
+
+	/** @param useBooks new {@link #useBooks} */
+	public void setUseBooks(boolean useBooks) {
+		this.useBooks = useBooks;
+	}
+
+	/** @return {@link #books} */
+	public Collection<Book> getBooks() {
+		return books;
+	}
+
+	/** @param books new {@link #books} */
+	public void setBooks(Collection<Book> books) {
+		this.books = books;
+	}
+
+	/** @return {@link #authors} */
+	public Collection<Author> getAuthors() {
+		return authors;
+	}
+
+	/** @param authors new {@link #authors} */
+	public void setAuthors(Collection<Author> authors) {
+		this.authors = authors;
+	}
+
+	/** @return {@link #useSources} */
+	public boolean isUseSources() {
+		return useSources;
+	}
+
+	/** @param useSources new {@link #useSources} */
+	public void setUseSources(boolean useSources) {
+		this.useSources = useSources;
+	}
+
+	/** @return {@link #sources} */
+	public Collection<Source> getSources() {
+		return sources;
+	}
+
+	/** @param sources new {@link #sources} */
+	public void setSources(Collection<Source> sources) {
+		this.sources = sources;
+	}
+
+	/** @return {@link #text} */
+	public String getText() {
+		return text;
+	}
+
+	/** @param text new {@link #text} */
+	public void setText(String text) {
+		this.text = text;
+	}
+
+	/** @return {@link #textMode} */
+	public TextMode getTextMode() {
+		return textMode;
+	}
+
+	/** @param textMode new {@link #textMode} */
+	public void setTextMode(TextMode textMode) {
+		this.textMode = textMode;
+	}
+
+	/** @return {@link #pageFrom} */
+	public int getPageFrom() {
+		return pageFrom;
+	}
+
+	/** @param pageFrom new {@link #pageFrom} */
+	public void setPageFrom(int pageFrom) {
+		this.pageFrom = pageFrom;
+	}
+
+	/** @return {@link #pageTo} */
+	public int getPageTo() {
+		return pageTo;
+	}
+
+	/** @param pageTo new {@link #pageTo} */
+	public void setPageTo(int pageTo) {
+		this.pageTo = pageTo;
+	}
+
+	/** @return if filtering by a page range (only quotes with pages overlapping it). */
+	public boolean hasPageRange() {
+		return pageFrom > 0 || pageTo > 0;
+	}
+
+	/** @return {@link #within} */
+	public long[] getWithin() {
+		return within;
+	}
+
+	/** @param within new {@link #within} */
+	public void setWithin(long[] within) {
+		this.within = within;
+	}
+
+	/** Check if the quotes found by another criteria are always a subset of the ones found by this
+	 * one: when both have the same filters but the text, and the other text extends ours (as when 
+	 * typing it). That's only true for whole words when matching by words or phrase: 'a b' doesn't
+	 * match everything 'a bc' does.<br/>
+	 * If so, the other search could be restricted to the quotes we found (see {@link #setWithin(long[])}).
+	 * @param next the other {@link SearchCriteria}.
+	 * @return if it refines this one. */
+	public boolean isRefinedBy(SearchCriteria next) {
+		if(!getFilterKey().equals(next.getFilterKey())) {
+			return false;
+		}
+		if(StringUtil.isEmpty(text)) {
+			return true;
+		}
+		if(StringUtil.isEmpty(next.text) || textMode != next.textMode || !next.text.startsWith(text)) {
+			return false;
+		}
+		if(textMode == TextMode.CONTAINS || next.text.length() == text.length()) {
+			return true;
+		}
+		if(FullTextIndexer.tokenize(text).isEmpty()) {
+			/* Ours is a plain LIKE: only refined by another one */
+			return FullTextIndexer.tokenize(next.text).isEmpty();
+		}
+		if(textMode == TextMode.PREFIX) {
+			return true;
+		}
+		return Character.isWhitespace(text.charAt(text.length() - 1)) ||
+				Character.isWhitespace(next.text.charAt(text.length()));
+	}
+
+	/** Describe the shape of the search: which filters it uses and how many entities each, but
+	 * not which ones (as to tell apart its kinds when profiling).
+	 * @return the description (ie: "keywords=2 (and), authors=1, text=TOKENS"). */
+	public String getShape() {
+		StringBuilder shape = new StringBuilder();
+		if(!isEmpty(keywords)) {
+			shape.append(", keywords=").append(keywords.size()).append(andKeys ? " (and)" : " (or)");
+		}
+		if(!useBooks) {
+			shape.append(", no books");
+		} else if(!isEmpty(books)) {
+			shape.append(", books=").append(books.size());
+		}
+		if(!isEmpty(authors)) {
+			shape.append(", authors=").append(authors.size());
+		}
+		if(!useSources) {
+			shape.append(", no sources");
+		} else if(!isEmpty(sources)) {
+			shape.append(", sources=").append(sources.size());
+		}
+		if(!StringUtil.isEmpty(text)) {
+			shape.append(", text=").append(textMode);
+		}
+		if(hasPageRange()) {
+			shape.append(", pages");
+		}
+		if(within != null) {
+			shape.append(", within=").append(within.length);
+		}
+		return (shape.length() == 0) ? "all" : shape.substring(2);
+	}
+
+	/** Get the key of the search, equal for all criteria finding the same quotes in the same order
+	 * (but for {@link #within}, as usually set only when finding the same quotes anyway).
+	 * @return the key. */
+	String getKey() {
+		StringBuilder key = new StringBuilder(getFilterKey());
+		if(!StringUtil.isEmpty(text)) {
+			key.append("|t").append(textMode.ordinal()).append(':').append(text);
+		}
+		return key.toString();
+	}
+
+	/** @return the key of all filters but the text. */
+	private String getFilterKey() {
+		StringBuilder key = new StringBuilder();
+		if(!isEmpty(keywords)) {
+			key.append(andKeys ? "k&" : "k|");
+			appendIds(key, keywords);
+		}
+		if(!useBooks) {
+			key.append("b-");
+		} else if(!isEmpty(books)) {
+			key.append('b');
+			appendIds(key, books);
+		}
+		if(!isEmpty(authors)) {
+			key.append('a');
+			appendIds(key, authors);
+		}
+		if(!useSources) {
+			key.append("s-");
+		} else if(!isEmpty(sources)) {
+			key.append('s');
+			appendIds(key, sources);
+		}
+		if(hasPageRange()) {
+			key.append('p').append(pageFrom).append('-').append(pageTo);
+		}
+		return key.toString();
+	}
+
+	/** Append the sorted distinct identifiers of some entities to a key.
+	 * @param key key being built.
+	 * @param entities the entities. */
+	private static void appendIds(StringBuilder key, Collection<? extends Entity> entities) {
+		long[] ids = new long[entities.size()];
+		int i = 0;
+		for(Entity entity : entities) {
+			ids[i++] = entity.getId();
+		}
+		Arrays.sort(ids);
+		key.append('(');
+		for(i = 0; i < ids.length; i++) {
+			if(i == 0 || ids[i] != ids[i - 1]) {
+				key.append(ids[i]).append(',');
+			}
+		}
+		key.append(')');
+	}
+
+	/** @return if a filter collection is empty (or not defined). */
+	private static boolean isEmpty(Collection<?> collection) {
+		return (collection == null) || collection.isEmpty();
+	}
+
+}
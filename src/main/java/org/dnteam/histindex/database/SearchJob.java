@@ -0,0 +1,373 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.dnteam.histindex.metrics.OperationMetrics;
+import org.dnteam.histindex.metrics.Phase;
+import org.dnteam.histindex.metrics.PhaseEvents;
+import org.dnteam.histindex.metrics.PhaseType;
+import org.dnteam.histindex.util.LongObjectMap;
+
+/** A progressive {@link Quote} search: the quotes found are read by a single statement and
+ * delivered, with its related data, in batches while the next ones are still being read. The
+ * first batches are small (so the first quotes are available as soon as found), doubling up
+ * to {@link #MAX_BATCH}.<br/>
+ * A job can be cancelled at any time (from any thread), interrupting its statement by
+ * {@link java.sql.Statement#cancel()}, and is stopped the same way when running longer than its
+ * time budget.<br/>
+ * The identifiers of the quotes found by a completed job are kept at the {@link SearchResultCache}
+ * (if enabled), so a later job with the same criteria just loads them, without searching again.<br/>
+ * Each job instance should be run only once.
+ * @author farrer */
+public class SearchJob {
+
+	/** How a job ended */
+	public enum Status {
+		/** All quotes found were delivered */
+		DONE,
+		/** Cancelled before all quotes were delivered */
+		CANCELLED,
+		/** Its time budget ended before all quotes were delivered */
+		TIMED_OUT
+	}
+
+	/** Receives the batches of quotes found by a job. */
+	public interface Listener {
+		/** Receive a batch of quotes, at the order of the search. Called at the thread running
+		 * the job, which waits for it before reading the next quotes.
+		 * @param quotes the quotes of the batch, with its related data.
+		 * @param found total number of quotes delivered so far (with this batch). */
+		void onBatch(List<Quote> quotes, int found);
+	}
+
+	/** Number of quotes of the first batch */
+	public static final int FIRST_BATCH = 50;
+	/** Max number of quotes of a batch */
+	public static final int MAX_BATCH = 800;
+	/** Default time budget, in milliseconds */
+	public static final long DEFAULT_TIME_BUDGET = 30000;
+
+	/** Metrics of all jobs (the rows are the quotes delivered) */
+	private static final OperationMetrics METRICS = ManagerMetrics.operation("Quotes", "searchJob");
+
+	/** Stopper of the jobs out of its time budget, created on first use */
+	private static ScheduledExecutorService watchdog;
+
+	private final SearchCriteria criteria;
+	private final FetchPlan<Quote> plan;
+	/** Max running time, in milliseconds (0 for no limit) */
+	private final long timeBudget;
+	/** Statement being executed (guarded by this) */
+	private PreparedStatement running;
+	/** If cancelled */
+	private volatile boolean cancelled = false;
+	/** If its time budget ended */
+	private volatile boolean timedOut = false;
+	/** Number of quotes delivered so far */
+	private volatile int found = 0;
+	/** Identifiers of the quotes delivered, in order (the first {@link #found} ones) */
+	private long[] foundIds = new long[FIRST_BATCH];
+	/** If done (all quotes delivered) */
+	private volatile boolean done = false;
+	/** When started, in nanoseconds (0 if not yet) */
+	private volatile long startTime = 0;
+	/** When ended, in nanoseconds (0 if not yet) */
+	private volatile long endTime = 0;
+
+	/** Constructor, with the {@link #DEFAULT_TIME_BUDGET}.
+	 * @param criteria {@link SearchCriteria} of the search.
+	 * @param plan {@link FetchPlan} of the related data to deliver with the quotes (null for none). */
+	public SearchJob(SearchCriteria criteria, FetchPlan<Quote> plan) {
+		this(criteria, plan, DEFAULT_TIME_BUDGET);
+	}
+
+	/** Constructor.
+	 * @param criteria {@link SearchCriteria} of the search.
+	 * @param plan {@link FetchPlan} of the related data to deliver with the quotes (null for none).
+	 * @param timeBudget max running time, in milliseconds (0 for no limit). */
+	public SearchJob(SearchCriteria criteria, FetchPlan<Quote> plan, long timeBudget) {
+		this.criteria = criteria;
+		this.plan = plan;
+		this.timeBudget = timeBudget;
+	}
+
+	/** Run the search, delivering its quotes until all delivered, cancelled or out of time.
+	 * @param conn {@link Connection} to use.
+	 * @param listener {@link Listener} to receive the quotes.
+	 * @return how the job ended.
+	 * @throws SQLException on errors (but the interruption by a cancel or timeout). */
+	public Status run(Connection conn, Listener listener) throws SQLException {
+		startTime = System.nanoTime();
+		ScheduledFuture<?> timeout = scheduleTimeout();
+		long rows = -1;
+		Phase phase = PhaseEvents.getSingleton().begin(PhaseType.SEARCH);
+		try {
+			Status status = search(conn, listener);
+			rows = found;
+			return status;
+		} finally {
+			if(timeout != null) {
+				timeout.cancel(false);
+			}
+			endTime = System.nanoTime();
+			METRICS.record(startTime, rows);
+			QuoteManager.commitSearchPhase(phase, conn, criteria, rows);
+		}
+	}
+
+	/** Search the quotes (or get them from the cache), delivering them.
+	 * @param conn {@link Connection} to use.
+	 * @param listener {@link Listener} to receive the quotes.
+	 * @return how the job ended.
+	 * @throws SQLException */
+	private Status search(Connection conn, Listener listener) throws SQLException {
+		if(isStopped()) {
+			return getStopStatus();
+		}
+		SearchResultCache cache = SearchResultCache.of(conn);
+		String key = (cache != null) ? criteria.getKey() : null;
+		long[] cached = (cache != null) ? cache.get(key) : null;
+		if(cached != null) {
+			return deliverCached(conn, listener, cached);
+		}
+		/* Restricted searches aren't cached: its restriction may be from before a change */
+		long generation = (cache != null && criteria.getWithin() == null) ? cache.getGeneration() : -1;
+		
+		QuoteManager qm = QuoteManager.getSingleton();
+		QuoteSearchPlanner planner = new QuoteSearchPlanner(conn, criteria);
+		if(planner.isEmpty()) {
+			return done();
+		}
+		PreparedStatement stmt = qm.prepareSearch(conn, planner);
+		synchronized(this) {
+			running = stmt;
+		}
+		try {
+			BatchCallback batches = new BatchCallback(conn, listener);
+			qm.openSearchCursor(stmt, planner, FIRST_BATCH, false).forEach(batches);
+			if(isStopped()) {
+				return getStopStatus();
+			}
+			batches.deliver();
+			done();
+			if(generation >= 0) {
+				cache.put(key, getFoundIds(), generation);
+			}
+			return Status.DONE;
+		} catch(SQLException e) {
+			if(isStopped()) {
+				/* Interrupted by us */
+				return getStopStatus();
+			}
+			throw e;
+		} finally {
+			synchronized(this) {
+				running = null;
+			}
+			stmt.close();
+		}
+	}
+
+	/** Deliver the quotes found by a previous search, loading them in batches by identifier.
+	 * @param conn {@link Connection} to use.
+	 * @param listener {@link Listener} to receive the quotes.
+	 * @param ids identifiers of the quotes, at the search order.
+	 * @return how the job ended.
+	 * @throws SQLException */
+	private Status deliverCached(Connection conn, Listener listener, long[] ids) throws SQLException {
+		QuoteManager qm = QuoteManager.getSingleton();
+		int batchSize = FIRST_BATCH;
+		for(int start = 0; start < ids.length; start += batchSize) {
+			if(isStopped()) {
+				return getStopStatus();
+			}
+			if(start > 0) {
+				batchSize = Math.min(batchSize * 2, MAX_BATCH);
+			}
+			long[] slice = Arrays.copyOfRange(ids, start, Math.min(start + batchSize, ids.length));
+			long[] sorted = slice.clone();
+			Arrays.sort(sorted);
+			LongObjectMap<Quote> loaded = new LongObjectMap<Quote>(slice.length);
+			for(Quote quote : qm.load(conn, sorted)) {
+				loaded.put(quote.getId(), quote);
+			}
+			List<Quote> batch = new ArrayList<Quote>(slice.length);
+			for(long id : slice) {
+				Quote quote = loaded.get(id);
+				if(quote != null) {
+					batch.add(quote);
+				}
+			}
+			deliver(conn, listener, batch);
+		}
+		return isStopped() ? getStopStatus() : done();
+	}
+
+	/** Fetch the related data of a batch of quotes and deliver them (if any and not stopped).
+	 * @param conn {@link Connection} to fetch the related data with.
+	 * @param listener {@link Listener} to deliver the batch.
+	 * @param batch the quotes.
+	 * @throws SQLException */
+	private void deliver(Connection conn, Listener listener, List<Quote> batch) throws SQLException {
+		if(batch.isEmpty()) {
+			return;
+		}
+		QuoteManager.getSingleton().fetch(conn, batch, plan);
+		if(!isStopped()) {
+			synchronized(this) {
+				if(foundIds.length < found + batch.size()) {
+					foundIds = Arrays.copyOf(foundIds, Math.max(foundIds.length * 2, found + batch.size()));
+				}
+				for(Quote quote : batch) {
+					foundIds[found++] = quote.getId();
+				}
+			}
+			listener.onBatch(batch, found);
+		}
+	}
+
+	/** @return {@link Status#DONE}, after marking the job as done. */
+	private Status done() {
+		done = true;
+		return Status.DONE;
+	}
+
+	/** Cancel the job, interrupting its statement if running. */
+	public void cancel() {
+		cancelled = true;
+		interrupt();
+	}
+
+	/** @return if cancelled. */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/** @return if stopped by its time budget. */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/** @return number of quotes delivered so far. */
+	public int getFound() {
+		return found;
+	}
+
+	/** @return identifiers of all quotes found, at the search order, or null if the job isn't 
+	 *          done (ie: to restrict a search refining this one, see
+	 *          {@link SearchCriteria#isRefinedBy(SearchCriteria)}). */
+	public synchronized long[] getFoundIds() {
+		return done ? Arrays.copyOf(foundIds, found) : null;
+	}
+
+	/** @return for how long the job is running (or ran), in milliseconds. */
+	public long getElapsed() {
+		if(startTime == 0) {
+			return 0;
+		}
+		long end = (endTime != 0) ? endTime : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - startTime);
+	}
+
+	/** @return if cancelled or timed out. */
+	private boolean isStopped() {
+		return cancelled || timedOut;
+	}
+
+	/** @return status of a stopped job. */
+	private Status getStopStatus() {
+		return cancelled ? Status.CANCELLED : Status.TIMED_OUT;
+	}
+
+	/** Interrupt the running statement, if any. */
+	private synchronized void interrupt() {
+		if(running != null) {
+			try {
+				running.cancel();
+			} catch(SQLException e) {
+				/* Already done: nothing to interrupt */
+			}
+		}
+	}
+
+	/** Schedule the stop of the job when its time budget ends.
+	 * @return the scheduled stop, or null if without budget. */
+	private ScheduledFuture<?> scheduleTimeout() {
+		if(timeBudget <= 0) {
+			return null;
+		}
+		return getWatchdog().schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedOut = true;
+				interrupt();
+			}
+		}, timeBudget, TimeUnit.MILLISECONDS);
+	}
+
+	/** @return {@link #watchdog}, created on first use. */
+	private static synchronized ScheduledExecutorService getWatchdog() {
+		if(watchdog == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "HistIndex search watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.setRemoveOnCancelPolicy(true);
+			watchdog = executor;
+		}
+		return watchdog;
+	}
+
+	/** Gathers the quotes read in batches, delivering each when full. */
+	private class BatchCallback implements RowCallback<Quote> {
+
+		private final Connection conn;
+		private final Listener listener;
+		/** Size of the current batch */
+		private int batchSize = FIRST_BATCH;
+		/** Quotes of the current batch */
+		private List<Quote> batch = new ArrayList<Quote>(FIRST_BATCH);
+
+		/** Constructor.
+		 * @param conn {@link Connection} to fetch the related data with.
+		 * @param listener {@link Listener} to deliver the batches. */
+		BatchCallback(Connection conn, Listener listener) {
+			this.conn = conn;
+			this.listener = listener;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public boolean onRow(Quote quote) throws SQLException {
+			batch.add(quote);
+			if(batch.size() == batchSize) {
+				deliver();
+				batchSize = Math.min(batchSize * 2, MAX_BATCH);
+				batch = new ArrayList<Quote>(batchSize);
+			}
+			return !isStopped();
+		}
+
+		/** Fetch the related data of the current batch quotes and deliver them (if any).
+		 * @throws SQLException */
+		void deliver() throws SQLException {
+			SearchJob.this.deliver(conn, listener, batch);
+		}
+
+	}
+
+}
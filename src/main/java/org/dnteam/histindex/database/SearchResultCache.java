@@ -0,0 +1,133 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A bounded in-memory cache of the results of the most recent {@link Quote} searches: the
+ * identifiers of the quotes found, at the search order, by the key of its {@link SearchCriteria}
+ * (see {@link SearchCriteria#getKey()}). Repeating a search (ie: going back to a previous text)
+ * thus only loads its quotes, by identifier.<br/>
+ * Any change made by our managers clears the whole cache, twice: when made and when commited (as
+ * other connections still read the old rows before that). Results found while any change
+ * happened aren't cached. As with {@link EntityCache}, connections inside a transaction don't use
+ * it. Kept by each {@link Database}.
+ * @author farrer */
+final class SearchResultCache {
+
+	/** The cached results, evicting the least recently used one when full. */
+	private static final class Entries extends LinkedHashMap<String, long[]> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		/** Constructor.
+		 * @param capacity max number of entries. */
+		Entries(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	/** The cached results (guarded by itself) */
+	private final Entries entries;
+	/** Incremented on each invalidation */
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Constructor.
+	 * @param size max number of search results to keep. */
+	SearchResultCache(int size) {
+		entries = new Entries(Math.max(1, size));
+	}
+
+	/** Get the cache to use with a connection.
+	 * @param conn {@link Connection} to be used.
+	 * @return the {@link SearchResultCache} of the connection's {@link Database}, or null if none
+	 *         (not a pooled connection, inside a transaction or disabled).
+	 * @throws SQLException */
+	static SearchResultCache of(Connection conn) throws SQLException {
+		if(conn instanceof DatabaseConnection && conn.getAutoCommit()) {
+			return ((DatabaseConnection) conn).getDatabase().getSearchResultCache();
+		}
+		return null;
+	}
+
+	/** Invalidate the cache of a connection's {@link Database} (if any) after a change made with it.
+	 * @param conn {@link Connection} the change was made with.
+	 * @throws SQLException */
+	static void changed(Connection conn) throws SQLException {
+		if(conn instanceof DatabaseConnection) {
+			SearchResultCache cache = ((DatabaseConnection) conn).getDatabase().getSearchResultCache();
+			if(cache != null) {
+				cache.invalidate(conn);
+			}
+		}
+	}
+
+	/** @return current generation, to be given to {@link #put(String, long[], long)} of results
+	 *          found after it. */
+	long getGeneration() {
+		return generation.get();
+	}
+
+	/** Get a cached result.
+	 * @param key {@link SearchCriteria#getKey()} of the search.
+	 * @return identifiers of the quotes found, at the search order, or null if not cached. */
+	long[] get(String key) {
+		synchronized(entries) {
+			return entries.get(key);
+		}
+	}
+
+	/** Cache the result of a search, unless the cache was invalidated since it started.
+	 * @param key {@link SearchCriteria#getKey()} of the search.
+	 * @param ids identifiers of all quotes found, at the search order (not copied: shouldn't be
+	 *        changed anymore).
+	 * @param searchGeneration the {@link #getGeneration()} before the search. */
+	void put(String key, long[] ids, long searchGeneration) {
+		synchronized(entries) {
+			if(generation.get() == searchGeneration) {
+				entries.put(key, ids);
+			}
+		}
+	}
+
+	/** Remove all results from the cache. */
+	void clear() {
+		synchronized(entries) {
+			generation.incrementAndGet();
+			entries.clear();
+		}
+	}
+
+	/** @return number of cached results. */
+	int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	/** Invalidate all results, after a change with a connection: now and after it is commited.
+	 * @param conn {@link Connection} the change was made with.
+	 * @throws SQLException */
+	void invalidate(Connection conn) throws SQLException {
+		clear();
+		ChangeLog log = ChangeLog.of(conn);
+		if(log != null) {
+			log.add(conn, new ChangeLog.Change() {
+				@Override
+				public void apply() {
+					clear();
+				}
+			});
+		}
+	}
+
+}
@@ -85,4 +85,10 @@ public class SourceManager extends EntityManager<Source> {
 		return ID;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	protected boolean isCached() {
+		return true;
+	}
+
 }
@@ -0,0 +1,182 @@
+package org.dnteam.histindex.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A least recently used cache of {@link PreparedStatement}s of a single {@link PooledConnection},
+ * keyed by its SQL. The statements given are proxies whose close just give them back to the cache
+ * (clearing its parameters and batch), so the same SQL isn't parsed again by SQLite on each use.<br/>
+ * If a statement for a SQL is still in use when asked again (ie: nested usage of the same query),
+ * a new not cached statement is prepared.
+ * @author farrer */
+class StatementCache {
+
+	/** Default number of statements to keep per connection */
+	static final int DEFAULT_CAPACITY = 64;
+
+	/** The real connection to prepare statements with */
+	private final Connection connection;
+	/** The connection to tell as the statements owner (our pooled proxy) */
+	private final Connection owner;
+	/** Max number of statements to keep */
+	private final int capacity;
+	/** Cached statements by its SQL, in access order */
+	private final LinkedHashMap<String, CachedStatement> statements;
+
+	/** Constructor.
+	 * @param connection real {@link Connection} to prepare the statements.
+	 * @param owner {@link Connection} the statements should tell as theirs.
+	 * @param capacity max number of statements to cache. */
+	StatementCache(Connection connection, Connection owner, int capacity) {
+		this.connection = connection;
+		this.owner = owner;
+		this.capacity = capacity;
+		this.statements = new LinkedHashMap<String, CachedStatement>(capacity, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+				if(size() > StatementCache.this.capacity) {
+					eldest.getValue().evict();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/** Get a {@link PreparedStatement} for a SQL, reusing a cached one when possible.
+	 * @param sql the SQL to prepare.
+	 * @return {@link PreparedStatement} to use. Must be closed after use.
+	 * @throws SQLException */
+	synchronized PreparedStatement prepare(String sql) throws SQLException {
+		CachedStatement cached = statements.get(sql);
+		if(cached == null) {
+			cached = new CachedStatement(sql, connection.prepareStatement(sql));
+			statements.put(sql, cached);
+		} else if(cached.inUse) {
+			/* Nested usage of the same SQL: can't share it. */
+			return connection.prepareStatement(sql);
+		}
+		cached.inUse = true;
+		return cached.proxy;
+	}
+
+	/** Close all cached statements. */
+	synchronized void clear() {
+		Iterator<CachedStatement> it = statements.values().iterator();
+		while(it.hasNext()) {
+			it.next().evict();
+			it.remove();
+		}
+	}
+
+	/** @return number of currently cached statements. */
+	synchronized int size() {
+		return statements.size();
+	}
+
+	/** A cached {@link PreparedStatement}, handling calls to its proxy. */
+	private class CachedStatement implements InvocationHandler {
+		/** SQL of the statement */
+		private final String sql;
+		/** The real statement */
+		private final PreparedStatement statement;
+		/** Proxy of the statement, given to the users */
+		private final PreparedStatement proxy;
+		/** Last result set opened with the statement */
+		private ResultSet resultSet;
+		/** If currently given to an user */
+		private boolean inUse = false;
+		/** If removed from the cache (closing when given back) */
+		private boolean evicted = false;
+
+		/** Constructor.
+		 * @param sql SQL of the statement.
+		 * @param statement real {@link PreparedStatement} to cache. */
+		CachedStatement(String sql, PreparedStatement statement) {
+			this.sql = sql;
+			this.statement = statement;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] {PreparedStatement.class}, this);
+		}
+
+		/** Give back the statement to the cache, ready for its next use. */
+		private void release() {
+			synchronized(StatementCache.this) {
+				try {
+					if(resultSet != null && !resultSet.isClosed()) {
+						resultSet.close();
+					}
+					statement.clearParameters();
+					statement.clearBatch();
+					/* Back to the driver default, as set by cursors (see EntityCursor) */
+					statement.setFetchSize(0);
+				} catch(SQLException e) {
+					/* Unusable: just discard it. */
+					if(!evicted) {
+						statements.remove(sql);
+					}
+					evicted = true;
+				}
+				resultSet = null;
+				inUse = false;
+				if(evicted) {
+					closeStatement();
+				}
+			}
+		}
+
+		/** Remove the statement from use, closing it now if not in use or when given back. */
+		private void evict() {
+			evicted = true;
+			if(!inUse) {
+				closeStatement();
+			}
+		}
+
+		/** Really close the statement. */
+		private void closeStatement() {
+			try {
+				statement.close();
+			} catch(SQLException e) {
+				/* Nothing to do: discarding it anyway. */
+			}
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if(method.getParameterCount() == 0) {
+				if("close".equals(name)) {
+					if(inUse) {
+						release();
+					}
+					return null;
+				} else if("isClosed".equals(name)) {
+					return !inUse || statement.isClosed();
+				} else if("getConnection".equals(name)) {
+					return owner;
+				}
+			}
+			try {
+				Object res = method.invoke(statement, args);
+				if(res instanceof ResultSet) {
+					resultSet = (ResultSet) res;
+				}
+				return res;
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/** A transaction opened on a {@link Connection}, to be used with a try-with-resources. If the
+ * connection is already inside a transaction, a savepoint is used instead, so the scope
+ * could be nested. If not commited before closed, all its changes are rolled back.
+ * @author farrer */
+class TransactionScope implements AutoCloseable {
+
+	/** Connection of the transaction */
+	private final Connection conn;
+	/** Savepoint used, if nested in an outer transaction */
+	private final Savepoint savepoint;
+	/** If the transaction was already commited (or rolled back) */
+	private boolean done = false;
+
+	/** Begin a transaction (or a savepoint, if already in a transaction).
+	 * @param conn {@link Connection} to use.
+	 * @throws SQLException */
+	TransactionScope(Connection conn) throws SQLException {
+		this.conn = conn;
+		if(conn.getAutoCommit()) {
+			conn.setAutoCommit(false);
+			this.savepoint = null;
+		} else {
+			this.savepoint = conn.setSavepoint();
+		}
+	}
+
+	/** @return if nested inside an outer transaction. */
+	boolean isNested() {
+		return savepoint != null;
+	}
+
+	/** Commit the changes made inside the scope (for a nested one, they are only really commited
+	 * with its outer transaction).
+	 * @throws SQLException */
+	void commit() throws SQLException {
+		assert(!done);
+		if(savepoint != null) {
+			conn.releaseSavepoint(savepoint);
+		} else {
+			conn.commit();
+			conn.setAutoCommit(true);
+		}
+		done = true;
+	}
+
+	/** Rollback all changes made inside the scope, if not yet commited. */
+	@Override
+	public void close() throws SQLException {
+		if(done) {
+			return;
+		}
+		done = true;
+		if(savepoint != null) {
+			conn.rollback(savepoint);
+			conn.releaseSavepoint(savepoint);
+		} else {
+			try {
+				conn.rollback();
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		}
+	}
+
+}
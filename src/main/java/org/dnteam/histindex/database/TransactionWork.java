@@ -0,0 +1,21 @@
+package org.dnteam.histindex.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/** A unit of work to be executed inside a single transaction.
+ * @see Database#inTransaction(TransactionWork)
+ * @author farrer
+ *
+ * @param <R> type of the work result. */
+public interface TransactionWork<R> {
+
+	/** Do the work. It could be executed more than once (retrying when the database was busy), 
+	 * so it shouldn't have side effects outside the database, or should redo them on each call.
+	 * @param conn {@link Connection} to use (already inside the transaction). Never commit
+	 *        or rollback it directly: just throw an exception to rollback the transaction.
+	 * @return the result of the work, if any.
+	 * @throws SQLException */
+	R execute(Connection conn) throws SQLException;
+
+}
@@ -0,0 +1,24 @@
+package org.dnteam.histindex.database;
+
+import java.sql.SQLException;
+
+/** A {@link SQLException} thrown where checked exceptions can't be (ie: while consuming a
+ * {@link java.util.stream.Stream} of entities).
+ * @author farrer */
+public class UncheckedSQLException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Constructor.
+	 * @param cause the {@link SQLException}. */
+	public UncheckedSQLException(SQLException cause) {
+		super(cause.getMessage(), cause);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public synchronized SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+
+}
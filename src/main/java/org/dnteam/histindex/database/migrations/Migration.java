@@ -0,0 +1,22 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/** A single step of the database schema evolution, upgrading it from the previous version to
+ * its own. Applied by the {@link SchemaMigrator}, inside a transaction.
+ * @author farrer */
+public abstract class Migration {
+
+	/** @return the schema version the database will be after applying this migration. */
+	public abstract int getVersion();
+
+	/** @return a short human readable description of the migration. */
+	public abstract String getDescription();
+
+	/** Apply the migration changes to the database.
+	 * @param conn {@link Connection} to use (already inside a transaction).
+	 * @throws SQLException */
+	public abstract void apply(Connection conn) throws SQLException;
+
+}
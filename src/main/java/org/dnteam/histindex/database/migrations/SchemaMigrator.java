@@ -0,0 +1,126 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.TransactionWork;
+
+/** Upgrade a database file schema, in place, to the current version, applying each not yet
+ * applied {@link Migration}. The current schema version of a file is kept at its 
+ * <code>PRAGMA user_version</code> (0 for files created before any migration).
+ * @author farrer */
+public class SchemaMigrator {
+	
+	private static final SchemaMigrator SINGLETON = new SchemaMigrator();
+	
+	/** All known migrations, ordered by version */
+	private final List<Migration> migrations;
+	
+	private SchemaMigrator() {
+		List<Migration> list = new ArrayList<Migration>();
+		list.add(new V1CreateIndexes());
+		list.add(new V2CreateFullTextIndex());
+		list.add(new V3AddPageRange());
+		list.add(new V4AddBookSortKey());
+		list.add(new V5AddQuoteSortKey());
+		
+		for(int i = 0; i < list.size(); i++) {
+			assert(list.get(i).getVersion() == i + 1);
+		}
+		migrations = Collections.unmodifiableList(list);
+	}
+	
+	/** @return the single instance of {@link SchemaMigrator}. */
+	public static SchemaMigrator getSingleton() {
+		return SINGLETON;
+	}
+	
+	/** @return the schema version of a fully migrated database. */
+	public int getLatestVersion() {
+		return migrations.size();
+	}
+	
+	/** @return all known migrations, ordered by version. */
+	public List<Migration> getMigrations() {
+		return migrations;
+	}
+	
+	/** Get the current schema version of a database.
+	 * @param db {@link Database} to check.
+	 * @return its schema version.
+	 * @throws SQLException */
+	public int getVersion(Database db) throws SQLException {
+		try(ConnectionLease lease = db.leaseReader()) {
+			return getVersion(lease.getConnection());
+		}
+	}
+	
+	/** Get the current schema version of a database.
+	 * @param conn {@link Connection} to use.
+	 * @return its schema version.
+	 * @throws SQLException */
+	public int getVersion(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+	}
+	
+	/** Apply all pending migrations to a database, each one in its own transaction (so a 
+	 * failed one keeps the previous applied).
+	 * @param db {@link Database} to migrate.
+	 * @return number of migrations applied.
+	 * @throws SQLException if a migration failed, or if the database was created with a 
+	 *         newer (unknown) schema version. */
+	public int migrate(Database db) throws SQLException {
+		int applied = 0;
+		for(final Migration migration : migrations) {
+			boolean done = db.inTransaction(new TransactionWork<Boolean>() {
+				public Boolean execute(Connection conn) throws SQLException {
+					/* Checking inside the transaction, as someone could have migrated it meanwhile */
+					int version = getVersion(conn);
+					if(version > getLatestVersion()) {
+						throw new SQLException("Database schema version " + version + 
+								" is newer than the supported " + getLatestVersion());
+					}
+					if(version >= migration.getVersion()) {
+						return false;
+					}
+					migration.apply(conn);
+					setVersion(conn, migration.getVersion());
+					return true;
+				}
+			});
+			if(done) {
+				applied++;
+			}
+		}
+		
+		if(applied > 0) {
+			/* Let the query planner know about our new indexes */
+			try(ConnectionLease lease = db.leaseWriter();
+				 Statement stmt = lease.getConnection().createStatement()) {
+				stmt.execute("ANALYZE;");
+			}
+		}
+		return applied;
+	}
+	
+	/** Define the schema version of a database.
+	 * @param conn {@link Connection} to use.
+	 * @param version new version.
+	 * @throws SQLException */
+	static void setVersion(Connection conn, int version) throws SQLException {
+		try(Statement stmt = conn.createStatement()) {
+			stmt.execute("PRAGMA user_version = " + version);
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/** Create the secondary indexes used by relation joins, deletes and search filters, avoiding
+ * full table scans on them.
+ * @author farrer */
+class V1CreateIndexes extends Migration {
+
+	/** {@inheritDoc} */
+	@Override
+	public int getVersion() {
+		return 1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getDescription() {
+		return "Create relation and quote filter indexes";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void apply(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement()) {
+			/* Relations, on both directions (covering the joins by any of its ids) */
+			stmt.execute("CREATE INDEX IF NOT EXISTS QuoteKeywordByQuote ON QuoteKeyword(QuoteId, KeywordId);");
+			stmt.execute("CREATE INDEX IF NOT EXISTS QuoteKeywordByKeyword ON QuoteKeyword(KeywordId, QuoteId);");
+			stmt.execute("CREATE INDEX IF NOT EXISTS BookAuthorByBook ON BookAuthor(BookId, AuthorId);");
+			stmt.execute("CREATE INDEX IF NOT EXISTS BookAuthorByAuthor ON BookAuthor(AuthorId, BookId);");
+			/* Quote filters (and its default order) */
+			stmt.execute("CREATE INDEX IF NOT EXISTS QuotesByBook ON Quotes(BookId, SourceId, Page);");
+			stmt.execute("CREATE INDEX IF NOT EXISTS QuotesBySource ON Quotes(SourceId);");
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.dnteam.histindex.database.FullTextIndexer;
+
+/** Create the FTS5 full-text index over quotes text and comment (with diacritics removed, so
+ * searches are accent-insensitive), kept in sync with the quotes table by triggers. Quotes already
+ * on the database aren't indexed here, but latter, in background, by the {@link FullTextIndexer}.
+ * @author farrer */
+class V2CreateFullTextIndex extends Migration {
+
+	/** {@inheritDoc} */
+	@Override
+	public int getVersion() {
+		return 2;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getDescription() {
+		return "Create the quotes full-text index";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void apply(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement()) {
+			/* Key-value settings of the database file */
+			stmt.execute("CREATE TABLE IF NOT EXISTS Settings(Key TEXT PRIMARY KEY, Value TEXT);");
+
+			/* The index itself, with the quote Id as its rowid */
+			stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS QuotesFts USING fts5(Text, Comment, "
+					+ "tokenize = 'unicode61 remove_diacritics 1');");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS QuotesFtsInsert AFTER INSERT ON Quotes BEGIN "
+					+ "INSERT INTO QuotesFts(rowid, Text, Comment) VALUES (new.Id, new.Text, new.Comment); END;");
+			/* Delete before insert, as the quote could still not be indexed by the backfill */
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS QuotesFtsUpdate AFTER UPDATE OF Text, Comment ON Quotes BEGIN "
+					+ "DELETE FROM QuotesFts WHERE rowid = old.Id; "
+					+ "INSERT INTO QuotesFts(rowid, Text, Comment) VALUES (new.Id, new.Text, new.Comment); END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS QuotesFtsDelete AFTER DELETE ON Quotes BEGIN "
+					+ "DELETE FROM QuotesFts WHERE rowid = old.Id; END;");
+
+			/* Nothing to backfill on an empty database */
+			stmt.execute("INSERT OR REPLACE INTO Settings(Key, Value) SELECT '" + FullTextIndexer.COMPLETE_SETTING
+					+ "', CASE WHEN EXISTS (SELECT 1 FROM Quotes) THEN 0 ELSE 1 END;");
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.dnteam.histindex.util.PageRange;
+
+/** Add the parsed first and last pages of each quote (see {@link PageRange}), so quotes are
+ * ordered and filtered by its pages at the database, replacing the book and page index by one on
+ * the first page.
+ * @author farrer */
+class V3AddPageRange extends Migration {
+
+	/** Max number of quotes updated on a single JDBC batch */
+	private static final int BATCH_SIZE = 500;
+
+	/** {@inheritDoc} */
+	@Override
+	public int getVersion() {
+		return 3;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getDescription() {
+		return "Add quotes parsed page range";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void apply(Connection conn) throws SQLException {
+		if(!hasPageColumns(conn)) {
+			try(Statement stmt = conn.createStatement()) {
+				stmt.execute("ALTER TABLE Quotes ADD COLUMN PageStart INTEGER NOT NULL DEFAULT 0;");
+				stmt.execute("ALTER TABLE Quotes ADD COLUMN PageEnd INTEGER NOT NULL DEFAULT 0;");
+			}
+		}
+
+		/* Backfill the pages of the existing quotes */
+		try(Statement select = conn.createStatement();
+			 PreparedStatement update = conn.prepareStatement(
+					 "UPDATE Quotes SET PageStart = ?, PageEnd = ? WHERE Id = ?")) {
+			int pending = 0;
+			try(ResultSet rs = select.executeQuery("SELECT Id, Page FROM Quotes WHERE Page <> ''")) {
+				while(rs.next()) {
+					PageRange pages = PageRange.parse(rs.getString(2));
+					if(pages.getStart() == 0 && pages.getEnd() == 0) {
+						continue;
+					}
+					update.setInt(1, pages.getStart());
+					update.setInt(2, pages.getEnd());
+					update.setLong(3, rs.getLong(1));
+					update.addBatch();
+					pending++;
+					if(pending == BATCH_SIZE) {
+						update.executeBatch();
+						pending = 0;
+					}
+				}
+			}
+			if(pending > 0) {
+				update.executeBatch();
+			}
+		}
+
+		try(Statement stmt = conn.createStatement()) {
+			stmt.execute("DROP INDEX IF EXISTS QuotesByBook;");
+			stmt.execute("CREATE INDEX IF NOT EXISTS QuotesByBookPage ON Quotes(BookId, SourceId, PageStart);");
+		}
+	}
+
+	/** Check if the page columns were already added (ie: by an interrupted upgrade).
+	 * @param conn {@link Connection} to use.
+	 * @return if the quotes table has them.
+	 * @throws SQLException */
+	private boolean hasPageColumns(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("PRAGMA table_info(Quotes)")) {
+			while(rs.next()) {
+				if("PageStart".equalsIgnoreCase(rs.getString("name"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/** Add the sort key of each book: its description (authors, by last name and name, and title, as
+ * <code>Book.getDescription()</code>), kept up to date by triggers, so quotes are ordered by its
+ * book description at the database.
+ * @author farrer */
+class V4AddBookSortKey extends Migration {
+
+	/** Authors and title of the updated book. The sub-select is in the authors order, as the authors
+	 * of loaded books (see <code>BookAuthorManager.populateAuthors</code>). */
+	private static final String SORT_KEY = "COALESCE((SELECT group_concat(Author, ';') FROM ("
+			+ "SELECT COALESCE(A.LastName, '') || ', ' || COALESCE(A.Name, '') AS Author "
+			+ "FROM BookAuthor BA INNER JOIN Authors A ON A.Id = BA.AuthorId WHERE BA.BookId = Books.Id "
+			+ "ORDER BY A.LastName, A.Name, A.Id)), '') || '. ' || COALESCE(Title, '')";
+
+	/** {@inheritDoc} */
+	@Override
+	public int getVersion() {
+		return 4;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getDescription() {
+		return "Add books sort key";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void apply(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement()) {
+			if(!hasSortKeyColumn(conn)) {
+				stmt.execute("ALTER TABLE Books ADD COLUMN SortKey TEXT;");
+			}
+
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS BooksSortKeyInsert AFTER INSERT ON Books BEGIN "
+					+ refresh("new.Id") + " END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS BooksSortKeyUpdate AFTER UPDATE OF Title ON Books BEGIN "
+					+ refresh("new.Id") + " END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS BookAuthorSortKeyInsert AFTER INSERT ON BookAuthor BEGIN "
+					+ refresh("new.BookId") + " END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS BookAuthorSortKeyDelete AFTER DELETE ON BookAuthor BEGIN "
+					+ refresh("old.BookId") + " END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS AuthorsSortKeyUpdate AFTER UPDATE OF Name, LastName "
+					+ "ON Authors BEGIN UPDATE Books SET SortKey = " + SORT_KEY
+					+ " WHERE Id IN (SELECT BookId FROM BookAuthor WHERE AuthorId = new.Id); END;");
+
+			/* Backfill the existing books */
+			stmt.execute("UPDATE Books SET SortKey = " + SORT_KEY + ";");
+		}
+	}
+
+	/** Create the statement updating the sort key of a book.
+	 * @param bookId expression of the book identifier.
+	 * @return the statement. */
+	private static String refresh(String bookId) {
+		return "UPDATE Books SET SortKey = " + SORT_KEY + " WHERE Id = " + bookId + ";";
+	}
+
+	/** Check if the sort key column was already added (ie: by an interrupted upgrade).
+	 * @param conn {@link Connection} to use.
+	 * @return if the books table has it.
+	 * @throws SQLException */
+	private boolean hasSortKeyColumn(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("PRAGMA table_info(Books)")) {
+			while(rs.next()) {
+				if("SortKey".equalsIgnoreCase(rs.getString("name"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+}
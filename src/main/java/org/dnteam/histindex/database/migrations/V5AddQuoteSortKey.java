@@ -0,0 +1,75 @@
+package org.dnteam.histindex.database.migrations;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/** Copy the sort key of each book to its quotes (with a flag of quotes without a book, to order
+ * them last), kept up to date by triggers, so the default quote order is served by an index
+ * instead of sorting all quotes on each page.
+ * @author farrer */
+class V5AddQuoteSortKey extends Migration {
+
+	/** Set the book key columns of the quote with identifier <code>%s</code> */
+	private static final String REFRESH_QUOTE = "UPDATE Quotes SET "
+			+ "NoBook = NOT EXISTS (SELECT 1 FROM Books B WHERE B.Id = Quotes.BookId), "
+			+ "BookSortKey = (SELECT B.SortKey FROM Books B WHERE B.Id = Quotes.BookId) WHERE Id = %s;";
+
+	/** {@inheritDoc} */
+	@Override
+	public int getVersion() {
+		return 5;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String getDescription() {
+		return "Add quotes book sort key";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void apply(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement()) {
+			if(!hasSortKeyColumns(conn)) {
+				stmt.execute("ALTER TABLE Quotes ADD COLUMN NoBook INTEGER NOT NULL DEFAULT 1;");
+				stmt.execute("ALTER TABLE Quotes ADD COLUMN BookSortKey TEXT;");
+			}
+
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS QuotesSortKeyInsert AFTER INSERT ON Quotes BEGIN "
+					+ String.format(REFRESH_QUOTE, "new.Id") + " END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS QuotesSortKeyUpdate AFTER UPDATE OF BookId ON Quotes "
+					+ "WHEN old.BookId IS NOT new.BookId BEGIN " + String.format(REFRESH_QUOTE, "new.Id") + " END;");
+			/* Books keys are set by its own triggers (see V4AddBookSortKey) */
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS BooksQuoteSortKeyUpdate AFTER UPDATE OF SortKey ON Books "
+					+ "BEGIN UPDATE Quotes SET NoBook = 0, BookSortKey = new.SortKey WHERE BookId = new.Id; END;");
+			stmt.execute("CREATE TRIGGER IF NOT EXISTS BooksQuoteSortKeyDelete AFTER DELETE ON Books "
+					+ "BEGIN UPDATE Quotes SET NoBook = 1, BookSortKey = NULL WHERE BookId = old.Id; END;");
+
+			/* Backfill the existing quotes */
+			stmt.execute(String.format(REFRESH_QUOTE, "Quotes.Id"));
+
+			/* The default quote order (see QuoteManager) */
+			stmt.execute("CREATE INDEX IF NOT EXISTS QuotesBySortKey "
+					+ "ON Quotes(NoBook, BookSortKey, SourceId, PageStart, Id);");
+		}
+	}
+
+	/** Check if the sort key columns were already added (ie: by an interrupted upgrade).
+	 * @param conn {@link Connection} to use.
+	 * @return if the quotes table has them.
+	 * @throws SQLException */
+	private boolean hasSortKeyColumns(Connection conn) throws SQLException {
+		try(Statement stmt = conn.createStatement();
+			 ResultSet rs = stmt.executeQuery("PRAGMA table_info(Quotes)")) {
+			while(rs.next()) {
+				if("BookSortKey".equalsIgnoreCase(rs.getString("name"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+}
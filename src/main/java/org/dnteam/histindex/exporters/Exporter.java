@@ -14,7 +14,13 @@ import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
 import org.dnteam.histindex.database.Keyword;
 import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.SearchCriteria;
 import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.metrics.MetricsRegistry;
+import org.dnteam.histindex.metrics.OperationMetrics;
+import org.dnteam.histindex.metrics.Phase;
+import org.dnteam.histindex.metrics.PhaseEvents;
+import org.dnteam.histindex.metrics.PhaseType;
 import org.dnteam.histindex.util.StringUtil;
 
 import net.sf.nervalreports.core.ReportColors;
@@ -26,6 +32,10 @@ import net.sf.nervalreports.core.ReportTextAlignment;
  * @author farrer */
 public abstract class Exporter { 
 	
+	/** Metrics of all generations (the rows are the quotes exported) */
+	private static final OperationMetrics GENERATE_METRICS = 
+			MetricsRegistry.getSingleton().operation("Exporter.generate");
+	
 	/** The list of quotes to export. */
 	protected final List<Quote> quotes;
 	/** The generator to use. */
@@ -56,6 +66,24 @@ public abstract class Exporter {
 		generator.release();
 	}
 
+	/** Generate the export of the quotes found by a search to the ReportGenerator, with its 
+	 * criteria as the search information. But without saving it yet to a file.
+	 * @param criteria {@link SearchCriteria} of the search.
+	 * @throws ReportGenerationException */
+	public void generate(SearchCriteria criteria) throws ReportGenerationException {
+		String searchText = criteria.getText();
+		if(!StringUtil.isEmpty(searchText) && criteria.getTextMode() != null) {
+			searchText += " (" + criteria.getTextMode().getDescription() + ")";
+		}
+		generate(orNone(criteria.getKeywords()), criteria.isAndKeys(), orNone(criteria.getBooks()), 
+				orNone(criteria.getAuthors()), orNone(criteria.getSources()), searchText);
+	}
+	
+	/** @return the collection, or an empty one if null. */
+	private static <T> Collection<T> orNone(Collection<T> collection) {
+		return (collection != null) ? collection : new ArrayList<T>();
+	}
+
 	/** Generate the export to the ReportGenerator. But without saving it yet to a file.
 	 * @param searchKeywords {@link Keyword}s that was used on search query, if any.
 	 * @param andKeys if {@link Keyword}s should use AND (true) or OR (false) as connector.
@@ -67,41 +95,68 @@ public abstract class Exporter {
 	public void generate(Collection<Keyword> searchKeywords, boolean andKeys, Collection<Book> searchBooks, 
 			Collection<Author> searchAuthors, Collection<Source> searchSources, String searchText) 
 					throws ReportGenerationException {
-		generator.beginDocument();
-		
-		generator.setMargins(2, 2, 2, 2);
-		
-		generator.beginDocumentHead();
+		long started = System.nanoTime();
+		long rows = -1;
 		try {
-			setFonts(generator);
-		} catch (IOException e) {
-			throw new ReportGenerationException(e);
-		}
-		if(generator.isHeaderAndFooterDeclarationAtDocumentHead()) {
-			generateHeaderAndFooter(generator);
-		}
-		generator.endDocumentHead();
+			generator.beginDocument();
 		
+			generator.setMargins(2, 2, 2, 2);
 		
-		/* Our body */
-		generator.beginDocumentBody();
-		
-			if(!generator.isHeaderAndFooterDeclarationAtDocumentHead()) {
+			generator.beginDocumentHead();
+			Phase phase = PhaseEvents.getSingleton().begin(PhaseType.FONT_LOADING);
+			try {
+				setFonts(generator);
+			} catch (IOException e) {
+				throw new ReportGenerationException(e);
+			} finally {
+				commitPhase(phase, 0);
+			}
+			if(generator.isHeaderAndFooterDeclarationAtDocumentHead()) {
 				generateHeaderAndFooter(generator);
 			}
+			generator.endDocumentHead();
+		
+		
+			/* Our body */
+			generator.beginDocumentBody();
+		
+				if(!generator.isHeaderAndFooterDeclarationAtDocumentHead()) {
+					generateHeaderAndFooter(generator);
+				}
 		
-			/* Search Information */
-			generateSearchInformation(searchKeywords, andKeys, searchBooks, searchAuthors, searchSources, searchText);
+				/* Search Information */
+				generateSearchInformation(searchKeywords, andKeys, searchBooks, searchAuthors, searchSources, searchText);
 			
-			/* We should use tables with borders from now on. */
-			generator.setTableBorderStyle(0.5f, ReportColors.BLACK);
+				/* We should use tables with borders from now on. */
+				generator.setTableBorderStyle(0.5f, ReportColors.BLACK);
 			
-			/* Finally, our data. */
-			generateQuotesData();
+				/* Finally, our data. */
+				phase = PhaseEvents.getSingleton().begin(PhaseType.EXPORT);
+				try {
+					generateQuotesData();
+				} finally {
+					commitPhase(phase, quotes.size());
+				}
 		
-		generator.endDocumentBody();
+			generator.endDocumentBody();
 		
-		generator.endDocument();
+			generator.endDocument();
+			rows = quotes.size();
+		} finally {
+			GENERATE_METRICS.record(started, rows);
+		}
+	}
+	
+	/** Commit a phase of the generation, with its details if recorded.
+	 * @param phase the {@link Phase}.
+	 * @param rows number of quotes of the phase. */
+	private void commitPhase(Phase phase, long rows) {
+		if(phase.isEnabled()) {
+			phase.setDatabase(database.getFilename());
+			phase.setRows(rows);
+			phase.setDetails(getClass().getSimpleName());
+		}
+		phase.commit();
 	}
 	
 	/** Generate our headers and footers. As a function as some {@link ReportGenerator}s need it
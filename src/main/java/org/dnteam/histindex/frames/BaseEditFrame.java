@@ -1,12 +1,16 @@
 package org.dnteam.histindex.frames;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import org.dnteam.histindex.database.AsyncDatabase;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.TransactionWork;
+import org.dnteam.histindex.widgets.FxExecutor;
 
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -111,30 +115,46 @@ public abstract class BaseEditFrame<T extends Entity> extends BaseFrame {
 		stage.show();
 	}
 	
-	/** Save (by insert or update) the current editing entity */
+	/** Save (by insert or update) the current editing entity. The save is done asynchronously,
+	 * with the frame disabled until done. */
 	protected void onSaveButtonClick() {
 		
-		scene.getRoot().setDisable(true);
-		
 		/* FIXME: Note that here we aren't doing any concurrency check, as if the user
 		 * opened more than one instance for the same entity, the most recently
 		 * saved should always persist. It would be a problem if we have two users
 		 * accessing the same database and we should do something here if someday
 		 * we plan to support it. */
 		
-		if(populateAndValidateEntity(this.entity)) {
+		if(!populateAndValidateEntity(this.entity)) {
+			return;
+		}
+		
+		scene.getRoot().setDisable(true);
 		
-			try(Connection conn = DriverManager.getConnection(database.getURL())) {
-				doBeforeSave(conn, this.entity);
-				if(this.entity.getId() == 0) {
+		final boolean inserting = (this.entity.getId() == 0);
+		/* All the save pipeline in a single transaction: all or nothing is saved */
+		CompletableFuture<Void> saving = database.async().inTransaction(AsyncDatabase.Lane.INTERACTIVE,
+				new TransactionWork<Void>() {
+			public Void execute(Connection conn) throws SQLException {
+				if(inserting) {
+					/* Could be a retry: define as new again. */
+					entity.setId(0);
+				}
+				doBeforeSave(conn, entity);
+				if(inserting) {
 					/* Insert new */
-					getManager().insert(conn, this.entity);
+					getManager().insert(conn, entity);
 				}
 				else {
 					/* Update existing one */
-					getManager().update(conn, this.entity);
+					getManager().update(conn, entity);
 				}
-				doAfterSave(conn, this.entity);
+				doAfterSave(conn, entity);
+				return null;
+			}
+		});
+		FxExecutor.getSingleton().deliver(saving, new Consumer<Void>() {
+			public void accept(Void nothing) {
 				/* Close our window */
 				stage.close();
 				
@@ -142,37 +162,51 @@ public abstract class BaseEditFrame<T extends Entity> extends BaseFrame {
 				if(caller != null) {
 					caller.refresh();
 				}
-			} catch (SQLException e) {
+			}
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
+				if(inserting) {
+					/* Rolled back: still not inserted. */
+					entity.setId(0);
+				}
+				scene.getRoot().setDisable(false);
 				showError("Couldn't save (" + e.getMessage() + ")");
 			}
-		}
-		
-		scene.getRoot().setDisable(false);
+		});
 	}
 	
-	/** Delete the current editing entity */
+	/** Delete the current editing entity. The delete is done asynchronously, with the frame 
+	 * disabled until done. */
 	protected void onDeleteButtonClick() {
 		
 		scene.getRoot().setDisable(true);
 		
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			doBeforeDelete(conn, this.entity);
-			getManager().delete(conn, this.entity.getId());
-			doAfterDelete(conn, this.entity);
-			
-			/* Close our window */
-			stage.close();
+		/* All the delete pipeline in a single transaction */
+		CompletableFuture<Void> deleting = database.async().inTransaction(AsyncDatabase.Lane.INTERACTIVE,
+				new TransactionWork<Void>() {
+			public Void execute(Connection conn) throws SQLException {
+				doBeforeDelete(conn, entity);
+				getManager().delete(conn, entity.getId());
+				doAfterDelete(conn, entity);
+				return null;
+			}
+		});
+		FxExecutor.getSingleton().deliver(deleting, new Consumer<Void>() {
+			public void accept(Void nothing) {
+				/* Close our window */
+				stage.close();
 				
-			/* Update our caller, if any */
-			if(caller != null) {
-				caller.load(conn);
-				caller.refresh();
+				/* Reload our caller, if any */
+				if(caller != null) {
+					caller.load();
+				}
 			}
-		} catch (SQLException e) {
-			showError("Couldn't delete (" + e.getMessage() + ")");
-		}
-		
-		scene.getRoot().setDisable(false);
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
+				scene.getRoot().setDisable(false);
+				showError("Couldn't delete (" + e.getMessage() + ")");
+			}
+		});
 
 	}
 	
@@ -190,8 +224,9 @@ public abstract class BaseEditFrame<T extends Entity> extends BaseFrame {
 	/** @return {@link EntityManager} of the implementator {@link Entity}. */
 	public abstract EntityManager<T> getManager();
 	
-	/** Called just before the insert/update. Implementors should override this to, for example, delete
-	 * no more used relations before update.
+	/** Called just before the insert/update, inside the same transaction. Implementors should override this to, for example, delete
+	 * no more used relations before update. Like all save and delete hooks, it is called outside the application
+	 * thread: it should only use the entity (populated by {@link #populateAndValidateEntity(Entity)}), never the widgets.
 	 * @param con connection to use.
 	 * @param entity entity that will be saved. */
 	public void doBeforeSave(Connection con, T entity) throws SQLException {
@@ -204,14 +239,14 @@ public abstract class BaseEditFrame<T extends Entity> extends BaseFrame {
 	public void doAfterSave(Connection con, T entity) throws SQLException {
 	}
 	
-	/** Called just before the delete. Implementors should override this to, for example, delete
+	/** Called just before the delete, inside the same transaction. Implementors should override this to, for example, delete
 	 * all entity relations.
 	 * @param con connection to use.
 	 * @param entity entity that will be deleted. */
 	public void doBeforeDelete(Connection con, T entity) throws SQLException {
 	}
 	
-	/** Called just after the delete.
+	/** Called just after the delete (but before commit).
 	 * @param con connection to use.
 	 * @param entity entity that was deleted. */
 	public void doAfterDelete(Connection con, T entity) throws SQLException {
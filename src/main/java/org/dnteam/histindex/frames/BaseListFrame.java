@@ -1,12 +1,13 @@
 package org.dnteam.histindex.frames;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
+import org.dnteam.histindex.database.Page;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -19,6 +20,7 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 
 /** A basic class for defining list frames for a {@link Entity}.
  * @author farrer
@@ -32,6 +34,9 @@ public abstract class BaseListFrame <T extends Entity> extends BaseSelectFrame<T
 	protected final Stage stage;
 	/** The tableview which contains our entities */
 	private final TableView<T> table;
+	/** Its items, loaded by pages */
+	private final ObservableList<T> data = FXCollections.observableArrayList();
+	private final TablePager<T> pager;
 
 	/** Constructor.
 	 * @param database database to use.
@@ -45,6 +50,19 @@ public abstract class BaseListFrame <T extends Entity> extends BaseSelectFrame<T
 		VBox root = new VBox();
 		
 		table = new TableView<T>();
+		table.setItems(data);
+		pager = new TablePager<T>(database, table, data) {
+			@Override
+			protected Page<T> fetch(Connection conn, String token, int pageSize) throws SQLException {
+				Page<T> page = getManager().loadPage(conn, token, pageSize);
+				getManager().fetch(conn, page.getItems(), getFetchPlan());
+				return page;
+			}
+			@Override
+			protected void onError(Throwable e) {
+				showError("Couldn't load (" + e.getMessage() + ")");
+			}
+		};
 		table.setTooltip(new Tooltip("Double-click on item to edit it."));
 		table.setOnMousePressed(new EventHandler<MouseEvent>() {
 		    public void handle(MouseEvent event) {
@@ -64,29 +82,25 @@ public abstract class BaseListFrame <T extends Entity> extends BaseSelectFrame<T
 		root.getChildren().addAll(table);
 		
 		stage.setScene(new Scene(root));
+		stage.setOnHidden(new EventHandler<WindowEvent>() {
+			public void handle(WindowEvent event) {
+				/* No more need for a page still loading */
+				pager.cancel();
+			}
+		});
 		stage.show();
 	}
 	
 	/** Populate the {@link TableView} with {@link Entity} elements.*/
 	protected void populate() {
 		defineColumns(table);
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			load(conn);
-		} catch (SQLException e) {
-			showError("Couldn't load (" + e.getMessage() + ")");
-		}	
+		load();
 	}
 	
 	/** {@inheritDoc} */
 	@Override
-	public void load(Connection conn) {
-		try {
-			ObservableList<T> data = FXCollections.observableArrayList(getManager().loadAll(database));
-			loadRelated(conn, data);
-			table.setItems(data);
-		} catch (SQLException e) {
-			showError("Couldn't load (" + e.getMessage() + ")");
-		}
+	public void load() {
+		pager.reset();
 	}
 	
 	/** {@inheritDoc} */
@@ -95,13 +109,12 @@ public abstract class BaseListFrame <T extends Entity> extends BaseSelectFrame<T
 		table.refresh();
 	}
 	
-	/** Load related data from the database for the result from default fetchAll query.
-	 * This should be overridden by implementors, to allow direct load of related entities,
-	 * needed to display at the table (for example, for Books, should use this functions to
-	 * load all of its authors).
-	 * @param conn connection to use.
-	 * @param data list with all loaded entities. */
-	protected void loadRelated(Connection conn, ObservableList<T> data) throws SQLException {
+	/** Declare the related data to load with each loaded page of entities, needed to display at
+	 * the table (for example, for Books, its authors). This should be overridden by implementors
+	 * with related data to display.
+	 * @return {@link FetchPlan} of the listed entities, or null for none. */
+	protected FetchPlan<T> getFetchPlan() {
+		return null;
 	}
 	
 	/** @return {@link EntityManager} of the implementor {@link Entity}. */
@@ -1,7 +1,5 @@
 package org.dnteam.histindex.frames;
 
-import java.sql.Connection;
-
 import org.dnteam.histindex.database.Entity;
 
 /** Basic frame for selection of a Entity of a list of entities to edit it with a {@link BaseEditFrame}.
@@ -16,9 +14,9 @@ public abstract class BaseSelectFrame<T extends Entity> extends BaseFrame {
 		}
 	}
 	
-	/** Load (or reload) our values from database, populating our TableView.
-	 * @param conn {@link Connection} to use. */
-	public abstract void load(Connection conn);
+	/** Load (or reload) our values from database, populating our TableView. The load is
+	 * asynchronous: this returns right away, with the values displayed when loaded. */
+	public abstract void load();
 	
 	/** Refresh the list of elements for selection. */
 	public abstract void refresh();
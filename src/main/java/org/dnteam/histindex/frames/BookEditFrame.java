@@ -1,8 +1,9 @@
 package org.dnteam.histindex.frames;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.dnteam.histindex.database.Author;
 import org.dnteam.histindex.database.Book;
@@ -39,12 +40,8 @@ public class BookEditFrame extends BaseEditFrame<Book> {
 		grid.add(new Label("Title: "), 0, 0);
 		grid.add(title, 1, 0);
 		
-		/* Let's try to load available authors */
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			authors = new AuthorSelector(conn, grid, 0, 1, book.getAuthorsCopy());
-		} catch (SQLException e) {
-			showError("Couldn't load authors (" + e.getMessage() + ")");
-		}
+		/* Available authors are loaded by the selector */
+		authors = new AuthorSelector(database, grid, 0, 1, book.getAuthorsCopy());
 	}
 
 	/** {@inheritDoc} */
@@ -60,10 +57,7 @@ public class BookEditFrame extends BaseEditFrame<Book> {
 		}
 		
 		book.setTitle(title.getText());
-		book.removeAllAuthors();
-		for(Author author : authors.getSelected()) {
-			book.addAuthor(author);
-		}
+		book.setAuthors(authors.getSelected());
 		
 		return true;
 	}
@@ -87,12 +81,12 @@ public class BookEditFrame extends BaseEditFrame<Book> {
 	/** {@inheritDoc} */
 	@Override
 	public void doAfterSave(Connection con, Book book) throws SQLException {
-		BookAuthorManager baManager = BookAuthorManager.getSingleton();
-		/* Let's insert each author */
-		for(Author author : authors.getSelected()) {
-			BookAuthor ba = new BookAuthor(book, author);
-			baManager.insert(con, ba);
+		/* Let's insert all authors at once */
+		List<BookAuthor> bas = new ArrayList<BookAuthor>();
+		for(Author author : book.getAuthorsCopy()) {
+			bas.add(new BookAuthor(book, author));
 		}
+		BookAuthorManager.getSingleton().insertAll(con, bas);
 	}
 	
 	/** {@inheritDoc} */
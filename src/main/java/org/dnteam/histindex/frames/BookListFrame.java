@@ -1,15 +1,11 @@
 package org.dnteam.histindex.frames;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-
 import org.dnteam.histindex.database.Book;
-import org.dnteam.histindex.database.BookAuthorManager;
 import org.dnteam.histindex.database.BookManager;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 
-import javafx.collections.ObservableList;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -17,6 +13,9 @@ import javafx.scene.control.cell.PropertyValueFactory;
 /** List frame for {@link Book}s.
  * @author farrer */
 public class BookListFrame extends BaseListFrame<Book> {
+	
+	/** Related data displayed */
+	private static final FetchPlan<Book> PLAN = FetchPlan.of(Book.class).with(FetchPlan.Relation.AUTHORS);
 
 	/** Constructor.
 	 * @param database database to use. */
@@ -53,8 +52,8 @@ public class BookListFrame extends BaseListFrame<Book> {
 	
 	/** {@inheritDoc} */
 	@Override
-	protected void loadRelated(Connection conn, ObservableList<Book> data) throws SQLException {
-		BookAuthorManager.getSingleton().populateAuthors(conn, data);
+	protected FetchPlan<Book> getFetchPlan() {
+		return PLAN;
 	}
 
 }
@@ -0,0 +1,155 @@
+package org.dnteam.histindex.frames;
+
+import org.dnteam.histindex.metrics.MetricsRegistry;
+import org.dnteam.histindex.metrics.OperationStats;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableColumn.CellDataFeatures;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Callback;
+import javafx.util.Duration;
+
+/** Frame displaying the metrics of the database operations (see {@link MetricsRegistry}),
+ * refreshed while opened.
+ * @author farrer */
+public class DiagnosticsFrame extends BaseFrame {
+
+	/** Time between refreshes, in milliseconds */
+	private static final int REFRESH_INTERVAL = 1000;
+
+	private final ObservableList<OperationStats> operations = FXCollections.observableArrayList();
+
+	/** Constructor. */
+	public DiagnosticsFrame() {
+		final Stage stage = new Stage();
+		stage.setTitle("Diagnostics");
+
+		BorderPane root = new BorderPane();
+
+		TableView<OperationStats> table = new TableView<OperationStats>(operations);
+		table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+		table.setPrefWidth(800);
+		table.setPrefHeight(500);
+		TableColumn<OperationStats, String> nameCol = new TableColumn<OperationStats, String>("Operation");
+		nameCol.setMinWidth(200);
+		nameCol.setCellValueFactory(new Callback<CellDataFeatures<OperationStats, String>, ObservableValue<String>>() {
+			@Override
+			public ObservableValue<String> call(CellDataFeatures<OperationStats, String> data) {
+				return new ReadOnlyStringWrapper(data.getValue().getName());
+			}
+		});
+		table.getColumns().add(nameCol);
+		table.getColumns().add(createCountColumn("Count", 0));
+		table.getColumns().add(createCountColumn("Rows", 1));
+		table.getColumns().add(createCountColumn("Errors", 2));
+		table.getColumns().add(createLatencyColumn("Mean (ms)", 0));
+		table.getColumns().add(createLatencyColumn("p50 (ms)", 1));
+		table.getColumns().add(createLatencyColumn("p99 (ms)", 2));
+		table.getColumns().add(createLatencyColumn("Max (ms)", 3));
+		root.setCenter(table);
+
+		HBox bottom = new HBox();
+		bottom.setAlignment(Pos.BOTTOM_CENTER);
+		bottom.setSpacing(10);
+		Button buttonReset = new Button("Reset");
+		buttonReset.setPrefSize(100, 20);
+		buttonReset.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				MetricsRegistry.getSingleton().reset();
+				refresh();
+			}
+		});
+		Button buttonClose = new Button("Close");
+		buttonClose.setCancelButton(true);
+		buttonClose.setPrefSize(100, 20);
+		buttonClose.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				stage.close();
+			}
+		});
+		bottom.getChildren().addAll(buttonReset, buttonClose);
+		root.setBottom(bottom);
+
+		final Timeline refresher = new Timeline(new KeyFrame(Duration.millis(REFRESH_INTERVAL),
+				new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				refresh();
+			}
+		}));
+		refresher.setCycleCount(Animation.INDEFINITE);
+		stage.setOnHidden(new EventHandler<WindowEvent>() {
+			public void handle(WindowEvent event) {
+				refresher.stop();
+			}
+		});
+
+		refresh();
+		refresher.play();
+		stage.setScene(new Scene(root));
+		stage.show();
+	}
+
+	/** Display the current metrics. */
+	private void refresh() {
+		operations.setAll(MetricsRegistry.getSingleton().getOperations());
+	}
+
+	/** Create a column of a counter of the operations.
+	 * @param title title of the column.
+	 * @param counter which counter: 0 for its count, 1 for its rows and 2 for its errors.
+	 * @return the column created. */
+	private TableColumn<OperationStats, Long> createCountColumn(String title, final int counter) {
+		TableColumn<OperationStats, Long> col = new TableColumn<OperationStats, Long>(title);
+		col.setCellValueFactory(new Callback<CellDataFeatures<OperationStats, Long>, ObservableValue<Long>>() {
+			@Override
+			public ObservableValue<Long> call(CellDataFeatures<OperationStats, Long> data) {
+				OperationStats stats = data.getValue();
+				long value = (counter == 0) ? stats.getCount() : (counter == 1) ? stats.getRows() : stats.getErrors();
+				return new ReadOnlyObjectWrapper<Long>(value);
+			}
+		});
+		return col;
+	}
+
+	/** Create a column of a latency of the operations.
+	 * @param title title of the column.
+	 * @param latency which latency: 0 for the mean, 1 for the median, 2 for the 99th percentile
+	 *        and 3 for the max.
+	 * @return the column created. */
+	private TableColumn<OperationStats, String> createLatencyColumn(String title, final int latency) {
+		TableColumn<OperationStats, String> col = new TableColumn<OperationStats, String>(title);
+		col.setCellValueFactory(new Callback<CellDataFeatures<OperationStats, String>, ObservableValue<String>>() {
+			@Override
+			public ObservableValue<String> call(CellDataFeatures<OperationStats, String> data) {
+				OperationStats stats = data.getValue();
+				double value;
+				switch(latency) {
+					case 0: value = stats.getMeanMillis(); break;
+					case 1: value = stats.getP50Millis(); break;
+					case 2: value = stats.getP99Millis(); break;
+					default: value = stats.getMaxMillis(); break;
+				}
+				return new ReadOnlyStringWrapper(String.format("%.3f", value));
+			}
+		});
+		return col;
+	}
+
+}
@@ -1,15 +1,21 @@
 package org.dnteam.histindex.frames;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import org.dnteam.histindex.database.AsyncDatabase;
 import org.dnteam.histindex.database.Book;
 import org.dnteam.histindex.database.BookAuthorManager;
 import org.dnteam.histindex.database.BookManager;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 import org.dnteam.histindex.database.Keyword;
 import org.dnteam.histindex.database.Quote;
 import org.dnteam.histindex.database.QuoteKeyword;
@@ -17,7 +23,9 @@ import org.dnteam.histindex.database.QuoteKeywordManager;
 import org.dnteam.histindex.database.QuoteManager;
 import org.dnteam.histindex.database.Source;
 import org.dnteam.histindex.database.SourceManager;
+import org.dnteam.histindex.database.TransactionWork;
 import org.dnteam.histindex.util.StringUtil;
+import org.dnteam.histindex.widgets.FxExecutor;
 import org.dnteam.histindex.widgets.KeywordSelector;
 
 import javafx.collections.FXCollections;
@@ -32,6 +40,10 @@ import javafx.scene.layout.GridPane;
  * @author farrer */
 public class QuoteEditFrame extends BaseEditFrame<Quote> {
 
+	/** Related data of the quote to edit, if not yet populated */
+	private static final FetchPlan<Quote> RELATED_PLAN = FetchPlan.of(Quote.class).with(
+			FetchPlan.Relation.BOOK_AUTHORS, FetchPlan.Relation.SOURCE, FetchPlan.Relation.KEYWORDS);
+
 	private TextArea quoteText;
 	private TextField quoteComment;
 	private TextField page;
@@ -43,6 +55,8 @@ public class QuoteEditFrame extends BaseEditFrame<Quote> {
 	private ObservableList<Source> allSources;
 	
 	private KeywordSelector keywordSelector;
+	/** If the books and sources to select from were loaded */
+	private boolean loaded = false;
 	
 	/** Constructor.
 	 * @param database database to use.
@@ -54,40 +68,10 @@ public class QuoteEditFrame extends BaseEditFrame<Quote> {
 
 	/** {@inheritDoc} */
 	@Override
-	public void addFields(GridPane grid, Quote quote) {
-
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			allBooks = FXCollections.observableArrayList(BookManager.getSingleton().loadAll(conn));
-			BookAuthorManager.getSingleton().populateAuthors(conn, allBooks);
-			allSources = FXCollections.observableArrayList(SourceManager.getSingleton().loadAll(conn));
-			keywordSelector = new KeywordSelector(conn, grid, 0, 4, quote.getKeywordsCopy(), false);
-			
-			/* Populate entity, if not already populated */
-			if((quote.getBookId() != 0) && (quote.getBook() == null)) {
-				quote.setBook(BookManager.getSingleton().load(conn, quote.getBookId()));
-				BookAuthorManager.getSingleton().populateAuthors(conn, quote.getBook());
-				QuoteKeywordManager.getSingleton().populateKeywords(conn, quote);
-			} else if((quote.getSourceId() != 0) && (quote.getSource() == null)){
-				quote.setSource(SourceManager.getSingleton().load(conn, quote.getSourceId()));
-				QuoteKeywordManager.getSingleton().populateKeywords(conn, quote);
-			}
-		} catch (SQLException e) {
-			showError("Couldn't load books, sources or keywords (" + e.getMessage() + ")");
-		}
-		allSources.add(0, null);
-		allBooks.add(0, null);
-		allBooks.sort(new Comparator<Book>() {
-			@Override
-			public int compare(Book o1, Book o2) {
-				if((o1 != null) && (o2 != null)) {
-					return o1.getDescription().compareTo(o2.getDescription());
-				}
-				if(o1 == null) {
-					return -1;
-				}
-				return 1;
-			}
-		});
+	public void addFields(final GridPane grid, final Quote quote) {
+		
+		allBooks = FXCollections.observableArrayList();
+		allSources = FXCollections.observableArrayList();
 		
 		quoteText = new TextArea();
 		quoteText.setWrapText(true);
@@ -103,26 +87,76 @@ public class QuoteEditFrame extends BaseEditFrame<Quote> {
 		bookSelector = new ChoiceBox<Book>(allBooks);
 		grid.add(new Label("Book/Article: "), 0, 2);
 		grid.add(bookSelector, 1, 2);
-		if(quote.getBookId() != 0) {
-			bookSelector.setValue(quote.getBook());
-		}
 		
 		sourceSelector = new ChoiceBox<Source>(allSources);
 		grid.add(new Label("Source: "), 0, 3);
 		grid.add(sourceSelector, 1, 3);
-		if(quote.getSourceId() != 0) {
-			sourceSelector.setValue(quote.getSource());
-		}
+		
+		keywordSelector = new KeywordSelector(database, grid, 0, 4, quote.getKeywordsCopy(), false);
 		
 		quoteComment = new TextField();
 		quoteComment.setText(quote.getComment());
 		grid.add(new Label("Comment: "), 0, 7);
 		grid.add(quoteComment, 1, 7);
+		
+		/* Load the books and sources to select from (and the quote related data, if not 
+		 * already populated), with the fields disabled meanwhile. */
+		grid.setDisable(true);
+		final boolean populate = ((quote.getBookId() != 0) && (quote.getBook() == null)) ||
+				((quote.getSourceId() != 0) && (quote.getSource() == null));
+		final List<Book> books = new ArrayList<Book>();
+		final List<Source> sources = new ArrayList<Source>();
+		CompletableFuture<Void> loading = database.async().read(AsyncDatabase.Lane.INTERACTIVE,
+				new TransactionWork<Void>() {
+			public Void execute(Connection conn) throws SQLException {
+				books.addAll(BookManager.getSingleton().loadAll(conn));
+				BookAuthorManager.getSingleton().populateAuthors(conn, books);
+				books.sort(new Comparator<Book>() {
+					@Override
+					public int compare(Book o1, Book o2) {
+						return o1.getDescription().compareTo(o2.getDescription());
+					}
+				});
+				sources.addAll(SourceManager.getSingleton().loadAll(conn));
+				if(populate) {
+					QuoteManager.getSingleton().fetch(conn, Collections.singletonList(quote), RELATED_PLAN);
+				}
+				return null;
+			}
+		});
+		FxExecutor.getSingleton().deliver(loading, new Consumer<Void>() {
+			public void accept(Void nothing) {
+				allBooks.setAll(books);
+				allBooks.add(0, null);
+				allSources.setAll(sources);
+				allSources.add(0, null);
+				if(quote.getBookId() != 0) {
+					bookSelector.setValue(quote.getBook());
+				}
+				if(quote.getSourceId() != 0) {
+					sourceSelector.setValue(quote.getSource());
+				}
+				if(populate) {
+					keywordSelector.getSelected().setAll(quote.getKeywordsCopy());
+				}
+				loaded = true;
+				grid.setDisable(false);
+			}
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
+				showError("Couldn't load books, sources or keywords (" + e.getMessage() + ")");
+			}
+		});
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public boolean populateAndValidateEntity(Quote quote) {
+		if(!loaded) {
+			showError("Please wait: still loading books and sources.");
+			return false;
+		}
+		
 		if(StringUtil.isEmpty(quoteText.getText())) {
 			showError("A quote must have its own text.");
 			return false;
@@ -167,12 +201,12 @@ public class QuoteEditFrame extends BaseEditFrame<Quote> {
 	/** {@inheritDoc} */
 	@Override
 	public void doAfterSave(Connection con, Quote quote) throws SQLException {
-		QuoteKeywordManager qkManager = QuoteKeywordManager.getSingleton();
-		/* Let's insert each keyword */
-		for(Keyword key : keywordSelector.getSelected()) {
-			QuoteKeyword qk = new QuoteKeyword(quote, key);
-			qkManager.insert(con, qk);
+		/* Let's insert all keywords at once */
+		List<QuoteKeyword> qks = new ArrayList<QuoteKeyword>();
+		for(Keyword key : quote.getKeywordsCopy()) {
+			qks.add(new QuoteKeyword(quote, key));
 		}
+		QuoteKeywordManager.getSingleton().insertAll(con, qks);
 	}
 	
 	/** {@inheritDoc} */
@@ -1,14 +1,11 @@
 package org.dnteam.histindex.frames;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 import org.dnteam.histindex.database.Quote;
 import org.dnteam.histindex.database.QuoteManager;
 
-import javafx.collections.ObservableList;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -16,6 +13,10 @@ import javafx.scene.control.cell.PropertyValueFactory;
 /** List all {@link Quote}s from the database.
  * @author farrer */
 public class QuoteListFrame extends BaseListFrame<Quote> {
+	
+	/** Related data displayed */
+	private static final FetchPlan<Quote> PLAN = FetchPlan.of(Quote.class).with(
+			FetchPlan.Relation.BOOK_AUTHORS, FetchPlan.Relation.SOURCE, FetchPlan.Relation.KEYWORDS);
 
 	public QuoteListFrame(Database database) {
 		super(database, "Quotes");
@@ -63,8 +64,8 @@ public class QuoteListFrame extends BaseListFrame<Quote> {
 	
 	/** {@inheritDoc} */
 	@Override
-	protected void loadRelated(Connection conn, ObservableList<Quote> data) throws SQLException {
-		QuoteManager.getSingleton().populateRelatedInfo(conn, data);
+	protected FetchPlan<Quote> getFetchPlan() {
+		return PLAN;
 	}
 
 }
@@ -1,21 +1,34 @@
 package org.dnteam.histindex.frames;
 
 import java.io.File;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import org.dnteam.histindex.database.AsyncDatabase;
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.Book;
 import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.FetchPlan;
+import org.dnteam.histindex.database.Keyword;
 import org.dnteam.histindex.database.Quote;
-import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.SearchCriteria;
+import org.dnteam.histindex.database.SearchJob;
+import org.dnteam.histindex.database.Source;
 import org.dnteam.histindex.exporters.CSVExporter;
 import org.dnteam.histindex.exporters.Exporter;
 import org.dnteam.histindex.exporters.PdfExporter;
 import org.dnteam.histindex.widgets.AuthorSelector;
 import org.dnteam.histindex.widgets.BookSelector;
+import org.dnteam.histindex.widgets.FxExecutor;
 import org.dnteam.histindex.widgets.KeywordSelector;
 import org.dnteam.histindex.widgets.SourceSelector;
 
+import javafx.animation.PauseTransition;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -27,7 +40,9 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
@@ -44,12 +59,21 @@ import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 import net.sf.nervalreports.core.ReportGenerationException;
 
 /** Frame used to create and display {@link Quote} searches.
  * @author farrer */
 public class SearchFrame extends BaseSelectFrame<Quote> {
 	
+	/** Related data displayed (or exported) with the result */
+	private static final FetchPlan<Quote> RESULT_PLAN = FetchPlan.of(Quote.class).with(
+			FetchPlan.Relation.BOOK_AUTHORS, FetchPlan.Relation.SOURCE, FetchPlan.Relation.KEYWORDS);
+	/** Time without typing before searching the refined text, in milliseconds */
+	private static final int REFINE_DELAY = 300;
+	
 	private final Database database;
 	private Stage stage;
 	private KeywordSelector keywords;
@@ -59,9 +83,23 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 	private CheckBox sourcesCheckBox;
 	private SourceSelector sources;
 	private TextField text;
+	private ChoiceBox<SearchCriteria.TextMode> textMode;
 	private Scene searchScene;
 	private ObservableList<Quote> resultList;
 	private TableView<Quote> resultTable;
+	/** The current (running or last) search */
+	private SearchJob job;
+	/** Future of the running search, null if not running */
+	private CompletableFuture<SearchJob.Status> searching;
+	private ProgressIndicator searchProgress;
+	private Label searchStatus;
+	private Button buttonExport;
+	/** Text of the search, to refine it as typed (at the result scene) */
+	private TextField refineText;
+	/** Delay before searching the typed text, restarted on each key */
+	private PauseTransition refineDelay;
+	/** Criteria of the current search */
+	private SearchCriteria criteria;
 	private TextArea quoteText;
 	private TextArea comment;
 	private TextArea keys;
@@ -72,25 +110,26 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 	public SearchFrame(Database database) {
 		this.database = database;
 		
-		try {
-			stage = new Stage();
-			stage.setTitle("Search");
-
-			searchScene = createSearchScene();
-			resultScene = createResultScene();
+		stage = new Stage();
+		stage.setTitle("Search");
 
-			stage.setScene(searchScene);
-			stage.show();
+		searchScene = createSearchScene();
+		resultScene = createResultScene();
 
-		} catch(SQLException e) {
-			showError("Couldn't load information for search: '" + e.getMessage() + "'");
-		}
+		stage.setScene(searchScene);
+		stage.setOnHidden(new EventHandler<WindowEvent>() {
+			public void handle(WindowEvent event) {
+				/* No more need for the running search, if any */
+				cancelSearch();
+			}
+		});
+		stage.show();
 	}
 	
-	/** Create the scene used for create a new search.
-	 * @return Created Scene.
-	 * @throws SQLException */
-	private Scene createSearchScene() throws SQLException {
+	/** Create the scene used for create a new search. The values to select are loaded
+	 * asynchronously by each selector.
+	 * @return Created Scene. */
+	private Scene createSearchScene() {
 		BorderPane root = new BorderPane(); 
 		
 		GridPane grid = new GridPane();
@@ -104,44 +143,59 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 		textBox.setPadding(new Insets(5, 5, 5, 2));
 		textBox.setAlignment(Pos.CENTER_LEFT);
 		text = new TextField();
-		text.setMinWidth(745);
+		text.setMinWidth(615);
 		Label textLabel = new Label("Text: ");
-		textBox.getChildren().addAll(textLabel, text);
-		
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			keywords = new KeywordSelector(conn, grid, 1, 2, FXCollections.observableArrayList(), true);
-			keywords.setWidth(300);
-			authors = new AuthorSelector(conn, grid, 4, 2, FXCollections.observableArrayList());
-			authors.setWidth(300);
-			booksCheckBox = new CheckBox("Use Books");
-			booksCheckBox.setSelected(true);
-			booksCheckBox.setOnAction(new EventHandler<ActionEvent>() {
-				public void handle(ActionEvent t) {
-					if(booksCheckBox.isSelected()) {
-						books.enable();
-					} else {
-						books.disable();
-					}
+		textMode = new ChoiceBox<SearchCriteria.TextMode>(FXCollections.observableArrayList(
+				SearchCriteria.TextMode.PREFIX, SearchCriteria.TextMode.TOKENS, 
+				SearchCriteria.TextMode.PHRASE, SearchCriteria.TextMode.CONTAINS));
+		textMode.setConverter(new StringConverter<SearchCriteria.TextMode>() {
+			@Override
+			public String toString(SearchCriteria.TextMode mode) {
+				return mode.getDescription();
+			}
+			@Override
+			public SearchCriteria.TextMode fromString(String string) {
+				return null;
+			}
+		});
+		textMode.setValue(SearchCriteria.TextMode.PREFIX);
+		textMode.setMinWidth(125);
+		textMode.setTooltip(new Tooltip("How to match the text (on quote text and comment, but for 'Exact text', only on text)"));
+		textBox.setSpacing(2);
+		textBox.getChildren().addAll(textLabel, text, textMode);
+		
+		keywords = new KeywordSelector(database, grid, 1, 2, FXCollections.observableArrayList(), true);
+		keywords.setWidth(300);
+		authors = new AuthorSelector(database, grid, 4, 2, FXCollections.observableArrayList());
+		authors.setWidth(300);
+		booksCheckBox = new CheckBox("Use Books");
+		booksCheckBox.setSelected(true);
+		booksCheckBox.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				if(booksCheckBox.isSelected()) {
+					books.enable();
+				} else {
+					books.disable();
 				}
-			});
-			grid.add(booksCheckBox, 1, 6);
-			books = new BookSelector(conn, grid, 1, 7, FXCollections.observableArrayList());
-			books.setWidth(300);
-			sourcesCheckBox = new CheckBox("Use Sources");
-			sourcesCheckBox.setSelected(true);
-			sourcesCheckBox.setOnAction(new EventHandler<ActionEvent>() {
-				public void handle(ActionEvent t) {
-					if(sourcesCheckBox.isSelected()) {
-						sources.enable();
-					} else {
-						sources.disable();
-					}
+			}
+		});
+		grid.add(booksCheckBox, 1, 6);
+		books = new BookSelector(database, grid, 1, 7, FXCollections.observableArrayList());
+		books.setWidth(300);
+		sourcesCheckBox = new CheckBox("Use Sources");
+		sourcesCheckBox.setSelected(true);
+		sourcesCheckBox.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				if(sourcesCheckBox.isSelected()) {
+					sources.enable();
+				} else {
+					sources.disable();
 				}
-			});
-			grid.add(sourcesCheckBox, 4, 6);
-			sources = new SourceSelector(conn, grid, 4, 7, FXCollections.observableArrayList());
-			sources.setWidth(300);
-		}
+			}
+		});
+		grid.add(sourcesCheckBox, 4, 6);
+		sources = new SourceSelector(database, grid, 4, 7, FXCollections.observableArrayList());
+		sources.setWidth(300);
 		
 		vert.getChildren().addAll(textBox, grid);
 		root.setCenter(vert);
@@ -267,12 +321,42 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 		
 		root.setCenter(resultTable);
 		
-		/* At bottom, export and cancel buttons */
+		/* At top, the search text: searched again as typed */
+		HBox top = new HBox();
+		top.setAlignment(Pos.CENTER_LEFT);
+		top.setSpacing(10);
+		top.setPadding(new Insets(5, 5, 5, 5));
+		refineText = new TextField();
+		refineText.setPrefWidth(400);
+		refineText.setTooltip(new Tooltip("Type to refine the search text."));
+		refineDelay = new PauseTransition(Duration.millis(REFINE_DELAY));
+		refineDelay.setOnFinished(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				onRefineTextChanged();
+			}
+		});
+		refineText.textProperty().addListener(new ChangeListener<String>() {
+			@Override
+			public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+				/* Only search after the user stops typing */
+				refineDelay.playFromStart();
+			}
+		});
+		top.getChildren().addAll(new Label("Text:"), refineText);
+		root.setTop(top);
+		
+		/* At bottom, search progress, export and cancel buttons */
 		HBox bottom = new HBox();
 		bottom.setAlignment(Pos.BOTTOM_CENTER);
 		bottom.setSpacing(10);
 		
-		Button buttonExport = new Button("Export");
+		searchProgress = new ProgressIndicator();
+		searchProgress.setPrefSize(20, 20);
+		searchProgress.setVisible(false);
+		searchStatus = new Label();
+		searchStatus.setMinWidth(300);
+		
+		buttonExport = new Button("Export");
 		buttonExport.setPrefSize(100, 20);
 		buttonExport.setOnAction(new EventHandler<ActionEvent>() {
 			public void handle(ActionEvent t) {
@@ -280,9 +364,22 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 			}
 		});
 		
-		Button buttonCancel = createCancelButton();
+		Button buttonCancel = new Button("Cancel");
+		buttonCancel.setCancelButton(true);
+		buttonCancel.setPrefSize(100, 20);
+		buttonCancel.setTooltip(new Tooltip("Stop the running search, or close if already done."));
+		buttonCancel.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent t) {
+				if(searching != null) {
+					/* Stop it, keeping the quotes already found */
+					cancelSearch();
+				} else {
+					stage.close();
+				}
+			}
+		});
 		
-		bottom.getChildren().addAll(buttonExport, buttonCancel);
+		bottom.getChildren().addAll(searchProgress, searchStatus, buttonExport, buttonCancel);
 		root.setBottom(bottom);
 		
 		return new Scene(root);
@@ -314,22 +411,113 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 	/** Do the desired search and display its result. */
 	private void onSeachButtonClick() {
 		
-		searchScene.getRoot().setDisable(true);
-		
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			QuoteManager qm = QuoteManager.getSingleton();
-			
-			resultList.addAll(qm.search(conn, keywords.getSelected(), keywords.isAndSelected(),
-					booksCheckBox.isSelected(), books.getSelected(), authors.getSelected(), 
-					sourcesCheckBox.isSelected(), sources.getSelected(), text.getText()));
-			QuoteManager.getSingleton().populateRelatedInfo(conn, resultList);
-		} catch(SQLException e) {
-			showError("Error while searching: '" + e.getMessage() + "'");
+		/* Criteria are read outside the application thread: copy the current selections. */
+		SearchCriteria selection = new SearchCriteria();
+		selection.setKeywords(new ArrayList<Keyword>(keywords.getSelected()));
+		selection.setAndKeys(keywords.isAndSelected());
+		selection.setUseBooks(booksCheckBox.isSelected());
+		selection.setBooks(new ArrayList<Book>(books.getSelected()));
+		selection.setAuthors(new ArrayList<Author>(authors.getSelected()));
+		selection.setUseSources(sourcesCheckBox.isSelected());
+		selection.setSources(new ArrayList<Source>(sources.getSelected()));
+		selection.setText(text.getText());
+		selection.setTextMode(textMode.getValue());
+		
+		search(selection);
+		stage.setScene(resultScene);
+	}
+	
+	/** Search again with the text typed at the result scene, if changed. When it just extends the
+	 * previous text, and the previous search is done, only its quotes are searched again. */
+	private void onRefineTextChanged() {
+		String typed = refineText.getText();
+		if(criteria == null || typed.equals(criteria.getText() == null ? "" : criteria.getText())) {
+			return;
+		}
+		SearchCriteria next = new SearchCriteria(criteria);
+		next.setText(typed);
+		next.setWithin(criteria.isRefinedBy(next) ? job.getFoundIds() : null);
+		search(next);
+	}
+	
+	/** Start a search (cancelling the running one, if any). The search is done asynchronously, by
+	 * a {@link SearchJob}, with the quotes added to the result as found.
+	 * @param searchCriteria {@link SearchCriteria} of the search. */
+	private void search(SearchCriteria searchCriteria) {
+		
+		cancelSearch();
+		refineDelay.stop();
+		
+		criteria = searchCriteria;
+		if(!refineText.getText().equals(criteria.getText() == null ? "" : criteria.getText())) {
+			refineText.setText(criteria.getText());
+			/* Not typed by the user: no need to search it again */
+			refineDelay.stop();
 		}
 		
-		searchScene.getRoot().setDisable(false);
-		
-		stage.setScene(resultScene);
+		resultList.clear();
+		setSelected(null);
+		
+		final SearchJob current = new SearchJob(criteria, RESULT_PLAN);
+		job = current;
+		resultTable.setPlaceholder(new ProgressIndicator());
+		searchProgress.setVisible(true);
+		searchStatus.setText("Searching...");
+		buttonExport.setDisable(true);
+		searching = database.async().search(AsyncDatabase.Lane.INTERACTIVE, current, new SearchJob.Listener() {
+			@Override
+			public void onBatch(final List<Quote> quotes, final int found) {
+				FxExecutor.getSingleton().execute(new Runnable() {
+					@Override
+					public void run() {
+						if(job == current) {
+							resultList.addAll(quotes);
+							searchStatus.setText("Searching... " + found + " quote(s) found");
+						}
+					}
+				});
+			}
+		});
+		FxExecutor.getSingleton().deliver(searching, new Consumer<SearchJob.Status>() {
+			public void accept(SearchJob.Status status) {
+				if(job == current) {
+					finishSearch(status);
+				}
+			}
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
+				if(job == current) {
+					finishSearch(null);
+					showError("Error while searching: '" + e.getMessage() + "'");
+				}
+			}
+		});
+	}
+	
+	/** Cancel the running search, if any, keeping the quotes already found. */
+	private void cancelSearch() {
+		if(searching != null) {
+			searching.cancel(true);
+			finishSearch(SearchJob.Status.CANCELLED);
+		}
+	}
+	
+	/** Done with the current search: display how it ended.
+	 * @param status how it ended, or null if failed. */
+	private void finishSearch(SearchJob.Status status) {
+		searching = null;
+		searchProgress.setVisible(false);
+		resultTable.setPlaceholder(null);
+		buttonExport.setDisable(false);
+		if(status == null) {
+			searchStatus.setText("Search failed");
+		} else if(status == SearchJob.Status.CANCELLED) {
+			searchStatus.setText("Search stopped: " + job.getFound() + " quote(s) found");
+		} else if(status == SearchJob.Status.TIMED_OUT) {
+			searchStatus.setText("Time limit reached: only the first " + job.getFound() + " quote(s) found");
+		} else {
+			searchStatus.setText(job.getFound() + " quote(s) found in " + job.getElapsed() + " ms");
+		}
 	}
 	
 	/** Export the search */
@@ -341,48 +529,75 @@ public class SearchFrame extends BaseSelectFrame<Quote> {
 		final ExtensionFilter pdfExtension = new ExtensionFilter("PDF", "*.pdf");
 		final ExtensionFilter csvExtension = new ExtensionFilter("CSV", "*.csv");
 		fileChooser.getExtensionFilters().addAll(pdfExtension, csvExtension);
-		File file = fileChooser.showSaveDialog(stage);
-		if (file != null) {
-			
-			/* Create the desired exporter by the defined extension. */
-			Exporter exporter = null;
-			String extension = "";
-			if(fileChooser.getSelectedExtensionFilter().equals(csvExtension)) {
-				exporter = new CSVExporter(database, resultList);
-				extension = ".csv";
-			}
-			else /*if(fileChooser.getSelectedExtensionFilter().equals(pdfExtension))*/ {			
-				exporter = new PdfExporter(database, resultList);
-				extension = ".pdf";
-			} 
-			
-			/* Do the export */
-			try {
-				String fileName = file.getAbsolutePath();
-				if(!fileName.endsWith(extension)) {
-					fileName += extension;
+		final File file = fileChooser.showSaveDialog(stage);
+		if (file == null) {
+			resultScene.getRoot().setDisable(false);
+			return;
+		}
+		
+		/* Create the desired exporter by the defined extension. */
+		final Exporter exporter;
+		final String extension;
+		if(fileChooser.getSelectedExtensionFilter().equals(csvExtension)) {
+			exporter = new CSVExporter(database, resultList);
+			extension = ".csv";
+		}
+		else /*if(fileChooser.getSelectedExtensionFilter().equals(pdfExtension))*/ {			
+			exporter = new PdfExporter(database, resultList);
+			extension = ".pdf";
+		} 
+		
+		/* No search running (export is disabled meanwhile): the whole result is displayed. */
+		export(exporter, file.getAbsolutePath(), extension);
+	}
+	
+	/** Do the export, at the background lane, of the whole (already loaded) result.
+	 * @param exporter {@link Exporter} to use.
+	 * @param fileName name of the file to export to.
+	 * @param extension extension of the file to export to. */
+	private void export(final Exporter exporter, final String fileName, final String extension) {
+		
+		/* The exported quotes are the ones found by the current criteria (ie: after refining its
+		 * text), already copied off the application thread by its search. */
+		final SearchCriteria exported = criteria;
+		
+		CompletableFuture<Void> exporting = database.async().submit(AsyncDatabase.Lane.BACKGROUND, 
+				new Callable<Void>() {
+			public Void call() throws ReportGenerationException {
+				String path = fileName;
+				if(!path.endsWith(extension)) {
+					path += extension;
 				}
-				exporter.generate(keywords.getSelected(), keywords.isAndSelected(),
-						books.getSelected(), authors.getSelected(), 
-						sources.getSelected(), text.getText());
-				exporter.export(fileName);
+				exporter.generate(exported);
+				exporter.export(path);
+				return null;
+			}
+		});
+		FxExecutor.getSingleton().deliver(exporting, new Consumer<Void>() {
+			public void accept(Void nothing) {
+				resultScene.getRoot().setDisable(false);
 				Alert alert = new Alert(AlertType.INFORMATION, "The search was exported");
 				alert.showAndWait();
-			} catch (ReportGenerationException e) {
+			}
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
 				exporter.release();
+				resultScene.getRoot().setDisable(false);
 				showError("Error while exporting results: '" + e.getMessage() + "'");
 			}
-			
-		}
-		
-		resultScene.getRoot().setDisable(false);
+		});
 		
 	}
 
 	/** {@inheritDoc} */
 	@Override
-	public void load(Connection conn) {
-		onSeachButtonClick();
+	public void load() {
+		/* Search again the current criteria, as the quotes changed */
+		if(criteria != null) {
+			SearchCriteria current = new SearchCriteria(criteria);
+			current.setWithin(null);
+			search(current);
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -0,0 +1,201 @@
+package org.dnteam.histindex.frames;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.dnteam.histindex.database.AsyncDatabase;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.TransactionWork;
+import org.dnteam.histindex.widgets.FxExecutor;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.util.Callback;
+
+/** Loader of the items of a {@link TableView} by {@link Page}s: the first page is loaded on
+ * {@link #reset()}, and the next ones when the last loaded row is displayed (usually, by
+ * scrolling to the end of the table).<br/>
+ * Pages are fetched at the interactive lane of {@link AsyncDatabase}, and added to the table
+ * at the application thread (where all methods of the pager should be called). While the first
+ * page is loading, the table displays a progress indicator.
+ * @author farrer
+ *
+ * @param <T> type of the table items. */
+abstract class TablePager<T> {
+
+	/** Number of items of each page */
+	static final int PAGE_SIZE = 200;
+
+	private final Database database;
+	private final TableView<T> table;
+	private final ObservableList<T> items;
+	/** Placeholder of the table when not loading (null for the default one) */
+	private final Node emptyPlaceholder;
+	/** Token of the next page to load */
+	private String token;
+	/** If there's a next page to load */
+	private boolean hasNext = false;
+	/** If the load of the next page is already scheduled */
+	private boolean scheduled = false;
+	/** Fetch of the next page in progress, if any */
+	private CompletableFuture<Page<T>> loading;
+	/** Completed when the page in progress is added to the table */
+	private CompletableFuture<Void> delivery;
+	/** Incremented on each reset or cancel, discarding the pages fetched before it */
+	private int generation = 0;
+
+	/** Constructor.
+	 * @param database {@link Database} to fetch the pages from.
+	 * @param table {@link TableView} to page (its row factory is defined here).
+	 * @param items list of items of the table. */
+	TablePager(Database database, TableView<T> table, ObservableList<T> items) {
+		this.database = database;
+		this.table = table;
+		this.items = items;
+		this.emptyPlaceholder = table.getPlaceholder();
+		table.setRowFactory(new Callback<TableView<T>, TableRow<T>>() {
+			@Override
+			public TableRow<T> call(TableView<T> view) {
+				return new TableRow<T>() {
+					@Override
+					public void updateIndex(int index) {
+						super.updateIndex(index);
+						if(index >= 0 && index == TablePager.this.items.size() - 1) {
+							scheduleNext();
+						}
+					}
+				};
+			}
+		});
+	}
+
+	/** Cancel any load in progress, clear the items and load the first page.
+	 * @return future completed when the first page is at the table. */
+	CompletableFuture<Void> reset() {
+		cancel();
+		items.clear();
+		token = null;
+		hasNext = true;
+		return loadNext();
+	}
+
+	/** Load the next page (if any). If already loading it, just wait for it.
+	 * @return future completed when the page is at the table (or failed, after
+	 *         {@link #onError(Throwable)} was called). */
+	CompletableFuture<Void> loadNext() {
+		if(delivery != null) {
+			return delivery;
+		}
+		if(!hasNext) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final int requested = generation;
+		final String from = token;
+		if(items.isEmpty()) {
+			table.setPlaceholder(new ProgressIndicator());
+		}
+		final CompletableFuture<Void> delivered = new CompletableFuture<Void>();
+		delivery = delivered;
+		loading = database.async().read(AsyncDatabase.Lane.INTERACTIVE,
+				new TransactionWork<Page<T>>() {
+			@Override
+			public Page<T> execute(Connection conn) throws SQLException {
+				return fetch(conn, from, PAGE_SIZE);
+			}
+		});
+		FxExecutor.getSingleton().deliver(loading, new Consumer<Page<T>>() {
+			@Override
+			public void accept(Page<T> page) {
+				if(requested == generation) {
+					token = page.getNextToken();
+					hasNext = page.hasNext();
+					finish();
+					items.addAll(page.getItems());
+				}
+				delivered.complete(null);
+			}
+		}, new Consumer<Throwable>() {
+			@Override
+			public void accept(Throwable e) {
+				if(requested == generation) {
+					hasNext = false;
+					finish();
+					onError(e);
+				}
+				delivered.completeExceptionally(e);
+			}
+		});
+		return delivered;
+	}
+
+	/** Load all remaining pages.
+	 * @return future completed when all pages are at the table. */
+	CompletableFuture<Void> loadRemaining() {
+		return loadNext().thenCompose(new Function<Void, CompletionStage<Void>>() {
+			@Override
+			public CompletionStage<Void> apply(Void v) {
+				return hasNext ? loadRemaining() : CompletableFuture.<Void>completedFuture(null);
+			}
+		});
+	}
+
+	/** Cancel the load in progress, if any. */
+	void cancel() {
+		generation++;
+		if(loading != null) {
+			loading.cancel(true);
+		}
+		if(delivery != null) {
+			delivery.cancel(false);
+		}
+		finish();
+	}
+
+	/** @return if a page is being loaded. */
+	boolean isLoading() {
+		return delivery != null;
+	}
+
+	/** Done with the page in progress. */
+	private void finish() {
+		loading = null;
+		delivery = null;
+		table.setPlaceholder(emptyPlaceholder);
+	}
+
+	/** Schedule the load of the next page, out of the current layout pass of the table. */
+	private void scheduleNext() {
+		if(hasNext && !scheduled && delivery == null) {
+			scheduled = true;
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					scheduled = false;
+					loadNext();
+				}
+			});
+		}
+	}
+
+	/** Fetch a page of items. Called outside the application thread.
+	 * @param conn {@link Connection} to use.
+	 * @param token token of the page, or null for the first one.
+	 * @param pageSize max number of items of the page.
+	 * @return the fetched {@link Page}.
+	 * @throws SQLException */
+	protected abstract Page<T> fetch(Connection conn, String token, int pageSize) throws SQLException;
+
+	/** Called, at the application thread, when the load of a page failed.
+	 * @param e the error. */
+	protected abstract void onError(Throwable e);
+
+}
@@ -0,0 +1,117 @@
+package org.dnteam.histindex.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A concurrent histogram of latencies, in nanoseconds, with log-linear buckets: each power of two
+ * is split in {@link #SUB_BUCKETS} linear buckets, so any recorded value is known within 12.5%
+ * of it, whatever its magnitude.<br/>
+ * Recording is lock and allocation free (a single atomic increment), so it could be done on every
+ * database operation. Values above {@link #MAX_VALUE} are kept at the last bucket (but still at
+ * {@link #getMax()}).
+ * @author farrer */
+public final class LatencyHistogram {
+
+	/** Number of bits of the linear sub-buckets of each power of two */
+	private static final int SUB_BITS = 3;
+	/** Number of linear sub-buckets of each power of two */
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	/** Max value with its own bucket (about 68 seconds) */
+	public static final long MAX_VALUE = (1L << 36) - 1;
+	/** Total number of buckets */
+	private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+	/** Number of values of each bucket */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/** Max value recorded */
+	private final AtomicLong max = new AtomicLong();
+
+	/** Record a value.
+	 * @param nanos the latency, in nanoseconds (negatives are recorded as zero). */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketOf(Math.min(value, MAX_VALUE)));
+		long current = max.get();
+		while(value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/** @return total number of recorded values. */
+	public long getCount() {
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/** @return max recorded value, in nanoseconds (0 if none). */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** Get a percentile of the recorded values.
+	 * @param percentile the percentile, from 0 to 100 (ie: 50 for the median).
+	 * @return upper bound of the bucket of the percentile value, in nanoseconds (never more than
+	 *         {@link #getMax()}), or 0 if nothing recorded. */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if(seen >= rank) {
+				return Math.min(upperBoundOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/** Forget all recorded values. Values recorded while resetting may be partially kept. */
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		max.set(0);
+	}
+
+	/** Convert a latency to milliseconds (for displaying).
+	 * @param nanos latency in nanoseconds.
+	 * @return the same, in milliseconds. */
+	public static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/** @param value a non negative value, up to {@link #MAX_VALUE}.
+	 * @return index of its bucket. */
+	static int bucketOf(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** @param bucket index of a bucket.
+	 * @return the greatest value of the bucket. */
+	static long upperBoundOf(int bucket) {
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long width = 1L << (exponent - SUB_BITS);
+		return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+	}
+
+}
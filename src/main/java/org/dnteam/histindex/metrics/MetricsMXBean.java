@@ -0,0 +1,14 @@
+package org.dnteam.histindex.metrics;
+
+/** Management interface of the {@link MetricsRegistry}, registered at the platform MBean server
+ * as {@link MetricsRegistry#OBJECT_NAME} (so visible by JConsole or VisualVM).
+ * @author farrer */
+public interface MetricsMXBean {
+
+	/** @return snapshots of all operations with metrics, by name. */
+	OperationStats[] getOperations();
+
+	/** Forget everything recorded so far. */
+	void reset();
+
+}
@@ -0,0 +1,92 @@
+package org.dnteam.histindex.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Registry of the {@link OperationMetrics} of the application, by operation name (as
+ * <code>Quotes.search</code>). Always on: recording is cheap enough for every operation.
+ * @author farrer */
+public final class MetricsRegistry implements MetricsMXBean {
+
+	/** Name of the registry at the platform MBean server */
+	public static final String OBJECT_NAME = "org.dnteam.histindex:type=Metrics";
+
+	private static final MetricsRegistry SINGLETON = new MetricsRegistry();
+
+	/** All operations, by name */
+	private final ConcurrentHashMap<String, OperationMetrics> operations = 
+			new ConcurrentHashMap<String, OperationMetrics>();
+	/** If registered at the platform MBean server */
+	private boolean registered = false;
+
+	/** Constructor. */
+	private MetricsRegistry() {
+	}
+
+	/** @return the single instance of {@link MetricsRegistry}. */
+	public static MetricsRegistry getSingleton() {
+		return SINGLETON;
+	}
+
+	/** Get the metrics of an operation, creating it on first use. Callers should keep it, instead
+	 * of looking it up on each operation.
+	 * @param name name of the operation.
+	 * @return its {@link OperationMetrics}. */
+	public OperationMetrics operation(String name) {
+		OperationMetrics metrics = operations.get(name);
+		if(metrics == null) {
+			OperationMetrics created = new OperationMetrics(name);
+			metrics = operations.putIfAbsent(name, created);
+			if(metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public OperationStats[] getOperations() {
+		List<OperationStats> stats = new ArrayList<OperationStats>(operations.size());
+		for(OperationMetrics metrics : operations.values()) {
+			stats.add(OperationStats.of(metrics));
+		}
+		Collections.sort(stats, new Comparator<OperationStats>() {
+			@Override
+			public int compare(OperationStats a, OperationStats b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return stats.toArray(new OperationStats[stats.size()]);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void reset() {
+		for(OperationMetrics metrics : operations.values()) {
+			metrics.reset();
+		}
+	}
+
+	/** Register the registry at the platform MBean server, if not yet done.
+	 * @throws JMException if couldn't register it. */
+	public synchronized void register() throws JMException {
+		if(!registered) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if(!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+			registered = true;
+		}
+	}
+
+}
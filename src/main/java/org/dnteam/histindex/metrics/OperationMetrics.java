@@ -0,0 +1,94 @@
+package org.dnteam.histindex.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Metrics of an operation (ie: the inserts of a manager): how many times it was done, how many
+ * rows it read or wrote, how many failed and how long each took.<br/>
+ * Created (once per name) by {@link MetricsRegistry#operation(String)}, and usually kept by its
+ * caller, so recording is just a few uncontended additions:
+ * <pre>
+ * long started = System.nanoTime();
+ * long rows = -1;
+ * try {
+ *    ... (the operation, defining rows)
+ * } finally {
+ *    metrics.record(started, rows);
+ * }
+ * </pre>
+ * @author farrer */
+public final class OperationMetrics {
+
+	private final String name;
+	/** Number of times done */
+	private final LongAdder count = new LongAdder();
+	/** Number of rows read or written */
+	private final LongAdder rows = new LongAdder();
+	/** Number of times failed */
+	private final LongAdder errors = new LongAdder();
+	/** Total time taken, in nanoseconds */
+	private final LongAdder totalNanos = new LongAdder();
+	/** Time taken by each one */
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/** Constructor.
+	 * @param name name of the operation. */
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	/** Record an operation just done.
+	 * @param startNanos {@link System#nanoTime()} when it started.
+	 * @param rowCount number of rows it read or wrote, or negative if it failed (so it can be
+	 *        recorded at a <code>finally</code> block, with a count only defined on success). */
+	public void record(long startNanos, long rowCount) {
+		long elapsed = System.nanoTime() - startNanos;
+		count.increment();
+		if(rowCount < 0) {
+			errors.increment();
+		} else {
+			rows.add(rowCount);
+		}
+		totalNanos.add(elapsed);
+		latency.record(elapsed);
+	}
+
+	/** @return {@link #name} */
+	public String getName() {
+		return name;
+	}
+
+	/** @return {@link #count} */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** @return {@link #rows} */
+	public long getRows() {
+		return rows.sum();
+	}
+
+	/** @return {@link #errors} */
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/** @return {@link #totalNanos} */
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/** @return {@link #latency} */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/** Forget everything recorded. */
+	void reset() {
+		count.reset();
+		rows.reset();
+		errors.reset();
+		totalNanos.reset();
+		latency.reset();
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.dnteam.histindex.metrics;
+
+import java.beans.ConstructorProperties;
+
+/** A snapshot of the {@link OperationMetrics} of an operation, as exposed by the
+ * {@link MetricsMXBean} (and displayed by the diagnostics frame). Latencies are in milliseconds.
+ * @author farrer */
+public final class OperationStats {
+
+	private final String name;
+	private final long count;
+	private final long rows;
+	private final long errors;
+	private final double meanMillis;
+	private final double p50Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+	/** Constructor.
+	 * @param name name of the operation.
+	 * @param count number of times done.
+	 * @param rows number of rows read or written.
+	 * @param errors number of times failed.
+	 * @param meanMillis mean latency.
+	 * @param p50Millis median latency.
+	 * @param p99Millis 99th percentile latency.
+	 * @param maxMillis max latency. */
+	@ConstructorProperties({"name", "count", "rows", "errors", "meanMillis", "p50Millis", "p99Millis", "maxMillis"})
+	public OperationStats(String name, long count, long rows, long errors, double meanMillis,
+			double p50Millis, double p99Millis, double maxMillis) {
+		this.name = name;
+		this.count = count;
+		this.rows = rows;
+		this.errors = errors;
+		this.meanMillis = meanMillis;
+		this.p50Millis = p50Millis;
+		this.p99Millis = p99Millis;
+		this.maxMillis = maxMillis;
+	}
+
+	/** Take a snapshot of an operation.
+	 * @param metrics its {@link OperationMetrics}.
+	 * @return the snapshot. */
+	static OperationStats of(OperationMetrics metrics) {
+		LatencyHistogram latency = metrics.getLatency();
+		long count = metrics.getCount();
+		double mean = (count > 0) ? LatencyHistogram.toMillis(metrics.getTotalNanos()) / count : 0;
+		return new OperationStats(metrics.getName(), count, metrics.getRows(), metrics.getErrors(), mean,
+				LatencyHistogram.toMillis(latency.getPercentile(50)),
+				LatencyHistogram.toMillis(latency.getPercentile(99)),
+				LatencyHistogram.toMillis(latency.getMax()));
+	}
+
+	/** @return {@link #name} */
+	public String getName() {
+		return name;
+	}
+
+	/** @return {@link #count} */
+	public long getCount() {
+		return count;
+	}
+
+	/** @return {@link #rows} */
+	public long getRows() {
+		return rows;
+	}
+
+	/** @return {@link #errors} */
+	public long getErrors() {
+		return errors;
+	}
+
+	/** @return {@link #meanMillis} */
+	public double getMeanMillis() {
+		return meanMillis;
+	}
+
+	/** @return {@link #p50Millis} */
+	public double getP50Millis() {
+		return p50Millis;
+	}
+
+	/** @return {@link #p99Millis} */
+	public double getP99Millis() {
+		return p99Millis;
+	}
+
+	/** @return {@link #maxMillis} */
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.dnteam.histindex.metrics;
+
+/** A phase of our work (ie: a search) being timed for profilers, begun by
+ * {@link PhaseEvents#begin(PhaseType)}:
+ * <pre>
+ * Phase phase = PhaseEvents.getSingleton().begin(PhaseType.SEARCH);
+ * try {
+ *    ... (the work)
+ * } finally {
+ *    if(phase.isEnabled()) {
+ *       phase.setRows(rows);
+ *       ...
+ *    }
+ *    phase.commit();
+ * }
+ * </pre>
+ * Its details are only worth setting if enabled (that is, being recorded).
+ * @author farrer */
+public interface Phase {
+
+	/** A phase not recorded by anyone */
+	Phase NONE = new Phase() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public void setDatabase(String database) {
+		}
+
+		@Override
+		public void setRows(long rows) {
+		}
+
+		@Override
+		public void setDetails(String details) {
+		}
+
+		@Override
+		public void commit() {
+		}
+	};
+
+	/** @return if the phase is being recorded. */
+	boolean isEnabled();
+
+	/** @param database filename of the database worked on. */
+	void setDatabase(String database);
+
+	/** @param rows number of rows (or quotes) read, written or exported. */
+	void setRows(long rows);
+
+	/** @param details details of the work (ie: the shape of a search criteria). */
+	void setDetails(String details);
+
+	/** End the phase, recording it (if enabled). */
+	void commit();
+
+}
@@ -0,0 +1,50 @@
+package org.dnteam.histindex.metrics;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/** Marks the phases of our work for profilers, so a recording of a stalled application could tell
+ * where its time went (ie: searching or hydrating the quotes found).<br/>
+ * The implementation used is the first one found by {@link ServiceLoader}: with Java 11 or newer,
+ * the build (its <code>jfr</code> profile) provides one emitting Java Flight Recorder events.
+ * Otherwise (or when it couldn't be loaded, as by a Java 8 runtime), phases are just ignored.
+ * @author farrer */
+public abstract class PhaseEvents {
+
+	/** Implementation ignoring all phases */
+	private static final PhaseEvents NONE = new PhaseEvents() {
+		@Override
+		public Phase begin(PhaseType type) {
+			return Phase.NONE;
+		}
+	};
+
+	private static final PhaseEvents SINGLETON = load();
+
+	/** @return the {@link PhaseEvents} to use. */
+	public static PhaseEvents getSingleton() {
+		return SINGLETON;
+	}
+
+	/** Load the implementation to use.
+	 * @return the first one provided, or {@link #NONE}. */
+	private static PhaseEvents load() {
+		try {
+			Iterator<PhaseEvents> it = ServiceLoader.load(PhaseEvents.class, 
+					PhaseEvents.class.getClassLoader()).iterator();
+			if(it.hasNext()) {
+				return it.next();
+			}
+		} catch(ServiceConfigurationError | LinkageError e) {
+			/* Not usable by this runtime: just don't mark anything. */
+		}
+		return NONE;
+	}
+
+	/** Begin a phase. Should be cheap (and allocation free) when not recording it.
+	 * @param type {@link PhaseType} of the phase.
+	 * @return the {@link Phase} begun (to commit when done), or {@link Phase#NONE} if not recorded. */
+	public abstract Phase begin(PhaseType type);
+
+}
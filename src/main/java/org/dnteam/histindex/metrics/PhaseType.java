@@ -0,0 +1,14 @@
+package org.dnteam.histindex.metrics;
+
+/** The phases of our work told apart by {@link PhaseEvents}.
+ * @author farrer */
+public enum PhaseType {
+	/** Searching quotes (a list, a page or a search job) */
+	SEARCH,
+	/** Loading the related data (books, authors, sources and keywords) of quotes */
+	HYDRATION,
+	/** Generating the quotes of an export */
+	EXPORT,
+	/** Loading the fonts of an export */
+	FONT_LOADING
+}
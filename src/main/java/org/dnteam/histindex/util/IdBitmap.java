@@ -0,0 +1,520 @@
+package org.dnteam.histindex.util;
+
+import java.util.Arrays;
+
+/** A compressed set of identifiers (from 0 to 2^32 - 1), in the style of a Roaring bitmap: the
+ * identifiers are grouped by its upper 16 bits, each group kept at a container of its lower 16 bits,
+ * which is a sorted <code>char[]</code> while sparse (up to {@link #ARRAY_MAX} elements), or a
+ * <code>long[]</code> bitmap (of 2^16 bits) when dense. Set operations work container by container,
+ * without ever expanding to the identifiers themselves.<br/>
+ * <b>Note:</b> not thread safe.
+ * @author farrer */
+public final class IdBitmap {
+
+	/** Max elements of an array container (above it, a bitmap is smaller) */
+	private static final int ARRAY_MAX = 4096;
+	/** Words of a bitmap container */
+	private static final int BITMAP_WORDS = 1024;
+	/** Max identifier accepted */
+	public static final long MAX_ID = 0xFFFFFFFFL;
+
+	/** Upper 16 bits of each container, sorted */
+	private char[] keys;
+	/** Containers: char[] (sorted, with cardinalities[i] used elements) or long[] bitmaps */
+	private Object[] containers;
+	/** Number of elements of each container */
+	private int[] cardinalities;
+	/** Number of containers */
+	private int size;
+
+	/** Constructor of an empty bitmap. */
+	public IdBitmap() {
+		this(4);
+	}
+
+	/** Constructor of an empty bitmap.
+	 * @param capacity initial number of containers. */
+	private IdBitmap(int capacity) {
+		keys = new char[capacity];
+		containers = new Object[capacity];
+		cardinalities = new int[capacity];
+		size = 0;
+	}
+
+	/** Create a bitmap with some identifiers.
+	 * @param ids identifiers to add.
+	 * @return the bitmap created. */
+	public static IdBitmap of(long... ids) {
+		IdBitmap bitmap = new IdBitmap();
+		for(long id : ids) {
+			bitmap.add(id);
+		}
+		return bitmap;
+	}
+
+	/** Check if an identifier could be kept by a bitmap.
+	 * @param id identifier to check.
+	 * @return if could. */
+	public static boolean isValid(long id) {
+		return id >= 0 && id <= MAX_ID;
+	}
+
+	/** Add an identifier.
+	 * @param id identifier to add.
+	 * @return if added (false if already there).
+	 * @throws IllegalArgumentException if not a valid identifier (see {@link #isValid(long)}). */
+	public boolean add(long id) {
+		if(!isValid(id)) {
+			throw new IllegalArgumentException("Identifier out of range: " + id);
+		}
+		char key = (char) (id >>> 16);
+		char low = (char) id;
+		int i = findKey(key);
+		if(i < 0) {
+			i = -i - 1;
+			insertContainer(i, key, new char[4], 0);
+		}
+		Object container = containers[i];
+		if(container instanceof long[]) {
+			long[] bitmap = (long[]) container;
+			long bit = 1L << low;
+			if((bitmap[low >>> 6] & bit) != 0) {
+				return false;
+			}
+			bitmap[low >>> 6] |= bit;
+			cardinalities[i]++;
+			return true;
+		}
+		char[] array = (char[]) container;
+		int card = cardinalities[i];
+		int pos = Arrays.binarySearch(array, 0, card, low);
+		if(pos >= 0) {
+			return false;
+		}
+		pos = -pos - 1;
+		if(card == ARRAY_MAX) {
+			/* Too dense: convert to a bitmap */
+			long[] bitmap = toBitmap(array, card);
+			bitmap[low >>> 6] |= 1L << low;
+			containers[i] = bitmap;
+		} else {
+			if(card == array.length) {
+				array = Arrays.copyOf(array, Math.min(ARRAY_MAX, card * 2));
+				containers[i] = array;
+			}
+			System.arraycopy(array, pos, array, pos + 1, card - pos);
+			array[pos] = low;
+		}
+		cardinalities[i]++;
+		return true;
+	}
+
+	/** Remove an identifier.
+	 * @param id identifier to remove.
+	 * @return if removed (false if wasn't there). */
+	public boolean remove(long id) {
+		if(!isValid(id)) {
+			return false;
+		}
+		char low = (char) id;
+		int i = findKey((char) (id >>> 16));
+		if(i < 0) {
+			return false;
+		}
+		Object container = containers[i];
+		int card = cardinalities[i];
+		if(container instanceof long[]) {
+			long[] bitmap = (long[]) container;
+			long bit = 1L << low;
+			if((bitmap[low >>> 6] & bit) == 0) {
+				return false;
+			}
+			bitmap[low >>> 6] &= ~bit;
+			card--;
+			if(card <= ARRAY_MAX) {
+				containers[i] = toArray(bitmap, card);
+			}
+		} else {
+			char[] array = (char[]) container;
+			int pos = Arrays.binarySearch(array, 0, card, low);
+			if(pos < 0) {
+				return false;
+			}
+			System.arraycopy(array, pos + 1, array, pos, card - pos - 1);
+			card--;
+		}
+		if(card == 0) {
+			removeContainer(i);
+		} else {
+			cardinalities[i] = card;
+		}
+		return true;
+	}
+
+	/** Check if an identifier is on the bitmap.
+	 * @param id identifier to check.
+	 * @return if it is. */
+	public boolean contains(long id) {
+		if(!isValid(id)) {
+			return false;
+		}
+		char low = (char) id;
+		int i = findKey((char) (id >>> 16));
+		if(i < 0) {
+			return false;
+		}
+		Object container = containers[i];
+		if(container instanceof long[]) {
+			return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch((char[]) container, 0, cardinalities[i], low) >= 0;
+	}
+
+	/** @return the number of identifiers on the bitmap. */
+	public long cardinality() {
+		long total = 0;
+		for(int i = 0; i < size; i++) {
+			total += cardinalities[i];
+		}
+		return total;
+	}
+
+	/** @return if the bitmap has no identifier. */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** @return all identifiers of the bitmap, in ascending order. */
+	public long[] toArray() {
+		long[] res = new long[(int) cardinality()];
+		int n = 0;
+		for(int i = 0; i < size; i++) {
+			long high = ((long) keys[i]) << 16;
+			Object container = containers[i];
+			if(container instanceof long[]) {
+				long[] bitmap = (long[]) container;
+				for(int w = 0; w < BITMAP_WORDS; w++) {
+					long word = bitmap[w];
+					while(word != 0) {
+						res[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+						word &= word - 1;
+					}
+				}
+			} else {
+				char[] array = (char[]) container;
+				for(int j = 0; j < cardinalities[i]; j++) {
+					res[n++] = high | array[j];
+				}
+			}
+		}
+		return res;
+	}
+
+	/** @return a copy of the bitmap. */
+	public IdBitmap copy() {
+		IdBitmap res = new IdBitmap(Math.max(size, 1));
+		for(int i = 0; i < size; i++) {
+			Object container = containers[i];
+			res.appendContainer(keys[i], (container instanceof long[]) ? ((long[]) container).clone() :
+				Arrays.copyOf((char[]) container, cardinalities[i]), cardinalities[i]);
+		}
+		return res;
+	}
+
+	/** Intersection of two bitmaps.
+	 * @param a a bitmap.
+	 * @param b other bitmap.
+	 * @return new bitmap with the identifiers on both. */
+	public static IdBitmap and(IdBitmap a, IdBitmap b) {
+		IdBitmap res = new IdBitmap(Math.max(1, Math.min(a.size, b.size)));
+		int i = 0;
+		int j = 0;
+		while(i < a.size && j < b.size) {
+			if(a.keys[i] < b.keys[j]) {
+				i++;
+			} else if(a.keys[i] > b.keys[j]) {
+				j++;
+			} else {
+				res.appendAnd(a.keys[i], a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+				i++;
+				j++;
+			}
+		}
+		return res;
+	}
+
+	/** Union of two bitmaps.
+	 * @param a a bitmap.
+	 * @param b other bitmap.
+	 * @return new bitmap with the identifiers on any of them. */
+	public static IdBitmap or(IdBitmap a, IdBitmap b) {
+		IdBitmap res = new IdBitmap(Math.max(1, a.size + b.size));
+		int i = 0;
+		int j = 0;
+		while(i < a.size || j < b.size) {
+			if(j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+				res.appendCopy(a, i);
+				i++;
+			} else if(i >= a.size || a.keys[i] > b.keys[j]) {
+				res.appendCopy(b, j);
+				j++;
+			} else {
+				res.appendOr(a.keys[i], a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+				i++;
+				j++;
+			}
+		}
+		return res;
+	}
+
+	/** Difference of two bitmaps.
+	 * @param a a bitmap.
+	 * @param b bitmap to remove from the first.
+	 * @return new bitmap with the identifiers of the first not on the second. */
+	public static IdBitmap andNot(IdBitmap a, IdBitmap b) {
+		IdBitmap res = new IdBitmap(Math.max(1, a.size));
+		int j = 0;
+		for(int i = 0; i < a.size; i++) {
+			while(j < b.size && b.keys[j] < a.keys[i]) {
+				j++;
+			}
+			if(j < b.size && b.keys[j] == a.keys[i]) {
+				res.appendAndNot(a.keys[i], a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+			} else {
+				res.appendCopy(a, i);
+			}
+		}
+		return res;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof IdBitmap)) {
+			return false;
+		}
+		return Arrays.equals(toArray(), ((IdBitmap) obj).toArray());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/** Find a container by its key.
+	 * @param key key to find.
+	 * @return its index, or <code>-(insertion point) - 1</code> if not found. */
+	private int findKey(char key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	/** Insert a new container at a position. */
+	private void insertContainer(int pos, char key, Object container, int card) {
+		ensureCapacity(size + 1);
+		System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+		System.arraycopy(containers, pos, containers, pos + 1, size - pos);
+		System.arraycopy(cardinalities, pos, cardinalities, pos + 1, size - pos);
+		keys[pos] = key;
+		containers[pos] = container;
+		cardinalities[pos] = card;
+		size++;
+	}
+
+	/** Remove the container at a position. */
+	private void removeContainer(int pos) {
+		System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+		System.arraycopy(containers, pos + 1, containers, pos, size - pos - 1);
+		System.arraycopy(cardinalities, pos + 1, cardinalities, pos, size - pos - 1);
+		size--;
+		containers[size] = null;
+	}
+
+	/** Append a container (with a key greater than all current ones), if not empty. */
+	private void appendContainer(char key, Object container, int card) {
+		if(card == 0) {
+			return;
+		}
+		ensureCapacity(size + 1);
+		keys[size] = key;
+		containers[size] = container;
+		cardinalities[size] = card;
+		size++;
+	}
+
+	/** Append a copy of a container of other bitmap. */
+	private void appendCopy(IdBitmap other, int i) {
+		Object container = other.containers[i];
+		appendContainer(other.keys[i], (container instanceof long[]) ? ((long[]) container).clone() :
+			Arrays.copyOf((char[]) container, other.cardinalities[i]), other.cardinalities[i]);
+	}
+
+	/** Append the intersection of two containers. */
+	private void appendAnd(char key, Object a, int cardA, Object b, int cardB) {
+		if(a instanceof long[] && b instanceof long[]) {
+			long[] x = (long[]) a;
+			long[] y = (long[]) b;
+			long[] bitmap = new long[BITMAP_WORDS];
+			int card = 0;
+			for(int w = 0; w < BITMAP_WORDS; w++) {
+				bitmap[w] = x[w] & y[w];
+				card += Long.bitCount(bitmap[w]);
+			}
+			appendContainer(key, (card > ARRAY_MAX) ? bitmap : toArray(bitmap, card), card);
+		} else if(a instanceof long[] || b instanceof long[]) {
+			/* Filter the array by the bitmap */
+			long[] bitmap = (long[]) ((a instanceof long[]) ? a : b);
+			char[] array = (char[]) ((a instanceof long[]) ? b : a);
+			int cardArray = (a instanceof long[]) ? cardB : cardA;
+			char[] res = new char[cardArray];
+			int card = 0;
+			for(int k = 0; k < cardArray; k++) {
+				char v = array[k];
+				if((bitmap[v >>> 6] & (1L << v)) != 0) {
+					res[card++] = v;
+				}
+			}
+			appendContainer(key, res, card);
+		} else {
+			char[] x = (char[]) a;
+			char[] y = (char[]) b;
+			char[] res = new char[Math.min(cardA, cardB)];
+			int card = 0;
+			int i = 0;
+			int j = 0;
+			while(i < cardA && j < cardB) {
+				if(x[i] < y[j]) {
+					i++;
+				} else if(x[i] > y[j]) {
+					j++;
+				} else {
+					res[card++] = x[i];
+					i++;
+					j++;
+				}
+			}
+			appendContainer(key, res, card);
+		}
+	}
+
+	/** Append the union of two containers. */
+	private void appendOr(char key, Object a, int cardA, Object b, int cardB) {
+		if(a instanceof char[] && b instanceof char[] && cardA + cardB <= ARRAY_MAX) {
+			char[] x = (char[]) a;
+			char[] y = (char[]) b;
+			char[] res = new char[cardA + cardB];
+			int card = 0;
+			int i = 0;
+			int j = 0;
+			while(i < cardA || j < cardB) {
+				if(j >= cardB || (i < cardA && x[i] < y[j])) {
+					res[card++] = x[i++];
+				} else if(i >= cardA || x[i] > y[j]) {
+					res[card++] = y[j++];
+				} else {
+					res[card++] = x[i];
+					i++;
+					j++;
+				}
+			}
+			appendContainer(key, res, card);
+			return;
+		}
+		long[] bitmap = (a instanceof long[]) ? ((long[]) a).clone() : toBitmap((char[]) a, cardA);
+		if(b instanceof long[]) {
+			long[] y = (long[]) b;
+			for(int w = 0; w < BITMAP_WORDS; w++) {
+				bitmap[w] |= y[w];
+			}
+		} else {
+			char[] y = (char[]) b;
+			for(int k = 0; k < cardB; k++) {
+				bitmap[y[k] >>> 6] |= 1L << y[k];
+			}
+		}
+		int card = bitCount(bitmap);
+		appendContainer(key, (card > ARRAY_MAX) ? bitmap : toArray(bitmap, card), card);
+	}
+
+	/** Append the difference of two containers. */
+	private void appendAndNot(char key, Object a, int cardA, Object b, int cardB) {
+		if(a instanceof char[]) {
+			char[] x = (char[]) a;
+			char[] res = new char[cardA];
+			int card = 0;
+			for(int i = 0; i < cardA; i++) {
+				char v = x[i];
+				boolean inB = (b instanceof long[]) ? ((((long[]) b)[v >>> 6] & (1L << v)) != 0) :
+					Arrays.binarySearch((char[]) b, 0, cardB, v) >= 0;
+				if(!inB) {
+					res[card++] = v;
+				}
+			}
+			appendContainer(key, res, card);
+			return;
+		}
+		long[] bitmap = ((long[]) a).clone();
+		if(b instanceof long[]) {
+			long[] y = (long[]) b;
+			for(int w = 0; w < BITMAP_WORDS; w++) {
+				bitmap[w] &= ~y[w];
+			}
+		} else {
+			char[] y = (char[]) b;
+			for(int k = 0; k < cardB; k++) {
+				bitmap[y[k] >>> 6] &= ~(1L << y[k]);
+			}
+		}
+		int card = bitCount(bitmap);
+		appendContainer(key, (card > ARRAY_MAX) ? bitmap : toArray(bitmap, card), card);
+	}
+
+	/** Make sure there's room for some containers. */
+	private void ensureCapacity(int capacity) {
+		if(capacity > keys.length) {
+			int newCapacity = Math.max(capacity, keys.length * 2);
+			keys = Arrays.copyOf(keys, newCapacity);
+			containers = Arrays.copyOf(containers, newCapacity);
+			cardinalities = Arrays.copyOf(cardinalities, newCapacity);
+		}
+	}
+
+	/** @return a bitmap container with the values of an array one. */
+	private static long[] toBitmap(char[] array, int card) {
+		long[] bitmap = new long[BITMAP_WORDS];
+		for(int k = 0; k < card; k++) {
+			bitmap[array[k] >>> 6] |= 1L << array[k];
+		}
+		return bitmap;
+	}
+
+	/** @return an array container with the values of a bitmap one. */
+	private static char[] toArray(long[] bitmap, int card) {
+		char[] array = new char[Math.max(card, 1)];
+		int n = 0;
+		for(int w = 0; w < BITMAP_WORDS; w++) {
+			long word = bitmap[w];
+			while(word != 0) {
+				array[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+			}
+		}
+		return array;
+	}
+
+	/** @return number of bits set on a bitmap container. */
+	private static int bitCount(long[] bitmap) {
+		int card = 0;
+		for(long word : bitmap) {
+			card += Long.bitCount(word);
+		}
+		return card;
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.dnteam.histindex.util;
+
+import java.util.Arrays;
+
+/** A hash map of primitive <code>long</code> keys to <code>long</code> values (without boxing
+ * them), with open addressing and linear probing.<br/>
+ * <b>Note:</b> not thread safe.
+ * @author farrer */
+public final class LongLongMap {
+
+	/** Max load factor before growing */
+	private static final float LOAD_FACTOR = 0.6f;
+
+	/** Keys of the slots (zero is a free slot: a zero key is kept apart) */
+	private long[] keys;
+	/** Values of the slots */
+	private long[] values;
+	/** Number of keys (besides zero) */
+	private int size;
+	/** If the zero key is defined */
+	private boolean hasZero;
+	/** Value of the zero key */
+	private long zeroValue;
+
+	/** Constructor. */
+	public LongLongMap() {
+		this(16);
+	}
+
+	/** Constructor.
+	 * @param expected expected number of keys. */
+	public LongLongMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(8, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+		keys = new long[capacity];
+		values = new long[capacity];
+	}
+
+	/** Hash of a key (its bits mixed, as our keys are usually sequential).
+	 * @param key key to hash.
+	 * @return its hash. */
+	static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/** Check if a key is defined.
+	 * @param key key to check.
+	 * @return if defined. */
+	public boolean containsKey(long key) {
+		if(key == 0) {
+			return hasZero;
+		}
+		return find(key) >= 0;
+	}
+
+	/** Get the value of a key.
+	 * @param key key to get.
+	 * @param defaultValue value to return if not defined.
+	 * @return its value or the default one. */
+	public long get(long key, long defaultValue) {
+		if(key == 0) {
+			return hasZero ? zeroValue : defaultValue;
+		}
+		int i = find(key);
+		return (i >= 0) ? values[i] : defaultValue;
+	}
+
+	/** Define the value of a key.
+	 * @param key key to define.
+	 * @param value its value. */
+	public void put(long key, long value) {
+		if(key == 0) {
+			hasZero = true;
+			zeroValue = value;
+			return;
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for(; keys[i] != 0; i = (i + 1) & mask) {
+			if(keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if(size > keys.length * LOAD_FACTOR) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	/** Remove a key.
+	 * @param key key to remove.
+	 * @return if it was defined. */
+	public boolean remove(long key) {
+		if(key == 0) {
+			boolean had = hasZero;
+			hasZero = false;
+			return had;
+		}
+		int i = find(key);
+		if(i < 0) {
+			return false;
+		}
+		shiftBack(i);
+		size--;
+		return true;
+	}
+
+	/** @return the number of keys defined. */
+	public int size() {
+		return size + (hasZero ? 1 : 0);
+	}
+
+	/** Remove all keys. */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		size = 0;
+		hasZero = false;
+	}
+
+	/** @return slot of a (not zero) key, or -1 if not defined. */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		for(int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			if(keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Free a slot, moving back the following ones of its probe sequence.
+	 * @param free slot to free. */
+	private void shiftBack(int free) {
+		int mask = keys.length - 1;
+		int i = free;
+		while(true) {
+			i = (i + 1) & mask;
+			if(keys[i] == 0) {
+				break;
+			}
+			int home = hash(keys[i]) & mask;
+			/* Move it if its home isn't between the free slot and it (cyclically) */
+			if(((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				free = i;
+			}
+		}
+		keys[free] = 0;
+	}
+
+	/** Grow the slots.
+	 * @param capacity new capacity (power of two). */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[capacity];
+		values = new long[capacity];
+		int mask = capacity - 1;
+		for(int j = 0; j < oldKeys.length; j++) {
+			if(oldKeys[j] != 0) {
+				int i = hash(oldKeys[j]) & mask;
+				while(keys[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+package org.dnteam.histindex.util;
+
+import java.util.Arrays;
+
+/** A hash map of primitive <code>long</code> keys (without boxing them), with open addressing
+ * and linear probing.<br/>
+ * <b>Note:</b> not thread safe.
+ * @author farrer
+ * @param <V> type of the values. */
+public final class LongObjectMap<V> {
+
+	/** Max load factor before growing */
+	private static final float LOAD_FACTOR = 0.6f;
+
+	/** Keys of the slots (zero is a free slot: a zero key is kept apart) */
+	private long[] keys;
+	/** Values of the slots */
+	private Object[] values;
+	/** Number of keys (besides zero) */
+	private int size;
+	/** If the zero key is defined */
+	private boolean hasZero;
+	/** Value of the zero key */
+	private V zeroValue;
+
+	/** Constructor. */
+	public LongObjectMap() {
+		this(16);
+	}
+
+	/** Constructor.
+	 * @param expected expected number of keys. */
+	public LongObjectMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(8, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+		keys = new long[capacity];
+		values = new Object[capacity];
+	}
+
+	/** Get the value of a key.
+	 * @param key key to get.
+	 * @return its value or null if not defined. */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if(key == 0) {
+			return zeroValue;
+		}
+		int mask = keys.length - 1;
+		for(int i = LongLongMap.hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			if(keys[i] == key) {
+				return (V) values[i];
+			}
+		}
+		return null;
+	}
+
+	/** Define the value of a key.
+	 * @param key key to define.
+	 * @param value its value (not null).
+	 * @return its previous value, or null if none. */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		assert(value != null);
+		if(key == 0) {
+			V previous = zeroValue;
+			hasZero = true;
+			zeroValue = value;
+			return previous;
+		}
+		int mask = keys.length - 1;
+		int i = LongLongMap.hash(key) & mask;
+		for(; keys[i] != 0; i = (i + 1) & mask) {
+			if(keys[i] == key) {
+				V previous = (V) values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if(size > keys.length * LOAD_FACTOR) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+
+	/** Remove a key.
+	 * @param key key to remove.
+	 * @return its value, or null if wasn't defined. */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if(key == 0) {
+			V previous = zeroValue;
+			hasZero = false;
+			zeroValue = null;
+			return previous;
+		}
+		int mask = keys.length - 1;
+		for(int i = LongLongMap.hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+			if(keys[i] == key) {
+				V previous = (V) values[i];
+				shiftBack(i);
+				size--;
+				return previous;
+			}
+		}
+		return null;
+	}
+
+	/** @return the number of keys defined. */
+	public int size() {
+		return size + (hasZero ? 1 : 0);
+	}
+
+	/** @return all keys defined, in no particular order. */
+	public long[] keys() {
+		long[] res = new long[size()];
+		int n = 0;
+		if(hasZero) {
+			res[n++] = 0;
+		}
+		for(long key : keys) {
+			if(key != 0) {
+				res[n++] = key;
+			}
+		}
+		return res;
+	}
+
+	/** Remove all keys. */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, null);
+		size = 0;
+		hasZero = false;
+		zeroValue = null;
+	}
+
+	/** Free a slot, moving back the following ones of its probe sequence.
+	 * @param free slot to free. */
+	private void shiftBack(int free) {
+		int mask = keys.length - 1;
+		int i = free;
+		while(true) {
+			i = (i + 1) & mask;
+			if(keys[i] == 0) {
+				break;
+			}
+			int home = LongLongMap.hash(keys[i]) & mask;
+			/* Move it if its home isn't between the free slot and it (cyclically) */
+			if(((i - home) & mask) >= ((i - free) & mask)) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				free = i;
+			}
+		}
+		keys[free] = 0;
+		values[free] = null;
+	}
+
+	/** Grow the slots.
+	 * @param capacity new capacity (power of two). */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for(int j = 0; j < oldKeys.length; j++) {
+			if(oldKeys[j] != 0) {
+				int i = LongLongMap.hash(oldKeys[j]) & mask;
+				while(keys[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+}
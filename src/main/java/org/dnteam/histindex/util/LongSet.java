@@ -0,0 +1,136 @@
+package org.dnteam.histindex.util;
+
+import java.util.Arrays;
+
+/** A hash set of primitive <code>long</code> values (without boxing them), with open addressing
+ * and linear probing.<br/>
+ * <b>Note:</b> not thread safe.
+ * @author farrer */
+public final class LongSet {
+
+	/** Max load factor before growing */
+	private static final float LOAD_FACTOR = 0.6f;
+
+	/** Values of the slots (zero is a free slot: a zero value is kept apart) */
+	private long[] values;
+	/** Number of values (besides zero) */
+	private int size;
+	/** If the zero value is in the set */
+	private boolean hasZero;
+
+	/** Constructor. */
+	public LongSet() {
+		this(16);
+	}
+
+	/** Constructor.
+	 * @param expected expected number of values. */
+	public LongSet(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(8, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+		values = new long[capacity];
+	}
+
+	/** Add a value to the set.
+	 * @param value value to add.
+	 * @return if added (false if already in the set). */
+	public boolean add(long value) {
+		if(value == 0) {
+			boolean added = !hasZero;
+			hasZero = true;
+			return added;
+		}
+		int mask = values.length - 1;
+		int i = LongLongMap.hash(value) & mask;
+		for(; values[i] != 0; i = (i + 1) & mask) {
+			if(values[i] == value) {
+				return false;
+			}
+		}
+		values[i] = value;
+		size++;
+		if(size > values.length * LOAD_FACTOR) {
+			rehash(values.length * 2);
+		}
+		return true;
+	}
+
+	/** Add some values to the set.
+	 * @param more values to add. */
+	public void addAll(long[] more) {
+		for(long value : more) {
+			add(value);
+		}
+	}
+
+	/** @param value a value.
+	 * @return if the value is in the set. */
+	public boolean contains(long value) {
+		if(value == 0) {
+			return hasZero;
+		}
+		int mask = values.length - 1;
+		for(int i = LongLongMap.hash(value) & mask; values[i] != 0; i = (i + 1) & mask) {
+			if(values[i] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return the number of values of the set. */
+	public int size() {
+		return size + (hasZero ? 1 : 0);
+	}
+
+	/** @return if the set has no values. */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** @return all values of the set, in no particular order. */
+	public long[] toArray() {
+		long[] res = new long[size()];
+		int n = 0;
+		if(hasZero) {
+			res[n++] = 0;
+		}
+		for(long value : values) {
+			if(value != 0) {
+				res[n++] = value;
+			}
+		}
+		return res;
+	}
+
+	/** @return all values of the set, in ascending order. */
+	public long[] toSortedArray() {
+		long[] res = toArray();
+		Arrays.sort(res);
+		return res;
+	}
+
+	/** Remove all values. */
+	public void clear() {
+		Arrays.fill(values, 0);
+		size = 0;
+		hasZero = false;
+	}
+
+	/** Grow the slots.
+	 * @param capacity new capacity (power of two). */
+	private void rehash(int capacity) {
+		long[] old = values;
+		values = new long[capacity];
+		int mask = capacity - 1;
+		for(long value : old) {
+			if(value != 0) {
+				int i = LongLongMap.hash(value) & mask;
+				while(values[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				values[i] = value;
+			}
+		}
+	}
+
+}
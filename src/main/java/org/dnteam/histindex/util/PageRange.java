@@ -0,0 +1,105 @@
+package org.dnteam.histindex.util;
+
+/** The first and last pages of a free text page definition (as "12", "12-15", "p. 12, 14" or the
+ * abbreviated "123-25"). Ranges are immutable.
+ * @author farrer */
+public final class PageRange {
+
+	/** Range of a text without any page number */
+	public static final PageRange NONE = new PageRange(0, 0);
+
+	/** First page (0 if none) */
+	private final int start;
+	/** Last page (0 if none, otherwise at least {@link #start}) */
+	private final int end;
+
+	/** Constructor.
+	 * @param start first page.
+	 * @param end last page. */
+	public PageRange(int start, int end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/** Parse the pages of a text: the first number of the text is its first page and the greatest
+	 * of all its numbers its last one. A number with fewer digits lower than the previous one is
+	 * taken as an abbreviation of it (ie: "123-25" is "123-125").
+	 * @param text text to parse (null for none).
+	 * @return its {@link PageRange}, {@link #NONE} if without numbers. */
+	public static PageRange parse(String text) {
+		if(text == null) {
+			return NONE;
+		}
+		int start = 0;
+		int end = 0;
+		int previous = 0;
+		boolean found = false;
+		int length = text.length();
+		int i = 0;
+		while(i < length) {
+			if(!Character.isDigit(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int digits = 0;
+			long value = 0;
+			while(i < length && Character.isDigit(text.charAt(i))) {
+				if(value <= Integer.MAX_VALUE) {
+					value = value * 10 + Character.digit(text.charAt(i), 10);
+				}
+				digits++;
+				i++;
+			}
+			int number = (int) Math.min(value, Integer.MAX_VALUE);
+			if(!found) {
+				start = number;
+				found = true;
+			} else if(number < previous && digits < 10) {
+				int scale = 1;
+				for(int d = 0; d < digits; d++) {
+					scale *= 10;
+				}
+				int expanded = previous - (previous % scale) + number;
+				if(expanded >= previous) {
+					number = expanded;
+				}
+			}
+			end = Math.max(end, number);
+			previous = number;
+		}
+		return found ? new PageRange(start, end) : NONE;
+	}
+
+	/** @return {@link #start}. */
+	public int getStart() {
+		return start;
+	}
+
+	/** @return {@link #end}. */
+	public int getEnd() {
+		return end;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof PageRange) {
+			PageRange other = (PageRange) obj;
+			return start == other.start && end == other.end;
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return 31 * start + end;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return start + "-" + end;
+	}
+
+}
@@ -1,12 +1,10 @@
 package org.dnteam.histindex.widgets;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.List;
-
 import org.dnteam.histindex.database.Author;
 import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 
 import javafx.collections.ObservableList;
 import javafx.scene.layout.GridPane;
@@ -14,11 +12,13 @@ import javafx.scene.layout.GridPane;
 /** Widget for selecting 'n' {@link Author}s from the database.
  * @author farrer */
 public class AuthorSelector extends EntitySelector<Author> {
+	
+	private static final FetchPlan<Author> PLAN = FetchPlan.of(Author.class);
 
 	/** @see EntitySelector#EntitySelector */
-	public AuthorSelector(Connection conn, GridPane grid, int gridX, int gridY, 
-			ObservableList<Author> current) throws SQLException {
-		super(conn, grid, gridX, gridY, "Author", "Author(s)", "fullName", current, false);
+	public AuthorSelector(Database database, GridPane grid, int gridX, int gridY, 
+			ObservableList<Author> current) {
+		super(database, grid, gridX, gridY, "Author", "Author(s)", "fullName", current, false);
 	}
 
 	/** {@inheritDoc} */
@@ -29,7 +29,8 @@ public class AuthorSelector extends EntitySelector<Author> {
 
 	/** {@inheritDoc} */
 	@Override
-	protected void loadRelated(Connection conn, List<Author> values) throws SQLException {
+	protected FetchPlan<Author> getFetchPlan() {
+		return PLAN;
 	}
 	
 
@@ -1,13 +1,10 @@
 package org.dnteam.histindex.widgets;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.List;
-
 import org.dnteam.histindex.database.Book;
-import org.dnteam.histindex.database.BookAuthorManager;
 import org.dnteam.histindex.database.BookManager;
+import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 
 import javafx.collections.ObservableList;
 import javafx.scene.layout.GridPane;
@@ -15,10 +12,12 @@ import javafx.scene.layout.GridPane;
 /** Widget for selecting 'n' {@link Book}s from the database.
  * @author farrer */
 public class BookSelector extends EntitySelector<Book> {
+	
+	private static final FetchPlan<Book> PLAN = FetchPlan.of(Book.class).with(FetchPlan.Relation.AUTHORS);
 
-	public BookSelector(Connection conn, GridPane grid, int gridX, int gridY, 
-	      ObservableList<Book> current) throws SQLException {
-		super(conn, grid, gridX, gridY, "Book/Article", "Book(s)/Article(s)", "description", current, false);
+	public BookSelector(Database database, GridPane grid, int gridX, int gridY, 
+	      ObservableList<Book> current) {
+		super(database, grid, gridX, gridY, "Book/Article", "Book(s)/Article(s)", "description", current, false);
 	}
 
 	/** {@inheritDoc} */
@@ -29,8 +28,8 @@ public class BookSelector extends EntitySelector<Book> {
 
 	/** {@inheritDoc} */
 	@Override
-	protected void loadRelated(Connection conn, List<Book> values) throws SQLException {
-		BookAuthorManager.getSingleton().populateAuthors(conn, values);
+	protected FetchPlan<Book> getFetchPlan() {
+		return PLAN;
 	}
 
 }
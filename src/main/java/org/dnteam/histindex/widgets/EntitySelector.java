@@ -1,16 +1,20 @@
 package org.dnteam.histindex.widgets;
 
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.List;
+import java.util.function.Consumer;
 
+import org.dnteam.histindex.database.AsyncDatabase;
+import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.Event;
 import javafx.event.EventHandler;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.RadioButton;
@@ -25,6 +29,7 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
 
 /** Basic class for creating a selector of 'n' elements of a {@link Entity} from the database.
+ * Its values are loaded asynchronously, with the selector disabled until loaded.
  * @author farrer */
 public abstract class EntitySelector<T extends Entity> {
 	
@@ -35,9 +40,13 @@ public abstract class EntitySelector<T extends Entity> {
 	private ToggleGroup andOrToggle = null;
 	private RadioButton andRadioButton;
 	private RadioButton orRadioButton;
+	/** If all values were loaded */
+	private boolean loaded = false;
+	/** If enabled for use (when loaded) */
+	private boolean enabled = true;
 
 	/** Constructor.
-	 * @param conn {@link Connection} to use for loading all values from database.
+	 * @param database {@link Database} to load all values from.
 	 * @param grid Grid to add the selector to (it will use 2,2 spaces).
 	 * @param gridX x coordinate on grid to add the selector into.
 	 * @param gridY y coordinate on grid to add the selector into.
@@ -45,18 +54,16 @@ public abstract class EntitySelector<T extends Entity> {
 	 * @param entityPlural plural form of the {@link Entity} name.
 	 * @param entityFieldName field of the {@link Entity} to show at the table.
 	 * @param current current selected entities. if none, pass an empty list.
-	 * @param andOrRadio true to use a "AND or OR" radio button.
-	 * @throws SQLException */
-	public EntitySelector(Connection conn, GridPane grid, int gridX, int gridY, String entityName,
-			String entityPlural, String entityFieldName, ObservableList<T> current,
-			boolean andOrRadio) throws SQLException {
+	 * @param andOrRadio true to use a "AND or OR" radio button. */
+	public EntitySelector(Database database, GridPane grid, int gridX, int gridY, String entityName,
+			final String entityPlural, String entityFieldName, ObservableList<T> current,
+			boolean andOrRadio) {
 		
 		/* Set our current selected */
 		curSelected = current;
 		
-		/* Load all values */
-		allValues = FXCollections.observableArrayList(getEntityManager().loadAll(conn));
-		loadRelated(conn, allValues);
+		/* All values are only known when loaded */
+		allValues = FXCollections.observableArrayList();
 		
 		/* Create and define our 'selected table' */
 		table = new TableView<T>();
@@ -115,8 +122,28 @@ public abstract class EntitySelector<T extends Entity> {
 				}
 			}
 		});
+		selector.setPromptText("Loading...");
 		grid.add(new Label("Add " + entityName + ":"), gridX, gridY + 2);
 		grid.add(selector, gridX + 1, gridY + 2);
+		
+		/* Load all values */
+		updateDisable();
+		FxExecutor.getSingleton().deliver(database.async().loadAll(AsyncDatabase.Lane.INTERACTIVE,
+				getEntityManager(), getFetchPlan()), new Consumer<List<T>>() {
+			public void accept(List<T> values) {
+				allValues.setAll(values);
+				selector.setPromptText(null);
+				loaded = true;
+				updateDisable();
+			}
+		}, new Consumer<Throwable>() {
+			public void accept(Throwable e) {
+				selector.setPromptText(null);
+				Alert alert = new Alert(AlertType.ERROR, "Couldn't load " + entityPlural + 
+						" (" + e.getMessage() + ")");
+				alert.show();
+			}
+		});
 	}
 	
 	/** Remove current selected item from table. */
@@ -157,33 +184,40 @@ public abstract class EntitySelector<T extends Entity> {
 		return true;
 	}
 	
-	/** Enable the selector for use. */
+	/** @return if all values were loaded. */
+	public boolean isLoaded() {
+		return loaded;
+	}
+	
+	/** Enable the selector for use (effective once its values are loaded). */
 	public void enable() {
-		selector.setDisable(false);
-		table.setDisable(false);
-		if(andOrToggle != null) {
-			andRadioButton.setDisable(false);
-			orRadioButton.setDisable(false);
-		}
+		enabled = true;
+		updateDisable();
 	}
 	
-	/** Enable the selector for use. */
+	/** Disable the selector for use. */
 	public void disable() {
-		selector.setDisable(true);
-		table.setDisable(true);
+		enabled = false;
+		updateDisable();
+	}
+	
+	/** Apply the disable state of our widgets: only usable if enabled and loaded. */
+	private void updateDisable() {
+		boolean disable = !(enabled && loaded);
+		selector.setDisable(disable);
+		table.setDisable(disable);
 		if(andOrToggle != null) {
-			andRadioButton.setDisable(true);
-			orRadioButton.setDisable(true);
+			andRadioButton.setDisable(disable);
+			orRadioButton.setDisable(disable);
 		}
 	}
 	
 	/** @return {@link EntityManager} for the implementor's {@link Entity}. */
 	protected abstract EntityManager<T> getEntityManager();
 	
-	/** Load related needed information for the implementor's {@link Entity} being useful.
-	 * For example, for a Book, should load its Authors.
-	 * @param conn {@link Connection} to use.
-	 * @param values loaded values to load its related information. */
-	protected abstract void loadRelated(Connection conn, List<T> values) throws SQLException;
+	/** Declare the related information needed for the implementor's {@link Entity} being useful.
+	 * For example, for a Book, its Authors.
+	 * @return {@link FetchPlan} of the values to select. */
+	protected abstract FetchPlan<T> getFetchPlan();
 
 }
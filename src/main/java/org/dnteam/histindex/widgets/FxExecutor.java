@@ -0,0 +1,78 @@
+package org.dnteam.histindex.widgets;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/** Executor of tasks at the JavaFX application thread, to deliver the results of asynchronous
+ * works (as the ones of {@link org.dnteam.histindex.database.AsyncDatabase}) to the widgets.
+ * @author farrer */
+public final class FxExecutor implements Executor {
+
+	private static final FxExecutor SINGLETON = new FxExecutor();
+
+	/** Constructor. */
+	private FxExecutor() {
+	}
+
+	/** @return the single instance of {@link FxExecutor}. */
+	public static FxExecutor getSingleton() {
+		return SINGLETON;
+	}
+
+	/** Execute a task at the application thread: right now if already at it, later otherwise.
+	 * @param task task to execute. */
+	@Override
+	public void execute(Runnable task) {
+		if(Platform.isFxApplicationThread()) {
+			task.run();
+		} else {
+			Platform.runLater(task);
+		}
+	}
+
+	/** Deliver the outcome of an asynchronous work at the application thread. Cancelled works
+	 * are silently ignored.
+	 * @param future future of the work.
+	 * @param onResult called with the result of the work, if succeeded.
+	 * @param onError called with the error of the work (unwrapped), if failed.
+	 * @return future completed after the delivery. */
+	public <R> CompletableFuture<Void> deliver(CompletableFuture<R> future,
+			final Consumer<? super R> onResult, final Consumer<Throwable> onError) {
+		return future.handleAsync(new BiFunction<R, Throwable, Void>() {
+			@Override
+			public Void apply(R res, Throwable e) {
+				if(e == null) {
+					onResult.accept(res);
+				} else if(!isCancellation(e)) {
+					onError.accept(unwrap(e));
+				}
+				return null;
+			}
+		}, this);
+	}
+
+	/** Get the real cause of an error of an asynchronous work.
+	 * @param e error as received from a future.
+	 * @return its cause, without the wrapping exceptions. */
+	public static Throwable unwrap(Throwable e) {
+		while((e instanceof CompletionException || e instanceof ExecutionException) &&
+				e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e;
+	}
+
+	/** @param e error as received from a future.
+	 * @return if the work was just cancelled. */
+	public static boolean isCancellation(Throwable e) {
+		return unwrap(e) instanceof CancellationException;
+	}
+
+}
@@ -1,10 +1,8 @@
 package org.dnteam.histindex.widgets;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.List;
-
+import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 import org.dnteam.histindex.database.Keyword;
 import org.dnteam.histindex.database.KeywordManager;
 
@@ -14,10 +12,12 @@ import javafx.scene.layout.GridPane;
 /** Widget for selecting 'n' {@link Keyword}s from the database.
  * @author farrer */
 public class KeywordSelector extends EntitySelector<Keyword> {
+	
+	private static final FetchPlan<Keyword> PLAN = FetchPlan.of(Keyword.class);
 
-	public KeywordSelector(Connection conn, GridPane grid, int gridX, int gridY,
-	      ObservableList<Keyword> current, boolean andOrRadio) throws SQLException {
-		super(conn, grid, gridX, gridY, "Keyword", "Keyword(s)", "name", current, andOrRadio);
+	public KeywordSelector(Database database, GridPane grid, int gridX, int gridY,
+	      ObservableList<Keyword> current, boolean andOrRadio) {
+		super(database, grid, gridX, gridY, "Keyword", "Keyword(s)", "name", current, andOrRadio);
 	}
 
 	/** {@inheritDoc} */
@@ -28,7 +28,8 @@ public class KeywordSelector extends EntitySelector<Keyword> {
 
 	/** {@inheritDoc} */
 	@Override
-	protected void loadRelated(Connection conn, List<Keyword> values) throws SQLException {
+	protected FetchPlan<Keyword> getFetchPlan() {
+		return PLAN;
 	}
 
 }
@@ -1,10 +1,8 @@
 package org.dnteam.histindex.widgets;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.List;
-
+import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
 import org.dnteam.histindex.database.Source;
 import org.dnteam.histindex.database.SourceManager;
 
@@ -14,10 +12,12 @@ import javafx.scene.layout.GridPane;
 /** Widget for selecting 'n' {@link Source}s from the database.
  * @author farrer */
 public class SourceSelector extends EntitySelector<Source> {
+	
+	private static final FetchPlan<Source> PLAN = FetchPlan.of(Source.class);
 
-	public SourceSelector(Connection conn, GridPane grid, int gridX, int gridY,
-	      ObservableList<Source> current) throws SQLException {
-		super(conn, grid, gridX, gridY, "Source", "Source(s)", "title", current, false);
+	public SourceSelector(Database database, GridPane grid, int gridX, int gridY,
+	      ObservableList<Source> current) {
+		super(database, grid, gridX, gridY, "Source", "Source(s)", "title", current, false);
 	}
 
 	/** {@inheritDoc} */
@@ -28,7 +28,8 @@ public class SourceSelector extends EntitySelector<Source> {
 
 	/** {@inheritDoc} */
 	@Override
-	protected void loadRelated(Connection conn, List<Source> values) throws SQLException {
+	protected FetchPlan<Source> getFetchPlan() {
+		return PLAN;
 	}
 
 }
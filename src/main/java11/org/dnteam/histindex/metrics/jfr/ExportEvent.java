@@ -0,0 +1,15 @@
+package org.dnteam.histindex.metrics.jfr;
+
+import org.dnteam.histindex.metrics.PhaseType;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Event of a {@link PhaseType#EXPORT}: a generation of the quotes of an export, with its format as details.
+ * @author farrer */
+@Name("org.dnteam.histindex.Export")
+@Label("Quote Export")
+@Description("Generation of the quotes of an export, with its format as details")
+final class ExportEvent extends PhaseEvent {
+}
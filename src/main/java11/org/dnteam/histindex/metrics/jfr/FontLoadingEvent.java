@@ -0,0 +1,15 @@
+package org.dnteam.histindex.metrics.jfr;
+
+import org.dnteam.histindex.metrics.PhaseType;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Event of a {@link PhaseType#FONT_LOADING}: a load of the fonts of an export, with its format as details.
+ * @author farrer */
+@Name("org.dnteam.histindex.FontLoading")
+@Label("Font Loading")
+@Description("Loading of the fonts of an export, with its format as details")
+final class FontLoadingEvent extends PhaseEvent {
+}
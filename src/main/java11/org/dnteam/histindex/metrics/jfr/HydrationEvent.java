@@ -0,0 +1,15 @@
+package org.dnteam.histindex.metrics.jfr;
+
+import org.dnteam.histindex.metrics.PhaseType;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Event of a {@link PhaseType#HYDRATION}: a load of the related data of quotes, with the relations loaded as details.
+ * @author farrer */
+@Name("org.dnteam.histindex.Hydration")
+@Label("Quote Hydration")
+@Description("Loading of the related data of quotes, with the relations loaded as details")
+final class HydrationEvent extends PhaseEvent {
+}
@@ -0,0 +1,45 @@
+package org.dnteam.histindex.metrics.jfr;
+
+import java.util.EnumMap;
+
+import org.dnteam.histindex.metrics.Phase;
+import org.dnteam.histindex.metrics.PhaseEvents;
+import org.dnteam.histindex.metrics.PhaseType;
+
+import jdk.jfr.EventType;
+
+/** {@link PhaseEvents} emitting a Java Flight Recorder event for each phase, only allocated while
+ * its event type is being recorded. Provided to {@link java.util.ServiceLoader} by our
+ * <code>jfr</code> build profile.
+ * @author farrer */
+public final class JfrPhaseEvents extends PhaseEvents {
+
+	/** Event type of each phase */
+	private final EnumMap<PhaseType, EventType> types = new EnumMap<PhaseType, EventType>(PhaseType.class);
+
+	/** Constructor. */
+	public JfrPhaseEvents() {
+		types.put(PhaseType.SEARCH, EventType.getEventType(SearchEvent.class));
+		types.put(PhaseType.HYDRATION, EventType.getEventType(HydrationEvent.class));
+		types.put(PhaseType.EXPORT, EventType.getEventType(ExportEvent.class));
+		types.put(PhaseType.FONT_LOADING, EventType.getEventType(FontLoadingEvent.class));
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Phase begin(PhaseType type) {
+		if(!types.get(type).isEnabled()) {
+			return Phase.NONE;
+		}
+		PhaseEvent event;
+		switch(type) {
+			case SEARCH: event = new SearchEvent(); break;
+			case HYDRATION: event = new HydrationEvent(); break;
+			case EXPORT: event = new ExportEvent(); break;
+			default: event = new FontLoadingEvent(); break;
+		}
+		event.begin();
+		return event;
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.dnteam.histindex.metrics.jfr;
+
+import org.dnteam.histindex.metrics.Phase;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/** A {@link Phase} recorded as a Java Flight Recorder event. Its {@link #isEnabled()} and 
+ * {@link #commit()} are the ones of the event.
+ * @author farrer */
+@Category("HistIndex")
+abstract class PhaseEvent extends Event implements Phase {
+
+	@Label("Database")
+	String database;
+
+	@Label("Rows")
+	long rows;
+
+	@Label("Details")
+	String details;
+
+	/** {@inheritDoc} */
+	@Override
+	public void setDatabase(String database) {
+		this.database = database;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setRows(long rows) {
+		this.rows = rows;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void setDetails(String details) {
+		this.details = details;
+	}
+
+}
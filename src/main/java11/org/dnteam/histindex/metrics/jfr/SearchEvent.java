@@ -0,0 +1,15 @@
+package org.dnteam.histindex.metrics.jfr;
+
+import org.dnteam.histindex.metrics.PhaseType;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Event of a {@link PhaseType#SEARCH}: a search of quotes, with the shape of its criteria as details.
+ * @author farrer */
+@Name("org.dnteam.histindex.Search")
+@Label("Quote Search")
+@Description("Search of quotes, with the shape of its criteria as details")
+final class SearchEvent extends PhaseEvent {
+}
@@ -0,0 +1,182 @@
+package org.dnteam.histindex;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.dnteam.histindex.database.AsyncDatabase;
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.FetchPlan;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.TransactionWork;
+import org.dnteam.histindex.generators.AuthorGenerator;
+
+import junit.framework.TestCase;
+
+/** Tests for the {@link AsyncDatabase} access.
+ * @author farrer */
+public class AsyncDatabaseTestCase extends TestCase {
+	private Database database;
+
+	/** Constructor. */
+	public AsyncDatabaseTestCase() {
+		this.database = new Database("asyncdatabasetestcase.db", 2);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void setUp() throws Exception {
+		/* Each test counts its rows: must start empty. */
+		database.createSchema();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+
+	/** Test that works are executed outside the caller thread, by the lane threads. */
+	public void testWorksOutsideCaller() throws Exception {
+		final Thread caller = Thread.currentThread();
+		for(AsyncDatabase.Lane lane : AsyncDatabase.Lane.values()) {
+			Thread worker = database.async().submit(lane, new Callable<Thread>() {
+				@Override
+				public Thread call() {
+					return Thread.currentThread();
+				}
+			}).get(10, TimeUnit.SECONDS);
+			assert(worker != caller);
+			assert(worker.isDaemon());
+		}
+	}
+
+	/** Test that transactions are commited, and its results seen by later reads. */
+	public void testTransactionAndRead() throws Exception {
+		final Author author = new AuthorGenerator().withName("Zumbi").withLastName("Palmares").getEntity();
+		database.async().inTransaction(AsyncDatabase.Lane.INTERACTIVE, new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				AuthorManager.getSingleton().insert(conn, author);
+				return null;
+			}
+		}).get(10, TimeUnit.SECONDS);
+		assert(author.getId() != 0);
+
+		List<Author> all = database.async().loadAll(AsyncDatabase.Lane.BACKGROUND,
+				AuthorManager.getSingleton(), FetchPlan.of(Author.class)).get(10, TimeUnit.SECONDS);
+		assert(all.size() == 1);
+		assert(all.get(0).getId() == author.getId());
+
+		Page<Author> page = database.async().loadPage(AsyncDatabase.Lane.INTERACTIVE,
+				AuthorManager.getSingleton(), null, 10, null).get(10, TimeUnit.SECONDS);
+		assert(page.getItems().size() == 1);
+		assert(!page.hasNext());
+	}
+
+	/** Test that errors of a work fail its future, with the transaction rolled back. */
+	public void testErrorPropagated() throws Exception {
+		final Author author = new AuthorGenerator().withName("Dandara").withLastName("Palmares").getEntity();
+		CompletableFuture<Void> failing = database.async().inTransaction(AsyncDatabase.Lane.INTERACTIVE,
+				new TransactionWork<Void>() {
+			@Override
+			public Void execute(Connection conn) throws SQLException {
+				AuthorManager.getSingleton().insert(conn, author);
+				throw new SQLException("Expected failure");
+			}
+		});
+		try {
+			failing.get(10, TimeUnit.SECONDS);
+			fail("Should have failed");
+		} catch(ExecutionException e) {
+			assert(e.getCause() instanceof SQLException);
+		}
+		assert(AuthorManager.getSingleton().loadAll(database).isEmpty());
+	}
+
+	/** Test that a work cancelled while queued is never executed. */
+	public void testCancelQueued() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		/* Keep the single background thread busy */
+		CompletableFuture<Void> blocker = database.async().submit(AsyncDatabase.Lane.BACKGROUND,
+				new Callable<Void>() {
+			@Override
+			public Void call() throws InterruptedException {
+				started.countDown();
+				release.await();
+				return null;
+			}
+		});
+		started.await(10, TimeUnit.SECONDS);
+
+		final AtomicBoolean executed = new AtomicBoolean(false);
+		CompletableFuture<Void> queued = database.async().submit(AsyncDatabase.Lane.BACKGROUND,
+				new Callable<Void>() {
+			@Override
+			public Void call() {
+				executed.set(true);
+				return null;
+			}
+		});
+		boolean cancelled = queued.cancel(true);
+		assert(cancelled);
+		release.countDown();
+		blocker.get(10, TimeUnit.SECONDS);
+
+		/* A later work runs after the cancelled one would have */
+		database.async().submit(AsyncDatabase.Lane.BACKGROUND, new Callable<Void>() {
+			@Override
+			public Void call() {
+				return null;
+			}
+		}).get(10, TimeUnit.SECONDS);
+		assert(queued.isCancelled());
+		assert(!executed.get());
+	}
+
+	/** Test that cancelling a running work interrupts it. */
+	public void testCancelRunning() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		CompletableFuture<Void> running = database.async().submit(AsyncDatabase.Lane.INTERACTIVE,
+				new Callable<Void>() {
+			@Override
+			public Void call() {
+				started.countDown();
+				try {
+					Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+				} catch(InterruptedException e) {
+					interrupted.countDown();
+				}
+				return null;
+			}
+		});
+		started.await(10, TimeUnit.SECONDS);
+		running.cancel(true);
+		assert(interrupted.await(10, TimeUnit.SECONDS));
+	}
+
+	/** Test that the asynchronous access is usable again after closing the database. */
+	public void testReusableAfterClose() throws Exception {
+		AsyncDatabase before = database.async();
+		database.close();
+		AsyncDatabase after = database.async();
+		assert(before != after);
+		assert(after.submit(AsyncDatabase.Lane.INTERACTIVE, new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return true;
+			}
+		}).get(10, TimeUnit.SECONDS));
+	}
+
+}
@@ -2,7 +2,9 @@ package org.dnteam.histindex;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -196,5 +198,43 @@ public class BookAuthorManagerTestCase extends ComposedEntityManagerTestCase<Boo
 			assert(bookB.getAuthorsCopy().get(0).getId() == authorB.getId());
 		}
 	}
+	
+	/** Test that the authors of books are populated in the authors order (not by identifier), as
+	 * the books sort keys, thus with the same description.
+	 * @throws SQLException */
+	public void testAuthorsOrder() throws SQLException {
+		Author zulu, alves;
+		Book book;
+		try(Connection conn = DriverManager.getConnection(getDatabase().getURL()))	{
+			zulu = new AuthorGenerator().withLastName("Zulu").withName("Author").persist(conn);
+			alves = new AuthorGenerator().withLastName("Alves").withName("Author").persist(conn);
+			book = new BookGenerator().withTitle("Ordered").withAuthor(zulu).withAuthor(alves).persist(conn);
+		}
+		assert(zulu.getId() < alves.getId());
+		
+		try(Connection conn = DriverManager.getConnection(getDatabase().getURL()))	{
+			String sortKey;
+			try(Statement stmt = conn.createStatement();
+				 ResultSet rs = stmt.executeQuery("SELECT SortKey FROM Books WHERE Id = " + book.getId())) {
+				assert(rs.next());
+				sortKey = rs.getString(1);
+			}
+			assert("Alves, Author;Zulu, Author. Ordered".equals(sortKey));
+			
+			Book single = new Book();
+			single.setId(book.getId());
+			single.setTitle(book.getTitle());
+			BookAuthorManager.getSingleton().populateAuthors(conn, single);
+			assert(sortKey.equals(single.getDescription()));
+			
+			Book listed = new Book();
+			listed.setId(book.getId());
+			listed.setTitle(book.getTitle());
+			List<Book> books = new ArrayList<Book>(1);
+			books.add(listed);
+			BookAuthorManager.getSingleton().populateAuthors(conn, books);
+			assert(sortKey.equals(listed.getDescription()));
+		}
+	}
 
 }
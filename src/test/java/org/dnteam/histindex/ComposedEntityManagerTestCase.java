@@ -3,12 +3,14 @@ package org.dnteam.histindex;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.dnteam.histindex.database.ComposedEntity;
 import org.dnteam.histindex.database.ComposedEntityManager;
+import org.dnteam.histindex.database.CompositeKey;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
-import org.dnteam.histindex.util.Tuple;
 
 import junit.framework.TestCase;
 
@@ -118,11 +120,11 @@ public abstract class ComposedEntityManagerTestCase<T extends ComposedEntity<?,
 			assert(count == 3);
 			
 			/* Check if none with 1a. */
-			T res = getManager().load(conn, new Tuple<Long, Long>(ent1a.getId(), ent2a.getId()));
+			T res = getManager().load(conn, new CompositeKey(ent1a.getId(), ent2a.getId()));
 			assert(res == null);
-			res = getManager().load(conn, new Tuple<Long, Long>(ent1a.getId(), ent2b.getId()));
+			res = getManager().load(conn, new CompositeKey(ent1a.getId(), ent2b.getId()));
 			assert(res == null);
-			res = getManager().load(conn, new Tuple<Long, Long>(ent1a.getId(), ent2c.getId()));
+			res = getManager().load(conn, new CompositeKey(ent1a.getId(), ent2c.getId()));
 			assert(res == null);
 		}
 		
@@ -132,14 +134,44 @@ public abstract class ComposedEntityManagerTestCase<T extends ComposedEntity<?,
 			assert(count == 2);
 			
 			/* Check if none with 2a. */
-			T res = getManager().load(conn, new Tuple<Long, Long>(ent1b.getId(), ent2a.getId()));
+			T res = getManager().load(conn, new CompositeKey(ent1b.getId(), ent2a.getId()));
 			assert(res == null);
-			res = getManager().load(conn, new Tuple<Long, Long>(ent1c.getId(), ent2a.getId()));
+			res = getManager().load(conn, new CompositeKey(ent1c.getId(), ent2a.getId()));
 			assert(res == null);
 		}
 		
 	}
 	
+	/** Test batch insertion and deletion of {@link ComposedEntity}ies.
+	 * @throws SQLException */
+	public void testBatch() throws SQLException {
+		List<T> entities = new ArrayList<T>();
+		try(Connection conn = DriverManager.getConnection(getDatabase().getURL())) {
+			Entity first = createFirstEntity(conn);
+			for(int i = 0; i < 3; i++) {
+				entities.add(createEntity(first, createSecondEntity(conn)));
+			}
+		}
+		int[] res = getManager().insertAll(getDatabase(), entities);
+		assert(res.length == entities.size());
+		for(int i = 0; i < res.length; i++) {
+			assert(res[i] == 1);
+			assert(getManager().load(getDatabase(), entities.get(i).getKey()) != null);
+		}
+		
+		res = getManager().deleteAll(getDatabase(), entities);
+		for(int i = 0; i < res.length; i++) {
+			assert(res[i] == 1);
+			assert(getManager().load(getDatabase(), entities.get(i).getKey()) == null);
+		}
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+	
 	/** @return the database to use */
 	protected Database getDatabase() { return database; };
 	
@@ -0,0 +1,96 @@
+package org.dnteam.histindex;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.DatabaseConfig;
+import org.dnteam.histindex.generators.AuthorGenerator;
+
+import junit.framework.TestCase;
+
+/** Tests for the {@link DatabaseConfig} profiles.
+ * @author farrer */
+public class DatabaseConfigTestCase extends TestCase {
+
+	private static final String FILENAME = "databaseconfigtestcase.db";
+
+	/** Test that properties override the profile values. */
+	public void testFromProperties() {
+		Properties props = new Properties();
+		props.setProperty("database.profile", DatabaseConfig.BULK_LOAD);
+		props.setProperty("database.synchronous", "full");
+		props.setProperty("database.readers", " 3 ");
+		props.setProperty("database.trace", "slow");
+		props.setProperty("database.slow_query_millis", "250");
+
+		DatabaseConfig config = DatabaseConfig.fromProperties(props, "database.");
+		assert(DatabaseConfig.BULK_LOAD.equals(config.getProfile()));
+		assert(config.getSynchronous() == DatabaseConfig.Synchronous.FULL);
+		assert(config.getReaders() == 3);
+		assert(config.getTrace() == DatabaseConfig.TraceMode.SLOW);
+		assert(config.getSlowQueryMillis() == 250);
+		assert(config.getCacheSize() == DatabaseConfig.bulkLoad().getCacheSize());
+
+		props.setProperty("database.profile", "none");
+		try {
+			DatabaseConfig.fromProperties(props, "database.");
+			assert(false);
+		} catch(IllegalArgumentException e) {
+			/* Expected */
+		}
+	}
+
+	/** Test that the configuration is applied to the opened connections. */
+	public void testAppliedToConnections() throws SQLException {
+		DatabaseConfig config = DatabaseConfig.interactive();
+		config.setSynchronous(DatabaseConfig.Synchronous.FULL);
+		Database database = new Database(FILENAME, config);
+		try {
+			database.createSchema();
+			try(ConnectionLease lease = database.leaseReader();
+				 Statement stmt = lease.getConnection().createStatement()) {
+				try(ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+					assert(rs.next() && "wal".equalsIgnoreCase(rs.getString(1)));
+				}
+				try(ResultSet rs = stmt.executeQuery("PRAGMA synchronous")) {
+					/* FULL */
+					assert(rs.next() && rs.getInt(1) == 2);
+				}
+			}
+		} finally {
+			database.close();
+		}
+	}
+
+	/** Test that a read only archive could be queried but not changed. */
+	public void testReadOnlyArchive() throws SQLException {
+		Database database = new Database(FILENAME);
+		try {
+			database.createSchema();
+			AuthorManager.getSingleton().insert(database, new AuthorGenerator().getEntity());
+		} finally {
+			database.close();
+		}
+
+		Database archive = new Database(FILENAME, DatabaseConfig.readOnlyArchive());
+		try {
+			int applied = archive.migrate();
+			assert(applied == 0);
+			assert(AuthorManager.getSingleton().loadAll(archive).size() == 1);
+			try {
+				AuthorManager.getSingleton().insert(archive, new AuthorGenerator().getEntity());
+				assert(false);
+			} catch(SQLException e) {
+				/* Expected */
+			}
+		} finally {
+			archive.close();
+		}
+	}
+
+}
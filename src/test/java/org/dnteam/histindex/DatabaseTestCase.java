@@ -0,0 +1,194 @@
+package org.dnteam.histindex;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.TransactionWork;
+import org.dnteam.histindex.generators.AuthorGenerator;
+
+import junit.framework.TestCase;
+
+/** Tests for the {@link Database} connection leases.
+ * @author farrer */
+public class DatabaseTestCase extends TestCase {
+	private Database database;
+
+	/** Constructor. */
+	public DatabaseTestCase() {
+		this.database = new Database("databasetestcase.db", 2);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void setUp() throws Exception {
+		/* Each test counts its rows: must start empty. */
+		database.createSchema();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+
+	/** Test that the same thread receives again its leased connection. */
+	public void testReentrantLeases() throws SQLException {
+		try(ConnectionLease outer = database.leaseReader();
+		    ConnectionLease inner = database.leaseReader()) {
+			assert(outer.getConnection() == inner.getConnection());
+		}
+		try(ConnectionLease outer = database.leaseWriter();
+		    ConnectionLease inner = database.leaseWriter()) {
+			assert(outer.getConnection() == inner.getConnection());
+		}
+	}
+
+	/** Test that a thread holding the writer reads its not yet commited changes. */
+	public void testWriterSeesOwnChanges() throws SQLException {
+		Author author = new AuthorGenerator().withName("Maria").withLastName("Bonita").getEntity();
+		try(ConnectionLease writer = database.leaseWriter()) {
+			Connection conn = writer.getConnection();
+			conn.setAutoCommit(false);
+			AuthorManager.getSingleton().insert(conn, author);
+
+			try(ConnectionLease reader = database.leaseReader()) {
+				assert(reader.isWriter());
+				assert(AuthorManager.getSingleton().load(reader.getConnection(), author.getId()) != null);
+			}
+			conn.rollback();
+		}
+		assert(AuthorManager.getSingleton().load(database, author.getId()) == null);
+	}
+
+	/** Test that closing the leased connection doesn't close the pooled one. */
+	public void testConnectionCloseIgnored() throws SQLException {
+		Connection conn;
+		try(ConnectionLease lease = database.leaseReader()) {
+			conn = lease.getConnection();
+			conn.close();
+			assert(!conn.isClosed());
+		}
+		try(ConnectionLease lease = database.leaseReader()) {
+			assert(lease.getConnection() == conn);
+		}
+	}
+
+	/** Test that prepared statements are reused (without the settings of its previous use), but
+	 * never shared while in use. */
+	public void testStatementCache() throws SQLException {
+		final String sql = "SELECT COUNT(*) FROM Authors WHERE Id > ?";
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			PreparedStatement first;
+			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+				first = stmt;
+				stmt.setLong(1, 0);
+				try(PreparedStatement nested = conn.prepareStatement(sql)) {
+					assert(nested != stmt);
+				}
+				stmt.setFetchSize(100);
+				stmt.executeQuery();
+			}
+			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+				assert(stmt == first);
+				assert(stmt.getConnection() == conn);
+				assert(stmt.getFetchSize() == 0);
+				stmt.setFetchSize(100);
+			}
+			try(PreparedStatement stmt = conn.prepareStatement(sql)) {
+				assert(stmt.getFetchSize() == 0);
+			}
+		}
+	}
+
+	/** Test that a failed batch insertion inside a transaction rolls back only its own changes. */
+	public void testBatchRollback() throws SQLException {
+		Author kept = new AuthorGenerator().withName("Kept").getEntity();
+		List<Author> authors = new ArrayList<Author>();
+		authors.add(new AuthorGenerator().withName("First").getEntity());
+		authors.add(new AuthorGenerator().withName("Second").getEntity());
+		try(ConnectionLease lease = database.leaseWriter()) {
+			Connection conn = lease.getConnection();
+			conn.setAutoCommit(false);
+			AuthorManager.getSingleton().insert(conn, kept);
+			try(Statement stmt = conn.createStatement()) {
+				stmt.execute("CREATE TEMP TRIGGER failSecond BEFORE INSERT ON Authors WHEN NEW.Name = 'Second' "
+						+ "BEGIN SELECT RAISE(ABORT, 'failed'); END;");
+			}
+			try {
+				AuthorManager.getSingleton().insertAll(conn, authors);
+				assert(false);
+			} catch(SQLException e) {
+				/* Expected */
+			}
+			conn.commit();
+		}
+		assert(authors.get(0).getId() == 0);
+		assert(authors.get(1).getId() == 0);
+		assert(AuthorManager.getSingleton().load(database, kept.getId()) != null);
+		assert(AuthorManager.getSingleton().loadAll(database).size() == 1);
+	}
+
+	/** Test that a transaction work is commited as a whole, or rolled back as a whole. */
+	public void testInTransaction() throws SQLException {
+		final Author first = new AuthorGenerator().withName("First").getEntity();
+		final Author second = new AuthorGenerator().withName("Second").getEntity();
+		database.inTransaction(new TransactionWork<Void>() {
+			public Void execute(Connection conn) throws SQLException {
+				assert(!conn.getAutoCommit());
+				AuthorManager.getSingleton().insert(conn, first);
+				AuthorManager.getSingleton().insert(conn, second);
+				return null;
+			}
+		});
+		assert(AuthorManager.getSingleton().loadAll(database).size() == 2);
+		
+		try {
+			database.inTransaction(new TransactionWork<Void>() {
+				public Void execute(Connection conn) throws SQLException {
+					AuthorManager.getSingleton().delete(conn, first.getId());
+					throw new SQLException("failed");
+				}
+			});
+			assert(false);
+		} catch(SQLException e) {
+			/* Expected */
+		}
+		assert(AuthorManager.getSingleton().loadAll(database).size() == 2);
+	}
+
+	/** Test that a nested transaction work only rolls back its own changes. */
+	public void testNestedTransaction() throws SQLException {
+		final Author outer = new AuthorGenerator().withName("Outer").getEntity();
+		final Author inner = new AuthorGenerator().withName("Inner").getEntity();
+		database.inTransaction(new TransactionWork<Void>() {
+			public Void execute(Connection conn) throws SQLException {
+				AuthorManager.getSingleton().insert(conn, outer);
+				try {
+					database.inTransaction(new TransactionWork<Void>() {
+						public Void execute(Connection conn) throws SQLException {
+							AuthorManager.getSingleton().insert(conn, inner);
+							throw new SQLException("failed");
+						}
+					});
+					assert(false);
+				} catch(SQLException e) {
+					/* Expected */
+				}
+				assert(!conn.getAutoCommit());
+				return null;
+			}
+		});
+		assert(AuthorManager.getSingleton().load(database, outer.getId()) != null);
+		assert(AuthorManager.getSingleton().loadAll(database).size() == 1);
+	}
+
+}
@@ -1,10 +1,18 @@
 package org.dnteam.histindex;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
+import org.dnteam.histindex.database.ConnectionLease;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.RowCallback;
+import org.dnteam.histindex.util.LongObjectMap;
 
 import junit.framework.TestCase;
 
@@ -72,6 +80,51 @@ public abstract class EntityManagerTestCase<T extends Entity> extends TestCase {
 		assert(loaded == null);
 	}
 	
+	/** Test batch insertion, update and deletion of {@link Entity}ies.
+	 * @throws SQLException */
+	public void testBatch() throws SQLException {
+		List<T> entities = new ArrayList<T>();
+		for(int i = 0; i < 3; i++) {
+			entities.add(createEntity());
+		}
+		int[] res = getManager().insertAll(getDatabase(), entities);
+		assert(res.length == entities.size());
+		long lastId = 0;
+		for(int i = 0; i < res.length; i++) {
+			assert(res[i] == 1);
+			assert(entities.get(i).getId() > lastId);
+			lastId = entities.get(i).getId();
+			
+			T loaded = getManager().load(getDatabase(), entities.get(i).getId());
+			assert(loaded != null);
+			assert(haveEqualValues(entities.get(i), loaded));
+		}
+		
+		for(T entity : entities) {
+			changeEntityValues(entity);
+		}
+		res = getManager().updateAll(getDatabase(), entities);
+		long[] ids = new long[entities.size()];
+		for(int i = 0; i < res.length; i++) {
+			assert(res[i] == 1);
+			T loaded = getManager().load(getDatabase(), entities.get(i).getId());
+			assert(haveEqualValues(entities.get(i), loaded));
+			ids[i] = entities.get(i).getId();
+		}
+		
+		res = getManager().deleteAll(getDatabase(), ids);
+		for(int i = 0; i < res.length; i++) {
+			assert(res[i] == 1);
+			assert(getManager().load(getDatabase(), ids[i]) == null);
+		}
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+	
 	/** @return {@link Database} to use */
 	protected Database getDatabase() { return database; };
 	
@@ -93,4 +146,126 @@ public abstract class EntityManagerTestCase<T extends Entity> extends TestCase {
 	 * @return if have the same values or not. */
 	protected abstract boolean haveEqualValues(T ent1, T ent2);
 	
+	
+	/** Test the load of a list of entities, with more identifiers than the max number of 
+	 * parameters of a SQLite statement.
+	 * @throws SQLException */
+	public void testLoadList() throws SQLException {
+		List<T> entities = new ArrayList<T>();
+		for(int i = 0; i < 1500; i++) {
+			entities.add(createEntity());
+		}
+		getManager().insertAll(getDatabase(), entities);
+		
+		long[] ids = new long[entities.size() + 1];
+		for(int i = 0; i < entities.size(); i++) {
+			ids[i] = entities.get(i).getId();
+		}
+		/* Not existent */
+		ids[entities.size()] = 0L;
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			List<T> loaded = getManager().load(lease.getConnection(), ids);
+			assert(loaded.size() == entities.size());
+			LongObjectMap<T> hash = getManager().createHashMap(loaded);
+			for(T entity : entities) {
+				assert(haveEqualValues(entity, hash.get(entity.getId())));
+			}
+		}
+	}
+	
+	/** Test the streaming of all entities, by a {@link Stream} and by a {@link RowCallback}.
+	 * @throws SQLException */
+	public void testStream() throws SQLException {
+		List<T> entities = new ArrayList<T>();
+		for(int i = 0; i < 50; i++) {
+			entities.add(createEntity());
+		}
+		getManager().insertAll(getDatabase(), entities);
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			List<T> all = getManager().loadAll(lease.getConnection());
+			
+			/* Same entities, at the same order */
+			try(Stream<T> stream = getManager().streamAll(lease.getConnection())) {
+				Iterator<T> it = all.iterator();
+				Iterator<T> streamed = stream.iterator();
+				while(streamed.hasNext()) {
+					T entity = streamed.next();
+					T expected = it.next();
+					assert(entity.getId() == expected.getId());
+					assert(haveEqualValues(entity, expected));
+				}
+				assert(!it.hasNext());
+			}
+			
+			/* Reusing a single instance */
+			final List<T> received = new ArrayList<T>();
+			int count = getManager().forEach(lease.getConnection(), 10, true, new RowCallback<T>() {
+				@Override
+				public boolean onRow(T entity) {
+					if(!received.contains(entity)) {
+						received.add(entity);
+					}
+					return true;
+				}
+			});
+			assert(count == all.size());
+			assert(received.size() == 1);
+			
+			/* Stopping early (and its statement is usable again) */
+			for(int i = 0; i < 2; i++) {
+				count = getManager().forEach(lease.getConnection(), 0, false, new RowCallback<T>() {
+					@Override
+					public boolean onRow(T entity) {
+						return false;
+					}
+				});
+				assert(count == 1);
+			}
+			try(Stream<T> stream = getManager().streamAll(lease.getConnection(), 5, false)) {
+				assert(stream.limit(3).count() == 3);
+			}
+			
+			long[] ids = new long[] {entities.get(3).getId(), entities.get(7).getId()};
+			try(Stream<T> stream = getManager().stream(lease.getConnection(), ids, 0, false)) {
+				assert(stream.count() == 2);
+			}
+		}
+	}
+	
+	/** Test the load of all entities by pages: same entities, at the same order of a full load.
+	 * @throws SQLException */
+	public void testLoadPage() throws SQLException {
+		List<T> entities = new ArrayList<T>();
+		for(int i = 0; i < 25; i++) {
+			entities.add(createEntity());
+		}
+		getManager().insertAll(getDatabase(), entities);
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			List<T> all = getManager().loadAll(lease.getConnection());
+			List<T> paged = new ArrayList<T>();
+			String token = null;
+			do {
+				Page<T> page = getManager().loadPage(lease.getConnection(), token, 4);
+				assert(page.getItems().size() <= 4);
+				paged.addAll(page.getItems());
+				token = page.getNextToken();
+			} while(token != null);
+			
+			assert(paged.size() == all.size());
+			for(int i = 0; i < all.size(); i++) {
+				assert(paged.get(i).getId() == all.get(i).getId());
+				assert(haveEqualValues(paged.get(i), all.get(i)));
+			}
+			
+			try {
+				getManager().loadPage(lease.getConnection(), "%invalid%", 4);
+				assert(false);
+			} catch(IllegalArgumentException e) {
+				/* Expected */
+			}
+		}
+	}
 }
@@ -0,0 +1,113 @@
+package org.dnteam.histindex;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.dnteam.histindex.util.IdBitmap;
+
+import junit.framework.TestCase;
+
+/** Tests for the {@link IdBitmap}, comparing it with a {@link TreeSet}.
+ * @author farrer */
+public class IdBitmapTestCase extends TestCase {
+
+	/** Test adding, removing and checking identifiers, on sparse and dense containers. */
+	public void testAddRemove() {
+		Random random = new Random(42);
+		IdBitmap bitmap = new IdBitmap();
+		TreeSet<Long> expected = new TreeSet<Long>();
+		for(int i = 0; i < 20000; i++) {
+			long id = randomId(random);
+			assert(bitmap.add(id) == expected.add(id));
+		}
+		assertSame(expected, bitmap);
+
+		/* Remove most of them: dense containers become sparse again */
+		for(Long id : expected.toArray(new Long[expected.size()])) {
+			if(random.nextInt(10) != 0) {
+				assert(bitmap.remove(id));
+				expected.remove(id);
+			}
+		}
+		assert(!bitmap.remove(IdBitmap.MAX_ID));
+		assertSame(expected, bitmap);
+		for(int i = 0; i < 1000; i++) {
+			long id = randomId(random);
+			assert(bitmap.contains(id) == expected.contains(id));
+		}
+
+		try {
+			bitmap.add(IdBitmap.MAX_ID + 1);
+			assert(false);
+		} catch(IllegalArgumentException e) {
+			/* Expected */
+		}
+	}
+
+	/** Test the set operations. */
+	public void testOperations() {
+		Random random = new Random(24);
+		for(int round = 0; round < 20; round++) {
+			IdBitmap a = new IdBitmap();
+			IdBitmap b = new IdBitmap();
+			TreeSet<Long> setA = new TreeSet<Long>();
+			TreeSet<Long> setB = new TreeSet<Long>();
+			int totalA = random.nextInt(15000);
+			int totalB = random.nextInt(15000);
+			for(int i = 0; i < totalA; i++) {
+				long id = randomId(random);
+				a.add(id);
+				setA.add(id);
+			}
+			for(int i = 0; i < totalB; i++) {
+				long id = randomId(random);
+				b.add(id);
+				setB.add(id);
+			}
+
+			TreeSet<Long> and = new TreeSet<Long>(setA);
+			and.retainAll(setB);
+			assertSame(and, IdBitmap.and(a, b));
+
+			TreeSet<Long> or = new TreeSet<Long>(setA);
+			or.addAll(setB);
+			assertSame(or, IdBitmap.or(a, b));
+
+			TreeSet<Long> andNot = new TreeSet<Long>(setA);
+			andNot.removeAll(setB);
+			assertSame(andNot, IdBitmap.andNot(a, b));
+
+			/* Operands untouched */
+			assertSame(setA, a);
+			assertSame(setB, b);
+			assert(a.copy().equals(a));
+		}
+	}
+
+	/** @return a random identifier, concentrated on a few containers (to make some of them dense). */
+	private long randomId(Random random) {
+		switch(random.nextInt(3)) {
+			case 0:
+				return random.nextInt(8000);
+			case 1:
+				return 65536 * 3 + random.nextInt(65536);
+			default:
+				return (long) random.nextInt(Integer.MAX_VALUE) * 2;
+		}
+	}
+
+	/** Check that a bitmap has the same identifiers of a set. */
+	private void assertSame(TreeSet<Long> expected, IdBitmap bitmap) {
+		long[] ids = bitmap.toArray();
+		assert(ids.length == expected.size());
+		assert(bitmap.cardinality() == expected.size());
+		assert(bitmap.isEmpty() == expected.isEmpty());
+		int i = 0;
+		for(Long id : expected) {
+			assert(ids[i] == id);
+			assert(bitmap.contains(id));
+			i++;
+		}
+	}
+
+}
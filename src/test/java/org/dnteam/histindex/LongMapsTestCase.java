@@ -0,0 +1,83 @@
+package org.dnteam.histindex;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.dnteam.histindex.util.LongLongMap;
+import org.dnteam.histindex.util.LongObjectMap;
+import org.dnteam.histindex.util.LongSet;
+
+import junit.framework.TestCase;
+
+/** Tests for the {@link LongObjectMap}, {@link LongLongMap} and {@link LongSet}, comparing them with
+ * a {@link HashMap} (or a {@link TreeSet}).
+ * @author farrer */
+public class LongMapsTestCase extends TestCase {
+
+	/** Test random puts and removes (with lots of collisions and the zero key). */
+	public void testRandomOperations() {
+		Random random = new Random(7);
+		LongObjectMap<String> objects = new LongObjectMap<String>();
+		LongLongMap longs = new LongLongMap();
+		HashMap<Long, Long> expected = new HashMap<Long, Long>();
+		for(int i = 0; i < 50000; i++) {
+			long key = random.nextInt(2000) - 10;
+			if(random.nextInt(3) == 0) {
+				Long previous = expected.remove(key);
+				String removed = objects.remove(key);
+				assert((previous == null) ? removed == null : removed.equals(previous.toString()));
+				assert(longs.remove(key) == (previous != null));
+			} else {
+				long value = random.nextLong();
+				Long previous = expected.put(key, value);
+				String replaced = objects.put(key, Long.toString(value));
+				assert((previous == null) ? replaced == null : replaced.equals(previous.toString()));
+				longs.put(key, value);
+			}
+		}
+		assert(objects.size() == expected.size());
+		assert(longs.size() == expected.size());
+		assert(objects.keys().length == expected.size());
+		for(long key = -10; key < 1990; key++) {
+			Long value = expected.get(key);
+			if(value == null) {
+				assert(objects.get(key) == null);
+				assert(!longs.containsKey(key));
+				assert(longs.get(key, -1) == -1);
+			} else {
+				assert(objects.get(key).equals(value.toString()));
+				assert(longs.get(key, -1) == value);
+			}
+		}
+
+		objects.clear();
+		longs.clear();
+		assert(objects.size() == 0 && objects.get(1) == null);
+		assert(longs.size() == 0 && !longs.containsKey(0));
+	}
+
+	/** Test random adds to a {@link LongSet} (with the zero value) and its sorted array. */
+	public void testSet() {
+		Random random = new Random(11);
+		LongSet set = new LongSet(4);
+		TreeSet<Long> expected = new TreeSet<Long>();
+		for(int i = 0; i < 20000; i++) {
+			long value = random.nextInt(5000) - 10;
+			assert(set.add(value) == expected.add(value));
+		}
+		assert(set.size() == expected.size());
+		for(long value = -10; value < 4990; value++) {
+			assert(set.contains(value) == expected.contains(value));
+		}
+		long[] sorted = set.toSortedArray();
+		int i = 0;
+		for(Long value : expected) {
+			assert(sorted[i++] == value);
+		}
+
+		set.clear();
+		assert(set.isEmpty() && !set.contains(0));
+	}
+
+}
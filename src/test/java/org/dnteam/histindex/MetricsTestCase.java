@@ -0,0 +1,163 @@
+package org.dnteam.histindex;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookAuthorManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.generators.AuthorGenerator;
+import org.dnteam.histindex.generators.BookGenerator;
+import org.dnteam.histindex.metrics.LatencyHistogram;
+import org.dnteam.histindex.metrics.MetricsRegistry;
+import org.dnteam.histindex.metrics.OperationMetrics;
+import org.dnteam.histindex.metrics.OperationStats;
+
+import junit.framework.TestCase;
+
+/** Tests for the operation metrics ({@link MetricsRegistry}).
+ * @author farrer */
+public class MetricsTestCase extends TestCase {
+	private Database database;
+
+	/** Constructor. */
+	public MetricsTestCase() {
+		this.database = new Database("metricstestcase.db");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void setUp() throws Exception {
+		database.createSchema();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+
+	/** Test that the histogram percentiles are within its bucket precision. */
+	public void testHistogramPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assert(histogram.getPercentile(50) == 0);
+		for(long value = 1; value <= 10000; value++) {
+			histogram.record(value * 1000);
+		}
+		assert(histogram.getCount() == 10000);
+		assert(histogram.getMax() == 10000000);
+		assertNear(histogram.getPercentile(50), 5000000);
+		assertNear(histogram.getPercentile(99), 9900000);
+		assert(histogram.getPercentile(100) == histogram.getMax());
+
+		/* Values out of range are kept at its limits */
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		assert(histogram.getCount() == 10002);
+		assert(histogram.getMax() == Long.MAX_VALUE);
+
+		histogram.reset();
+		assert(histogram.getCount() == 0);
+		assert(histogram.getMax() == 0);
+	}
+
+	/** Test that the manager operations are recorded, with its rows and errors. */
+	public void testManagerOperations() throws Exception {
+		OperationMetrics inserts = MetricsRegistry.getSingleton().operation("Authors.insertAll");
+		OperationMetrics loads = MetricsRegistry.getSingleton().operation("Authors.loadAll");
+		OperationMetrics updates = MetricsRegistry.getSingleton().operation("Authors.update");
+		long insertCount = inserts.getCount();
+		long insertRows = inserts.getRows();
+		long loadCount = loads.getCount();
+		long loadRows = loads.getRows();
+		long updateErrors = updates.getErrors();
+
+		List<Author> authors = new ArrayList<Author>();
+		for(int i = 0; i < 20; i++) {
+			authors.add(new AuthorGenerator().withLastName("Metrics" + i).getEntity());
+		}
+		AuthorManager.getSingleton().insertAll(database, authors);
+		assert(inserts.getCount() == insertCount + 1);
+		assert(inserts.getRows() == insertRows + 20);
+
+		assert(AuthorManager.getSingleton().loadAll(database).size() == 20);
+		assert(loads.getCount() == loadCount + 1);
+		assert(loads.getRows() == loadRows + 20);
+
+		/* A failed update (closed connection) is recorded as an error */
+		Connection conn = DriverManager.getConnection("jdbc:sqlite:metricstestcase.db");
+		conn.close();
+		try {
+			AuthorManager.getSingleton().update(conn, authors.get(0));
+			fail("Should have failed");
+		} catch(SQLException e) {
+			assert(updates.getErrors() == updateErrors + 1);
+		}
+	}
+
+	/** Test that the bulk deletes of relations are recorded, with the rows actually deleted. */
+	public void testRelationDeletes() throws Exception {
+		OperationMetrics byAuthor = MetricsRegistry.getSingleton().operation("BookAuthor.deleteAuthorFromBooks");
+		OperationMetrics byBook = MetricsRegistry.getSingleton().operation("BookAuthor.deleteAuthorsFromBook");
+		long byAuthorCount = byAuthor.getCount();
+		long byAuthorRows = byAuthor.getRows();
+		long byBookCount = byBook.getCount();
+		long byBookRows = byBook.getRows();
+
+		Author author = new AuthorGenerator().withLastName("Metrics").persist(database);
+		Book bookA = new BookGenerator().withAuthor(author).persist(database);
+		new BookGenerator().withAuthor(author).persist(database);
+		try(ConnectionLease lease = database.leaseWriter()) {
+			int deleted = BookAuthorManager.getSingleton().deleteAuthorFromBooks(lease.getConnection(), author.getId());
+			assert(deleted == 2);
+			deleted = BookAuthorManager.getSingleton().deleteAuthorsFromBook(lease.getConnection(), bookA.getId());
+			assert(deleted == 0);
+		}
+		assert(byAuthor.getCount() == byAuthorCount + 1);
+		assert(byAuthor.getRows() == byAuthorRows + 2);
+		assert(byBook.getCount() == byBookCount + 1);
+		assert(byBook.getRows() == byBookRows);
+	}
+
+	/** Test that the metrics are visible by JMX. */
+	public void testMXBean() throws Exception {
+		MetricsRegistry.getSingleton().operation("Test.mxbean").record(System.nanoTime(), 3);
+		MetricsRegistry.getSingleton().register();
+		/* Registering twice is harmless */
+		MetricsRegistry.getSingleton().register();
+
+		CompositeData[] operations = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(
+				new ObjectName(MetricsRegistry.OBJECT_NAME), "Operations");
+		boolean found = false;
+		for(CompositeData operation : operations) {
+			if("Test.mxbean".equals(operation.get("name"))) {
+				found = true;
+				assert((Long) operation.get("rows") >= 3);
+			}
+		}
+		assert(found);
+
+		boolean sorted = true;
+		OperationStats[] stats = MetricsRegistry.getSingleton().getOperations();
+		for(int i = 1; i < stats.length; i++) {
+			sorted &= stats[i - 1].getName().compareTo(stats[i].getName()) < 0;
+		}
+		assert(sorted);
+	}
+
+	/** Assert that a percentile is within the histogram precision of its expected value. */
+	private void assertNear(long value, long expected) {
+		assert(Math.abs(value - expected) <= expected / 8) : value + " isn't near " + expected;
+	}
+
+}
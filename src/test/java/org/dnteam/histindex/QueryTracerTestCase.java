@@ -0,0 +1,153 @@
+package org.dnteam.histindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.DatabaseConfig;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.SearchCriteria;
+import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.generators.AuthorGenerator;
+import org.dnteam.histindex.generators.BookGenerator;
+import org.dnteam.histindex.generators.QuoteGenerator;
+import org.dnteam.histindex.generators.SourceGenerator;
+
+import junit.framework.TestCase;
+
+/** Tests for the tracing of the executed statements ({@link DatabaseConfig#getTrace()}).
+ * @author farrer */
+public class QueryTracerTestCase extends TestCase {
+
+	private static final String FILENAME = "querytracertestcase.db";
+
+	/** Test that all statements are logged, with the plans of the slow ones. */
+	public void testTraceAll() throws Exception {
+		File dir = Files.createTempDirectory("querytracertestcase").toFile();
+		DatabaseConfig config = DatabaseConfig.interactive();
+		config.setTrace(DatabaseConfig.TraceMode.ALL);
+		config.setSlowQueryMillis(0);
+		config.setTraceLog(new File(dir, "sql.%g.log").getAbsolutePath());
+		Database database = new Database(FILENAME, config);
+		try {
+			database.createSchema();
+			List<Author> authors = new ArrayList<Author>();
+			for(int i = 0; i < 20; i++) {
+				authors.add(new AuthorGenerator().withLastName("Tracer" + i).getEntity());
+			}
+			AuthorManager.getSingleton().insertAll(database, authors);
+			assert(AuthorManager.getSingleton().loadAll(database).size() == 20);
+			Author author = authors.get(0);
+			author.setName("Traced");
+			AuthorManager.getSingleton().update(database, author);
+
+			SearchCriteria criteria = new SearchCriteria();
+			criteria.setText("anything");
+			criteria.setPageFrom(1);
+			try(ConnectionLease lease = database.leaseReader()) {
+				assert(QuoteManager.getSingleton().search(lease.getConnection(), criteria).isEmpty());
+			}
+		} finally {
+			database.close();
+		}
+
+		String text = read(dir);
+		/* Every statement is slow with a zero threshold */
+		assert(text.contains("[SLOW]"));
+		assert(text.contains("20 rows, 0 params: SELECT"));
+		assert(text.contains("1 rows, 3 params: UPDATE Authors"));
+		assert(text.contains("20 rows, 2 params, 20 batches: INSERT INTO Authors"));
+		/* With its query plans (also for the dynamic searches, with its parameters) */
+		assert(text.contains("SCAN TABLE Authors"));
+		assert(text.contains("FROM Quotes"));
+		assert(!text.contains("no query plan"));
+	}
+
+	/** Test that only the slow statements are logged, and nothing when disabled. */
+	public void testTraceSlow() throws Exception {
+		File dir = Files.createTempDirectory("querytracertestcase").toFile();
+		DatabaseConfig config = DatabaseConfig.interactive();
+		config.setTrace(DatabaseConfig.TraceMode.SLOW);
+		config.setSlowQueryMillis(60000);
+		config.setTraceLog(new File(dir, "sql.%g.log").getAbsolutePath());
+		Database database = new Database(FILENAME, config);
+		try {
+			database.createSchema();
+			AuthorManager.getSingleton().insert(database, new AuthorGenerator().getEntity());
+			assert(AuthorManager.getSingleton().loadAll(database).size() == 1);
+		} finally {
+			database.close();
+		}
+		assert(read(dir).isEmpty());
+
+		assert(DatabaseConfig.interactive().getTrace() == DatabaseConfig.TraceMode.OFF);
+	}
+
+	/** Test that the pages of quotes (and its continuations) are read in the index order, never
+	 * sorting all quotes. */
+	public void testQuotePagePlans() throws Exception {
+		File dir = Files.createTempDirectory("querytracertestcase").toFile();
+		DatabaseConfig config = DatabaseConfig.interactive();
+		config.setTrace(DatabaseConfig.TraceMode.ALL);
+		config.setSlowQueryMillis(0);
+		config.setTraceLog(new File(dir, "sql.%g.log").getAbsolutePath());
+		Database database = new Database(FILENAME, config);
+		try {
+			database.createSchema();
+			Book book = new BookGenerator().persist(database);
+			Source source = new SourceGenerator().persist(database);
+			for(int i = 0; i < 5; i++) {
+				new QuoteGenerator().withBook(book).withPage(Integer.toString(i)).persist(database);
+				new QuoteGenerator().withSource(source).persist(database);
+			}
+			try(ConnectionLease lease = database.leaseReader()) {
+				Page<Quote> page = QuoteManager.getSingleton().loadPage(lease.getConnection(), null, 3);
+				page = QuoteManager.getSingleton().loadPage(lease.getConnection(), page.getNextToken(), 3);
+				assert(page.getItems().size() == 3);
+				SearchCriteria criteria = new SearchCriteria();
+				page = QuoteManager.getSingleton().searchPage(lease.getConnection(), criteria, null, 3);
+				page = QuoteManager.getSingleton().searchPage(lease.getConnection(), criteria, page.getNextToken(), 3);
+				assert(page.getItems().size() == 3);
+			}
+		} finally {
+			database.close();
+		}
+
+		/* Each statement is a line, followed by its plan steps (indented) */
+		int pages = 0;
+		boolean isPage = false;
+		for(String line : read(dir).split("\\R")) {
+			if(!line.startsWith(" ")) {
+				isPage = line.contains("FROM Quotes") && line.contains("LIMIT");
+				if(isPage) {
+					pages++;
+				}
+			} else if(isPage) {
+				assert(!line.contains("TEMP B-TREE"));
+			}
+		}
+		assert(pages == 4);
+	}
+
+	/** Read the current log file.
+	 * @param dir directory of the log files.
+	 * @return its contents.
+	 * @throws IOException */
+	private String read(File dir) throws IOException {
+		File log = new File(dir, "sql.0.log");
+		log.deleteOnExit();
+		dir.deleteOnExit();
+		return new String(Files.readAllBytes(log.toPath()), Charset.forName("UTF-8"));
+	}
+
+}
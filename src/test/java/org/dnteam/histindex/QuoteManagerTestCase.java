@@ -3,22 +3,34 @@ package org.dnteam.histindex;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.AuthorManager;
 import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookManager;
+import org.dnteam.histindex.database.ConnectionLease;
 import org.dnteam.histindex.database.EntityManager;
+import org.dnteam.histindex.database.FetchPlan;
+import org.dnteam.histindex.database.FullTextIndexer;
 import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.Page;
 import org.dnteam.histindex.database.Quote;
 import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.SearchCriteria;
 import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.database.TransactionWork;
 import org.dnteam.histindex.generators.AuthorGenerator;
 import org.dnteam.histindex.generators.BookGenerator;
 import org.dnteam.histindex.generators.KeywordGenerator;
 import org.dnteam.histindex.generators.QuoteGenerator;
 import org.dnteam.histindex.generators.SourceGenerator;
+import org.dnteam.histindex.util.LongSet;
+import org.dnteam.histindex.util.PageRange;
 import org.dnteam.histindex.util.StringUtil;
 
 /** Test case of {@link QuoteManager}.
@@ -56,6 +68,7 @@ public class QuoteManagerTestCase extends EntityManagerTestCase<Quote> {
 		return ent1.getBookId() == ent2.getBookId() && ent1.getSourceId() == ent2.getSourceId() && 
 				StringUtil.isEqual(ent1.getText(), ent2.getText()) && 
 				StringUtil.isEqual(ent1.getPage(), ent2.getPage()) &&
+				ent1.getPageRange().equals(ent2.getPageRange()) &&
 				StringUtil.isEqual(ent1.getComment(), ent2.getComment());
 	}
 	
@@ -254,8 +267,8 @@ public class QuoteManagerTestCase extends EntityManagerTestCase<Quote> {
 			/* Check if all quotes are from this book and page order. */
 			for(Quote quote : res) {
 				assert(quote.getBookId() == bookA.getId());
-				assert(lastPage <= quote.getPageAsNumber());
-				lastPage = quote.getPageAsNumber();
+				assert(lastPage <= quote.getPageStart());
+				lastPage = quote.getPageStart();
 			}
 			
 			/* BookA and Mutapa */
@@ -298,6 +311,136 @@ public class QuoteManagerTestCase extends EntityManagerTestCase<Quote> {
 		}
 	}
 	
+	/** Test the text search by the full-text index.
+	 * @throws SQLException */
+	public void testFullTextSearch() throws SQLException {
+		Quote sofala, zambeze;
+		try(Connection conn = DriverManager.getConnection(getDatabase().getURL()))	{
+			sofala = new QuoteGenerator().withText("Os mercadores de Sofala trocavam tecidos por ouro.")
+					.withComment("Comércio do ouro no século XVI").persist(conn);
+			zambeze = new QuoteGenerator().withText("O ouro descia o Zambeze até Sena e Tete, trocado por tecidos")
+					.withComment("Feiras do Zambeze").persist(conn);
+		}
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			Connection conn = lease.getConnection();
+			
+			/* All words, on text or comment */
+			List<Quote> res = searchText(conn, "tecidos ouro", SearchCriteria.TextMode.TOKENS);
+			assert(res.size() == 2);
+			res = searchText(conn, "mercadores feiras", SearchCriteria.TextMode.TOKENS);
+			assert(res.isEmpty());
+			res = searchText(conn, "feiras", SearchCriteria.TextMode.TOKENS);
+			assert(res.size() == 1 && res.get(0).getId() == zambeze.getId());
+			
+			/* Prefixes */
+			res = searchText(conn, "merca tec", SearchCriteria.TextMode.PREFIX);
+			assert(res.size() == 1 && res.get(0).getId() == sofala.getId());
+			res = searchText(conn, "merca tec", SearchCriteria.TextMode.TOKENS);
+			assert(res.isEmpty());
+			
+			/* Phrases */
+			res = searchText(conn, "ouro descia", SearchCriteria.TextMode.PHRASE);
+			assert(res.size() == 1 && res.get(0).getId() == zambeze.getId());
+			res = searchText(conn, "descia ouro", SearchCriteria.TextMode.PHRASE);
+			assert(res.isEmpty());
+			
+			/* Accent-insensitive, both ways */
+			res = searchText(conn, "comercio SECULO", SearchCriteria.TextMode.TOKENS);
+			assert(res.size() == 1 && res.get(0).getId() == sofala.getId());
+			res = searchText(conn, "\"até\" séna", SearchCriteria.TextMode.TOKENS);
+			assert(res.size() == 1 && res.get(0).getId() == zambeze.getId());
+			
+			/* Ranked: the quote with more occurrences first */
+			res = searchText(conn, "zambeze", SearchCriteria.TextMode.TOKENS);
+			assert(res.size() == 1 && res.get(0).getRank() < 0);
+			res = searchText(conn, "ouro", SearchCriteria.TextMode.TOKENS);
+			assert(res.size() == 2);
+			assert(res.get(0).getRank() <= res.get(1).getRank());
+			assert(res.get(0).getId() == sofala.getId());
+			
+			/* Nothing to search for: just like an exact text search */
+			res = searchText(conn, "--", SearchCriteria.TextMode.TOKENS);
+			assert(res.isEmpty());
+		}
+		
+		/* Changes are kept on the index */
+		sofala.setText("Os mercadores de Sofala trocavam marfim.");
+		zambeze.setComment(null);
+		try(ConnectionLease lease = getDatabase().leaseWriter()) {
+			Connection conn = lease.getConnection();
+			QuoteManager.getSingleton().update(conn, sofala);
+			QuoteManager.getSingleton().update(conn, zambeze);
+			assert(searchText(conn, "tecidos", SearchCriteria.TextMode.TOKENS).size() == 1);
+			assert(searchText(conn, "marfim", SearchCriteria.TextMode.TOKENS).size() == 1);
+			assert(searchText(conn, "feiras", SearchCriteria.TextMode.TOKENS).isEmpty());
+			
+			QuoteManager.getSingleton().delete(conn, sofala.getId());
+			assert(searchText(conn, "marfim", SearchCriteria.TextMode.TOKENS).isEmpty());
+		}
+	}
+	
+	/** Test the full-text index backfill of a database with quotes not yet indexed.
+	 * @throws SQLException */
+	public void testFullTextBackfill() throws SQLException {
+		List<Quote> quotes = new ArrayList<Quote>();
+		for(int i = 0; i < 25; i++) {
+			quotes.add(new QuoteGenerator().withText("Relação número " + i + " da capitania").getEntity());
+		}
+		QuoteManager.getSingleton().insertAll(getDatabase(), quotes);
+		
+		/* As a database from before the index */
+		try(ConnectionLease lease = getDatabase().leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("DELETE FROM " + FullTextIndexer.TABLE_NAME);
+			stmt.execute("UPDATE Settings SET Value = 0 WHERE Key = '" + FullTextIndexer.COMPLETE_SETTING + "'");
+		}
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			Connection conn = lease.getConnection();
+			assert(!FullTextIndexer.getSingleton().isComplete(conn));
+			/* Fallback, without diacritics removal */
+			assert(searchText(conn, "relação capit", SearchCriteria.TextMode.PREFIX).size() == 25);
+			assert(searchText(conn, "relacao", SearchCriteria.TextMode.PREFIX).isEmpty());
+		}
+		
+		final List<Long> progress = new ArrayList<Long>();
+		boolean complete = FullTextIndexer.getSingleton().backfill(getDatabase(), 10, 
+				new FullTextIndexer.ProgressListener() {
+			public void onProgress(long indexed, long total) {
+				assert(indexed <= total);
+				progress.add(indexed);
+			}
+		});
+		assert(complete);
+		assert(progress.size() > 1);
+		for(int i = 1; i < progress.size(); i++) {
+			assert(progress.get(i - 1) <= progress.get(i));
+		}
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			Connection conn = lease.getConnection();
+			assert(FullTextIndexer.getSingleton().isComplete(conn));
+			assert(searchText(conn, "relacao", SearchCriteria.TextMode.PREFIX).size() == 25);
+		}
+		/* Nothing more to do */
+		complete = FullTextIndexer.getSingleton().backfill(getDatabase(), 10, null);
+		assert(complete);
+	}
+	
+	/** Search quotes only by its text.
+	 * @param conn {@link Connection} to use.
+	 * @param text text to search for.
+	 * @param mode how to match the text.
+	 * @return quotes found.
+	 * @throws SQLException */
+	private List<Quote> searchText(Connection conn, String text, SearchCriteria.TextMode mode) throws SQLException {
+		SearchCriteria criteria = new SearchCriteria();
+		criteria.setText(text);
+		criteria.setTextMode(mode);
+		return QuoteManager.getSingleton().search(conn, criteria);
+	}
+	
 	/** Test for function {@link QuoteManager#populateRelatedInfo}.
 	 * @throws SQLException */
 	public void testPopulateRelatedInfo() throws SQLException {
@@ -346,7 +489,7 @@ public class QuoteManagerTestCase extends EntityManagerTestCase<Quote> {
 			new QuoteGenerator().withSource(sourceB).withKeyword(ivory).persist(conn);
 			new QuoteGenerator().withSource(sourceB).withKeyword(ivory).withKeyword(mutapa).persist(conn);
 			new QuoteGenerator().withSource(sourceB).withKeyword(mutapa).persist(conn);
-			new QuoteGenerator().withSource(sourceB).withKeyword(gold).withText("Gold is gathered on mines.").persist(conn);
+			new QuoteGenerator().withSource(sourceB).withKeyword(gold).withText("Gold is gathered on rivers.").persist(conn);
 		}
 		
 		List<Quote> quotes = null;
@@ -376,5 +519,231 @@ public class QuoteManagerTestCase extends EntityManagerTestCase<Quote> {
 			}
 		}
 	}
+	
+	/** Test that populated quotes share its books and keywords instances, until they are changed.
+	 * @throws SQLException */
+	public void testSharedReferences() throws SQLException {
+		Keyword keyword = new KeywordGenerator().withName("cache").persist(getDatabase());
+		Author author = new AuthorGenerator().withLastName("Cached").withName("Author").persist(getDatabase());
+		final Book book = new BookGenerator().withTitle("Cached").withAuthor(author).persist(getDatabase());
+		long[] ids = new long[2];
+		for(int i = 0; i < 2; i++) {
+			ids[i] = new QuoteGenerator().withBook(book).withKeyword(keyword).persist(getDatabase()).getId();
+		}
+		
+		List<Quote> first = loadPopulated(ids);
+		assert(first.get(0).getBook() == first.get(1).getBook());
+		assert(first.get(0).getKeywordsCopy().get(0) == first.get(1).getKeywordsCopy().get(0));
+		List<Quote> second = loadPopulated(ids);
+		assert(second.get(0).getBook() == first.get(0).getBook());
+		assert(second.get(0).getKeywordsCopy().get(0) == first.get(0).getKeywordsCopy().get(0));
+		
+		/* Changed book and author */
+		book.setTitle("Changed");
+		BookManager.getSingleton().update(getDatabase(), book);
+		Book changed = loadPopulated(ids).get(0).getBook();
+		assert(changed != first.get(0).getBook());
+		assert(changed.getTitle().equals("Changed"));
+		author.setName("Renamed");
+		AuthorManager.getSingleton().update(getDatabase(), author);
+		changed = loadPopulated(ids).get(0).getBook();
+		assert(changed.getAuthorsCopy().get(0).getName().equals("Renamed"));
+		
+		/* Rolled back change */
+		try {
+			getDatabase().inTransaction(new TransactionWork<Void>() {
+				public Void execute(Connection conn) throws SQLException {
+					book.setTitle("Rolled back");
+					BookManager.getSingleton().update(conn, book);
+					throw new SQLException("rollback");
+				}
+			});
+			assert(false);
+		} catch(SQLException e) {
+			/* Expected */
+		}
+		assert(loadPopulated(ids).get(0).getBook().getTitle().equals("Changed"));
+	}
+	
+	/** Test that a {@link FetchPlan} loads only its relations.
+	 * @throws SQLException */
+	public void testFetchPlan() throws SQLException {
+		Keyword gold = new KeywordGenerator().withName("gold").persist(getDatabase());
+		Keyword salt = new KeywordGenerator().withName("salt").persist(getDatabase());
+		Author author = new AuthorGenerator().persist(getDatabase());
+		Book book = new BookGenerator().withAuthor(author).persist(getDatabase());
+		Source source = new SourceGenerator().persist(getDatabase());
+		long[] ids = new long[] {
+				new QuoteGenerator().withBook(book).withKeyword(gold).withKeyword(salt).persist(getDatabase()).getId(),
+				new QuoteGenerator().withSource(source).persist(getDatabase()).getId()};
+		
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			QuoteManager qm = QuoteManager.getSingleton();
+			List<Quote> quotes = qm.load(lease.getConnection(), ids);
+			qm.fetch(lease.getConnection(), quotes, FetchPlan.of(Quote.class).with(FetchPlan.Relation.KEYWORDS));
+			Quote withBook = (quotes.get(0).getId() == ids[0]) ? quotes.get(0) : quotes.get(1);
+			Quote withSource = (withBook == quotes.get(0)) ? quotes.get(1) : quotes.get(0);
+			assert(withBook.getBook() == null);
+			assert(withBook.getKeywordsCopy().size() == 2);
+			assert(withBook.getKeywordsCopy().contains(gold) && withBook.getKeywordsCopy().contains(salt));
+			assert(withSource.getKeywordsCopy().isEmpty());
+			assert(withSource.getSource() == null);
+			
+			/* Again (not duplicating keywords), with its books and sources */
+			qm.fetch(lease.getConnection(), quotes, FetchPlan.of(Quote.class).with(FetchPlan.Relation.KEYWORDS,
+					FetchPlan.Relation.BOOK_AUTHORS, FetchPlan.Relation.SOURCE));
+			assert(withBook.getKeywordsCopy().size() == 2);
+			assert(withBook.getBook().getId() == book.getId());
+			assert(withBook.getBook().getAuthorsCopy().size() == 1);
+			assert(withBook.getBook().getAuthorsCopy().get(0).getId() == author.getId());
+			assert(withSource.getSource().getId() == source.getId());
+		}
+		
+		try {
+			FetchPlan.of(Book.class).with(FetchPlan.Relation.KEYWORDS);
+			assert(false);
+		} catch(IllegalArgumentException e) {
+			/* Expected */
+		}
+	}
+	
+	/** Test the parsed page ranges: kept at the database, ordering and filtering the searches.
+	 * @throws SQLException */
+	public void testPageRange() throws SQLException {
+		assert(PageRange.parse("12").equals(new PageRange(12, 12)));
+		assert(PageRange.parse("12-15").equals(new PageRange(12, 15)));
+		assert(PageRange.parse("123-25").equals(new PageRange(123, 125)));
+		assert(PageRange.parse("p. 7, 9").equals(new PageRange(7, 9)));
+		assert(PageRange.parse("xii") == PageRange.NONE);
+		assert(PageRange.parse(null) == PageRange.NONE);
+		
+		Book book = new BookGenerator().persist(getDatabase());
+		Quote noPage = new QuoteGenerator().withBook(book).withPage("").persist(getDatabase());
+		Quote hundred = new QuoteGenerator().withBook(book).withPage("100-102").persist(getDatabase());
+		Quote nine = new QuoteGenerator().withBook(book).withPage("9").persist(getDatabase());
+		Quote range = new QuoteGenerator().withBook(book).withPage("20-35").persist(getDatabase());
+		
+		SearchCriteria criteria = new SearchCriteria();
+		List<Book> books = new ArrayList<Book>();
+		books.add(book);
+		criteria.setBooks(books);
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			/* Numeric page order, by the database */
+			List<Quote> res = QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+			assert(res.size() == 4);
+			assert(res.get(0).getId() == noPage.getId());
+			assert(res.get(1).getId() == nine.getId());
+			assert(res.get(2).getId() == range.getId());
+			assert(res.get(3).getId() == hundred.getId());
+			assert(res.get(3).getPageStart() == 100 && res.get(3).getPageEnd() == 102);
+			
+			/* Overlapping ranges */
+			criteria.setPageFrom(30);
+			criteria.setPageTo(101);
+			res = QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+			assert(res.size() == 2);
+			assert(res.get(0).getId() == range.getId() && res.get(1).getId() == hundred.getId());
+			criteria.setPageFrom(0);
+			criteria.setPageTo(10);
+			res = QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+			assert(res.size() == 1 && res.get(0).getId() == nine.getId());
+		}
+		
+		/* Kept up to date on update */
+		nine.setPage("200");
+		QuoteManager.getSingleton().update(getDatabase(), nine);
+		Quote loaded = QuoteManager.getSingleton().load(getDatabase(), nine.getId());
+		assert(loaded.getPageStart() == 200 && loaded.getPageEnd() == 200);
+	}
+	
+	/** Test the default order of the quotes: the ones of books first, by its description (not by
+	 * its identifier), then the ones of sources; each by page.
+	 * @throws SQLException */
+	public void testBookOrder() throws SQLException {
+		Author silva = new AuthorGenerator().withName("Ana").withLastName("Silva").persist(getDatabase());
+		Author almeida = new AuthorGenerator().withName("Rui").withLastName("Almeida").persist(getDatabase());
+		Book zeta = new BookGenerator().withTitle("Zeta").withAuthor(silva).persist(getDatabase());
+		Book alpha = new BookGenerator().withTitle("Alpha").withAuthor(almeida).persist(getDatabase());
+		assert(zeta.getId() < alpha.getId());
+		assert(alpha.getDescription().compareTo(zeta.getDescription()) < 0);
+		Source source = new SourceGenerator().persist(getDatabase());
+		
+		Quote fromSource = new QuoteGenerator().withSource(source).withPage("1").persist(getDatabase());
+		Quote zetaOne = new QuoteGenerator().withBook(zeta).withPage("1").persist(getDatabase());
+		Quote alphaFive = new QuoteGenerator().withBook(alpha).withPage("5").persist(getDatabase());
+		Quote alphaTwo = new QuoteGenerator().withBook(alpha).withPage("2").persist(getDatabase());
+		long[] expected = {alphaTwo.getId(), alphaFive.getId(), zetaOne.getId(), fromSource.getId()};
+		assertOrder(expected);
+		
+		/* Kept by the author changes */
+		almeida.setLastName("Xavier");
+		AuthorManager.getSingleton().update(getDatabase(), almeida);
+		assertOrder(new long[] {zetaOne.getId(), alphaTwo.getId(), alphaFive.getId(), fromSource.getId()});
+	}
+	
+	/** Check the order of some quotes, as loaded, searched and paged (along the other quotes of
+	 * the test database).
+	 * @param expected identifiers of the quotes, in the expected order.
+	 * @throws SQLException */
+	private void assertOrder(long[] expected) throws SQLException {
+		long[] within = expected.clone();
+		Arrays.sort(within);
+		SearchCriteria criteria = new SearchCriteria();
+		criteria.setWithin(within);
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			Connection conn = lease.getConnection();
+			assert(Arrays.equals(expected, idsOf(QuoteManager.getSingleton().loadAll(conn), expected)));
+			assert(Arrays.equals(expected, idsOf(QuoteManager.getSingleton().search(conn, criteria), expected)));
+			
+			/* One by one, seeking after each (including the source one, without a book key) */
+			List<Quote> paged = new ArrayList<Quote>();
+			String token = null;
+			do {
+				Page<Quote> page = QuoteManager.getSingleton().loadPage(conn, token, 1);
+				paged.addAll(page.getItems());
+				token = page.getNextToken();
+			} while(token != null);
+			assert(Arrays.equals(expected, idsOf(paged, expected)));
+			
+			paged.clear();
+			do {
+				Page<Quote> page = QuoteManager.getSingleton().searchPage(conn, criteria, token, 1);
+				paged.addAll(page.getItems());
+				token = page.getNextToken();
+			} while(token != null);
+			assert(Arrays.equals(expected, idsOf(paged, expected)));
+		}
+	}
+	
+	/** Get the identifiers of some quotes of a list, in the list order.
+	 * @param quotes the list.
+	 * @param ids identifiers of the quotes to get.
+	 * @return the identifiers found at the list. */
+	private long[] idsOf(List<Quote> quotes, long[] ids) {
+		LongSet wanted = new LongSet(ids.length);
+		for(long id : ids) {
+			wanted.add(id);
+		}
+		long[] res = new long[quotes.size()];
+		int total = 0;
+		for(Quote quote : quotes) {
+			if(wanted.contains(quote.getId())) {
+				res[total++] = quote.getId();
+			}
+		}
+		return Arrays.copyOf(res, total);
+	}
+	
+	/** Load some quotes, populating its related information.
+	 * @param ids its identifiers.
+	 * @return the loaded quotes, in the identifiers order.
+	 * @throws SQLException */
+	private List<Quote> loadPopulated(long[] ids) throws SQLException {
+		try(ConnectionLease lease = getDatabase().leaseReader()) {
+			List<Quote> quotes = QuoteManager.getSingleton().load(lease.getConnection(), ids);
+			QuoteManager.getSingleton().populateRelatedInfo(lease.getConnection(), quotes);
+			return quotes;
+		}
+	}
 
 }
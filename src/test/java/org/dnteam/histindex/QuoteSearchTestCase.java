@@ -0,0 +1,662 @@
+package org.dnteam.histindex;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.dnteam.histindex.database.Author;
+import org.dnteam.histindex.database.Book;
+import org.dnteam.histindex.database.BookAuthor;
+import org.dnteam.histindex.database.BookAuthorManager;
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.DatabaseConfig;
+import org.dnteam.histindex.database.Entity;
+import org.dnteam.histindex.database.FetchPlan;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.Page;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteKeywordManager;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.RowCallback;
+import org.dnteam.histindex.database.SearchCriteria;
+import org.dnteam.histindex.database.SearchJob;
+import org.dnteam.histindex.database.Source;
+import org.dnteam.histindex.database.TransactionWork;
+import org.dnteam.histindex.generators.AuthorGenerator;
+import org.dnteam.histindex.generators.BookGenerator;
+import org.dnteam.histindex.generators.KeywordGenerator;
+import org.dnteam.histindex.generators.QuoteGenerator;
+import org.dnteam.histindex.generators.SourceGenerator;
+
+import junit.framework.TestCase;
+
+/** Tests for the planned {@link QuoteManager#search(Connection, SearchCriteria)}, comparing its
+ * results with the ones of the previous (nested sub-selects and DISTINCT) statement.
+ * @author farrer */
+public class QuoteSearchTestCase extends TestCase {
+
+	private Database database;
+	private List<Keyword> keywords = new ArrayList<Keyword>();
+	private List<Author> authors = new ArrayList<Author>();
+	private List<Book> books = new ArrayList<Book>();
+	private List<Source> sources = new ArrayList<Source>();
+
+	/** Constructor. */
+	public QuoteSearchTestCase() {
+		this.database = new Database("quotesearchtestcase.db");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void setUp() throws Exception {
+		database.createSchema();
+		keywords.clear();
+		authors.clear();
+		books.clear();
+		sources.clear();
+		Random random = new Random(1234);
+		try(ConnectionLease lease = database.leaseWriter()) {
+			Connection conn = lease.getConnection();
+			for(int i = 0; i < 8; i++) {
+				keywords.add(new KeywordGenerator().withName("Key" + i).persist(conn));
+			}
+			for(int i = 0; i < 5; i++) {
+				authors.add(new AuthorGenerator().withLastName("Author" + i).persist(conn));
+			}
+			for(int i = 0; i < 6; i++) {
+				BookGenerator generator = new BookGenerator().withAuthor(authors.get(random.nextInt(authors.size())));
+				if(random.nextBoolean()) {
+					generator.withAuthor(authors.get(random.nextInt(authors.size())));
+				}
+				books.add(generator.persist(conn));
+			}
+			for(int i = 0; i < 3; i++) {
+				sources.add(new SourceGenerator().persist(conn));
+			}
+			for(int i = 0; i < 300; i++) {
+				QuoteGenerator generator = new QuoteGenerator().withPage(Integer.toString(random.nextInt(200)));
+				if(random.nextInt(4) == 0) {
+					generator.withSource(sources.get(random.nextInt(sources.size())));
+				} else {
+					generator.withBook(books.get(random.nextInt(books.size())));
+				}
+				if(random.nextInt(3) == 0) {
+					generator.withText("O ouro de Manica, número " + i);
+				}
+				TreeSet<Integer> keys = new TreeSet<Integer>();
+				int total = random.nextInt(5);
+				for(int k = 0; k < total; k++) {
+					keys.add(random.nextInt(keywords.size()));
+				}
+				for(Integer k : keys) {
+					generator.withKeyword(keywords.get(k));
+				}
+				generator.persist(conn);
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+
+	/** Compare the results of random searches with the previous statement ones. */
+	public void testSameAsLegacy() throws SQLException {
+		Random random = new Random(4321);
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			int notEmpty = 0;
+			for(int i = 0; i < 300; i++) {
+				SearchCriteria criteria = randomCriteria(random);
+				TreeSet<Long> expected = legacySearch(conn, criteria);
+				TreeSet<Long> found = new TreeSet<Long>();
+				for(Quote quote : QuoteManager.getSingleton().search(conn, criteria)) {
+					/* No duplicates */
+					assert(found.add(quote.getId()));
+				}
+				assert(expected.equals(found));
+				if(!found.isEmpty()) {
+					notEmpty++;
+				}
+			}
+			/* Make sure we're not only comparing empty results */
+			assert(notEmpty > 50);
+		}
+	}
+
+	/** Test the all keywords search, with the same keyword twice. */
+	public void testAllKeywordsRepeated() throws SQLException {
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			SearchCriteria criteria = new SearchCriteria();
+			List<Keyword> keys = new ArrayList<Keyword>();
+			keys.add(keywords.get(0));
+			criteria.setKeywords(keys);
+			criteria.setAndKeys(true);
+			int single = QuoteManager.getSingleton().search(conn, criteria).size();
+			assert(single > 0);
+
+			keys.add(keywords.get(0));
+			assert(QuoteManager.getSingleton().search(conn, criteria).size() == single);
+		}
+	}
+
+	/** Compare the streamed searches with the listed ones. */
+	public void testStreamSearch() throws SQLException {
+		Random random = new Random(987);
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			for(int i = 0; i < 50; i++) {
+				SearchCriteria criteria = randomCriteria(random);
+				List<Quote> expected = QuoteManager.getSingleton().search(conn, criteria);
+				try(Stream<Quote> stream = QuoteManager.getSingleton().streamSearch(conn, criteria, 16, false)) {
+					List<Quote> found = stream.collect(Collectors.<Quote>toList());
+					assert(found.size() == expected.size());
+					for(int q = 0; q < found.size(); q++) {
+						assert(found.get(q).getId() == expected.get(q).getId());
+						assert(found.get(q).getText().equals(expected.get(q).getText()));
+					}
+				}
+				final List<Long> ids = new ArrayList<Long>();
+				int count = QuoteManager.getSingleton().search(conn, criteria, 0, true, new RowCallback<Quote>() {
+					@Override
+					public boolean onRow(Quote quote) {
+						ids.add(quote.getId());
+						return ids.size() < 10;
+					}
+				});
+				assert(count == Math.min(10, expected.size()));
+				for(int q = 0; q < ids.size(); q++) {
+					assert(ids.get(q) == expected.get(q).getId());
+				}
+			}
+		}
+	}
+
+	/** Check that paging a search finds all of its quotes, once each, at the search order (or, for
+	 * ranked searches, from the most to the least relevant). */
+	public void testSearchPage() throws SQLException {
+		Random random = new Random(3141);
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			QuoteManager qm = QuoteManager.getSingleton();
+			List<Quote> all = qm.loadAll(conn);
+			for(int i = 0; i < 50; i++) {
+				SearchCriteria criteria = randomCriteria(random);
+				List<Quote> expected = qm.search(conn, criteria);
+				List<Quote> paged = new ArrayList<Quote>();
+				String token = null;
+				do {
+					Page<Quote> page = qm.searchPage(conn, criteria, token, 7);
+					assert(page.getItems().size() <= 7);
+					assert(page.hasNext() == (page.getNextToken() != null));
+					assert(!page.hasNext() || page.getItems().size() == 7);
+					paged.addAll(page.getItems());
+					token = page.getNextToken();
+				} while(token != null);
+				
+				assert(paged.size() == expected.size());
+				TreeSet<Long> expectedIds = new TreeSet<Long>();
+				for(Quote quote : expected) {
+					expectedIds.add(quote.getId());
+				}
+				if(!paged.isEmpty() && paged.get(0).getRank() != 0) {
+					/* Ranked: from the most to the least relevant */
+					for(int q = 1; q < paged.size(); q++) {
+						assert(paged.get(q - 1).getRank() <= paged.get(q).getRank());
+					}
+				} else {
+					/* At the quotes default order */
+					List<Long> ordered = new ArrayList<Long>();
+					for(Quote quote : all) {
+						if(expectedIds.contains(quote.getId())) {
+							ordered.add(quote.getId());
+						}
+					}
+					for(int q = 0; q < paged.size(); q++) {
+						assert(paged.get(q).getId() == ordered.get(q));
+					}
+				}
+				TreeSet<Long> pagedIds = new TreeSet<Long>();
+				for(Quote quote : paged) {
+					pagedIds.add(quote.getId());
+				}
+				assert(pagedIds.equals(expectedIds));
+			}
+			try {
+				qm.searchPage(conn, new SearchCriteria(), "not a token", 10);
+				assert(false);
+			} catch(IllegalArgumentException e) {
+				/* Expected */
+			}
+		}
+	}
+
+	/** Check that a search job delivers all quotes of a search, at its order, in growing batches
+	 * with its related data. */
+	public void testSearchJob() throws SQLException {
+		Random random = new Random(2718);
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			List<SearchCriteria> all = new ArrayList<SearchCriteria>();
+			all.add(new SearchCriteria());
+			for(int i = 0; i < 30; i++) {
+				all.add(randomCriteria(random));
+			}
+			for(SearchCriteria criteria : all) {
+				List<Quote> expected = QuoteManager.getSingleton().search(conn, criteria);
+				final List<Quote> found = new ArrayList<Quote>();
+				final List<Integer> sizes = new ArrayList<Integer>();
+				SearchJob job = new SearchJob(criteria, FetchPlan.of(Quote.class).with(
+						FetchPlan.Relation.BOOK_AUTHORS, FetchPlan.Relation.SOURCE, FetchPlan.Relation.KEYWORDS));
+				SearchJob.Status status = job.run(conn, new SearchJob.Listener() {
+					@Override
+					public void onBatch(List<Quote> quotes, int total) {
+						found.addAll(quotes);
+						sizes.add(quotes.size());
+						assert(total == found.size());
+					}
+				});
+				assert(status == SearchJob.Status.DONE);
+				assert(job.getFound() == expected.size());
+				assert(found.size() == expected.size());
+				for(int q = 0; q < found.size(); q++) {
+					Quote quote = found.get(q);
+					assert(quote.getId() == expected.get(q).getId());
+					assert(quote.getBookId() == 0 || quote.getBook() != null);
+					assert(quote.getSourceId() == 0 || quote.getSource() != null);
+				}
+				for(int b = 0; b < sizes.size() - 1; b++) {
+					assert(sizes.get(b) == Math.min(SearchJob.FIRST_BATCH << b, SearchJob.MAX_BATCH));
+				}
+			}
+		}
+	}
+
+	/** Check that a cancelled search job stops delivering its quotes. */
+	public void testSearchJobCancel() throws SQLException {
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			final SearchJob job = new SearchJob(new SearchCriteria(), null);
+			final List<Quote> found = new ArrayList<Quote>();
+			SearchJob.Status status = job.run(conn, new SearchJob.Listener() {
+				@Override
+				public void onBatch(List<Quote> quotes, int total) {
+					found.addAll(quotes);
+					job.cancel();
+				}
+			});
+			assert(status == SearchJob.Status.CANCELLED);
+			assert(job.isCancelled());
+			assert(found.size() == SearchJob.FIRST_BATCH);
+			assert(job.getFound() == SearchJob.FIRST_BATCH);
+
+			/* The connection is still usable after the interruption */
+			assert(QuoteManager.getSingleton().search(conn, new SearchCriteria()).size() == 300);
+
+			/* Cancelled before running */
+			SearchJob early = new SearchJob(new SearchCriteria(), null);
+			early.cancel();
+			status = early.run(conn, new SearchJob.Listener() {
+				@Override
+				public void onBatch(List<Quote> quotes, int total) {
+					assert(false);
+				}
+			});
+			assert(status == SearchJob.Status.CANCELLED);
+		}
+	}
+
+	/** Check that a search job is stopped by its time budget. */
+	public void testSearchJobTimeBudget() throws SQLException {
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			SearchJob job = new SearchJob(new SearchCriteria(), null, 50);
+			SearchJob.Status status = job.run(conn, new SearchJob.Listener() {
+				@Override
+				public void onBatch(List<Quote> quotes, int total) {
+					try {
+						Thread.sleep(200);
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			assert(status == SearchJob.Status.TIMED_OUT);
+			assert(job.isTimedOut());
+			assert(job.getFound() == SearchJob.FIRST_BATCH);
+			assert(job.getElapsed() >= 50);
+		}
+	}
+
+	/** Check that a completed search job result is reused by the next job with the same criteria,
+	 * until a change by our managers. */
+	public void testSearchResultCache() throws SQLException {
+		SearchCriteria criteria = new SearchCriteria();
+		criteria.setText("ouro");
+		long[] first = runJob(criteria);
+		assert(first.length > 0);
+
+		/* Not changed by a manager: the previous result is still used */
+		try(ConnectionLease lease = database.leaseWriter();
+			 PreparedStatement stmt = lease.getConnection().prepareStatement(
+					 "INSERT INTO Quotes(Text, Comment, Page) VALUES ('Mais ouro', '', '')")) {
+			stmt.executeUpdate();
+		}
+		SearchCriteria same = new SearchCriteria(criteria);
+		assert(Arrays.equals(runJob(same), first));
+
+		/* Any change by a manager invalidates it */
+		new QuoteGenerator().withText("Ouro de Sofala").persist(database);
+		long[] changed = runJob(criteria);
+		assert(changed.length == first.length + 2);
+		try(ConnectionLease lease = database.leaseReader()) {
+			List<Quote> expected = QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+			for(int i = 0; i < changed.length; i++) {
+				assert(changed[i] == expected.get(i).getId());
+			}
+		}
+
+		/* Also by a bulk delete of relations, alone at its transaction */
+		Keyword keyword = new KeywordGenerator().withName("Cached").persist(database);
+		new QuoteGenerator().withKeyword(keyword).persist(database);
+		SearchCriteria byKeyword = new SearchCriteria();
+		byKeyword.setKeywords(Arrays.asList(keyword));
+		assert(runJob(byKeyword).length == 1);
+		try(ConnectionLease lease = database.leaseWriter()) {
+			QuoteKeywordManager.getSingleton().deleteKeywordFromQuotes(lease.getConnection(), keyword.getId());
+		}
+		assert(runJob(byKeyword).length == 0);
+	}
+
+	/** Check that a search restricted to the quotes found by the one it refines finds the same
+	 * quotes as the unrestricted one. */
+	public void testRefinedSearch() throws SQLException {
+		SearchCriteria previous = new SearchCriteria();
+		previous.setTextMode(SearchCriteria.TextMode.PREFIX);
+		previous.setText("our");
+		long[] found = runJob(previous);
+
+		String[] typed = {"ouro", "ouro d", "ouro de M", "ouro de Manica"};
+		for(SearchCriteria.TextMode mode : SearchCriteria.TextMode.values()) {
+			previous.setTextMode(mode);
+			for(String text : typed) {
+				SearchCriteria next = new SearchCriteria(previous);
+				next.setText(text);
+				if(!previous.isRefinedBy(next)) {
+					continue;
+				}
+				long[] all = runJob(next);
+				next.setWithin(found);
+				assert(Arrays.equals(runJob(next), all));
+			}
+			previous.setText("our");
+		}
+
+		/* Only extending whole words, when matching them */
+		SearchCriteria words = new SearchCriteria();
+		words.setTextMode(SearchCriteria.TextMode.TOKENS);
+		words.setText("ouro d");
+		assert(!words.isRefinedBy(withText(words, "ouro de")));
+		assert(words.isRefinedBy(withText(words, "ouro d Manica")));
+		words.setTextMode(SearchCriteria.TextMode.PREFIX);
+		assert(words.isRefinedBy(withText(words, "ouro de")));
+		assert(!words.isRefinedBy(withText(words, "ouro")));
+		/* Only with the same other filters */
+		SearchCriteria other = withText(words, "ouro de");
+		other.setUseSources(false);
+		assert(!words.isRefinedBy(other));
+		/* Anything refines no text at all */
+		assert(new SearchCriteria().isRefinedBy(words));
+	}
+
+	/** Run a search job until done.
+	 * @param criteria {@link SearchCriteria} of the search.
+	 * @return identifiers of the quotes found, in order.
+	 * @throws SQLException */
+	private long[] runJob(SearchCriteria criteria) throws SQLException {
+		try(ConnectionLease lease = database.leaseReader()) {
+			SearchJob job = new SearchJob(criteria, null);
+			SearchJob.Status status = job.run(lease.getConnection(), new SearchJob.Listener() {
+				@Override
+				public void onBatch(List<Quote> quotes, int total) {
+				}
+			});
+			assert(status == SearchJob.Status.DONE);
+			return job.getFoundIds();
+		}
+	}
+
+	/** @return a copy of a criteria, with another text. */
+	private SearchCriteria withText(SearchCriteria criteria, String text) {
+		SearchCriteria copy = new SearchCriteria(criteria);
+		copy.setText(text);
+		return copy;
+	}
+
+	/** Compare the results of searches using the in-memory relations index with the ones without
+	 * it, after some changes (commited or not). */
+	public void testBitmapIndex() throws SQLException {
+		DatabaseConfig config = new DatabaseConfig();
+		config.setBitmapIndex(true);
+		final Database indexed = new Database("quotesearchtestcase.db", config);
+		try {
+			assert(!indexed.getQuoteIndex().isBuilt());
+			assertSameResults(indexed, 4422);
+			assert(indexed.getQuoteIndex().isBuilt());
+
+			/* Change some quotes and relations */
+			QuoteManager quoteManager = QuoteManager.getSingleton();
+			final List<Quote> quotes = quoteManager.loadAll(indexed);
+			Quote moved = quotes.get(0);
+			moved.setBookId(0L);
+			moved.setSourceId(sources.get(1).getId());
+			quoteManager.update(indexed, moved);
+			quoteManager.delete(indexed, quotes.get(1).getId());
+			try(ConnectionLease lease = indexed.leaseWriter()) {
+				QuoteKeywordManager.getSingleton().deleteKeywordsFromQuote(lease.getConnection(), quotes.get(2).getId());
+				BookAuthorManager.getSingleton().deleteAuthorFromBooks(lease.getConnection(), authors.get(0).getId());
+			}
+			QuoteKeywordManager.getSingleton().deleteBySecondEntity(indexed, keywords.get(3).getId());
+			indexed.inTransaction(new TransactionWork<Void>() {
+				public Void execute(Connection conn) throws SQLException {
+					new QuoteGenerator().withBook(books.get(0)).withKeyword(keywords.get(0))
+							.withKeyword(keywords.get(1)).persist(conn);
+					BookAuthorManager.getSingleton().insert(conn, new BookAuthor(books.get(1), authors.get(0)));
+					QuoteManager.getSingleton().deleteAllQuotesFromSource(conn, sources.get(2).getId());
+					return null;
+				}
+			});
+			assertSameResults(indexed, 2244);
+
+			/* Not commited changes are discarded */
+			try {
+				indexed.inTransaction(new TransactionWork<Void>() {
+					public Void execute(Connection conn) throws SQLException {
+						new QuoteGenerator().withBook(books.get(2)).withKeyword(keywords.get(4)).persist(conn);
+						QuoteManager.getSingleton().deleteAllQuotesFromBook(conn, books.get(3).getId());
+						QuoteKeywordManager.getSingleton().deleteKeywordFromQuotes(conn, keywords.get(5).getId());
+						throw new SQLException("Rollback");
+					}
+				});
+				assert(false);
+			} catch(SQLException e) {
+				/* Expected */
+			}
+			assertSameResults(indexed, 2424);
+		} finally {
+			indexed.close();
+		}
+	}
+
+	/** Compare random searches with and without the in-memory relations index.
+	 * @param indexed {@link Database} with the index.
+	 * @param seed seed of the searches.
+	 * @throws SQLException */
+	private void assertSameResults(Database indexed, long seed) throws SQLException {
+		Random random = new Random(seed);
+		try(ConnectionLease lease = database.leaseReader();
+			 ConnectionLease indexedLease = indexed.leaseReader()) {
+			for(int i = 0; i < 200; i++) {
+				SearchCriteria criteria = randomCriteria(random);
+				TreeSet<Long> expected = new TreeSet<Long>();
+				for(Quote quote : QuoteManager.getSingleton().search(lease.getConnection(), criteria)) {
+					expected.add(quote.getId());
+				}
+				TreeSet<Long> found = new TreeSet<Long>();
+				for(Quote quote : QuoteManager.getSingleton().search(indexedLease.getConnection(), criteria)) {
+					assert(found.add(quote.getId()));
+				}
+				assert(expected.equals(found));
+			}
+		}
+	}
+
+	/** Create a random search.
+	 * @param random {@link Random} to use.
+	 * @return {@link SearchCriteria} created. */
+	private SearchCriteria randomCriteria(Random random) {
+		SearchCriteria criteria = new SearchCriteria();
+		criteria.setKeywords(pick(random, keywords, 4));
+		criteria.setAndKeys(random.nextBoolean());
+		criteria.setUseBooks(random.nextInt(8) != 0);
+		/* The previous statement only accepted books (and sources) if using them */
+		criteria.setBooks(criteria.isUseBooks() ? pick(random, books, 3) : new ArrayList<Book>());
+		criteria.setAuthors(pick(random, authors, 2));
+		criteria.setUseSources(random.nextInt(8) != 0);
+		criteria.setSources(criteria.isUseSources() ? pick(random, sources, 2) : new ArrayList<Source>());
+		criteria.setText(random.nextInt(3) == 0 ? "ouro" : "");
+		return criteria;
+	}
+
+	/** Pick some random elements of a list.
+	 * @param random {@link Random} to use.
+	 * @param list list to pick from.
+	 * @param max max number of elements to pick.
+	 * @return picked elements (without duplicates), possibly none. */
+	private <T> List<T> pick(Random random, List<T> list, int max) {
+		List<T> res = new ArrayList<T>();
+		int total = random.nextInt(max + 1);
+		for(int i = 0; i < total; i++) {
+			T element = list.get(random.nextInt(list.size()));
+			if(!res.contains(element)) {
+				res.add(element);
+			}
+		}
+		return res;
+	}
+
+	/** The search statement as it was before its planner (nested keyword sub-selects, an author
+	 * join and DISTINCT), only for the {@link SearchCriteria.TextMode#CONTAINS} text mode.
+	 * @param conn {@link Connection} to use.
+	 * @param criteria {@link SearchCriteria} to use.
+	 * @return identifiers of the found quotes.
+	 * @throws SQLException */
+	private TreeSet<Long> legacySearch(Connection conn, SearchCriteria criteria) throws SQLException {
+		Collection<Keyword> keywords = criteria.getKeywords();
+		Collection<Book> books = criteria.getBooks();
+		Collection<Author> authors = criteria.getAuthors();
+		Collection<Source> sources = criteria.getSources();
+		String text = criteria.getText();
+
+		String query = "SELECT DISTINCT " + QuoteManager.getSingleton().getColumnsForSelect() + " FROM Quotes QUO ";
+		if(!keywords.isEmpty()) {
+			query += " INNER JOIN QuoteKeyword QKW ON QKW.QuoteId = QUO.Id";
+		}
+		if(!authors.isEmpty()) {
+			query += " INNER JOIN BookAuthor boau ON boau.BookId = QUO.BookId";
+		}
+		List<String> where = new ArrayList<String>();
+		if(!criteria.isUseBooks()) {
+			where.add("QUO.BookId IS NULL");
+		} else if(!books.isEmpty()) {
+			where.add("QUO.BookId" + createInClause(books.size()));
+		}
+		if(!keywords.isEmpty()) {
+			if(!criteria.isAndKeys()) {
+				where.add("QKW.KeywordId" + createInClause(keywords.size()));
+			} else {
+				String clause = " ( ";
+				for(int cur = 0; cur < keywords.size(); cur++) {
+					if(cur > 0) {
+						clause += " AND QKW.QuoteId IN ( SELECT QKW.QuoteId FROM QuoteKeyword QKW WHERE ";
+					}
+					clause += "QKW.KeywordId = ?";
+				}
+				for(int cur = 1; cur < keywords.size(); cur++) {
+					clause += ")";
+				}
+				where.add(clause + " ) ");
+			}
+		}
+		if(!authors.isEmpty()) {
+			where.add("boau.AuthorId" + createInClause(authors.size()));
+		}
+		if(!criteria.isUseSources()) {
+			where.add("QUO.SourceId IS NULL");
+		} else if(!sources.isEmpty()) {
+			where.add("QUO.SourceId" + createInClause(sources.size()));
+		}
+		if(!text.isEmpty()) {
+			where.add("QUO.Text LIKE ?");
+		}
+		for(int i = 0; i < where.size(); i++) {
+			query += ((i == 0) ? " WHERE " : " AND ") + where.get(i);
+		}
+
+		try(PreparedStatement stmt = conn.prepareStatement(query)) {
+			int i = 1;
+			for(Collection<? extends Entity> entities : asList(books, keywords, authors, sources)) {
+				for(Entity entity : entities) {
+					stmt.setLong(i, entity.getId());
+					i++;
+				}
+			}
+			if(!text.isEmpty()) {
+				stmt.setString(i, "%" + text + "%");
+			}
+			TreeSet<Long> ids = new TreeSet<Long>();
+			try(ResultSet rs = stmt.executeQuery()) {
+				while(rs.next()) {
+					ids.add(rs.getLong(1));
+				}
+			}
+			return ids;
+		}
+	}
+
+	/** @return the collections, in order. */
+	private List<Collection<? extends Entity>> asList(Collection<Book> books, Collection<Keyword> keywords,
+			Collection<Author> authors, Collection<Source> sources) {
+		List<Collection<? extends Entity>> list = new ArrayList<Collection<? extends Entity>>();
+		list.add(books);
+		list.add(keywords);
+		list.add(authors);
+		list.add(sources);
+		return list;
+	}
+
+	/** Create a "IN(?, ?, ...)" clause.
+	 * @param totalElements total elements of the clause.
+	 * @return the clause. */
+	private String createInClause(int totalElements) {
+		String in = " IN (";
+		for(int cur = 0; cur < totalElements; cur++) {
+			in += (cur > 0) ? ", ?" : "?";
+		}
+		return in + ")";
+	}
+
+}
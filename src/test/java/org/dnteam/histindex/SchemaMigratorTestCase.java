@@ -0,0 +1,202 @@
+package org.dnteam.histindex;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.migrations.SchemaMigrator;
+
+import junit.framework.TestCase;
+
+/** Tests for the {@link SchemaMigrator}.
+ * @author farrer */
+public class SchemaMigratorTestCase extends TestCase {
+	private Database database;
+
+	/** Constructor. */
+	public SchemaMigratorTestCase() {
+		this.database = new Database("schemamigratortestcase.db");
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void setUp() throws Exception {
+		database.createSchema();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void tearDown() throws Exception {
+		database.close();
+	}
+
+	/** Test that a new database is created at the latest version. */
+	public void testNewDatabaseIsLatest() throws SQLException {
+		SchemaMigrator migrator = SchemaMigrator.getSingleton();
+		assert(migrator.getVersion(database) == migrator.getLatestVersion());
+		int applied = database.migrate();
+		assert(applied == 0);
+		assert(hasIndex("QuoteKeywordByKeyword"));
+	}
+
+	/** Test the upgrade of a database created before any migration. */
+	public void testUpgradeFromUnversioned() throws SQLException {
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("DROP INDEX QuoteKeywordByKeyword;");
+			stmt.execute("PRAGMA user_version = 0;");
+		}
+		assert(!hasIndex("QuoteKeywordByKeyword"));
+
+		SchemaMigrator migrator = SchemaMigrator.getSingleton();
+		int applied = database.migrate();
+		assert(applied == migrator.getLatestVersion());
+		assert(migrator.getVersion(database) == migrator.getLatestVersion());
+		assert(hasIndex("QuoteKeywordByKeyword"));
+	}
+
+	/** Test the backfill of the quotes page ranges, upgrading a database from before them. */
+	public void testPageRangeBackfill() throws SQLException {
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("INSERT INTO Quotes(Text, BookId, SourceId, Page, Comment) VALUES ('A', 0, 0, '123-25', '');");
+			stmt.execute("INSERT INTO Quotes(Text, BookId, SourceId, Page, Comment) VALUES ('B', 0, 0, 'none', '');");
+			stmt.execute("PRAGMA user_version = 2;");
+		}
+
+		int applied = database.migrate();
+		assert(applied == SchemaMigrator.getSingleton().getLatestVersion() - 2);
+		assert(hasIndex("QuotesByBookPage"));
+		assert(!hasIndex("QuotesByBook"));
+		try(ConnectionLease lease = database.leaseReader();
+			 Statement stmt = lease.getConnection().createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT PageStart, PageEnd FROM Quotes ORDER BY Text")) {
+			assert(rs.next() && rs.getInt(1) == 123 && rs.getInt(2) == 125);
+			assert(rs.next() && rs.getInt(1) == 0 && rs.getInt(2) == 0);
+		}
+	}
+
+	/** Test the backfill of the books sort keys, upgrading a database from before them, and
+	 * that they are kept by its triggers. */
+	public void testBookSortKey() throws SQLException {
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("INSERT INTO Books(Id, Title) VALUES (1, 'Zeta');");
+			stmt.execute("INSERT INTO Books(Id, Title) VALUES (2, 'Alpha');");
+			stmt.execute("INSERT INTO Authors(Id, Name, LastName) VALUES (1, 'Ana', 'Silva');");
+			stmt.execute("INSERT INTO Authors(Id, Name, LastName) VALUES (2, 'Rui', 'Almeida');");
+			stmt.execute("INSERT INTO BookAuthor(BookId, AuthorId) VALUES (1, 1);");
+			stmt.execute("INSERT INTO BookAuthor(BookId, AuthorId) VALUES (1, 2);");
+			stmt.execute("UPDATE Books SET SortKey = NULL;");
+			stmt.execute("PRAGMA user_version = 3;");
+		}
+
+		int applied = database.migrate();
+		assert(applied == SchemaMigrator.getSingleton().getLatestVersion() - 3);
+		assert("Almeida, Rui;Silva, Ana. Zeta".equals(getSortKey(1)));
+		assert(". Alpha".equals(getSortKey(2)));
+
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("UPDATE Authors SET LastName = 'Xavier' WHERE Id = 2;");
+			stmt.execute("INSERT INTO BookAuthor(BookId, AuthorId) VALUES (2, 1);");
+			stmt.execute("UPDATE Books SET Title = 'Beta' WHERE Id = 2;");
+			stmt.execute("DELETE FROM BookAuthor WHERE BookId = 1 AND AuthorId = 1;");
+		}
+		assert("Xavier, Rui. Zeta".equals(getSortKey(1)));
+		assert("Silva, Ana. Beta".equals(getSortKey(2)));
+	}
+
+	/** Test the backfill of the quotes book sort keys, upgrading a database from before them, and
+	 * that they follow the changes of its books. */
+	public void testQuoteSortKey() throws SQLException {
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("INSERT INTO Books(Id, Title) VALUES (1, 'Zeta');");
+			stmt.execute("INSERT INTO Quotes(Id, Text, BookId, SourceId, Page, Comment) VALUES (1, 'A', 1, 0, '', '');");
+			stmt.execute("INSERT INTO Quotes(Id, Text, BookId, SourceId, Page, Comment) VALUES (2, 'B', 0, 1, '', '');");
+			stmt.execute("UPDATE Quotes SET NoBook = 1, BookSortKey = NULL;");
+			stmt.execute("PRAGMA user_version = 4;");
+		}
+
+		int applied = database.migrate();
+		assert(applied == SchemaMigrator.getSingleton().getLatestVersion() - 4);
+		assert(hasIndex("QuotesBySortKey"));
+		assert(". Zeta".equals(getQuoteSortKey(1)));
+		assert(getQuoteSortKey(2) == null);
+
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("UPDATE Books SET Title = 'Alpha' WHERE Id = 1;");
+			stmt.execute("UPDATE Quotes SET BookId = 1 WHERE Id = 2;");
+		}
+		assert(". Alpha".equals(getQuoteSortKey(1)));
+		assert(". Alpha".equals(getQuoteSortKey(2)));
+
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("DELETE FROM Books WHERE Id = 1;");
+		}
+		assert(getQuoteSortKey(1) == null);
+	}
+
+	/** Test that a database from a newer version isn't touched. */
+	public void testNewerVersionRefused() throws SQLException {
+		int newer = SchemaMigrator.getSingleton().getLatestVersion() + 1;
+		try(ConnectionLease lease = database.leaseWriter();
+			 Statement stmt = lease.getConnection().createStatement()) {
+			stmt.execute("PRAGMA user_version = " + newer + ";");
+		}
+		try {
+			database.migrate();
+			assert(false);
+		} catch(SQLException e) {
+			/* Expected */
+		}
+		assert(SchemaMigrator.getSingleton().getVersion(database) == newer);
+	}
+
+	/** Get the sort key of a book.
+	 * @param bookId identifier of the book.
+	 * @return its sort key. */
+	private String getSortKey(long bookId) throws SQLException {
+		try(ConnectionLease lease = database.leaseReader();
+			 Statement stmt = lease.getConnection().createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT SortKey FROM Books WHERE Id = " + bookId)) {
+			assert(rs.next());
+			return rs.getString(1);
+		}
+	}
+
+	/** Get the book sort key of a quote, checking it is flagged as without a book when none.
+	 * @param quoteId identifier of the quote.
+	 * @return its book sort key. */
+	private String getQuoteSortKey(long quoteId) throws SQLException {
+		try(ConnectionLease lease = database.leaseReader();
+			 Statement stmt = lease.getConnection().createStatement();
+			 ResultSet rs = stmt.executeQuery("SELECT NoBook, BookSortKey FROM Quotes WHERE Id = " + quoteId)) {
+			assert(rs.next());
+			String key = rs.getString(2);
+			assert((rs.getInt(1) == 1) == (key == null));
+			return key;
+		}
+	}
+
+	/** Check if an index exists on the database.
+	 * @param name index name.
+	 * @return if exists. */
+	private boolean hasIndex(String name) throws SQLException {
+		try(ConnectionLease lease = database.leaseReader()) {
+			Connection conn = lease.getConnection();
+			try(Statement stmt = conn.createStatement();
+				 ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = '"
+						 + name + "'")) {
+				return rs.next();
+			}
+		}
+	}
+
+}
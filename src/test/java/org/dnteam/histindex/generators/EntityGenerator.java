@@ -1,9 +1,9 @@
 package org.dnteam.histindex.generators;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import org.dnteam.histindex.database.ConnectionLease;
 import org.dnteam.histindex.database.Database;
 import org.dnteam.histindex.database.Entity;
 import org.dnteam.histindex.database.EntityManager;
@@ -28,8 +28,8 @@ public abstract class EntityGenerator<T extends Entity> {
 	 * @return Created entity (with its id defined).
 	 * @throws SQLException */
 	public T persist(Database database) throws SQLException {
-		try(Connection conn = DriverManager.getConnection(database.getURL())) {
-			return persist(conn);
+		try(ConnectionLease lease = database.leaseWriter()) {
+			return persist(lease.getConnection());
 		}
 	}
 	
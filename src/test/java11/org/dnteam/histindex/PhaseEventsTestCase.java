@@ -0,0 +1,90 @@
+package org.dnteam.histindex;
+
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnteam.histindex.database.ConnectionLease;
+import org.dnteam.histindex.database.Database;
+import org.dnteam.histindex.database.Keyword;
+import org.dnteam.histindex.database.Quote;
+import org.dnteam.histindex.database.QuoteManager;
+import org.dnteam.histindex.database.SearchCriteria;
+import org.dnteam.histindex.generators.BookGenerator;
+import org.dnteam.histindex.generators.KeywordGenerator;
+import org.dnteam.histindex.generators.QuoteGenerator;
+import org.dnteam.histindex.metrics.Phase;
+import org.dnteam.histindex.metrics.PhaseEvents;
+import org.dnteam.histindex.metrics.PhaseType;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+/** Tests for the Java Flight Recorder events of our phases ({@link PhaseEvents}).
+ * @author farrer */
+public class PhaseEventsTestCase extends TestCase {
+
+	private static final String FILENAME = "phaseeventstestcase.db";
+
+	/** Test that the phases are only begun while recorded. */
+	public void testNotRecording() {
+		assert(PhaseEvents.getSingleton().begin(PhaseType.SEARCH) == Phase.NONE);
+	}
+
+	/** Test that searches and hydrations are recorded with its details. */
+	public void testRecorded() throws Exception {
+		Database database = new Database(FILENAME);
+		File dump = File.createTempFile("phaseeventstestcase", ".jfr");
+		dump.deleteOnExit();
+		try {
+			database.createSchema();
+			Keyword keyword;
+			try(ConnectionLease lease = database.leaseWriter()) {
+				Connection conn = lease.getConnection();
+				keyword = new KeywordGenerator().persist(conn);
+				for(int i = 0; i < 10; i++) {
+					new QuoteGenerator().withBook(new BookGenerator().persist(conn)).withKeyword(keyword).persist(conn);
+				}
+			}
+
+			try(Recording recording = new Recording()) {
+				recording.enable("org.dnteam.histindex.Search");
+				recording.enable("org.dnteam.histindex.Hydration");
+				recording.start();
+				try(ConnectionLease lease = database.leaseReader()) {
+					SearchCriteria criteria = new SearchCriteria();
+					List<Keyword> keywords = new ArrayList<Keyword>();
+					keywords.add(keyword);
+					criteria.setKeywords(keywords);
+					List<Quote> quotes = QuoteManager.getSingleton().search(lease.getConnection(), criteria);
+					assert(quotes.size() == 10);
+					QuoteManager.getSingleton().populateRelatedInfo(lease.getConnection(), quotes);
+				}
+				recording.stop();
+				recording.dump(dump.toPath());
+			}
+		} finally {
+			database.close();
+		}
+
+		boolean searched = false;
+		boolean hydrated = false;
+		for(RecordedEvent event : RecordingFile.readAllEvents(dump.toPath())) {
+			String name = event.getEventType().getName();
+			if(name.equals("org.dnteam.histindex.Search")) {
+				searched = true;
+				assert(event.getLong("rows") == 10);
+				assert("keywords=1 (or)".equals(event.getString("details")));
+				assert(FILENAME.equals(event.getString("database")));
+			} else if(name.equals("org.dnteam.histindex.Hydration")) {
+				hydrated = true;
+				assert(event.getLong("rows") == 10);
+			}
+		}
+		assert(searched && hydrated);
+	}
+
+}